@@ -47,13 +47,13 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
       Range range = ranged.getYRange();
       double yMax = -Double.MAX_VALUE;
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
-      if (seriesList.isEmpty()) {
+      LongSeries series = ranged.getLongSeries();
+      if (series.isEmpty()) {
         continue;
       }
 
-      for (SeriesData<Long> series : seriesList) {
-        double value = series.value;
+      for (int i = 0; i < series.size(); ++i) {
+        double value = series.getValue(i);
         if (yMax < value) {
           yMax = value;
         }
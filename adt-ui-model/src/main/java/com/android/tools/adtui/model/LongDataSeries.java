@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link DataSeries} of numbers that can fill a {@link LongSeries} instead of boxing every sample. {@link RangedContinuousSeries#getLongSeries()}
+ * uses it when available, so that charts can be updated without allocating per sample. Implementations still provide
+ * {@link #getDataForRange(Range)} for callers of the boxed API, building the list directly rather than through a {@link LongSeries}.
+ */
+public interface LongDataSeries extends DataSeries<Long> {
+  /**
+   * Clears {@code into} and fills it with the samples that {@link #getDataForRange(Range)} would return.
+   */
+  void getDataForRange(@NotNull Range range, @NotNull LongSeries into);
+}
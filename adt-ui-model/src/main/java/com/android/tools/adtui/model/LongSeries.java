@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A series of (x, value) samples stored in two primitive arrays, the primitive counterpart of a {@code List<SeriesData<Long>>}. Unlike the
+ * list, it doesn't allocate an object per sample, and it is meant to be cleared and refilled on every update instead of being replaced.
+ *
+ * A series is either a buffer, which can be added to, or a read-only view of a part of another series returned by {@link #subSeries}.
+ * Views share the arrays of their series, so they are only valid until that series is cleared or added to.
+ */
+public final class LongSeries {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  @NotNull private long[] myX;
+  @NotNull private long[] myValues;
+  private final int myStart;
+  private int mySize;
+  private final boolean myIsView;
+
+  public LongSeries() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LongSeries(int capacity) {
+    this(new long[capacity], new long[capacity], 0, 0, false);
+  }
+
+  private LongSeries(@NotNull long[] x, @NotNull long[] values, int start, int size, boolean isView) {
+    myX = x;
+    myValues = values;
+    myStart = start;
+    mySize = size;
+    myIsView = isView;
+  }
+
+  @NotNull
+  public static LongSeries fromList(@NotNull List<SeriesData<Long>> list) {
+    LongSeries series = new LongSeries(Math.max(list.size(), 1));
+    series.addAll(list);
+    return series;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public long getX(int index) {
+    return myX[myStart + index];
+  }
+
+  public long getValue(int index) {
+    return myValues[myStart + index];
+  }
+
+  public void setValue(int index, long value) {
+    myValues[myStart + index] = value;
+  }
+
+  public void add(long x, long value) {
+    checkNotView();
+    if (mySize == myX.length) {
+      int capacity = Math.max(DEFAULT_CAPACITY, mySize * 2);
+      myX = Arrays.copyOf(myX, capacity);
+      myValues = Arrays.copyOf(myValues, capacity);
+    }
+    myX[mySize] = x;
+    myValues[mySize] = value;
+    mySize++;
+  }
+
+  public void addAll(@NotNull List<SeriesData<Long>> list) {
+    for (SeriesData<Long> data : list) {
+      add(data.x, data.value);
+    }
+  }
+
+  /**
+   * Replaces the samples of this series with those of {@code other}.
+   */
+  public void copyFrom(@NotNull LongSeries other) {
+    clear();
+    for (int i = 0; i < other.size(); ++i) {
+      add(other.getX(i), other.getValue(i));
+    }
+  }
+
+  /**
+   * Removes the samples but keeps the arrays, so that the series can be refilled without allocating.
+   */
+  public void clear() {
+    checkNotView();
+    mySize = 0;
+  }
+
+  /**
+   * Removes the last sample.
+   */
+  public void removeLast() {
+    checkNotView();
+    assert mySize > 0;
+    mySize--;
+  }
+
+  /**
+   * @return a read-only view of the samples in [{@code from}, {@code to}).
+   */
+  @NotNull
+  public LongSeries subSeries(int from, int to) {
+    if (from < 0 || to > mySize || from > to) {
+      throw new IndexOutOfBoundsException(String.format("[%d, %d) out of a series of size %d", from, to, mySize));
+    }
+    return new LongSeries(myX, myValues, myStart + from, to - from, true);
+  }
+
+  /**
+   * For a series sorted by x, returns a view of the samples that cover {@code range}: the last sample at or before its min, which still
+   * applies at the start of the range, followed by the samples before its max. This matches what in-memory {@link DataSeries} return.
+   */
+  @NotNull
+  public LongSeries subSeries(@NotNull Range range) {
+    if (mySize == 0) {
+      return this;
+    }
+    int from = Math.max(0, firstAfter((long)range.getMin()) - 1);
+    int to = Math.max(from, firstAtOrAfter((long)range.getMax()));
+    return subSeries(from, to);
+  }
+
+  /**
+   * @return the index of the first sample of a series sorted by x whose x is greater than {@code x}, or the size if there is none.
+   */
+  public int firstAfter(long x) {
+    int low = 0;
+    int high = mySize;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getX(mid) <= x) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int firstAtOrAfter(long x) {
+    int low = 0;
+    int high = mySize;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getX(mid) < x) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the samples boxed into a new list, for callers of the {@link DataSeries} API.
+   */
+  @NotNull
+  public List<SeriesData<Long>> toList() {
+    List<SeriesData<Long>> list = new ArrayList<>(mySize);
+    for (int i = 0; i < mySize; ++i) {
+      list.add(new SeriesData<>(getX(i), getValue(i)));
+    }
+    return list;
+  }
+
+  private void checkNotView() {
+    if (myIsView) {
+      throw new UnsupportedOperationException("Views of a LongSeries are read-only");
+    }
+  }
+}
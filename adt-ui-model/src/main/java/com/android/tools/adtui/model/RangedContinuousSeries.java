@@ -16,7 +16,9 @@
 
 package com.android.tools.adtui.model;
 
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class adds a name and an additional range to RangedSeries. This additional range represents
@@ -30,6 +32,13 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   @NotNull
   private final Range myYRange;
 
+  @NotNull private final LongSeries myLongSeries = new LongSeries();
+  @Nullable private Range myLastLongQueriedRange;
+  /**
+   * The samples of {@link #myLongSeries} as returned by {@link #getSeries()}, boxed on demand. Null until then, or once the samples change.
+   */
+  @Nullable private List<SeriesData<Long>> myBoxedSeries;
+
   /**
    * Creates a RangedContinuousSeries with the {@link DataSeries} object scoped by the default and intersecting {@link Range} objects.
    */
@@ -47,6 +56,46 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
     this(name, xRange, yRange, series, new Range(-Double.MAX_VALUE, Double.MAX_VALUE));
   }
 
+  /**
+   * Same as {@link #getSeries()}, but in a {@link LongSeries} owned by this object. The series is refilled by the next call whose range
+   * differs, so callers should not keep it across updates. If the underlying series is a {@link LongDataSeries}, no object is allocated
+   * per sample.
+   */
+  @NotNull
+  public LongSeries getLongSeries() {
+    Range queryRange = getIntersection();
+    boolean streaming = queryRange.getMax() == Long.MAX_VALUE || queryRange.getMax() == Double.MAX_VALUE;
+    if (!streaming && myLastLongQueriedRange != null && myLastLongQueriedRange.isSameAs(queryRange)) {
+      return myLongSeries;
+    }
+
+    if (mySeries instanceof LongDataSeries) {
+      ((LongDataSeries)mySeries).getDataForRange(queryRange, myLongSeries);
+      myBoxedSeries = null;
+    }
+    else {
+      myBoxedSeries = getSeriesForRange(queryRange);
+      myLongSeries.clear();
+      myLongSeries.addAll(myBoxedSeries);
+    }
+    myLastLongQueriedRange = streaming ? null : queryRange;
+    return myLongSeries;
+  }
+
+  /**
+   * Shares the query and the cache of {@link #getLongSeries()}, so that a chart and a legend reading the same series don't each query
+   * the underlying {@link DataSeries}. The samples are only boxed when a caller asks for them.
+   */
+  @NotNull
+  @Override
+  public List<SeriesData<Long>> getSeries() {
+    LongSeries series = getLongSeries();
+    if (myBoxedSeries == null) {
+      myBoxedSeries = series.toList();
+    }
+    return myBoxedSeries;
+  }
+
   @NotNull
   public Range getYRange() {
     return myYRange;
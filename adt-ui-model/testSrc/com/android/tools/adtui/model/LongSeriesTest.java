@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class LongSeriesTest {
+
+  @Test
+  public void addGrowsAndClearKeepsNothing() {
+    LongSeries series = new LongSeries(1);
+    for (int i = 0; i < 100; i++) {
+      series.add(i, i * 10);
+    }
+    assertThat(series.size()).isEqualTo(100);
+    assertThat(series.getX(42)).isEqualTo(42);
+    assertThat(series.getValue(42)).isEqualTo(420);
+
+    series.clear();
+    assertThat(series.isEmpty()).isTrue();
+    series.add(7, 8);
+    assertThat(series.toList()).containsExactly(new SeriesData<>(7, 8L));
+  }
+
+  @Test
+  public void subSeriesForRangeMatchesInMemorySemantics() {
+    LongSeries series = LongSeries.fromList(Arrays.asList(new SeriesData<>(0, 0L),
+                                                          new SeriesData<>(10, 1L),
+                                                          new SeriesData<>(20, 2L),
+                                                          new SeriesData<>(30, 3L)));
+    // The sample just before the range still applies at its start, and the samples at or after its max are excluded.
+    assertThat(series.subSeries(new Range(15, 30)).toList())
+      .containsExactly(new SeriesData<>(10, 1L), new SeriesData<>(20, 2L)).inOrder();
+    assertThat(series.subSeries(new Range(10, 11)).toList()).containsExactly(new SeriesData<>(10, 1L));
+    assertThat(series.subSeries(new Range(35, 40)).toList()).containsExactly(new SeriesData<>(30, 3L));
+    assertThat(series.subSeries(new Range(-10, -5)).isEmpty()).isTrue();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void viewsAreReadOnly() {
+    LongSeries series = new LongSeries();
+    series.add(0, 0);
+    series.add(1, 1);
+    series.subSeries(0, 1).add(2, 2);
+  }
+
+  @Test
+  public void rangedContinuousSeriesFillsLongSeries() {
+    DefaultDataSeries<Long> data = new DefaultDataSeries<>();
+    for (int i = 0; i < 50; i++) {
+      data.add(i, (long)i);
+    }
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", new Range(0, 100), new Range(0, 100), data);
+    LongSeries series = ranged.getLongSeries();
+    assertThat(series.size()).isEqualTo(50);
+    assertThat(series.getValue(49)).isEqualTo(49);
+
+    ranged = new RangedContinuousSeries("test", new Range(5, 10), new Range(0, 100), new RangeBoundsSeries());
+    assertThat(ranged.getLongSeries().toList()).containsExactly(new SeriesData<>(5, 1L), new SeriesData<>(10, 2L)).inOrder();
+    assertThat(ranged.getSeries()).containsExactly(new SeriesData<>(5, 1L), new SeriesData<>(10, 2L)).inOrder();
+  }
+
+  @Test
+  public void longAndBoxedSeriesShareOneQuery() {
+    RangeBoundsSeries data = new RangeBoundsSeries();
+    Range xRange = new Range(5, 10);
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", xRange, new Range(0, 100), data);
+    ranged.getLongSeries();
+    assertThat(ranged.getSeries()).hasSize(2);
+    assertThat(ranged.getSeries()).isSameAs(ranged.getSeries());
+    assertThat(data.myQueryCount).isEqualTo(1);
+
+    // A new range refills the long series, and the boxed series follows it.
+    xRange.setMax(20);
+    assertThat(ranged.getSeries()).containsExactly(new SeriesData<>(5, 1L), new SeriesData<>(20, 2L)).inOrder();
+    assertThat(ranged.getLongSeries().getX(1)).isEqualTo(20);
+    assertThat(data.myQueryCount).isEqualTo(2);
+  }
+
+  /**
+   * Returns a sample at each bound of the queried range, counting the queries.
+   */
+  private static final class RangeBoundsSeries implements LongDataSeries {
+    private int myQueryCount;
+
+    @Override
+    public void getDataForRange(@NotNull Range range, @NotNull LongSeries into) {
+      myQueryCount++;
+      into.clear();
+      into.add((long)range.getMin(), 1);
+      into.add((long)range.getMax(), 2);
+    }
+
+    @Override
+    public List<SeriesData<Long>> getDataForRange(Range range) {
+      myQueryCount++;
+      return Arrays.asList(new SeriesData<>((long)range.getMin(), 1L), new SeriesData<>((long)range.getMax(), 2L));
+    }
+  }
+}
@@ -43,9 +43,7 @@ import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import javax.swing.AbstractAction;
 import javax.swing.KeyStroke;
 import org.jetbrains.annotations.NotNull;
@@ -80,6 +78,9 @@ public final class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
   @Nullable
   private N myRoot;
 
+  @NotNull
+  private HTreeChartIndex<N> myIndex;
+
   @NotNull
   private final Range myXRange;
 
@@ -128,6 +129,11 @@ public final class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
 
   private int myCachedMaxHeight;
 
+  /**
+   * The width the nodes were last fetched for, as fewer of them are needed for narrower charts.
+   */
+  private int myNodesWidth;
+
   /**
    * Height of a tree node in pixels. If not set, we use the default font height.
    */
@@ -146,6 +152,7 @@ public final class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
     myGlobalXRange = builder.myGlobalXRange;
     myXRange = builder.myXRange;
     myRoot = builder.myRoot;
+    myIndex = new HTreeChartIndex<>(myRoot);
     myReducer = builder.myReducer;
     myRenderer = builder.myRenderer;
     myOrientation = builder.myOrientation;
@@ -213,9 +220,9 @@ public final class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
   @Override
   protected void draw(Graphics2D g, Dimension dim) {
     long startTime = System.nanoTime();
-    if (myDataUpdated) {
+    if (myDataUpdated || myNodesWidth != dim.width) {
       // Nulling out the canvas will trigger a render pass, below
-      updateNodesAndClearCanvas();
+      updateNodesAndClearCanvas(dim.width);
       myDataUpdated = false;
     }
     g.setFont(getFont());
@@ -291,39 +298,24 @@ public final class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
     g.dispose();
   }
 
-  private void updateNodesAndClearCanvas() {
+  private void updateNodesAndClearCanvas(int width) {
     myNodes.clear();
     myRectangles.clear();
     myCanvas = null;
+    myNodesWidth = width;
     if (myRoot == null) {
       return;
     }
 
-    if (inRange(myRoot)) {
-      myNodes.add(myRoot);
-      myRectangles.add(createRectangle(myRoot));
-    }
-
-    int head = 0;
-    while (head < myNodes.size()) {
-      N curNode = myNodes.get(head++);
-
-      for (int i = 0; i < curNode.getChildCount(); ++i) {
-        N child = curNode.getChildAt(i);
-        if (inRange(child)) {
-          myNodes.add(child);
-          myRectangles.add(createRectangle(child));
-        }
-      }
-    }
-    if (!myRootVisible && !myNodes.isEmpty()) {
+    // Nodes that the default reducer would merge with their neighbors don't need to be fetched. Other reducers get all of them.
+    double pixelLength = myReducer instanceof DefaultHTreeChartReducer && width > 0 ? myXRange.getLength() / width : 0;
+    myIndex.query(myXRange.getMin(), myXRange.getMax(), pixelLength, pixelLength * myNodeXPaddingPx, myNodes);
+    if (!myRootVisible && !myNodes.isEmpty() && myNodes.get(0) == myRoot) {
       myNodes.remove(0);
-      myRectangles.remove(0);
     }
-  }
-
-  private boolean inRange(@NotNull N node) {
-    return node.getStart() <= myXRange.getMax() && node.getEnd() >= myXRange.getMin();
+    for (N node : myNodes) {
+      myRectangles.add(createRectangle(node));
+    }
   }
 
   @NotNull
@@ -342,8 +334,12 @@ public final class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
     return x / getWidth() * myXRange.getLength() + myXRange.getMin();
   }
 
+  /**
+   * Sets the tree to display, which must not be modified afterwards: call this method again instead.
+   */
   public void setHTree(@Nullable N root) {
     this.myRoot = root;
+    myIndex = new HTreeChartIndex<>(root);
     changed();
   }
 
@@ -518,22 +514,7 @@ public final class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
       return 0;
     }
 
-    int maxDepth = -1;
-    Queue<N> queue = new LinkedList<>();
-    queue.add(myRoot);
-
-    while (!queue.isEmpty()) {
-      N n = queue.poll();
-      assert n != null;
-      if (n.getDepth() > maxDepth) {
-        maxDepth = n.getDepth();
-      }
-
-      for (int i = 0; i < n.getChildCount(); ++i) {
-        queue.add(n.getChildAt(i));
-      }
-    }
-    maxDepth += 1;
+    int maxDepth = myIndex.getMaxDepth() + 1;
     // The HEIGHT_PADDING is for the chart's toe (the innermost frame on call stacks).
     // We have this because the padding near the chart's head (the outermost frame on call stacks)
     // is there because the root node of the tree is invisible.
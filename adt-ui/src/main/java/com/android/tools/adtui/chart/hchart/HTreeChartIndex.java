@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart;
+
+import com.android.tools.adtui.model.HNode;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of the nodes of a {@link HTreeChart}, so that the nodes to draw can be found without visiting the whole tree.
+ *
+ * The nodes of each level of the tree are kept in breadth-first order, which is also their order in time when children don't overlap and
+ * are ordered by start. For such levels, the first and last visible nodes are found by binary search, and nodes that would be merged by
+ * {@link DefaultHTreeChartReducer} because they end within the same pixel are skipped, except the first and last of each run. The number
+ * of nodes fetched is then bounded by the width of the chart in pixels for each level, whatever the number of nodes in the range.
+ */
+final class HTreeChartIndex<N extends HNode<N>> {
+  @NotNull private final List<ArrayList<N>> myLevels = new ArrayList<>();
+  /**
+   * The levels whose node starts and ends are both non-decreasing, which is required to search them.
+   */
+  @NotNull private final BitSet myOrderedLevels = new BitSet();
+  private final int myMaxDepth;
+
+  HTreeChartIndex(@Nullable N root) {
+    int maxDepth = -1;
+    ArrayList<N> level = new ArrayList<>();
+    if (root != null) {
+      level.add(root);
+    }
+    while (!level.isEmpty()) {
+      ArrayList<N> nextLevel = new ArrayList<>();
+      boolean isOrdered = true;
+      for (int i = 0; i < level.size(); ++i) {
+        N node = level.get(i);
+        maxDepth = Math.max(maxDepth, node.getDepth());
+        if (i > 0 && (node.getStart() < level.get(i - 1).getStart() || node.getEnd() < level.get(i - 1).getEnd())) {
+          isOrdered = false;
+        }
+        for (int j = 0; j < node.getChildCount(); ++j) {
+          nextLevel.add(node.getChildAt(j));
+        }
+      }
+      level.trimToSize();
+      myOrderedLevels.set(myLevels.size(), isOrdered);
+      myLevels.add(level);
+      level = nextLevel;
+    }
+    myMaxDepth = maxDepth;
+  }
+
+  /**
+   * @return the maximum {@link HNode#getDepth()} of the nodes, or -1 if there are none.
+   */
+  int getMaxDepth() {
+    return myMaxDepth;
+  }
+
+  /**
+   * Appends the nodes intersecting [{@code min}, {@code max}] to {@code result}, in breadth-first order.
+   *
+   * @param pixelLength  the length of the range covered by a pixel, or 0 to fetch all the nodes.
+   * @param paddingLength the length of the range covered by the padding at the end of each node, which doesn't count as part of its width.
+   */
+  void query(double min, double max, double pixelLength, double paddingLength, @NotNull List<N> result) {
+    for (int i = 0; i < myLevels.size(); ++i) {
+      List<N> level = myLevels.get(i);
+      if (!myOrderedLevels.get(i)) {
+        for (N node : level) {
+          if (node.getStart() <= max && node.getEnd() >= min) {
+            result.add(node);
+          }
+        }
+        continue;
+      }
+
+      int index = firstEndingAfter(level, min);
+      int end = firstStartingAfter(level, max);
+      while (index < end) {
+        N node = level.get(index);
+        result.add(node);
+        if (pixelLength <= 0) {
+          ++index;
+          continue;
+        }
+        double pixel = Math.floor((visibleEnd(node, paddingLength) - min) / pixelLength);
+        if (Math.floor((node.getStart() - min) / pixelLength) < pixel) {
+          // Crossing several pixels, kept as it is.
+          ++index;
+          continue;
+        }
+        // The reducer merges all the following nodes that end within the same pixel, so the last one is all it needs.
+        int last = lastEndingBefore(level, index, end, min + (pixel + 1) * pixelLength, paddingLength);
+        if (last > index) {
+          result.add(level.get(last));
+        }
+        index = last + 1;
+      }
+    }
+  }
+
+  /**
+   * @return the index of the first node of an ordered level ending at or after {@code time}.
+   */
+  private static <N extends HNode<N>> int firstEndingAfter(@NotNull List<N> level, double time) {
+    int low = 0;
+    int high = level.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (level.get(mid).getEnd() < time) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the index of the first node of an ordered level starting after {@code time}.
+   */
+  private static <N extends HNode<N>> int firstStartingAfter(@NotNull List<N> level, double time) {
+    int low = 0;
+    int high = level.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (level.get(mid).getStart() <= time) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the index of the last node of an ordered level in [{@code from}, {@code to}) whose visible part ends before {@code time}, or
+   * {@code from} if there is none.
+   */
+  private static <N extends HNode<N>> int lastEndingBefore(@NotNull List<N> level, int from, int to, double time, double paddingLength) {
+    int low = from;
+    int high = to - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (visibleEnd(level.get(mid), paddingLength) < time) {
+        low = mid;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private static double visibleEnd(@NotNull HNode<?> node, double paddingLength) {
+    return Math.max(node.getStart(), node.getEnd() - paddingLength);
+  }
+}
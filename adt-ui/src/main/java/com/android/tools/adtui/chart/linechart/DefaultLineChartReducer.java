@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeries;
 import com.android.tools.adtui.model.SeriesData;
 import org.jetbrains.annotations.NotNull;
 
@@ -66,6 +67,31 @@ class DefaultLineChartReducer implements LineChartReducer {
     return reduced;
   }
 
+  @Override
+  public LongSeries reduceData(@NotNull LongSeries data, @NotNull LineConfig config, @NotNull LongSeries into) {
+    if (config.getDataBucketInterval() > 0) {
+      // Same as above, bars are not reduced.
+      return data;
+    }
+
+    into.clear();
+    for (int i = 0; i < data.size(); ++i) {
+      long value = data.getValue(i);
+      while (into.size() >= 2) {
+        long preLast = into.getValue(into.size() - 2);
+        long last = into.getValue(into.size() - 1);
+
+        if (preLast == last && (config.isStepped() || last == value)) {
+          into.removeLast();
+        } else {
+          break;
+        }
+      }
+      into.add(data.getX(i), value);
+    }
+    return into;
+  }
+
   /**
   * The basic idea behind this algorithm is to reduce number of points to available pixels.
   * For every pixel it draws 4 points: the first point, the last point,
@@ -21,8 +21,8 @@ import static java.awt.BasicStroke.JOIN_MITER;
 
 import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.model.LineChartModel;
+import com.android.tools.adtui.model.LongSeries;
 import com.android.tools.adtui.model.RangedContinuousSeries;
-import com.android.tools.adtui.model.SeriesData;
 import com.google.common.annotations.VisibleForTesting;
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -40,7 +40,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 public class LineChart extends AnimatedComponent {
@@ -115,6 +114,18 @@ public class LineChart extends AnimatedComponent {
   @NotNull
   private final LineChartReducer myReducer;
 
+  /**
+   * The width the paths were downsampled for, or -1 if none were. Downsampled paths need to be redrawn when the width changes.
+   */
+  private int myDownsampledWidth = -1;
+
+  /**
+   * Buffers reused on every redraw, so that drawing doesn't allocate per sample.
+   */
+  @NotNull private final LongSeries myStackedSeries = new LongSeries();
+  @NotNull private final LongSeries myDownsampledSeries = new LongSeries();
+  @NotNull private final LongSeries myReducedSeries = new LongSeries();
+
   // Debug draw counters. TODO: Move to a framework object
   private long myRedraws;
   private long myDraws;
@@ -179,12 +190,12 @@ public class LineChart extends AnimatedComponent {
   private void redraw(@NotNull Dimension dim) {
     long duration = System.nanoTime();
 
-    // Store the last stacked series to use them to increment the Y values
-    // of the current stacked series.
-    List<SeriesData<Long>> lastStackedSeries = null;
+    // Whether myStackedSeries holds the last stacked series, to use it to increment the Y values of the current stacked series.
+    boolean hasStackedSeries = false;
 
     Deque<Path2D> orderedPaths = new ArrayDeque<>(myLinesConfig.size());
     Deque<RangedContinuousSeries> orderedSeries = new ArrayDeque<>(myLinesConfig.size());
+    boolean downsampled = false;
 
     for (RangedContinuousSeries ranged : myModel.getSeries()) {
       if (ranged.getXRange().isEmpty() || ranged.getXRange().isPoint()
@@ -193,11 +204,12 @@ public class LineChart extends AnimatedComponent {
       }
       final LineConfig config = getLineConfig(ranged);
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
+      LongSeries seriesList = ranged.getLongSeries();
       if (config.isStacked()) {
-        if (lastStackedSeries == null) {
-          // Create a new list of SeriesData to prevent modifying the backing data series, which could be cached.
-          lastStackedSeries = seriesList.stream().map(data -> new SeriesData<>(data.x, data.value)).collect(Collectors.toList());
+        if (!hasStackedSeries) {
+          // Copy the series to prevent modifying the backing data series, which could be cached.
+          myStackedSeries.copyFrom(seriesList);
+          hasStackedSeries = true;
         }
         else {
           // If the current series is stacked, increment its value by the value of the last stacked
@@ -205,11 +217,11 @@ public class LineChart extends AnimatedComponent {
           // points than the last stacked series (meaning that the last one was populated in a
           // prior iteration). In this case, ignore the new points (i.e. we take only the intersection
           // across all series).
-          for (int i = 0; i < seriesList.size() && i < lastStackedSeries.size(); ++i) {
+          for (int i = 0; i < seriesList.size() && i < myStackedSeries.size(); ++i) {
             // An assumption is made here that the x values across series are aligned.
-            lastStackedSeries.get(i).value += seriesList.get(i).value;
+            myStackedSeries.setValue(i, myStackedSeries.getValue(i) + seriesList.getValue(i));
           }
-          seriesList = lastStackedSeries;
+          seriesList = myStackedSeries;
         }
       }
 
@@ -223,19 +235,24 @@ public class LineChart extends AnimatedComponent {
       double firstXd = 0f;
       // Actual value of first point
       double firstX = 0;
-      seriesList = myReducer.reduceData(seriesList, config);
+      if (config.isDownsampled() && config.getDataBucketInterval() == 0) {
+        seriesList = MinMaxDownsampler.downsample(seriesList, xMin, xLength, dim.width, myDownsampledSeries);
+        downsampled = true;
+      }
+      seriesList = myReducer.reduceData(seriesList, config, myReducedSeries);
       double xBucketInterval = config.getDataBucketInterval() / xLength;
       double xBucketBarWidth = xBucketInterval * BUCKET_BAR_PERCENTAGE;
       // If we are a stepped chart or bar chart, we don't need to worry about start and end points' Y value.
       boolean optimizeYZooming = !config.isStepped() && xBucketInterval == 0;
       for (int i = 0; i < seriesList.size(); i++) {
-        SeriesData<Long> data = seriesList.get(i);
-        SeriesData<Long> dataNext = seriesList.get(i + 1 == seriesList.size() ? i : i + 1);
-        SeriesData<Long> dataPrev = seriesList.get(i - 1 < 0 ? i : i - 1);
+        long dataX = seriesList.getX(i);
+        long dataValue = seriesList.getValue(i);
+        int next = i + 1 == seriesList.size() ? i : i + 1;
+        int prev = i - 1 < 0 ? i : i - 1;
         // TODO: refactor to allow different types (e.g. double)
-        double xd = (data.x - xMin) / xLength;
+        double xd = (dataX - xMin) / xLength;
         // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
-        double yd = 1 - (data.value - yMin) / yLength;
+        double yd = 1 - (dataValue - yMin) / yLength;
 
         // This change significantly speeds up drawing when zoomed into the chart. Without this change a line could extend
         // a few thousand pixels off the screen in both directions. The fill/draw function would then spend a lot of time
@@ -252,14 +269,14 @@ public class LineChart extends AnimatedComponent {
 
         double originalXd = xd;
         if (xd < 0) {
-          double xdNext = (dataNext.x - xMin) / xLength;
+          double xdNext = (seriesList.getX(next) - xMin) / xLength;
           // If our next point is also offscreen then ignore this point and continue.
           if (xdNext < 0) {
             continue;
           }
 
           //Get the Y offset of our next point.
-          double ydNext = 1 - (dataNext.value - yMin) / yLength;
+          double ydNext = 1 - (seriesList.getValue(next) - yMin) / yLength;
 
           // If we are a dash line we get the closest normalized point to are graph otherwise we just set our point to 0.
           double newPosition = 0;
@@ -275,13 +292,13 @@ public class LineChart extends AnimatedComponent {
           xd = newPosition;
         }
         else if (xd > 1) {
-          double xdPrev = (dataPrev.x - xMin) / xLength;
+          double xdPrev = (seriesList.getX(prev) - xMin) / xLength;
           if (xdPrev > 1) {
             break;
           }
           if (optimizeYZooming) {
             double ratio = (1 - xdPrev) / (xd - xdPrev);
-            double ydPrev = 1 - (dataPrev.value - yMin) / yLength;
+            double ydPrev = 1 - (seriesList.getValue(prev) - yMin) / yLength;
             yd = (1 - ratio) * ydPrev + (ratio * yd);
           }
           xd = 1;
@@ -289,7 +306,7 @@ public class LineChart extends AnimatedComponent {
 
         if (path.getCurrentPoint() == null) {
           firstXd = xd;
-          firstX = data.x;
+          firstX = dataX;
           // If for bucket data, because the previous ending x value is next data point's starting
           // x value, i.e. (xd + interval, 1), move the path start point to (xd, 1).
           // Otherwise, move the path start point to (xd, yd).
@@ -369,6 +386,7 @@ public class LineChart extends AnimatedComponent {
 
     myLinePathSeries.clear();
     myLinePathSeries.addAll(orderedSeries);
+    myDownsampledWidth = downsampled ? dim.width : -1;
 
     addDebugInfo("postAnimate time: %d ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - duration));
   }
@@ -386,7 +404,7 @@ public class LineChart extends AnimatedComponent {
       myLastCount = now;
     }
     myDraws++;
-    if (myRedraw) {
+    if (myRedraw || (myDownsampledWidth != -1 && myDownsampledWidth != dim.width)) {
       myRedraw = false;
       redraw(dim);
       myRedraws++;
@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeries;
 import com.android.tools.adtui.model.SeriesData;
 
 import java.awt.geom.Path2D;
@@ -31,6 +32,18 @@ public interface LineChartReducer {
    */
   List<SeriesData<Long>> reduceData(List<SeriesData<Long>> data, LineConfig config);
 
+  /**
+   * Same as {@link #reduceData(List, LineConfig)}, for {@link LineChart} to reduce its data without allocating per sample.
+   *
+   * @param into a series that can be cleared and filled with the result.
+   * @return the reduced data, which is either {@code data} itself or {@code into}.
+   */
+  default LongSeries reduceData(LongSeries data, LineConfig config, LongSeries into) {
+    into.clear();
+    into.addAll(reduceData(data.toList(), config));
+    return into;
+  }
+
   /**
    * Reduces the given path in a pixel level, i.e when dimensions are available.
    * The result shouldn't affect the looking of the line when it's drawn.
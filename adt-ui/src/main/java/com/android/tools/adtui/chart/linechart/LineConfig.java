@@ -85,6 +85,11 @@ public class LineConfig {
    */
   private boolean myIsStacked = false;
 
+  /**
+   * Whether the series should be reduced to the first, last, lowest and highest points of each pixel before being drawn.
+   */
+  private boolean myIsDownsampled = false;
+
   private boolean myAdjustDash = false;
 
   private boolean myIsDash = false;
@@ -119,6 +124,7 @@ public class LineConfig {
     config.setDataBucketInterval(otherConfig.myDataBucketInterval);
     config.setFilled(otherConfig.isFilled());
     config.setStacked(otherConfig.isStacked());
+    config.setDownsampled(otherConfig.isDownsampled());
     config.setAdjustDash(otherConfig.isAdjustDash());
     config.setLegendIconType(otherConfig.getLegendIconType());
     config.setStroke(otherConfig.getStroke());
@@ -166,6 +172,20 @@ public class LineConfig {
     return myIsStacked;
   }
 
+  /**
+   * For series with many more points than the chart has pixels, such as long timelines, bounds the number of points drawn by the width of
+   * the chart while keeping the peaks of the series. Bar charts are never downsampled.
+   */
+  @NotNull
+  public LineConfig setDownsampled(boolean isDownsampled) {
+    myIsDownsampled = isDownsampled;
+    return this;
+  }
+
+  public boolean isDownsampled() {
+    return myIsDownsampled;
+  }
+
   /**
    * When a line is being drawn with dashes, the dashes can appear to shift/jump around depending on the starting point of the path being
    * drawn. When set to true, {@link LineChart} will attempt to compensate by comparing the starting point of the previous path and
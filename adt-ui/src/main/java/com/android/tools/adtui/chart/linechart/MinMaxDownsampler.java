@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import com.android.tools.adtui.model.LongSeries;
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reduces a series sorted by x to at most four points per pixel: the first, last, lowest and highest points of the pixel, in the order
+ * of the series. That is what a line of 1px width shows of the pixel, so the shape and peaks of the line are kept, while the number of
+ * points is bounded by the width of the chart whatever the length of the series. See {@link LineConfig#setDownsampled(boolean)}.
+ */
+final class MinMaxDownsampler {
+  private static final int POINTS_PER_PIXEL = 4;
+
+  private MinMaxDownsampler() {
+  }
+
+  /**
+   * @param xMin    the x value at the left of the chart.
+   * @param xLength the length of the x range of the chart.
+   * @param width   the width of the chart in pixels.
+   * @param into    the series to fill with the points to draw, which is cleared first.
+   * @return the points to draw, which are {@code data} itself if it doesn't have more points than the result would, or else {@code into}.
+   */
+  @NotNull
+  static LongSeries downsample(@NotNull LongSeries data, double xMin, double xLength, int width, @NotNull LongSeries into) {
+    int size = data.size();
+    // The points out of the chart are kept in an extra pixel on each side, as the line is drawn towards them.
+    int pixelCount = width + 2;
+    if (width <= 0 || xLength <= 0 || size <= POINTS_PER_PIXEL * pixelCount) {
+      return data;
+    }
+
+    into.clear();
+    int[] pixelPoints = new int[POINTS_PER_PIXEL];
+    int lastAdded = -1;
+    int first = 0;
+    while (first < size) {
+      int pixel = pixelOf(data.getX(first), xMin, xLength, width);
+      int min = first;
+      int max = first;
+      long minValue = data.getValue(first);
+      long maxValue = minValue;
+      int last = first + 1;
+      for (; last < size && pixelOf(data.getX(last), xMin, xLength, width) == pixel; ++last) {
+        long value = data.getValue(last);
+        if (value < minValue) {
+          min = last;
+          minValue = value;
+        }
+        if (value > maxValue) {
+          max = last;
+          maxValue = value;
+        }
+      }
+
+      pixelPoints[0] = first;
+      pixelPoints[1] = min;
+      pixelPoints[2] = max;
+      pixelPoints[3] = last - 1;
+      Arrays.sort(pixelPoints);
+      for (int point : pixelPoints) {
+        if (point != lastAdded) {
+          into.add(data.getX(point), data.getValue(point));
+          lastAdded = point;
+        }
+      }
+      first = last;
+    }
+    return into;
+  }
+
+  /**
+   * @return the pixel containing {@code x}, -1 for points left of the chart and {@code width} for points right of it.
+   */
+  private static int pixelOf(long x, double xMin, double xLength, int width) {
+    double position = (x - xMin) / xLength;
+    if (position < 0) {
+      return -1;
+    }
+    if (position > 1) {
+      return width;
+    }
+    return Math.min(width - 1, (int)(position * width));
+  }
+}
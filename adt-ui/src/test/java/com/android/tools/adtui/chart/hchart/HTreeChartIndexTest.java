@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.adtui.model.DefaultHNode;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class HTreeChartIndexTest {
+  // Times are multiples of a quarter of a pixel, so that pixel coordinates are exact.
+  private static final long PIXEL_LENGTH = 100;
+  private static final int PADDING_PX = 1;
+
+  @Test
+  public void reducedNodesAreTheSameAsWhenReducingAllNodes() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20; ++i) {
+      DefaultHNode<String> root = new DefaultHNode<>("root", 0, 400 * PIXEL_LENGTH);
+      addChildren(root, random);
+      HTreeChartIndex<DefaultHNode<String>> index = new HTreeChartIndex<>(root);
+
+      checkQuery(root, index, 0, 400 * PIXEL_LENGTH);
+      checkQuery(root, index, 100 * PIXEL_LENGTH, 300 * PIXEL_LENGTH);
+    }
+  }
+
+  @Test
+  public void subPixelNodesAreSkipped() {
+    DefaultHNode<String> root = new DefaultHNode<>("root", 0, 10_000_000);
+    for (int i = 0; i < 1_000_000; ++i) {
+      DefaultHNode<String> child = new DefaultHNode<>("child", 10 * i, 10 * i + 10);
+      child.setDepth(1);
+      root.addChild(child);
+    }
+    HTreeChartIndex<DefaultHNode<String>> index = new HTreeChartIndex<>(root);
+
+    // 100 pixels wide, each pixel holding 10,000 children. Only the first and last within the pixel are needed, along with the one
+    // crossing into the next pixel.
+    List<DefaultHNode<String>> nodes = new ArrayList<>();
+    index.query(0, 10_000_000, 100_000, 0, nodes);
+    assertThat(nodes.size()).isAtMost(1 + 3 * 101);
+
+    nodes.clear();
+    index.query(0, 10_000_000, 0, 0, nodes);
+    assertThat(nodes).hasSize(1_000_001);
+  }
+
+  @Test
+  public void maxDepthIsTheDeepestNode() {
+    DefaultHNode<String> root = new DefaultHNode<>("root", 0, 10);
+    DefaultHNode<String> child = new DefaultHNode<>("child", 0, 5);
+    child.setDepth(1);
+    DefaultHNode<String> grandChild = new DefaultHNode<>("grandChild", 0, 2);
+    grandChild.setDepth(2);
+    child.addChild(grandChild);
+    root.addChild(child);
+
+    assertThat(new HTreeChartIndex<>(root).getMaxDepth()).isEqualTo(2);
+    assertThat(new HTreeChartIndex<DefaultHNode<String>>(null).getMaxDepth()).isEqualTo(-1);
+  }
+
+  private static void checkQuery(DefaultHNode<String> root, HTreeChartIndex<DefaultHNode<String>> index, long min, long max) {
+    List<DefaultHNode<String>> allNodes = new ArrayList<>();
+    index.query(min, max, 0, 0, allNodes);
+    assertThat(allNodes).containsExactlyElementsIn(breadthFirst(root, min, max)).inOrder();
+
+    List<DefaultHNode<String>> fetchedNodes = new ArrayList<>();
+    index.query(min, max, PIXEL_LENGTH, PADDING_PX * PIXEL_LENGTH, fetchedNodes);
+    assertThat(fetchedNodes.size()).isAtMost(allNodes.size());
+
+    List<Rectangle2D.Float> allRectangles = createRectangles(allNodes, min);
+    List<Rectangle2D.Float> fetchedRectangles = createRectangles(fetchedNodes, min);
+    DefaultHTreeChartReducer<DefaultHNode<String>> reducer = new DefaultHTreeChartReducer<>();
+    reducer.reduce(allRectangles, allNodes);
+    reducer.reduce(fetchedRectangles, fetchedNodes);
+
+    assertThat(fetchedNodes).containsExactlyElementsIn(allNodes).inOrder();
+    assertThat(fetchedRectangles).containsExactlyElementsIn(allRectangles).inOrder();
+  }
+
+  private static List<DefaultHNode<String>> breadthFirst(DefaultHNode<String> root, long min, long max) {
+    List<DefaultHNode<String>> nodes = new ArrayList<>();
+    nodes.add(root);
+    for (int head = 0; head < nodes.size(); ++head) {
+      nodes.addAll(nodes.get(head).getChildren());
+    }
+    return nodes.stream().filter(node -> node.getStart() <= max && node.getEnd() >= min).collect(Collectors.toList());
+  }
+
+  /**
+   * Mirrors how {@link HTreeChart} positions the nodes in pixels.
+   */
+  private static List<Rectangle2D.Float> createRectangles(List<DefaultHNode<String>> nodes, long min) {
+    List<Rectangle2D.Float> rectangles = new ArrayList<>();
+    for (DefaultHNode<String> node : nodes) {
+      float x = (float)(node.getStart() - min) / PIXEL_LENGTH;
+      float width = Math.max(0, (float)(node.getEnd() - node.getStart()) / PIXEL_LENGTH - PADDING_PX);
+      rectangles.add(new Rectangle2D.Float(x, node.getDepth(), width, 1));
+    }
+    return rectangles;
+  }
+
+  /**
+   * Splits a node into children of random widths, from a fraction of a pixel to many pixels, with random gaps.
+   */
+  private static void addChildren(DefaultHNode<String> node, Random random) {
+    if (node.getDepth() == 5) {
+      return;
+    }
+    long halfPixel = PIXEL_LENGTH / 2;
+    long time = node.getStart();
+    while (true) {
+      if (random.nextInt(4) == 0) {
+        time += halfPixel * random.nextInt(3);
+      }
+      long width = random.nextInt(10) == 0 ? halfPixel * (1 + random.nextInt(40)) : PIXEL_LENGTH / 4 * (1 + random.nextInt(3));
+      if (time + width > node.getEnd()) {
+        return;
+      }
+      DefaultHNode<String> child = new DefaultHNode<>("child", time, time + width);
+      child.setDepth(node.getDepth() + 1);
+      node.addChild(child);
+      addChildren(child, random);
+      time += width;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.adtui.model.LongSeries;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class MinMaxDownsamplerTest {
+  @Test
+  public void shortSeriesIsUnchanged() {
+    LongSeries data = new LongSeries();
+    for (int i = 0; i < 10; ++i) {
+      data.add(i, i);
+    }
+    assertThat(MinMaxDownsampler.downsample(data, 0, 10, 100, new LongSeries())).isSameAs(data);
+  }
+
+  @Test
+  public void keepsFirstLastMinAndMaxOfEachPixel() {
+    LongSeries data = new LongSeries();
+    // 100 points in each of 2 pixels.
+    for (int i = 0; i < 200; ++i) {
+      data.add(i, 50);
+    }
+    data.setValue(10, 90);
+    data.setValue(20, 5);
+    data.setValue(150, 3);
+    data.setValue(160, 95);
+
+    LongSeries result = MinMaxDownsampler.downsample(data, 0, 200, 2, new LongSeries());
+    assertThat(xs(result)).containsExactly(0L, 10L, 20L, 99L, 100L, 150L, 160L, 199L).inOrder();
+    assertThat(values(result)).containsExactly(50L, 90L, 5L, 50L, 50L, 3L, 95L, 50L).inOrder();
+  }
+
+  @Test
+  public void keepsPointsOutOfTheChart() {
+    LongSeries data = new LongSeries();
+    for (int i = 0; i < 300; ++i) {
+      data.add(i, i % 7);
+    }
+
+    LongSeries result = MinMaxDownsampler.downsample(data, 100, 100, 1, new LongSeries());
+    // The points left and right of the chart are reduced to their own pixel, so the line is still drawn towards them.
+    assertThat(result.getX(0)).isEqualTo(0);
+    assertThat(result.getX(result.size() - 1)).isEqualTo(299);
+    assertThat(result.size()).isAtMost(12);
+  }
+
+  @Test
+  public void millionSamplesAreBoundedByWidthAndKeepPeaks() {
+    Random random = new Random(0);
+    int size = 1_000_000;
+    int width = 1000;
+    LongSeries data = new LongSeries(size);
+    for (int i = 0; i < size; ++i) {
+      data.add(i, random.nextInt(1000));
+    }
+    int peak = 123_457;
+    data.setValue(peak, 10_000);
+
+    LineConfig config = new LineConfig(Color.RED);
+    DefaultLineChartReducer reducer = new DefaultLineChartReducer();
+    LongSeries downsampled = reducer.reduceData(MinMaxDownsampler.downsample(data, 0, size, width, new LongSeries()), config, new LongSeries());
+
+    assertThat(downsampled.size()).isAtMost(4 * (width + 2));
+    assertThat(xs(downsampled)).contains((long)peak);
+    assertThat(downsampled.getX(0)).isEqualTo(0);
+    assertThat(downsampled.getX(downsampled.size() - 1)).isEqualTo(size - 1);
+    for (int i = 1; i < downsampled.size(); ++i) {
+      assertThat(downsampled.getX(i)).isGreaterThan(downsampled.getX(i - 1));
+    }
+  }
+
+  private static List<Long> xs(LongSeries series) {
+    List<Long> xs = new ArrayList<>();
+    for (int i = 0; i < series.size(); ++i) {
+      xs.add(series.getX(i));
+    }
+    return xs;
+  }
+
+  private static List<Long> values(LongSeries series) {
+    List<Long> values = new ArrayList<>();
+    for (int i = 0; i < series.size(); ++i) {
+      values.add(series.getValue(i));
+    }
+    return values;
+  }
+}
@@ -586,6 +586,14 @@ public final class StudioFlags {
     true
   );
 
+  public static final Flag<Boolean> PARALLEL_RESOURCE_REPOSITORY_LOADING = Flag.create(
+    EDITOR, "parallel.resource.repository.loading",
+    "Parse resource files in parallel when loading ResourceFolderRepository",
+    "If enabled, resource files that are not in the repository cache are parsed on several threads when a ResourceFolderRepository is " +
+    "created.",
+    true
+  );
+
   public static final Flag<Boolean> R8_SUPPORT_ENABLED = Flag.create(
     EDITOR, "r8.support.enabled",
     "Enable support for R8 in editor",
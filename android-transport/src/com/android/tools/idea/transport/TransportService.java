@@ -17,6 +17,7 @@ package com.android.tools.idea.transport;
 
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.LogService;
+import com.android.tools.datastore.poller.PollScheduler;
 import com.android.tools.idea.diagnostics.crash.exception.NoPiiException;
 import com.android.tools.profiler.proto.Common;
 import com.google.common.annotations.VisibleForTesting;
@@ -29,7 +30,10 @@ import com.intellij.util.messages.MessageBus;
 import io.grpc.ManagedChannel;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -55,6 +59,7 @@ public class TransportService implements Disposable {
   @NotNull private final LogService myLogService;
   @NotNull private final MessageBus myMessageBus;
   @NotNull private final DataStoreService myDataStoreService;
+  @NotNull private final PollScheduler myPollScheduler;
   @NotNull private final TransportDeviceManager myDeviceManager;
 
   // Forever incrementing stream id for custom servers. Collision with device-based stream id is unlikely as they are generated based on
@@ -66,8 +71,9 @@ public class TransportService implements Disposable {
   TransportService() {
     String datastoreDirectory = Paths.get(PathManager.getSystemPath(), ".android").toString() + File.separator;
     myLogService = new IntellijLogService();
-    myDataStoreService =
-      new DataStoreService(DATASTORE_NAME, datastoreDirectory, ApplicationManager.getApplication()::executeOnPooledThread, myLogService);
+    // Pollers share a small thread pool, long-running streaming pollers still get a pooled thread of their own.
+    myPollScheduler = new PollScheduler(ApplicationManager.getApplication()::executeOnPooledThread, myLogService);
+    myDataStoreService = new DataStoreService(DATASTORE_NAME, datastoreDirectory, myPollScheduler, myLogService);
     myDataStoreService.setNoPiiExceptionHandler((t) -> getLogger().error(new NoPiiException(t)));
 
     myMessageBus = ApplicationManager.getApplication().getMessageBus();
@@ -80,6 +86,7 @@ public class TransportService implements Disposable {
     myStreamIdToServerMap.clear();
 
     myDataStoreService.shutdown();
+    myPollScheduler.shutdown();
   }
 
   @NotNull
@@ -113,4 +120,18 @@ public class TransportService implements Disposable {
       myStreamIdToServerMap.remove(streamId);
     }
   }
+
+  /**
+   * Saves everything collected so far as a compact session archive. See {@link DataStoreService#exportSession(OutputStream)}.
+   */
+  public void exportSession(@NotNull OutputStream output) throws IOException, SQLException {
+    myDataStoreService.exportSession(output);
+  }
+
+  /**
+   * Reopens a session archive written by {@link #exportSession(OutputStream)}. The archive must be kept until Studio exits.
+   */
+  public void importSession(@NotNull File archive) throws IOException, SQLException {
+    myDataStoreService.importSession(archive);
+  }
 }
@@ -40,6 +40,9 @@ public class FakeGrpcChannel extends ExternalResource {
     InProcessServerBuilder serverBuilder = InProcessServerBuilder.forName(myName);
     for (BindableService service : myServices) {
       serverBuilder.addService(service);
+      if (service instanceof FakeTransportService) {
+        serverBuilder.addService(((FakeTransportService)service).createStreamingService());
+      }
     }
     myServer = serverBuilder.build();
     myServer.start();
@@ -21,6 +21,9 @@ import com.android.annotations.concurrency.GuardedBy;
 import com.android.sdklib.AndroidVersion;
 import com.android.tools.adtui.model.FakeTimer;
 import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.rpc.DataStoreStreamingServiceGrpc;
+import com.android.tools.datastore.rpc.SubscribeEventsResponse;
+import com.android.tools.datastore.service.TransportService;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.idea.transport.faketransport.commands.BeginSession;
 import com.android.tools.idea.transport.faketransport.commands.CommandHandler;
@@ -35,6 +38,8 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Transport;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
 import com.intellij.util.containers.MultiMap;
+import io.grpc.BindableService;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -300,6 +305,43 @@ public class FakeTransportService extends TransportServiceGrpc.TransportServiceI
     responseObserver.onCompleted();
   }
 
+  /**
+   * @return a service serving the datastore's streaming calls, see {@link #streamBytes} and {@link #subscribeEvents}.
+   */
+  @NotNull
+  public BindableService createStreamingService() {
+    return new DataStoreStreamingServiceGrpc.DataStoreStreamingServiceImplBase() {
+      @Override
+      public void streamBytes(Transport.BytesRequest request, StreamObserver<Transport.BytesResponse> responseObserver) {
+        FakeTransportService.this.streamBytes(request, responseObserver);
+      }
+
+      @Override
+      public void subscribeEvents(Transport.GetEventGroupsRequest request, StreamObserver<SubscribeEventsResponse> responseObserver) {
+        FakeTransportService.this.subscribeEvents(request, responseObserver);
+      }
+    };
+  }
+
+  /**
+   * Serves the bytes from the same files as {@link #getBytes}.
+   */
+  public void streamBytes(Transport.BytesRequest request, StreamObserver<Transport.BytesResponse> responseObserver) {
+    ByteString bytes = myCache.getOrDefault(request.getId(), ByteString.EMPTY);
+    for (int offset = 0; offset < bytes.size(); offset += TransportService.MAX_CHUNK_SIZE) {
+      ByteString chunk = bytes.substring(offset, Math.min(bytes.size(), offset + TransportService.MAX_CHUNK_SIZE));
+      responseObserver.onNext(Transport.BytesResponse.newBuilder().setContents(chunk).build());
+    }
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Not supported by default, so clients fall back to querying the way they do against a datastore without subscriptions.
+   */
+  public void subscribeEvents(Transport.GetEventGroupsRequest request, StreamObserver<SubscribeEventsResponse> responseObserver) {
+    responseObserver.onError(Status.UNIMPLEMENTED.asRuntimeException());
+  }
+
   @Override
   public void getAgentStatus(Transport.AgentStatusRequest request, StreamObserver<Common.AgentData> responseObserver) {
     responseObserver.onNext(myAgentStatus != null ? myAgentStatus : Common.AgentData.getDefaultInstance());
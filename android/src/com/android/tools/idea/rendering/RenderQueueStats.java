@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Snapshot of the render queue metrics collected since the render workers were started. The queue latency of an action is the time
+ * between the moment it was submitted to {@link RenderService} and the moment a render worker started running it.
+ */
+public final class RenderQueueStats {
+  private final int myWorkerCount;
+  private final long myExecutedCount;
+  private final long myCoalescedCount;
+  private final long myTotalQueueLatencyNs;
+  private final long myMaxQueueLatencyNs;
+
+  RenderQueueStats(int workerCount, long executedCount, long coalescedCount, long totalQueueLatencyNs, long maxQueueLatencyNs) {
+    myWorkerCount = workerCount;
+    myExecutedCount = executedCount;
+    myCoalescedCount = coalescedCount;
+    myTotalQueueLatencyNs = totalQueueLatencyNs;
+    myMaxQueueLatencyNs = maxQueueLatencyNs;
+  }
+
+  /** Returns the number of render worker threads. */
+  public int getWorkerCount() {
+    return myWorkerCount;
+  }
+
+  /** Returns the number of render actions that have been run. */
+  public long getExecutedCount() {
+    return myExecutedCount;
+  }
+
+  /** Returns the number of render actions that were not run because a newer request for the same {@link RenderTask} superseded them. */
+  public long getCoalescedCount() {
+    return myCoalescedCount;
+  }
+
+  /** Returns the mean queue latency of the render actions that have been run, in the given unit. */
+  public long getMeanQueueLatency(@NotNull TimeUnit unit) {
+    return myExecutedCount == 0 ? 0 : unit.convert(myTotalQueueLatencyNs / myExecutedCount, TimeUnit.NANOSECONDS);
+  }
+
+  /** Returns the sum of the queue latencies of the render actions that have been run, in the given unit. */
+  public long getTotalQueueLatency(@NotNull TimeUnit unit) {
+    return unit.convert(myTotalQueueLatencyNs, TimeUnit.NANOSECONDS);
+  }
+
+  /** Returns the highest queue latency of the render actions that have been run, in the given unit. */
+  public long getMaxQueueLatency(@NotNull TimeUnit unit) {
+    return unit.convert(myMaxQueueLatencyNs, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("RenderQueueStats{workers=%d, executed=%d, coalesced=%d, meanLatencyMs=%d, maxLatencyMs=%d}",
+                         myWorkerCount, myExecutedCount, myCoalescedCount,
+                         getMeanQueueLatency(TimeUnit.MILLISECONDS), getMaxQueueLatency(TimeUnit.MILLISECONDS));
+  }
+}
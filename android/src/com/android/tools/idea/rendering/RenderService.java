@@ -53,14 +53,11 @@ import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.concurrency.AppExecutorUtil;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.maven.AndroidMavenUtil;
@@ -75,6 +72,17 @@ import org.jetbrains.annotations.TestOnly;
  * The {@link RenderService} provides rendering and layout information for Android layouts. This is a wrapper around the layout library.
  */
 public class RenderService implements Disposable {
+  /**
+   * Priority of a render action relative to the other actions waiting for the same render thread.
+   */
+  public enum RenderingPriority {
+    /** Renders of surfaces that are currently visible to the user. */
+    HIGH,
+    NORMAL,
+    /** Renders of surfaces that are not visible, e.g. previews in a hidden tool window or in an editor tab that is not selected. */
+    LOW
+  }
+
   /** Number of ms that we will wait for the rendering thread to return before timing out */
   private static final long DEFAULT_RENDER_THREAD_TIMEOUT_MS = Long.getLong("layoutlib.thread.timeout",
                                                                             TimeUnit.SECONDS.toMillis(
@@ -83,8 +91,12 @@ public class RenderService implements Disposable {
                                                                               : 6));
   @VisibleForTesting
   public static long ourRenderThreadTimeoutMs = DEFAULT_RENDER_THREAD_TIMEOUT_MS;
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static ExecutorService ourRenderingExecutor;
+  /**
+   * Number of layoutlib render threads. Layoutlib keeps static state shared by all render threads without synchronization, so renders
+   * must not run concurrently until that state is isolated per worker.
+   */
+  private static final int RENDER_WORKER_COUNT = 1;
+  private static RenderWorkerPool ourRenderingExecutor;
   private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
 
   /**
@@ -103,16 +115,7 @@ public class RenderService implements Disposable {
   private final Project myProject;
 
   private static void innerInitializeRenderExecutor() {
-    ourRenderingExecutor = new ThreadPoolExecutor(1, 1,
-                             0, TimeUnit.MILLISECONDS,
-                             new LinkedBlockingQueue<>(),
-                             (Runnable r) -> {
-                               Thread renderingThread = new Thread(null, r, "Layoutlib Render Thread");
-                               renderingThread.setDaemon(true);
-                               ourRenderingThread.set(renderingThread);
-
-                               return renderingThread;
-                             });
+    ourRenderingExecutor = new RenderWorkerPool(RENDER_WORKER_COUNT, "Layoutlib Render Thread");
   }
 
   @TestOnly
@@ -124,14 +127,10 @@ public class RenderService implements Disposable {
 
   private static void shutdownRenderExecutor() {
     ourRenderingExecutor.shutdownNow();
-    Thread currentThread = ourRenderingThread.getAndSet(null);
-    if (currentThread != null) {
-      currentThread.interrupt();
-    }
   }
 
   /**
-   * Shutdowns the render thread and cancels any pending tasks.
+   * Shutdowns the render threads and cancels any pending tasks.
    * @param timeoutSeconds if >0, wait at most this number of seconds before killing any running tasks.
    */
   @TestOnly
@@ -150,6 +149,14 @@ public class RenderService implements Disposable {
     shutdownRenderExecutor();
   }
 
+  /**
+   * Returns the queue latency metrics of the render threads since they were started.
+   */
+  @NotNull
+  public static RenderQueueStats getRenderQueueStats() {
+    return ourRenderingExecutor.getStats();
+  }
+
   private static final String JDK_INSTALL_URL = "https://developer.android.com/preview/setup-sdk.html#java8";
 
   private final Object myCredential = new Object();
@@ -265,7 +272,7 @@ public class RenderService implements Disposable {
    * method.
    */
   public static void runRenderAction(@NotNull final Runnable runnable) throws Exception {
-    runRenderAction(Executors.callable(runnable));
+    runRenderAction(null, runnable);
   }
 
   /**
@@ -273,11 +280,31 @@ public class RenderService implements Disposable {
    * method.
    */
   public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(null, callable);
+  }
+
+  /**
+   * Runs a action that requires the rendering lock on the render thread of the given module.
+   *
+   * @see #runRenderAction(Module, Callable)
+   */
+  public static void runRenderAction(@Nullable Module module, @NotNull final Runnable runnable) throws Exception {
+    runRenderAction(module, Executors.callable(runnable));
+  }
+
+  /**
+   * Runs a action that requires the rendering lock on the render thread of the given module. Actions that access the render session of a
+   * {@link RenderTask} must use the module of the task so they run on the thread that created the session.
+   */
+  public static <T> T runRenderAction(@Nullable Module module, @NotNull Callable<T> callable) throws Exception {
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+        ourRenderingExecutor.submit(module, RenderingPriority.NORMAL, null, null, () -> {
+          ourTimeoutExceptionCounter.set(0);
+          return null;
+        }).get(50, TimeUnit.MILLISECONDS);
       }
       long timeout = ourRenderThreadTimeoutMs;
       if (isFirstCall) {
@@ -286,7 +313,14 @@ public class RenderService implements Disposable {
         isFirstCall = false;
         timeout *= 2;
       }
-      T result = ourRenderingExecutor.submit(callable).get(timeout, TimeUnit.MILLISECONDS);
+      T result = ourRenderingExecutor.submit(module, RenderingPriority.NORMAL, null, null, () -> {
+        try {
+          return callable.call();
+        }
+        catch (Exception e) {
+          throw new CompletionException(e);
+        }
+      }).get(timeout, TimeUnit.MILLISECONDS);
       // The executor seems to be taking tasks so reset the counter
       ourTimeoutExceptionCounter.set(0);
 
@@ -295,7 +329,7 @@ public class RenderService implements Disposable {
     catch (TimeoutException e) {
       ourTimeoutExceptionCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      Thread renderingThread = ourRenderingExecutor.getWorkerThread(module);
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -314,7 +348,28 @@ public class RenderService implements Disposable {
    */
   @NotNull
   public static <T> CompletableFuture<T> runAsyncRenderAction(@NotNull Supplier<T> callable) {
-    return CompletableFuture.supplyAsync(callable, ourRenderingExecutor);
+    return runAsyncRenderAction(null, RenderingPriority.NORMAL, null, null, callable);
+  }
+
+  /**
+   * Runs an action that requires the rendering lock on the render thread of the given module.
+   * <p/>
+   * This method will run the passed action asynchronously and return a {@link CompletableFuture}
+   *
+   * @param module the module whose render thread runs the action, or null to use the default render thread
+   * @param priority the priority of the action relative to the other actions waiting for the same render thread
+   * @param orderingKey if not null, the action runs after all the actions previously submitted with an equal key, whatever their
+   *                    priorities. {@link RenderTask} uses itself as the key, so that its actions run in the order they were requested.
+   * @param coalescingKey if not null, an action submitted with an equal key that has not started yet is skipped and its future completes
+   *                      with the result of this action. All the actions using the same key must return values of the same type.
+   */
+  @NotNull
+  public static <T> CompletableFuture<T> runAsyncRenderAction(@Nullable Module module,
+                                                              @NotNull RenderingPriority priority,
+                                                              @Nullable Object orderingKey,
+                                                              @Nullable Object coalescingKey,
+                                                              @NotNull Supplier<T> callable) {
+    return ourRenderingExecutor.submit(module, priority, orderingKey, coalescingKey, callable);
   }
 
   /**
@@ -324,7 +379,19 @@ public class RenderService implements Disposable {
    * This method will run the passed action asynchronously
    */
   public static void runAsyncRenderAction(@NotNull Runnable runnable) {
-    ourRenderingExecutor.submit(runnable);
+    runAsyncRenderAction(null, runnable);
+  }
+
+  /**
+   * Runs an action that requires the rendering lock on the render thread of the given module.
+   * <p/>
+   * This method will run the passed action asynchronously
+   */
+  public static void runAsyncRenderAction(@Nullable Module module, @NotNull Runnable runnable) {
+    ourRenderingExecutor.submit(module, RenderingPriority.NORMAL, null, null, () -> {
+      runnable.run();
+      return null;
+    });
   }
 
   /**
@@ -169,6 +169,9 @@ public class RenderTask {
   @NotNull private CrashReporter myCrashReporter;
   private final List<CompletableFuture<?>> myRunningFutures = new LinkedList<>();
   @NotNull private final AtomicBoolean isDisposed = new AtomicBoolean(false);
+  @NotNull private volatile RenderService.RenderingPriority myPriority = RenderService.RenderingPriority.NORMAL;
+  /** Key used to coalesce the render requests of this task that are waiting for the render thread. */
+  @NotNull private final Object myRenderRequestKey = new Object();
   @Nullable private XmlFile myXmlFile;
 
   /**
@@ -300,7 +303,7 @@ public class RenderTask {
       gapWorkerField.setAccessible(true);
 
       // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread
-      RenderService.runAsyncRenderAction(() -> {
+      runCleanupRenderAction(() -> {
         try {
           ThreadLocal<?> gapWorkerFieldValue = (ThreadLocal<?>)gapWorkerField.get(null);
           gapWorkerFieldValue.set(null);
@@ -321,7 +324,7 @@ public class RenderTask {
       Class<?> handlerDelegateClass = myLayoutlibCallback.findClass("android.os.Handler_Delegate");
       Field runnablesMapField = handlerDelegateClass.getDeclaredField("sRunnablesMap");
       runnablesMapField.setAccessible(true);
-      RenderService.runAsyncRenderAction(() -> {
+      runCleanupRenderAction(() -> {
         try {
           WeakHashMap runnablesMap = (WeakHashMap)runnablesMapField.get(null);
           runnablesMap.clear();
@@ -351,7 +354,7 @@ public class RenderTask {
       viewGroupRootField.setAccessible(true);
 
       // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread
-      RenderService.runAsyncRenderAction(() -> {
+      runCleanupRenderAction(() -> {
         try {
           WeakHashMap emittable = (WeakHashMap)emittableRootField.get(null);
           emittable.clear();
@@ -396,7 +399,7 @@ public class RenderTask {
       myLayoutlibCallback.setLogger(IRenderLogger.NULL_LOGGER);
       if (myRenderSession != null) {
         try {
-          RenderService.runAsyncRenderAction(myRenderSession::dispose);
+          runCleanupRenderAction(myRenderSession::dispose);
           myRenderSession = null;
         }
         catch (Exception ignored) {
@@ -462,6 +465,20 @@ public class RenderTask {
     return this;
   }
 
+  /**
+   * Sets the priority of the render actions of this task relative to the actions of other tasks waiting for the same render thread.
+   * The priority applies to the actions submitted after this call.
+   *
+   * @param priority the priority of the actions of this task
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setPriority(@NotNull RenderService.RenderingPriority priority) {
+    myPriority = priority;
+    return this;
+  }
+
   @SuppressWarnings("UnusedReturnValue")
   @NotNull
   public RenderTask setTimeout(long timeout) {
@@ -771,12 +788,23 @@ public class RenderTask {
   @VisibleForTesting
   @NotNull
   <V> CompletableFuture<V> runAsyncRenderAction(@NotNull Supplier<V> callable) {
+    return runAsyncRenderAction(callable, null);
+  }
+
+  /**
+   * Same as {@link #runAsyncRenderAction(Supplier)} but, if a non-null coalescing key is passed, a previous action submitted with the same
+   * key that has not started yet is skipped and completes with the result of this one.
+   * See {@link RenderService#runAsyncRenderAction(Module, RenderService.RenderingPriority, Object, Object, Supplier)}.
+   */
+  @NotNull
+  private <V> CompletableFuture<V> runAsyncRenderAction(@NotNull Supplier<V> callable, @Nullable Object coalescingKey) {
     if (isDisposed.get()) {
       return immediateFailedFuture(new IllegalStateException("RenderTask was already disposed"));
     }
 
     synchronized (myRunningFutures) {
-      CompletableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable);
+      CompletableFuture<V> newFuture =
+        RenderService.runAsyncRenderAction(getContext().getModule(), myPriority, this, coalescingKey, callable);
       myRunningFutures.add(newFuture);
       newFuture
         .whenCompleteAsync((result, ex) -> {
@@ -789,6 +817,17 @@ public class RenderTask {
     }
   }
 
+  /**
+   * Runs a clean-up action on the render thread after the actions previously requested by this task. Unlike
+   * {@link #runAsyncRenderAction(Supplier)}, the action is not tracked, so it can also be used while the task is being disposed.
+   */
+  private void runCleanupRenderAction(@NotNull Runnable runnable) {
+    RenderService.runAsyncRenderAction(getContext().getModule(), myPriority, this, null, () -> {
+      runnable.run();
+      return null;
+    });
+  }
+
   /**
    * Inflates the layout but does not render it.
    * @return A {@link RenderResult} with the result of inflating the inflate call. The result might not contain a result bitmap.
@@ -901,10 +940,10 @@ public class RenderTask {
             myLogger.error(null, renderResult.getErrorMessage(), renderResult.getException(), null, null);
           }
           return result;
-        }).whenComplete((result, ex) -> {
+        }, myRenderRequestKey).whenComplete((result, ex) -> {
           // After render clean-up. Dispose the GapWorker cache and the Choreographer queued tasks.
           clearGapWorkerCache();
-          RenderService.runAsyncRenderAction(() -> {
+          runCleanupRenderAction(() -> {
             android.view.Choreographer.releaseInstance();
           });
         });
@@ -1049,7 +1088,7 @@ public class RenderTask {
     params.setFlag(RenderParamsFlags.FLAG_KEY_RENDER_ALL_DRAWABLE_STATES, Boolean.TRUE);
 
     try {
-      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params));
+      Result result = RenderService.runRenderAction(module, () -> myLayoutLib.renderDrawable(params));
 
       if (result != null && result.isSuccess()) {
         Object data = result.getData();
@@ -1102,7 +1141,7 @@ public class RenderTask {
   public CompletableFuture<Map<XmlTag, ViewInfo>> measureChildren(@NotNull XmlTag parent, @Nullable AttributeFilter filter) {
     ILayoutPullParser modelParser = LayoutPsiPullParser.create(filter, parent, myLogger);
     Map<XmlTag, ViewInfo> map = new HashMap<>();
-    return RenderService.runAsyncRenderAction(() -> measure(modelParser))
+    return RenderService.runAsyncRenderAction(getContext().getModule(), myPriority, this, null, () -> measure(modelParser))
         .thenComposeAsync(session -> {
           if (session != null) {
             try {
@@ -1123,7 +1162,7 @@ public class RenderTask {
               return CompletableFuture.completedFuture(map);
             }
             finally {
-              RenderService.runAsyncRenderAction(session::dispose);
+              runCleanupRenderAction(session::dispose);
             }
           }
 
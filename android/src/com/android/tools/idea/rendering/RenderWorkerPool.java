@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.idea.rendering.RenderService.RenderingPriority;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Set of single-threaded workers that run layoutlib render actions.
+ *
+ * <p>Layoutlib keeps part of its state in thread locals, so all the actions submitted with the same affinity key (the {@link RenderTask}
+ * module) always run on the same worker, one after another. Actions without an affinity key run on the first worker. Within a worker,
+ * actions run in {@link RenderingPriority} order and then in submission order. A {@link RenderingPriority#LOW} action that has waited
+ * for longer than the aging delay is queued again as {@link RenderingPriority#HIGH}, keeping its place in submission order, so a steady
+ * stream of visible renders cannot starve hidden ones.
+ *
+ * <p>Actions submitted with the same ordering key (the {@link RenderTask}) run in submission order regardless of their priorities: an
+ * action is only queued once the previous action with the same key has finished. An action submitted with a coalescing key supersedes
+ * the action with the same key that is still waiting; the future of the superseded action completes with the result of the newer one.
+ *
+ * <p>Using more than one worker is not safe yet. Besides thread locals, layoutlib and the libraries it runs keep static state that is
+ * shared by all render threads, e.g. {@code Handler_Delegate.sRunnablesMap} and the Compose emittable root maps, and that state is not
+ * synchronized. {@link RenderService} therefore runs a single worker.
+ */
+final class RenderWorkerPool {
+  private static final int PENDING = 0;
+  private static final int RUNNING = 1;
+  private static final int SUPERSEDED = 2;
+
+  /** Default time after which a waiting {@link RenderingPriority#LOW} action is queued as {@link RenderingPriority#HIGH}. */
+  static final long DEFAULT_LOW_PRIORITY_AGING_MS = 2000;
+
+  @NotNull private final Worker[] myWorkers;
+  private final long myLowPriorityAgingMs;
+  @NotNull private final AtomicLong mySequence = new AtomicLong();
+  @NotNull private final ConcurrentMap<Object, Request<?>> myPendingRequests = new ConcurrentHashMap<>();
+  /** The last request submitted with each ordering key that has not finished yet. */
+  @NotNull private final ConcurrentMap<Object, Request<?>> myLastOrderedRequests = new ConcurrentHashMap<>();
+  @NotNull private final LongAdder myExecutedCount = new LongAdder();
+  @NotNull private final LongAdder myCoalescedCount = new LongAdder();
+  @NotNull private final LongAdder myTotalQueueLatencyNs = new LongAdder();
+  @NotNull private final AtomicLong myMaxQueueLatencyNs = new AtomicLong();
+
+  /**
+   * Creates a pool with the given number of workers. The first worker thread is called {@code threadName}, the following ones get a
+   * {@code " #<n>"} suffix.
+   */
+  RenderWorkerPool(int workerCount, @NotNull String threadName) {
+    this(workerCount, threadName, DEFAULT_LOW_PRIORITY_AGING_MS);
+  }
+
+  RenderWorkerPool(int workerCount, @NotNull String threadName, long lowPriorityAgingMs) {
+    myLowPriorityAgingMs = lowPriorityAgingMs;
+    myWorkers = new Worker[Math.max(1, workerCount)];
+    for (int i = 0; i < myWorkers.length; i++) {
+      myWorkers[i] = new Worker(i == 0 ? threadName : threadName + " #" + (i + 1));
+    }
+  }
+
+  int getWorkerCount() {
+    return myWorkers.length;
+  }
+
+  /**
+   * Submits the given action to the worker associated with the given affinity key.
+   *
+   * @param affinityKey the key selecting the worker, or null to use the first worker
+   * @param priority the priority of the action relative to the other actions queued on the same worker
+   * @param orderingKey if not null, the action does not start before the actions previously submitted with an equal key have finished
+   * @param coalescingKey if not null, a pending action submitted with an equal key is superseded by this one. All the actions submitted
+   *                      with the same coalescing key must return values of the same type.
+   */
+  @NotNull
+  <T> CompletableFuture<T> submit(@Nullable Object affinityKey,
+                                  @NotNull RenderingPriority priority,
+                                  @Nullable Object orderingKey,
+                                  @Nullable Object coalescingKey,
+                                  @NotNull Supplier<T> action) {
+    Request<T> request = new Request<>(priority, mySequence.getAndIncrement(), orderingKey, coalescingKey, action);
+    if (coalescingKey != null) {
+      Request<?> previous = myPendingRequests.put(coalescingKey, request);
+      if (previous != null && previous.supersede(request)) {
+        myCoalescedCount.increment();
+      }
+    }
+    Worker worker = getWorker(affinityKey);
+    Request<?> predecessor = orderingKey == null ? null : myLastOrderedRequests.put(orderingKey, request);
+    if (predecessor == null) {
+      enqueue(worker, request);
+    }
+    else {
+      predecessor.myDone.whenComplete((result, exception) -> {
+        try {
+          enqueue(worker, request);
+        }
+        catch (RejectedExecutionException e) {
+          request.reject(e);
+        }
+      });
+    }
+    return request.myFuture;
+  }
+
+  private void enqueue(@NotNull Worker worker, @NotNull Request<?> request) {
+    worker.myExecutor.execute(request);
+    if (request.myPriority == RenderingPriority.LOW) {
+      AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+        if (request.isPending() && !worker.myExecutor.isShutdown()) {
+          try {
+            worker.myExecutor.execute(request.promote());
+          }
+          catch (RejectedExecutionException ignore) {
+            // The pool has been shut down in the meantime.
+          }
+        }
+      }, myLowPriorityAgingMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Returns the thread of the worker associated with the given affinity key, or null if the thread has not been started yet.
+   */
+  @Nullable
+  Thread getWorkerThread(@Nullable Object affinityKey) {
+    return getWorker(affinityKey).myThread.get();
+  }
+
+  @NotNull
+  RenderQueueStats getStats() {
+    return new RenderQueueStats(myWorkers.length, myExecutedCount.sum(), myCoalescedCount.sum(), myTotalQueueLatencyNs.sum(),
+                                myMaxQueueLatencyNs.get());
+  }
+
+  /**
+   * Waits for the workers to terminate for at most the given time, in total.
+   */
+  void awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+    long deadlineNs = System.nanoTime() + unit.toNanos(timeout);
+    for (Worker worker : myWorkers) {
+      worker.myExecutor.awaitTermination(Math.max(0, deadlineNs - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Cancels all pending actions and interrupts the worker threads.
+   */
+  void shutdownNow() {
+    for (Worker worker : myWorkers) {
+      worker.myExecutor.shutdownNow();
+      Thread thread = worker.myThread.getAndSet(null);
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  @NotNull
+  private Worker getWorker(@Nullable Object affinityKey) {
+    return affinityKey == null ? myWorkers[0] : myWorkers[Math.floorMod(affinityKey.hashCode(), myWorkers.length)];
+  }
+
+  private void recordQueueLatency(long latencyNs) {
+    myExecutedCount.increment();
+    myTotalQueueLatencyNs.add(latencyNs);
+    myMaxQueueLatencyNs.accumulateAndGet(latencyNs, Math::max);
+  }
+
+  private static final class Worker {
+    @NotNull private final AtomicReference<Thread> myThread = new AtomicReference<>();
+    @NotNull private final ThreadPoolExecutor myExecutor;
+
+    private Worker(@NotNull String threadName) {
+      // Only Requests are executed, so the elements of the queue are always comparable.
+      myExecutor = new ThreadPoolExecutor(1, 1,
+                                          0, TimeUnit.MILLISECONDS,
+                                          new PriorityBlockingQueue<>(),
+                                          (Runnable r) -> {
+                                            Thread renderingThread = new Thread(null, r, threadName);
+                                            renderingThread.setDaemon(true);
+                                            myThread.set(renderingThread);
+
+                                            return renderingThread;
+                                          });
+    }
+  }
+
+  /**
+   * A submitted action. A request promoted by aging is a copy sharing the state, the future and the completion signal of the original
+   * one, so only one of the two queue entries runs the action.
+   */
+  private final class Request<T> implements Runnable, Comparable<Request<?>> {
+    @NotNull private final Request<T> myOrigin;
+    @NotNull private final RenderingPriority myPriority;
+    private final long mySequence;
+    private final long mySubmitTimeNs;
+    @Nullable private final Object myOrderingKey;
+    @Nullable private final Object myCoalescingKey;
+    @NotNull private final Supplier<T> myAction;
+    @NotNull private final CompletableFuture<T> myFuture;
+    /** Completes when the request has run or has been skipped. Used to start the next request with the same ordering key. */
+    @NotNull private final CompletableFuture<Void> myDone;
+    @NotNull private final AtomicInteger myState;
+
+    private Request(@NotNull RenderingPriority priority,
+                    long sequence,
+                    @Nullable Object orderingKey,
+                    @Nullable Object coalescingKey,
+                    @NotNull Supplier<T> action) {
+      myOrigin = this;
+      myPriority = priority;
+      mySequence = sequence;
+      mySubmitTimeNs = System.nanoTime();
+      myOrderingKey = orderingKey;
+      myCoalescingKey = coalescingKey;
+      myAction = action;
+      myFuture = new CompletableFuture<>();
+      myDone = new CompletableFuture<>();
+      myState = new AtomicInteger(PENDING);
+    }
+
+    private Request(@NotNull Request<T> origin, @NotNull RenderingPriority priority) {
+      myOrigin = origin;
+      myPriority = priority;
+      mySequence = origin.mySequence;
+      mySubmitTimeNs = origin.mySubmitTimeNs;
+      myOrderingKey = origin.myOrderingKey;
+      myCoalescingKey = origin.myCoalescingKey;
+      myAction = origin.myAction;
+      myFuture = origin.myFuture;
+      myDone = origin.myDone;
+      myState = origin.myState;
+    }
+
+    private boolean isPending() {
+      return myState.get() == PENDING;
+    }
+
+    /**
+     * Returns a copy of this request to be queued as {@link RenderingPriority#HIGH}.
+     */
+    @NotNull
+    private Request<T> promote() {
+      return new Request<>(myOrigin, RenderingPriority.HIGH);
+    }
+
+    /**
+     * Fails a request that could not be queued because the pool has been shut down.
+     */
+    private void reject(@NotNull RejectedExecutionException e) {
+      if (myState.compareAndSet(PENDING, SUPERSEDED)) {
+        myFuture.completeExceptionally(e);
+      }
+      finish();
+    }
+
+    private void finish() {
+      if (myOrderingKey != null) {
+        myLastOrderedRequests.remove(myOrderingKey, myOrigin);
+      }
+      myDone.complete(null);
+    }
+
+    /**
+     * Marks this request as superseded by the given one if it has not started yet. Returns true if the request was superseded.
+     */
+    private boolean supersede(@NotNull Request<?> newer) {
+      if (!myState.compareAndSet(PENDING, SUPERSEDED)) {
+        return false;
+      }
+      //noinspection unchecked
+      ((Request<T>)newer).myFuture.whenComplete((result, exception) -> {
+        if (exception != null) {
+          myFuture.completeExceptionally(exception);
+        }
+        else {
+          myFuture.complete(result);
+        }
+      });
+      return true;
+    }
+
+    @Override
+    public void run() {
+      if (!myState.compareAndSet(PENDING, RUNNING)) {
+        if (myState.get() == SUPERSEDED) {
+          // A superseded request keeps its place in the order of its ordering key until its queue entry is reached.
+          finish();
+        }
+        return;
+      }
+      if (myCoalescingKey != null) {
+        myPendingRequests.remove(myCoalescingKey, myOrigin);
+      }
+      recordQueueLatency(System.nanoTime() - mySubmitTimeNs);
+
+      try {
+        myFuture.complete(myAction.get());
+      }
+      catch (Throwable t) {
+        // Same as CompletableFuture.supplyAsync.
+        myFuture.completeExceptionally(t instanceof CompletionException ? t : new CompletionException(t));
+      }
+      finally {
+        finish();
+      }
+    }
+
+    @Override
+    public int compareTo(@NotNull Request<?> other) {
+      int result = myPriority.compareTo(other.myPriority);
+      return result != 0 ? result : Long.compare(mySequence, other.mySequence);
+    }
+  }
+}
@@ -24,10 +24,13 @@ import com.android.ide.common.resources.SingleNamespaceResourceRepository;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.ResourceType;
 import com.android.tools.idea.resources.aar.AarResourceRepository;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ForwardingListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
@@ -47,6 +50,7 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -95,9 +99,26 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @GuardedBy("ITEM_MAP_LOCK")
   private long[] myModificationCounts;
 
+  /**
+   * Merged resource maps that are updated incrementally when child repositories change. The maps are mutable and are never
+   * exposed directly, readers get their immutable copies from {@link #mySnapshot}.
+   */
   @GuardedBy("ITEM_MAP_LOCK")
   private final ResourceTable myCachedMaps = new ResourceTable();
 
+  /**
+   * The immutable maps last published for {@link #myCachedMaps}, kept after they are invalidated so that the next map for the same
+   * namespace and type can share their items instead of copying all of them.
+   */
+  @GuardedBy("ITEM_MAP_LOCK")
+  private final ResourceTable myPublishedMaps = new ResourceTable();
+
+  /**
+   * Up to date merged resources that can be read without holding {@code ITEM_MAP_LOCK}. A new snapshot is published, while holding
+   * the lock, whenever a merged map is created or invalidated. Snapshots share the maps of unaffected namespaces and types.
+   */
+  @NotNull private volatile Snapshot mySnapshot = Snapshot.EMPTY;
+
   /** Names of resources from local leaf repositories. */
   @GuardedBy("ITEM_MAP_LOCK")
   private final Table<SingleNamespaceResourceRepository, ResourceType, Set<String>> myResourceNames =
@@ -149,6 +170,8 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
         myModificationCounts[i++] = child.getModificationCount();
       }
       myCachedMaps.clear();
+      myPublishedMaps.clear();
+      mySnapshot = mySnapshot.cleared();
 
       invalidateParentCaches();
     }
@@ -285,13 +308,19 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
       return getResourcesUnderLock(repository, namespace, type);
     }
 
+    Snapshot snapshot = mySnapshot;
+    ListMultimap<String, ResourceItem> snapshotMap = snapshot.getMap(namespace, type);
+    if (snapshotMap != null) {
+      return snapshotMap;
+    }
+
     ListMultimap<String, ResourceItem> map = myCachedMaps.get(namespace, type);
     Set<SingleNamespaceResourceRepository> unreconciledRepositories = null;
+    // Names whose items changed since the map was last published, or null if the map is new.
+    Set<String> changedNames = null;
     if (map != null) {
       unreconciledRepositories = myUnreconciledResources.get(namespace, type);
-      if (unreconciledRepositories == null) {
-        return map;
-      }
+      changedNames = new HashSet<>();
     }
 
     // Merge all items of the given type.
@@ -313,12 +342,13 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
         }
       }
     }
-    else {
+    else if (unreconciledRepositories != null) {
       // Update a partially out of date map.
       for (SingleNamespaceResourceRepository unreconciledRepository : unreconciledRepositories) {
         // Delete all resources that belonged to unreconciledRepository.
         Predicate<ResourceItem> filter = item -> item.getRepository().equals(unreconciledRepository);
         Set<String> names = myResourceNames.get(unreconciledRepository, type);
+        changedNames.addAll(names);
         PerConfigResourceMap perConfigMap = map instanceof PerConfigResourceMap ? (PerConfigResourceMap)map : null;
         for (String name : names) {
           if (perConfigMap != null) {
@@ -335,6 +365,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
         // Add all resources from unreconciledRepository.
         ListMultimap<String, ResourceItem> unreconciledResources = getResourcesUnderLock(unreconciledRepository, namespace, type);
         map.putAll(unreconciledResources);
+        changedNames.addAll(unreconciledResources.keySet());
 
         assert unreconciledRepository instanceof LocalResourceRepository;
         myResourceNames.put(unreconciledRepository, type, ImmutableSet.copyOf(unreconciledResources.keySet()));
@@ -354,7 +385,86 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
 
     myCachedMaps.put(namespace, type, map);
 
-    return map;
+    ListMultimap<String, ResourceItem> publishedMap = myPublishedMaps.get(namespace, type);
+    ListMultimap<String, ResourceItem> immutableMap = publishedMap != null && changedNames != null ?
+                                                      SharedResourceMap.update(publishedMap, map, changedNames) :
+                                                      ImmutableListMultimap.copyOf(map);
+    myPublishedMaps.put(namespace, type, immutableMap);
+    mySnapshot = snapshot.with(namespace, type, immutableMap);
+    return immutableMap;
+  }
+
+  /**
+   * Returns the merged resources of the given namespace and type if they are present in the current snapshot, or null otherwise.
+   * Doesn't require {@code ITEM_MAP_LOCK}.
+   */
+  @Nullable
+  private ListMultimap<String, ResourceItem> getSnapshotMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    return mySnapshot.getMap(namespace, type);
+  }
+
+  @VisibleForTesting
+  long getSnapshotVersion() {
+    return mySnapshot.myVersion;
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull String resourceName) {
+    ListMultimap<String, ResourceItem> map = getSnapshotMap(namespace, resourceType);
+    if (map != null) {
+      return map.get(resourceName);
+    }
+    return super.getResources(namespace, resourceType, resourceName);
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull Predicate<ResourceItem> filter) {
+    ListMultimap<String, ResourceItem> map = getSnapshotMap(namespace, resourceType);
+    if (map != null) {
+      List<ResourceItem> result = new ArrayList<>();
+      for (ResourceItem item : map.values()) {
+        if (filter.test(item)) {
+          result.add(item);
+        }
+      }
+      return result;
+    }
+    return super.getResources(namespace, resourceType, filter);
+  }
+
+  @Override
+  @NotNull
+  public ListMultimap<String, ResourceItem> getResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    ListMultimap<String, ResourceItem> map = getSnapshotMap(namespace, resourceType);
+    if (map != null) {
+      return map;
+    }
+    return super.getResources(namespace, resourceType);
+  }
+
+  @Override
+  @NotNull
+  public Set<String> getResourceNames(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    ListMultimap<String, ResourceItem> map = getSnapshotMap(namespace, resourceType);
+    if (map != null) {
+      return map.keySet();
+    }
+    return super.getResourceNames(namespace, resourceType);
+  }
+
+  @Override
+  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType, @NotNull String resourceName) {
+    ListMultimap<String, ResourceItem> map = getSnapshotMap(namespace, resourceType);
+    if (map != null) {
+      return map.containsKey(resourceName);
+    }
+    return super.hasResources(namespace, resourceType, resourceName);
   }
 
   @GuardedBy("ITEM_MAP_LOCK")
@@ -413,6 +523,8 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @GuardedBy("ITEM_MAP_LOCK")
   public void invalidateCache() {
     myCachedMaps.clear();
+    myPublishedMaps.clear();
+    mySnapshot = mySnapshot.cleared();
     myResourceNames.clear();
     myUnreconciledResources.clear();
     setModificationCount(ourModificationCounter.incrementAndGet());
@@ -445,6 +557,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
             repositories.add(repository);
           }
         }
+        mySnapshot = mySnapshot.without(namespace, types);
 
         setModificationCount(ourModificationCounter.incrementAndGet());
       }
@@ -496,6 +609,173 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     }
   }
 
+  /**
+   * Immutable merged resources keyed by namespace and type. Contains only the maps that are up to date with the child repositories.
+   */
+  private static final class Snapshot {
+    static final Snapshot EMPTY = new Snapshot(0, ImmutableMap.of());
+
+    /** Incremented every time a new snapshot is published. */
+    final long myVersion;
+    @NotNull private final ImmutableMap<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> myMaps;
+
+    private Snapshot(long version,
+                     @NotNull ImmutableMap<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>>
+                         maps) {
+      myVersion = version;
+      myMaps = maps;
+    }
+
+    @Nullable
+    ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+      ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>> mapsByType = myMaps.get(namespace);
+      return mapsByType == null ? null : mapsByType.get(type);
+    }
+
+    /**
+     * Returns a snapshot that contains the given map in addition to the maps of this snapshot.
+     */
+    @NotNull
+    Snapshot with(@NotNull ResourceNamespace namespace, @NotNull ResourceType type,
+                  @NotNull ListMultimap<String, ResourceItem> map) {
+      Map<ResourceType, ListMultimap<String, ResourceItem>> mapsByType = new EnumMap<>(ResourceType.class);
+      ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>> oldMapsByType = myMaps.get(namespace);
+      if (oldMapsByType != null) {
+        mapsByType.putAll(oldMapsByType);
+      }
+      mapsByType.put(type, map);
+      return new Snapshot(myVersion + 1, replaceMaps(namespace, mapsByType));
+    }
+
+    /**
+     * Returns a snapshot that doesn't contain the maps for the given namespace and types, or this snapshot if it doesn't contain them.
+     */
+    @NotNull
+    Snapshot without(@NotNull ResourceNamespace namespace, @NotNull ResourceType... types) {
+      ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>> oldMapsByType = myMaps.get(namespace);
+      if (oldMapsByType == null) {
+        return this;
+      }
+      Map<ResourceType, ListMultimap<String, ResourceItem>> mapsByType = new EnumMap<>(ResourceType.class);
+      mapsByType.putAll(oldMapsByType);
+      boolean removed = false;
+      for (ResourceType type : types) {
+        removed |= mapsByType.remove(type) != null;
+      }
+      return removed ? new Snapshot(myVersion + 1, replaceMaps(namespace, mapsByType)) : this;
+    }
+
+    /**
+     * Returns an empty snapshot with a version greater than the version of this one.
+     */
+    @NotNull
+    Snapshot cleared() {
+      return new Snapshot(myVersion + 1, ImmutableMap.of());
+    }
+
+    @NotNull
+    private ImmutableMap<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> replaceMaps(
+        @NotNull ResourceNamespace namespace, @NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> mapsByType) {
+      ImmutableMap.Builder<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> builder =
+          ImmutableMap.builder();
+      for (ResourceNamespace otherNamespace : myMaps.keySet()) {
+        if (!otherNamespace.equals(namespace)) {
+          builder.put(otherNamespace, myMaps.get(otherNamespace));
+        }
+      }
+      if (!mapsByType.isEmpty()) {
+        builder.put(namespace, Maps.immutableEnumMap(mapsByType));
+      }
+      return builder.build();
+    }
+  }
+
+  /**
+   * Immutable merged resources that share most of their items with the map published before an edit. The items of the names changed
+   * since the last full copy are kept in an overlay that is checked first by lookups by name. Once the overlay holds more than an eighth
+   * of the names, the map is copied in full again, so publishing a map after an edit costs, amortized, as much as the changed names.
+   * Bulk views such as {@link #values()} are served from a merged copy created on first use.
+   */
+  private static final class SharedResourceMap extends ForwardingListMultimap<String, ResourceItem> {
+    private static final int MIN_OVERLAY_SIZE = 64;
+
+    @NotNull private final ImmutableListMultimap<String, ResourceItem> myBase;
+    /** Items of the names changed since {@link #myBase} was copied, empty for names that no longer have items. */
+    @NotNull private final ImmutableMap<String, ImmutableList<ResourceItem>> myOverlay;
+    @Nullable private volatile ImmutableListMultimap<String, ResourceItem> myMerged;
+
+    private SharedResourceMap(@NotNull ImmutableListMultimap<String, ResourceItem> base,
+                              @NotNull ImmutableMap<String, ImmutableList<ResourceItem>> overlay) {
+      myBase = base;
+      myOverlay = overlay;
+    }
+
+    /**
+     * Returns an immutable copy of {@code map}, sharing the items of the names that are not in {@code changedNames} with
+     * {@code published}, an immutable copy of an earlier version of {@code map}.
+     */
+    @NotNull
+    static ListMultimap<String, ResourceItem> update(@NotNull ListMultimap<String, ResourceItem> published,
+                                                     @NotNull ListMultimap<String, ResourceItem> map,
+                                                     @NotNull Set<String> changedNames) {
+      if (changedNames.isEmpty()) {
+        return published;
+      }
+      ImmutableListMultimap<String, ResourceItem> base;
+      Map<String, ImmutableList<ResourceItem>> overlay = new HashMap<>();
+      if (published instanceof SharedResourceMap) {
+        base = ((SharedResourceMap)published).myBase;
+        overlay.putAll(((SharedResourceMap)published).myOverlay);
+      }
+      else if (published instanceof ImmutableListMultimap) {
+        base = (ImmutableListMultimap<String, ResourceItem>)published;
+      }
+      else {
+        return ImmutableListMultimap.copyOf(map);
+      }
+
+      for (String name : changedNames) {
+        List<ResourceItem> items = map.get(name);
+        overlay.put(name, items == null ? ImmutableList.of() : ImmutableList.copyOf(items));
+      }
+      if (overlay.size() > Math.max(MIN_OVERLAY_SIZE, base.keySet().size() / 8)) {
+        return ImmutableListMultimap.copyOf(map);
+      }
+      return new SharedResourceMap(base, ImmutableMap.copyOf(overlay));
+    }
+
+    @Override
+    @NotNull
+    protected ListMultimap<String, ResourceItem> delegate() {
+      ImmutableListMultimap<String, ResourceItem> merged = myMerged;
+      if (merged == null) {
+        ImmutableListMultimap.Builder<String, ResourceItem> builder = ImmutableListMultimap.builder();
+        for (Map.Entry<String, Collection<ResourceItem>> entry : myBase.asMap().entrySet()) {
+          if (!myOverlay.containsKey(entry.getKey())) {
+            builder.putAll(entry.getKey(), entry.getValue());
+          }
+        }
+        myOverlay.forEach(builder::putAll);
+        merged = builder.build();
+        myMerged = merged;
+      }
+      return merged;
+    }
+
+    @Override
+    @NotNull
+    public List<ResourceItem> get(@Nullable String key) {
+      ImmutableList<ResourceItem> items = myOverlay.get(key);
+      return items != null ? items : myBase.get(key);
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+      ImmutableList<ResourceItem> items = myOverlay.get(key);
+      return items != null ? !items.isEmpty() : myBase.containsKey(key);
+    }
+  }
+
   private static class ResourcePriorityComparator implements Comparator<ResourceItem> {
     private final ObjectIntHashMap<SingleNamespaceResourceRepository> repositoryOrdering;
 
@@ -28,8 +28,6 @@ import static com.android.resources.ResourceFolderType.FONT;
 import static com.android.resources.ResourceFolderType.VALUES;
 import static com.android.tools.idea.res.AndroidFileChangeListener.isRelevantFile;
 import static com.android.tools.idea.resources.base.RepositoryLoader.portableFileName;
-import static com.android.tools.idea.resources.base.ResourceSerializationUtil.createPersistentCache;
-import static com.android.tools.idea.resources.base.ResourceSerializationUtil.writeResourcesToStream;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.jetbrains.android.util.AndroidResourceUtil.getResourceTypeForResourceTag;
 
@@ -62,6 +60,7 @@ import com.android.tools.idea.resources.base.BasicFileResourceItem;
 import com.android.tools.idea.resources.base.BasicResourceItem;
 import com.android.tools.idea.resources.base.BasicValueResourceItemBase;
 import com.android.tools.idea.resources.base.LoadableResourceRepository;
+import com.android.tools.idea.resources.base.MappedResourceCache;
 import com.android.tools.idea.resources.base.RepositoryConfiguration;
 import com.android.tools.idea.resources.base.RepositoryLoader;
 import com.android.tools.idea.resources.base.ResourceSerializationUtil;
@@ -70,7 +69,7 @@ import com.android.tools.idea.util.FileExtensions;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.application.WriteAction;
@@ -107,6 +106,7 @@ import com.intellij.psi.xml.XmlFile;
 import com.intellij.psi.xml.XmlProcessingInstruction;
 import com.intellij.psi.xml.XmlTag;
 import com.intellij.psi.xml.XmlText;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.concurrency.EdtExecutorService;
 import java.io.File;
 import java.io.IOException;
@@ -129,6 +129,9 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import javax.annotation.concurrent.GuardedBy;
 import org.jetbrains.android.facet.AndroidFacet;
@@ -164,7 +167,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
    * Increment when making changes that may affect content of repository cache files.
    * Used together with CachingData.codeVersion. Important for developer builds.
    */
-  static final String CACHE_FILE_FORMAT_VERSION = "2";
+  static final String CACHE_FILE_FORMAT_VERSION = "3";
   private static final byte[] CACHE_FILE_HEADER = "Resource cache".getBytes(UTF_8);
   /**
    * Maximum fraction of resources out of date in the cache for the cache to be considered fresh.
@@ -179,6 +182,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   private static final Comparator<ResourceItemSource<? extends ResourceItem>> SOURCE_COMPARATOR =
       Comparator.comparing(ResourceItemSource::getFolderConfiguration);
   private static final Logger LOG = Logger.getInstance(ResourceFolderRepository.class);
+  /** Maximum number of threads parsing the files of a single resource folder during the initial load. */
+  private static final int PARSING_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  /** Resource folders with fewer files per thread than this are parsed on the calling thread only. */
+  private static final int MIN_FILES_PER_PARSING_THREAD = 20;
+  /**
+   * Runs the parsing of resource files. It is separate from the executor that loads the repositories themselves, so that a loader waiting
+   * for its files to be parsed never waits for a task queued behind it.
+   */
+  private static final ExecutorService ourParsingExecutor =
+      AppExecutorUtil.createBoundedApplicationPoolExecutor("ResourceFolderRepository Parser", PARSING_PARALLELISM);
 
   @NotNull private final AndroidFacet myFacet;
   @NotNull private final PsiTreeChangeListener myPsiListener;
@@ -1994,12 +2007,13 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       }
 
       byte[] fileHeader = getCacheFileHeader(myCachingData);
-      try (Base128InputStream stream = new Base128InputStream(myCachingData.getCacheFile())) {
-        if (!stream.validateContents(fileHeader)) {
+      try {
+        // The cache file is read into memory instead of being mapped since it is rewritten while the repository is in use.
+        MappedResourceCache cache = MappedResourceCache.open(myCachingData.getCacheFile(), fileHeader, myRepository, false);
+        if (cache == null) {
           return; // Cache file header doesn't match.
         }
-        ResourceSerializationUtil.readResourcesFromStream(stream, Maps.newHashMapWithExpectedSize(1000), null, myRepository,
-                                                          item -> addResourceItem(item, myRepository));
+        cache.forEachItem(item -> addResourceItem(item, myRepository));
       }
       catch (NoSuchFileException ignored) {
         // Cache file does not exist.
@@ -2027,7 +2041,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       assert myCachingData != null;
       byte[] header = getCacheFileHeader(myCachingData);
       try {
-        createPersistentCache(myCachingData.getCacheFile(), header, stream -> writeResourcesToStream(myResources, stream, config -> true));
+        MappedResourceCache.write(myCachingData.getCacheFile(), header, myResources, config -> true);
       }
       catch (Throwable e) {
         LOG.error(e);
@@ -2036,6 +2050,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
     private void scanResFolder() {
       try {
+        List<FileToParse> filesToParse = new ArrayList<>();
         for (VirtualFile subDir : myResourceDir.getChildren()) {
           if (subDir.isValid() && subDir.isDirectory()) {
             String folderName = subDir.getName();
@@ -2060,24 +2075,13 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                   continue;
                 }
 
-                PathString pathString = FileExtensions.toPathString(file);
-                myLastVirtualFile = file;
-                myLastPathString = pathString;
-                try {
-                  loadResourceFile(pathString, folderInfo, configuration);
-                  if (isParsableFile(file, folderInfo)) {
-                    countCacheMiss();
-                  }
-                }
-                catch (ParsingException e) {
-                  // Reparse the file as PSI. The PSI parser is more forgiving than KXmlParser because
-                  // it is designed to work with potentially malformed files in the middle of editing.
-                  myFilesToReparseAsPsi.add(file);
-                }
+                filesToParse.add(new FileToParse(file, FileExtensions.toPathString(file), folderInfo, configuration));
               }
             }
           }
         }
+
+        parseFiles(filesToParse);
       }
       catch (Exception e) {
         LOG.error("Failed to load resources from " + myResourceDirectoryOrFile.toString(), e);
@@ -2105,6 +2109,88 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       }
     }
 
+    /**
+     * Parses the given files and adds their resources to this loader. When there are enough files, they are split between several loaders
+     * running in parallel, and the results are merged in the order of the list, so that the repository ends up the same as if the files
+     * had been parsed one after another.
+     */
+    private void parseFiles(@NotNull List<FileToParse> files) {
+      int parallelism = Math.min(PARSING_PARALLELISM, files.size() / MIN_FILES_PER_PARSING_THREAD);
+      if (parallelism <= 1 || !StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.get()) {
+        for (FileToParse file : files) {
+          fileParsed(file, parseFile(file));
+        }
+        return;
+      }
+
+      boolean[] parsed = new boolean[files.size()];
+      PendingAttrsAndStyleables[] pendingAttrsAndStyleables = new PendingAttrsAndStyleables[files.size()];
+      AtomicInteger nextFile = new AtomicInteger();
+      List<Loader> workers = new ArrayList<>(parallelism);
+      List<Future<?>> futures = new ArrayList<>(parallelism - 1);
+      Runnable callerTask = null;
+      for (int i = 0; i < parallelism; i++) {
+        Loader worker = new Loader(myRepository, null);
+        workers.add(worker);
+        Runnable task = () -> {
+          for (int j = nextFile.getAndIncrement(); j < parsed.length; j = nextFile.getAndIncrement()) {
+            parsed[j] = worker.parseFile(files.get(j));
+            pendingAttrsAndStyleables[j] = worker.takePendingAttrsAndStyleables();
+          }
+        };
+        if (callerTask == null) {
+          callerTask = task;
+        }
+        else {
+          futures.add(ourParsingExecutor.submit(task));
+        }
+      }
+      // The calling thread takes part in parsing, so the loading makes progress even when the pool is busy with other repositories.
+      callerTask.run();
+      for (Future<?> future : futures) {
+        Futures.getUnchecked(future);
+      }
+
+      for (int i = 0; i < parsed.length; i++) {
+        addPendingAttrsAndStyleables(pendingAttrsAndStyleables[i]);
+        fileParsed(files.get(i), parsed[i]);
+      }
+      for (Loader worker : workers) {
+        mySources.putAll(worker.mySources);
+        myFileResources.putAll(worker.myFileResources);
+      }
+    }
+
+    /**
+     * Parses a single file. Returns false if the file has to be reparsed as PSI.
+     */
+    private boolean parseFile(@NotNull FileToParse file) {
+      myLastVirtualFile = file.virtualFile;
+      myLastPathString = file.path;
+      try {
+        loadResourceFile(file.path, file.folderInfo, file.configuration);
+        return true;
+      }
+      catch (ParsingException e) {
+        // Keep the items parsed before the error together with the file they came from. They are replaced when the file is reparsed.
+        addValueFileResources();
+        return false;
+      }
+    }
+
+    private void fileParsed(@NotNull FileToParse file, boolean parsed) {
+      if (parsed) {
+        if (isParsableFile(file.virtualFile, file.folderInfo)) {
+          countCacheMiss();
+        }
+      }
+      else {
+        // Reparse the file as PSI. The PSI parser is more forgiving than KXmlParser because
+        // it is designed to work with potentially malformed files in the middle of editing.
+        myFilesToReparseAsPsi.add(file.virtualFile);
+      }
+    }
+
     private void loadResourceFile(
         @NotNull PathString file, @NotNull FolderInfo folderInfo, @NotNull RepositoryConfiguration configuration) {
       if (folderInfo.resourceType == null) {
@@ -2256,6 +2342,23 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       ++myRepository.myNumXmlFilesLoadedInitially;
       ++myRepository.myNumXmlFilesLoadedInitiallyFromSources;
     }
+
+    private static class FileToParse {
+      @NotNull final VirtualFile virtualFile;
+      @NotNull final PathString path;
+      @NotNull final FolderInfo folderInfo;
+      @NotNull final RepositoryConfiguration configuration;
+
+      FileToParse(@NotNull VirtualFile virtualFile,
+                  @NotNull PathString path,
+                  @NotNull FolderInfo folderInfo,
+                  @NotNull RepositoryConfiguration configuration) {
+        this.virtualFile = virtualFile;
+        this.path = path;
+        this.folderInfo = folderInfo;
+        this.configuration = configuration;
+      }
+    }
   }
 
   private static class ParsingException extends RuntimeException {
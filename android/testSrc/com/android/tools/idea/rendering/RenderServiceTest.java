@@ -16,8 +16,14 @@
 package com.android.tools.idea.rendering;
 
 import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.tools.idea.rendering.RenderService.RenderingPriority;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import junit.framework.TestCase;
 
 import java.util.concurrent.CountDownLatch;
@@ -84,4 +90,125 @@ public class RenderServiceTest extends TestCase {
     future.get();
     assertTrue(called.get());
   }
-}
\ No newline at end of file
+
+  public void testRenderWorkerPoolPriorityAndCoalescing() throws Exception {
+    RenderWorkerPool pool = new RenderWorkerPool(1, "Test Render Thread");
+    try {
+      CountDownLatch countDownLatch = new CountDownLatch(1);
+      // Block the worker so the following actions are queued.
+      CompletableFuture<Void> blocker = pool.submit(null, RenderingPriority.NORMAL, null, null, () -> {
+        try {
+          countDownLatch.await();
+        }
+        catch (InterruptedException ignore) {
+        }
+        return null;
+      });
+
+      List<String> order = Collections.synchronizedList(new ArrayList<>());
+      Object renderKey = new Object();
+      CompletableFuture<String> low = pool.submit(null, RenderingPriority.LOW, null, null, () -> add(order, "low"));
+      CompletableFuture<String> firstRender = pool.submit(null, RenderingPriority.NORMAL, null, renderKey, () -> add(order, "render1"));
+      CompletableFuture<String> secondRender = pool.submit(null, RenderingPriority.NORMAL, null, renderKey, () -> add(order, "render2"));
+      CompletableFuture<String> high = pool.submit(null, RenderingPriority.HIGH, null, null, () -> add(order, "high"));
+
+      countDownLatch.countDown();
+      CompletableFuture.allOf(blocker, low, firstRender, secondRender, high).get(5, TimeUnit.SECONDS);
+
+      assertEquals(ImmutableList.of("high", "render2", "low"), order);
+      // The superseded request completes with the result of the newer one.
+      assertEquals("render2", firstRender.get());
+      RenderQueueStats stats = pool.getStats();
+      assertEquals(1, stats.getCoalescedCount());
+      assertEquals(4, stats.getExecutedCount());
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  public void testRenderWorkerPoolAffinity() throws Exception {
+    RenderWorkerPool pool = new RenderWorkerPool(3, "Test Render Thread");
+    try {
+      Object module = new Object();
+      Thread first = pool.submit(module, RenderingPriority.NORMAL, null, null, Thread::currentThread).get(5, TimeUnit.SECONDS);
+      Thread second = pool.submit(module, RenderingPriority.HIGH, null, null, Thread::currentThread).get(5, TimeUnit.SECONDS);
+      assertSame(first, second);
+      assertSame(first, pool.getWorkerThread(module));
+      assertEquals("Test Render Thread", pool.submit(null, RenderingPriority.NORMAL, null, null, () -> Thread.currentThread().getName())
+        .get(5, TimeUnit.SECONDS));
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  public void testRenderWorkerPoolKeepsSubmissionOrderPerOrderingKey() throws Exception {
+    RenderWorkerPool pool = new RenderWorkerPool(1, "Test Render Thread");
+    try {
+      CountDownLatch countDownLatch = new CountDownLatch(1);
+      CompletableFuture<Void> blocker = pool.submit(null, RenderingPriority.NORMAL, null, null, () -> {
+        try {
+          countDownLatch.await();
+        }
+        catch (InterruptedException ignore) {
+        }
+        return null;
+      });
+
+      // The priority of a task changes between its requests, e.g. when its surface becomes visible after inflating.
+      List<String> order = Collections.synchronizedList(new ArrayList<>());
+      Object task = new Object();
+      CompletableFuture<String> inflate = pool.submit(null, RenderingPriority.LOW, task, null, () -> add(order, "inflate"));
+      CompletableFuture<String> render = pool.submit(null, RenderingPriority.HIGH, task, null, () -> add(order, "render"));
+      CompletableFuture<String> dispose = pool.submit(null, RenderingPriority.NORMAL, task, null, () -> add(order, "dispose"));
+      CompletableFuture<String> other = pool.submit(null, RenderingPriority.NORMAL, null, null, () -> add(order, "other"));
+
+      countDownLatch.countDown();
+      CompletableFuture.allOf(blocker, inflate, render, dispose, other).get(5, TimeUnit.SECONDS);
+
+      // The actions of the task keep their order, while unrelated actions are still free to run between them.
+      List<String> taskOrder = new ArrayList<>(order);
+      taskOrder.remove("other");
+      assertEquals(ImmutableList.of("inflate", "render", "dispose"), taskOrder);
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  public void testRenderWorkerPoolLowPriorityAging() throws Exception {
+    RenderWorkerPool pool = new RenderWorkerPool(1, "Test Render Thread", 50);
+    try {
+      CountDownLatch countDownLatch = new CountDownLatch(1);
+      CompletableFuture<Void> blocker = pool.submit(null, RenderingPriority.NORMAL, null, null, () -> {
+        try {
+          countDownLatch.await();
+        }
+        catch (InterruptedException ignore) {
+        }
+        return null;
+      });
+
+      List<String> order = Collections.synchronizedList(new ArrayList<>());
+      CompletableFuture<String> low = pool.submit(null, RenderingPriority.LOW, null, null, () -> add(order, "low"));
+      // Let the low priority action age past the limit before the high priority one arrives.
+      Thread.sleep(500);
+      CompletableFuture<String> high = pool.submit(null, RenderingPriority.HIGH, null, null, () -> add(order, "high"));
+
+      countDownLatch.countDown();
+      CompletableFuture.allOf(blocker, low, high).get(5, TimeUnit.SECONDS);
+
+      assertEquals(ImmutableList.of("low", "high"), order);
+      assertEquals(3, pool.getStats().getExecutedCount());
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static String add(List<String> list, String value) {
+    list.add(value);
+    return value;
+  }
+}
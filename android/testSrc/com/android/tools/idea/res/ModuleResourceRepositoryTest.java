@@ -22,10 +22,12 @@ import static com.google.common.truth.Truth.assertThat;
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.resources.ResourceItem;
 import com.android.ide.common.resources.ResourceRepositoryUtil;
+import com.android.ide.common.resources.SingleNamespaceResourceRepository;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.ResourceType;
 import com.android.tools.lint.detector.api.Lint;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -34,6 +36,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.impl.PsiManagerEx;
 import com.intellij.psi.impl.file.impl.FileManagerImpl;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.ui.UIUtil;
 import java.io.IOException;
@@ -43,6 +46,9 @@ import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import org.jetbrains.android.AndroidTestCase;
 import org.jetbrains.annotations.NotNull;
@@ -358,6 +364,58 @@ public class ModuleResourceRepositoryTest extends AndroidTestCase {
     assertStringIs(resources, "title_layout_changes", "New Layout Changes");
   }
 
+  public void testMergedResourcesAreReadWithoutLocking() throws Exception {
+    VirtualFile res1 = myFixture.copyFileToProject(VALUES_OVERLAY1, "res2/values/values.xml").getParent().getParent();
+    VirtualFile res2 = myFixture.copyFileToProject(VALUES, "res/values/values.xml").getParent().getParent();
+    ModuleResourceRepository resources = ModuleResourceRepository.createForTest(myFacet, ImmutableList.of(res1, res2), RES_AUTO, null);
+    assertStringIs(resources, "title_layout_changes", "Layout Changes"); // Merges strings.
+    ListMultimap<String, ResourceItem> styles = resources.getResources(RES_AUTO, ResourceType.STYLE);
+    ListMultimap<String, ResourceItem> strings = resources.getResources(RES_AUTO, ResourceType.STRING);
+    long version = resources.getSnapshotVersion();
+
+    // While another thread holds the lock, lookups of up to date resources still complete.
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<?> lockHolder = AppExecutorUtil.getAppExecutorService().submit(() -> {
+      synchronized (AbstractResourceRepositoryWithLocking.ITEM_MAP_LOCK) {
+        locked.countDown();
+        release.await(10, TimeUnit.SECONDS);
+      }
+      return null;
+    });
+    try {
+      assertTrue(locked.await(10, TimeUnit.SECONDS));
+      Future<Boolean> lookup = AppExecutorUtil.getAppExecutorService().submit(
+        () -> resources.hasResources(RES_AUTO, ResourceType.STRING, "title_layout_changes") &&
+              !resources.getResources(RES_AUTO, ResourceType.STRING, "title_layout_changes").isEmpty() &&
+              resources.getResourceNames(RES_AUTO, ResourceType.STYLE).equals(styles.keySet()));
+      assertTrue(lookup.get(5, TimeUnit.SECONDS));
+    }
+    finally {
+      release.countDown();
+      lockHolder.get();
+    }
+    assertEquals(version, resources.getSnapshotVersion());
+
+    // Invalidating strings of one child publishes a new snapshot and keeps the merged resources of other types.
+    SingleNamespaceResourceRepository child = (SingleNamespaceResourceRepository)resources.getLocalResources().get(0);
+    synchronized (AbstractResourceRepositoryWithLocking.ITEM_MAP_LOCK) {
+      resources.invalidateCache(child, ResourceType.STRING);
+    }
+    assertTrue(resources.getSnapshotVersion() > version);
+    assertSame(styles, resources.getResources(RES_AUTO, ResourceType.STYLE));
+    assertStringIs(resources, "title_layout_changes", "Layout Changes");
+
+    // The strings are republished by reconciling the names of the invalidated child, with the same contents as before.
+    ListMultimap<String, ResourceItem> newStrings = resources.getResources(RES_AUTO, ResourceType.STRING);
+    assertNotSame(strings, newStrings);
+    assertEquals(strings, newStrings);
+    for (String name : strings.keySet()) {
+      assertEquals(strings.get(name), newStrings.get(name));
+      assertTrue(newStrings.containsKey(name));
+    }
+  }
+
   public void testHasResourcesOfType() {
     // Test hasResourcesOfType merging (which may be optimized to be lighter-weight than map merging).
     VirtualFile res1 = myFixture.copyFileToProject(LAYOUT, "res/layout/layout.xml").getParent().getParent();
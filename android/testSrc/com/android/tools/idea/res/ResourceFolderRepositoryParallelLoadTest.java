@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import static com.android.tools.idea.res.ResourceAsserts.assertThat;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.ide.common.rendering.api.ResourceNamespace;
+import com.android.ide.common.resources.ResourceItem;
+import com.android.tools.idea.flags.StudioFlags;
+import com.android.tools.idea.testing.IdeComponents;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Checks that parsing the resource files of a {@link ResourceFolderRepository} in parallel produces the same repository as parsing them one
+ * by one. The load times are measured by {@code ResourceFolderRepositoryLoadBenchmark}.
+ */
+public class ResourceFolderRepositoryParallelLoadTest extends AndroidTestCase {
+  private static final int[] FILE_COUNTS = {25, 400};
+  private static final int ITEMS_PER_VALUES_FILE = 20;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    // Use a file cache that has per-test root directories instead of sharing the system directory.
+    ResourceFolderRepositoryFileCache cache = new ResourceFolderRepositoryFileCacheImpl(Paths.get(myFixture.getTempDirPath())) {
+      @Override
+      @Nullable
+      public ResourceFolderRepositoryCachingData getCachingData(@NotNull Project project,
+                                                                @NotNull VirtualFile resourceDir,
+                                                                @Nullable Executor cacheCreationExecutor) {
+        // Use direct executor to make cache creation synchronous.
+        return super.getCachingData(project, resourceDir, cacheCreationExecutor == null ? null : directExecutor());
+      }
+    };
+    new IdeComponents(getProject()).replaceApplicationService(ResourceFolderRepositoryFileCache.class, cache);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    try {
+      StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.clearOverride();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testParallelLoadingMatchesSequentialLoading() throws Exception {
+    VirtualFile resourceDir = getResourceDirectory();
+    int filesCreated = 0;
+    for (int fileCount : FILE_COUNTS) {
+      // Half of the files are values files, the other half are layouts with ids.
+      for (; filesCreated < fileCount; filesCreated++) {
+        createResourceFile(resourceDir, filesCreated);
+      }
+      VfsUtil.markDirtyAndRefresh(false, true, true, resourceDir);
+
+      StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.override(false);
+      deleteCacheFile(resourceDir);
+      ResourceFolderRepository sequential = createRepository(resourceDir, false);
+      assertThat(sequential.getNumXmlFilesLoadedInitiallyFromSources()).isEqualTo(fileCount);
+
+      StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.override(true);
+      ResourceFolderRepository parallel = createRepository(resourceDir, true);
+      assertThat(parallel.getNumXmlFilesLoadedInitiallyFromSources()).isEqualTo(fileCount);
+
+      ResourceFolderRepository fromCache = createRepository(resourceDir, false);
+      assertThat(fromCache.getNumXmlFilesLoadedInitiallyFromSources()).isEqualTo(0);
+
+      assertContainSameData(sequential, parallel);
+      assertContainSameData(sequential, fromCache);
+    }
+  }
+
+  public void testMalformedFilesAreReparsedWhenLoadingInParallel() throws Exception {
+    VirtualFile resourceDir = getResourceDirectory();
+    for (int i = 0; i < 200; i++) {
+      createResourceFile(resourceDir, i);
+    }
+    // A values file that KXmlParser rejects in the middle of the list of files.
+    writeFile(new File(virtualToIoFile(resourceDir), "values/values_broken.xml"),
+              "<resources>\n  <string name=\"broken_1\">One</string>\n  <string name=\"broken_2\">Two</string\n</resources>\n");
+    VfsUtil.markDirtyAndRefresh(false, true, true, resourceDir);
+
+    StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.override(false);
+    ResourceFolderRepository sequential = createRepository(resourceDir, false);
+    StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.override(true);
+    ResourceFolderRepository parallel = createRepository(resourceDir, false);
+
+    assertContainSameData(sequential, parallel);
+  }
+
+  @NotNull
+  private VirtualFile getResourceDirectory() {
+    List<VirtualFile> resourceDirectories = ResourceFolderManager.getInstance(myFacet).getFolders();
+    assertSize(1, resourceDirectories);
+    return resourceDirectories.get(0);
+  }
+
+  @NotNull
+  private ResourceFolderRepository createRepository(@NotNull VirtualFile resourceDir, boolean createCache) {
+    ResourceNamespace namespace = ResourceRepositoryManager.getInstance(myFacet).getNamespace();
+    ResourceFolderRepositoryCachingData cachingData =
+        ResourceFolderRepositoryFileCacheService.get().getCachingData(getProject(), resourceDir, createCache ? directExecutor() : null);
+    return ResourceFolderRepository.create(myFacet, resourceDir, namespace, cachingData);
+  }
+
+  private void deleteCacheFile(@NotNull VirtualFile resourceDir) throws IOException {
+    ResourceFolderRepositoryCachingData cachingData =
+        ResourceFolderRepositoryFileCacheService.get().getCachingData(getProject(), resourceDir, null);
+    assertNotNull(cachingData);
+    Files.deleteIfExists(cachingData.getCacheFile());
+  }
+
+  private static void createResourceFile(@NotNull VirtualFile resourceDir, int index) throws IOException {
+    File dir = virtualToIoFile(resourceDir);
+    if (index % 2 == 0) {
+      StringBuilder values = new StringBuilder("<resources>\n");
+      for (int i = 0; i < ITEMS_PER_VALUES_FILE; i++) {
+        values.append(String.format("  <string name=\"string_%d_%d\">String %d of file %d</string>\n", index, i, i, index));
+        values.append(String.format("  <dimen name=\"dimen_%d_%d\">%ddp</dimen>\n", index, i, i));
+      }
+      values.append(String.format("  <attr name=\"attr_%d\" format=\"color\"/>\n", index));
+      values.append(String.format("  <declare-styleable name=\"Styleable_%d\">\n    <attr name=\"attr_%d\"/>\n  </declare-styleable>\n",
+                                  index, index));
+      values.append(String.format("  <style name=\"Style_%d\">\n    <item name=\"attr_%d\">#FF0000</item>\n  </style>\n", index, index));
+      values.append("</resources>\n");
+      writeFile(new File(dir, String.format("values/values_%d.xml", index)), values.toString());
+    }
+    else {
+      String layout = String.format(
+          "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+          "    android:layout_width=\"match_parent\" android:layout_height=\"match_parent\">\n" +
+          "  <TextView android:id=\"@+id/text_%d\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>\n" +
+          "  <Button android:id=\"@+id/button_%d\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>\n" +
+          "</LinearLayout>\n", index, index);
+      writeFile(new File(dir, String.format("layout/layout_%d.xml", index)), layout);
+    }
+  }
+
+  private static void writeFile(@NotNull File file, @NotNull String contents) throws IOException {
+    FileUtil.writeToFile(file, contents.getBytes(UTF_8));
+  }
+
+  private static void assertContainSameData(@NotNull ResourceFolderRepository expected, @NotNull ResourceFolderRepository actual) {
+    List<ResourceItem> expectedItems = expected.getAllResources();
+    List<ResourceItem> actualItems = actual.getAllResources();
+    assertThat(actualItems.size()).isEqualTo(expectedItems.size());
+    for (int i = 0; i < expectedItems.size(); i++) {
+      ResourceItem expectedItem = expectedItems.get(i);
+      ResourceItem actualItem = actualItems.get(i);
+      assertThat(actualItem).isEquivalentTo(expectedItem);
+      assertThat(actualItem.getResourceValue()).isEquivalentTo(expectedItem.getResourceValue());
+    }
+  }
+}
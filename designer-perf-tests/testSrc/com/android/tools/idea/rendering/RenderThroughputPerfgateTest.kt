@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering
+
+import com.android.AndroidProjectTypes
+import com.android.ide.common.rendering.api.Result
+import com.android.tools.idea.configurations.Configuration
+import com.android.tools.idea.res.FrameworkResourceRepositoryManager
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import com.google.common.util.concurrent.Futures
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture
+import com.intellij.testFramework.fixtures.TestFixtureBuilder
+import junit.framework.TestCase
+import org.intellij.lang.annotations.Language
+import org.jetbrains.android.AndroidTestCase
+import org.jetbrains.android.facet.AndroidFacet
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+/**
+ * Names of the library modules rendered at the same time as the main module.
+ */
+private val LIBRARY_MODULES = listOf("lib1", "lib2", "lib3")
+
+/**
+ * Number of [RenderTask]s of each module rendered at the same time in each sample, similar to a Compose file with several previews.
+ */
+private const val RENDERS_PER_MODULE = 2
+
+private val CONCURRENT_RENDERS = (1 + LIBRARY_MODULES.size) * RENDERS_PER_MODULE
+
+@Language("XML")
+private val THROUGHPUT_LAYOUT = """
+<LinearLayout xmlns:android="http://schemas.android.com/apk/res/android"
+  android:layout_height="match_parent"
+  android:layout_width="match_parent"
+  android:orientation="vertical">
+    <TextView
+        android:layout_width="wrap_content"
+        android:layout_height="wrap_content"
+        android:text="Hello"/>
+    <LinearLayout
+        android:layout_width="50dp"
+        android:layout_height="50dp"
+        android:background="#0F0"/>
+  </LinearLayout>"""
+
+private val renderThroughputBenchmark = Benchmark.Builder("DesignTools Render Throughput Benchmark")
+  .setDescription("Time to render $CONCURRENT_RENDERS RenderTasks of ${1 + LIBRARY_MODULES.size} modules requested at the same time, " +
+                  "and mean render queue latency.")
+  .build()
+
+/**
+ * A [MetricMeasurement] that measures the mean render queue latency, in microseconds, of the render actions run between [before] and
+ * [after].
+ */
+private class RenderQueueLatencyMeasurement(metric: Metric) : MetricMeasurement(metric) {
+  private lateinit var initialStats: RenderQueueStats
+
+  override fun before() {
+    initialStats = RenderService.getRenderQueueStats()
+  }
+
+  override fun after(): MetricSample {
+    val stats = RenderService.getRenderQueueStats()
+    val executed = stats.executedCount - initialStats.executedCount
+    val totalLatencyUs = stats.getTotalQueueLatency(TimeUnit.MICROSECONDS) - initialStats.getTotalQueueLatency(TimeUnit.MICROSECONDS)
+    return MetricSample(Instant.now().toEpochMilli(), if (executed == 0L) 0 else totalLatencyUs / executed)
+  }
+}
+
+/**
+ * Measures the time to render the layouts of several modules requested at the same time, as when previews of different modules are
+ * opened side by side.
+ */
+class RenderThroughputPerfgateTest : AndroidTestCase() {
+  /** The layout file and its configuration in each module. */
+  private lateinit var layouts: Map<AndroidFacet, Pair<VirtualFile, Configuration>>
+
+  override fun configureAdditionalModules(projectBuilder: TestFixtureBuilder<IdeaProjectTestFixture>,
+                                          modules: MutableList<MyAdditionalModuleData>) {
+    LIBRARY_MODULES.forEach { addModuleWithAndroidFacet(projectBuilder, modules, it, AndroidProjectTypes.PROJECT_TYPE_LIBRARY, false) }
+  }
+
+  @Throws(Exception::class)
+  override fun setUp() {
+    super.setUp()
+    RenderTestUtil.beforeRenderTestCase()
+
+    val layoutPaths = mapOf(myModule to "res/layout/layout.xml") +
+                      LIBRARY_MODULES.associate { getAdditionalModuleByName(it)!! to "additionalModules/$it/res/layout/layout.xml" }
+    layouts = layoutPaths.entries.associate { (module, path) ->
+      val layoutFile = myFixture.addFileToProject(path, THROUGHPUT_LAYOUT).virtualFile
+      AndroidFacet.getInstance(module)!! to Pair(layoutFile, RenderTestUtil.getConfiguration(module, layoutFile))
+    }
+  }
+
+  @Throws(Exception::class)
+  override fun tearDown() {
+    try {
+      RenderTestUtil.afterRenderTestCase()
+    }
+    finally {
+      FrameworkResourceRepositoryManager.getInstance().clearCache()
+      super.tearDown()
+    }
+  }
+
+  @Throws(Exception::class)
+  fun testConcurrentRenderThroughput() {
+    val tasks = layouts.flatMap { (facet, layout) ->
+      List(RENDERS_PER_MODULE) { RenderTestUtil.createRenderTask(facet, layout.first, layout.second) }
+    }
+    TestCase.assertEquals(CONCURRENT_RENDERS, tasks.size)
+    try {
+      // Half of the tasks simulate previews that are visible, the other half previews that are scrolled out of view.
+      tasks.forEachIndexed { index, task ->
+        task.setPriority(if (index % 2 == 0) RenderService.RenderingPriority.HIGH else RenderService.RenderingPriority.LOW)
+        TestCase.assertEquals(Result.Status.SUCCESS, Futures.getUnchecked(task.inflate()).renderResult.status)
+      }
+
+      renderThroughputBenchmark.measureOperation(listOf(ElapsedTimeMeasurement(Metric("render_throughput_time")),
+                                                        RenderQueueLatencyMeasurement(Metric("render_queue_latency_us")))) {
+        tasks
+          .map { it.render() }
+          .forEach { TestCase.assertEquals(Result.Status.SUCCESS, Futures.getUnchecked(it).renderResult.status) }
+      }
+    }
+    finally {
+      tasks.forEach { it.dispose().get(5, TimeUnit.SECONDS) }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res
+
+import com.android.sdklib.IAndroidTarget
+import com.android.tools.idea.rendering.MetricMeasurement
+import com.android.tools.idea.rendering.measureOperation
+import com.android.tools.idea.resources.aar.FrameworkResourceRepository
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.Metric.MetricSample
+import com.intellij.testFramework.PlatformTestCase
+import org.jetbrains.android.sdk.StudioEmbeddedRenderTarget
+import java.nio.file.Paths
+import java.time.Instant
+
+private const val NUMBER_OF_SAMPLES = 10
+
+private val frameworkResourcesMemoryBenchmark = Benchmark.Builder("DesignTools Framework Resources Memory Benchmark")
+  .setDescription("Heap retained by two framework resource repositories loaded from framework_res.jar, after $NUMBER_OF_SAMPLES samples.")
+  .build()
+
+private fun getUsedHeapAfterGc(): Long {
+  repeat(5) { System.gc() }
+  return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()
+}
+
+/**
+ * Measures the heap retained, after garbage collection, by the repositories loaded between [before] and [after].
+ * [repositories] is cleared by [after] so that each sample starts from the same state.
+ */
+private class RetainedHeapMeasurement(metric: Metric,
+                                      private val repositories: MutableList<FrameworkResourceRepository>) : MetricMeasurement(metric) {
+  private var initialHeap = -1L
+
+  override fun before() {
+    initialHeap = getUsedHeapAfterGc()
+  }
+
+  override fun after(): MetricSample {
+    val retainedHeap = getUsedHeapAfterGc() - initialHeap
+    check(repositories.isNotEmpty())
+    repositories.clear()
+    return MetricSample(Instant.now().toEpochMilli(), retainedHeap)
+  }
+}
+
+class FrameworkResourceRepositoryPerfgateTest : PlatformTestCase() {
+  fun testHeapFootprint() {
+    val frameworkResJar = Paths.get(StudioEmbeddedRenderTarget.getInstance().getPath(IAndroidTarget.RESOURCES))
+    val repositories = mutableListOf<FrameworkResourceRepository>()
+    // Two repositories stand in for the framework resources of two API levels sharing most names and references.
+    frameworkResourcesMemoryBenchmark.measureOperation(
+      listOf(RetainedHeapMeasurement(Metric("framework_resources_retained_heap"), repositories)),
+      warmUpCount = 1,
+      samplesCount = NUMBER_OF_SAMPLES) {
+      repeat(2) { repositories.add(FrameworkResourceRepository.create(frameworkResJar, setOf(), null, false)) }
+    }
+  }
+}
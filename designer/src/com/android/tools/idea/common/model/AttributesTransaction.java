@@ -24,6 +24,7 @@ import com.android.tools.idea.uibuilder.model.LayoutParamsManager;
 import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
 import com.google.common.collect.Maps;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.module.Module;
 import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
@@ -105,12 +106,12 @@ public class AttributesTransaction implements NlAttributesHolder {
   /**
    * Triggers a re-layout of the given {@link View}. This might happen asynchronously.
    */
-  private static void triggerViewRelayout(@NotNull View view) {
+  private static void triggerViewRelayout(@NotNull Module module, @NotNull View view) {
     try {
       // We run the re-layout as a render action to avoid a render happening at the same time as the re-layout since that
       // might cause problems.
       // TODO: Investigate a more lightweight solution for this.
-      RenderService.runAsyncRenderAction(() -> {
+      RenderService.runAsyncRenderAction(module, () -> {
         view.setLayoutParams(view.getLayoutParams());
         view.forceLayout();
       });
@@ -206,7 +207,7 @@ public class AttributesTransaction implements NlAttributesHolder {
       applyAllPendingAttributesToView(viewInfo);
       if (hasPendingRelayout) {
         hasLayoutAttributeChanged = true;
-        triggerViewRelayout((View)viewInfo.getViewObject());
+        triggerViewRelayout(myModel.getModule(), (View)viewInfo.getViewObject());
       }
     }
   }
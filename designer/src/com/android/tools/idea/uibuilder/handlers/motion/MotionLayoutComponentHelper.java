@@ -29,12 +29,14 @@ import com.android.tools.idea.res.ResourceIdManager;
 import com.android.tools.idea.uibuilder.handlers.constraint.ComponentModification;
 import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
 import com.android.utils.Pair;
+import com.intellij.openapi.module.Module;
 import com.intellij.util.ArrayUtil;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.WeakHashMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public final class MotionLayoutComponentHelper {
 
@@ -73,6 +75,8 @@ public final class MotionLayoutComponentHelper {
 
   private final Object myDesignTool;
   private final NlComponent myMotionLayoutComponent;
+  /** Module of the MotionLayout, used to run the render actions on the render thread that owns its render session. */
+  @Nullable private final Module myModule;
   private final boolean DEBUG = false;
   private static boolean mShowPaths = true;
 
@@ -97,6 +101,7 @@ public final class MotionLayoutComponentHelper {
 
   private MotionLayoutComponentHelper(@NotNull NlComponent component) {
     component = MotionUtils.getMotionLayoutAncestor(component);
+    myModule = component != null ? component.getModel().getModule() : null;
     ViewInfo info = component != null ? NlComponentHelperKt.getViewInfo(component) : null;
     if (info == null) {
       myDesignTool = null;
@@ -114,7 +119,7 @@ public final class MotionLayoutComponentHelper {
       Method accessor = instance.getClass().getMethod("getDesignTool");
       if (accessor != null) {
         try {
-          designInstance = RenderService.runRenderAction(() -> accessor.invoke(instance));
+          designInstance = RenderService.runRenderAction(myModule, () -> accessor.invoke(instance));
         }
         catch (Exception e) {
           if (DEBUG) {
@@ -154,7 +159,7 @@ public final class MotionLayoutComponentHelper {
     if (myGetAnimationPathMethod != null) {
       try {
 
-        return (Integer)RenderService.runRenderAction(() -> {
+        return (Integer)RenderService.runRenderAction(myModule, () -> {
           try {
             ViewInfo info = NlComponentHelperKt.getViewInfo(nlComponent);
             if (info == null) {
@@ -204,7 +209,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetKeyframeAtLocationMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return myGetKeyframeAtLocationMethod.invoke(myDesignTool, view, x, y);
           }
@@ -260,7 +265,7 @@ public final class MotionLayoutComponentHelper {
     public T invoke(Object... parameters) {
       if (myMethod != null) {
         try {
-          return RenderService.runRenderAction(() -> {
+          return RenderService.runRenderAction(myModule, () -> {
             try {
               T result = (T) myMethod.invoke(myDesignTool, parameters);
               return result;
@@ -301,7 +306,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetPositionKeyframeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return myGetPositionKeyframeMethod.invoke(myDesignTool, keyframe, view, x, y, attributes, values);
           }
@@ -342,7 +347,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetKeyframeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return myGetKeyframeMethod.invoke(myDesignTool, type, target, position);
           }
@@ -383,7 +388,7 @@ public final class MotionLayoutComponentHelper {
 
     if (mySetKeyframeMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             mySetKeyframeMethod.invoke(myDesignTool, keyframe, tag, value);
           }
@@ -420,7 +425,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (mySetAttributesMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             mySetAttributesMethod.invoke(myDesignTool, dpiValue, constraintSetId, view, attributes);
           }
@@ -458,7 +463,7 @@ public final class MotionLayoutComponentHelper {
     final boolean[] didUpdate = {false};
     if (mySetKeyframePositionMethod != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             didUpdate[0] = (boolean)mySetKeyframePositionMethod.invoke(myDesignTool, view, Integer.valueOf(position),
                                                                        Integer.valueOf(type), Float.valueOf(x), Float.valueOf(y));
@@ -500,7 +505,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallSetTransitionPosition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             myCallSetTransitionPosition.invoke(myDesignTool, Float.valueOf(position));
           }
@@ -557,7 +562,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallSetTransition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             myCallSetTransition.invoke(myDesignTool, start, end);
           }
@@ -600,7 +605,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallSetState != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             myCallSetState.invoke(myDesignTool, state);
           }
@@ -644,7 +649,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallDisableAutoTransition != null) {
       try {
-        RenderService.runRenderAction(() -> {
+        RenderService.runRenderAction(myModule, () -> {
           try {
             myCallDisableAutoTransition.invoke(myDesignTool, disable);
           }
@@ -683,7 +688,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallGetState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myModule, () -> {
           try {
             return (String)myCallGetState.invoke(myDesignTool);
           }
@@ -724,7 +729,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallGetStartState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myModule, () -> {
           try {
             return (String)myCallGetStartState.invoke(myDesignTool);
           }
@@ -765,7 +770,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallGetEndState != null) {
       try {
-        state = RenderService.runRenderAction(() -> {
+        state = RenderService.runRenderAction(myModule, () -> {
           try {
             return (String)myCallGetEndState.invoke(myDesignTool);
           }
@@ -806,7 +811,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallGetProgress != null) {
       try {
-        progress = RenderService.runRenderAction(() -> {
+        progress = RenderService.runRenderAction(myModule, () -> {
           try {
             return (Float)myCallGetProgress.invoke(myDesignTool);
           }
@@ -847,7 +852,7 @@ public final class MotionLayoutComponentHelper {
     }
     if (myCallIsInTransition != null) {
       try {
-        isInTransition = RenderService.runRenderAction(() -> {
+        isInTransition = RenderService.runRenderAction(myModule, () -> {
           try {
             return (Boolean)myCallIsInTransition.invoke(myDesignTool);
           }
@@ -886,7 +891,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetMaxTimeMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return (long)myGetMaxTimeMethod.invoke(myDesignTool);
           }
@@ -1034,7 +1039,7 @@ public final class MotionLayoutComponentHelper {
 
     if (myGetKeyFramePositionsMethod != null) {
       try {
-        return RenderService.runRenderAction(() -> {
+        return RenderService.runRenderAction(myModule, () -> {
           try {
             return (Integer)myGetKeyFramePositionsMethod.invoke(myDesignTool, info.getViewObject(), type, pos);
           }
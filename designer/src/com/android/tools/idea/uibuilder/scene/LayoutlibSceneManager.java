@@ -844,6 +844,7 @@ public class LayoutlibSceneManager extends SceneManager {
         if (newTask != null) {
           newTask.getLayoutlibCallback()
             .setAdaptiveIconMaskPath(getDesignSurface().getAdaptiveIconShape().getPathDescription());
+          newTask.setPriority(getRenderingPriority());
           return newTask.inflate().whenComplete((result, exception) -> {
             if (exception != null) {
               Logger.getInstance(LayoutlibSceneManager.class).warn(exception);
@@ -1091,6 +1092,7 @@ public class LayoutlibSceneManager extends SceneManager {
           if (elapsedFrameTimeMs != -1) {
             myRenderTask.setElapsedFrameTimeNanos(TimeUnit.MILLISECONDS.toNanos(elapsedFrameTimeMs));
           }
+          myRenderTask.setPriority(getRenderingPriority());
           return myRenderTask.render().thenApply(result -> {
             // When the layout was inflated in this same call, we do not have to update the hierarchy again
             if (result != null && !inflated) {
@@ -1105,6 +1107,14 @@ public class LayoutlibSceneManager extends SceneManager {
       });
   }
 
+  /**
+   * Returns the priority of the renders of this scene. Renders of surfaces that are on screen go before the ones of hidden surfaces.
+   */
+  @NotNull
+  private RenderService.RenderingPriority getRenderingPriority() {
+    return getDesignSurface().isShowing() ? RenderService.RenderingPriority.HIGH : RenderService.RenderingPriority.LOW;
+  }
+
   public void setElapsedFrameTimeMs(long ms) {
     myElapsedFrameTimeMs = ms;
   }
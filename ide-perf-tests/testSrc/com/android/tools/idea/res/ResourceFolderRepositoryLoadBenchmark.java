@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.ide.common.rendering.api.ResourceNamespace;
+import com.android.tools.idea.flags.StudioFlags;
+import com.android.tools.idea.testing.IdeComponents;
+import com.android.tools.perflogger.Benchmark;
+import com.android.tools.perflogger.Metric;
+import com.android.tools.perflogger.Metric.MetricSample;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Measures how long it takes to load a {@link ResourceFolderRepository} from sources (cold), sequentially and in parallel, and from its
+ * cache file (warm), depending on the number of resource files.
+ */
+public class ResourceFolderRepositoryLoadBenchmark extends AndroidTestCase {
+  private static final int[] FILE_COUNTS = {25, 100, 400, 1600};
+  private static final int ITEMS_PER_VALUES_FILE = 20;
+  private static final int WARMUP_ITERATIONS = 2;
+  private static final int MAIN_ITERATIONS = 5;
+  private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+  private static final Benchmark BENCHMARK = new Benchmark.Builder("ResourceFolderRepository Load Benchmark")
+    .setDescription("Time to load a ResourceFolderRepository from sources, sequentially and in parallel, and from its cache file.")
+    .build();
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    // Use a file cache that has per-test root directories instead of sharing the system directory.
+    ResourceFolderRepositoryFileCache cache = new ResourceFolderRepositoryFileCacheImpl(Paths.get(myFixture.getTempDirPath())) {
+      @Override
+      @Nullable
+      public ResourceFolderRepositoryCachingData getCachingData(@NotNull Project project,
+                                                                @NotNull VirtualFile resourceDir,
+                                                                @Nullable Executor cacheCreationExecutor) {
+        // Use direct executor to make cache creation synchronous.
+        return super.getCachingData(project, resourceDir, cacheCreationExecutor == null ? null : DIRECT_EXECUTOR);
+      }
+    };
+    new IdeComponents(getProject()).replaceApplicationService(ResourceFolderRepositoryFileCache.class, cache);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    try {
+      StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.clearOverride();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testLoadTimeByFileCount() throws Exception {
+    List<VirtualFile> resourceDirectories = ResourceFolderManager.getInstance(myFacet).getFolders();
+    assertSize(1, resourceDirectories);
+    VirtualFile resourceDir = resourceDirectories.get(0);
+
+    int filesCreated = 0;
+    for (int fileCount : FILE_COUNTS) {
+      // Half of the files are values files, the other half are layouts with ids.
+      for (; filesCreated < fileCount; filesCreated++) {
+        createResourceFile(resourceDir, filesCreated);
+      }
+      VfsUtil.markDirtyAndRefresh(false, true, true, resourceDir);
+
+      StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.override(false);
+      measure(new Metric("cold_sequential_" + fileCount + "_files"), () -> {
+        deleteCacheFile(resourceDir);
+        return createRepository(resourceDir, false);
+      }, fileCount);
+
+      StudioFlags.PARALLEL_RESOURCE_REPOSITORY_LOADING.override(true);
+      measure(new Metric("cold_parallel_" + fileCount + "_files"), () -> {
+        deleteCacheFile(resourceDir);
+        return createRepository(resourceDir, false);
+      }, fileCount);
+
+      createRepository(resourceDir, true);
+      measure(new Metric("warm_" + fileCount + "_files"), () -> createRepository(resourceDir, false), 0);
+    }
+  }
+
+  /**
+   * Records the time it takes to run {@code load}, after some warm-up iterations.
+   *
+   * @param expectedFilesFromSources the number of files the repository is expected to have parsed, as a sanity check of the measurement.
+   */
+  private static void measure(@NotNull Metric metric, @NotNull RepositoryLoader load, int expectedFilesFromSources) throws IOException {
+    for (int i = 0; i < WARMUP_ITERATIONS + MAIN_ITERATIONS; i++) {
+      long start = System.nanoTime();
+      ResourceFolderRepository repository = load.load();
+      long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertEquals(expectedFilesFromSources, repository.getNumXmlFilesLoadedInitiallyFromSources());
+      if (i >= WARMUP_ITERATIONS) {
+        metric.addSamples(BENCHMARK, new MetricSample(Instant.now().toEpochMilli(), elapsedMs));
+      }
+    }
+    metric.commit();
+  }
+
+  @NotNull
+  private ResourceFolderRepository createRepository(@NotNull VirtualFile resourceDir, boolean createCache) {
+    ResourceNamespace namespace = ResourceRepositoryManager.getInstance(myFacet).getNamespace();
+    ResourceFolderRepositoryCachingData cachingData =
+        ResourceFolderRepositoryFileCacheService.get().getCachingData(getProject(), resourceDir, createCache ? DIRECT_EXECUTOR : null);
+    return ResourceFolderRepository.create(myFacet, resourceDir, namespace, cachingData);
+  }
+
+  private void deleteCacheFile(@NotNull VirtualFile resourceDir) throws IOException {
+    ResourceFolderRepositoryCachingData cachingData =
+        ResourceFolderRepositoryFileCacheService.get().getCachingData(getProject(), resourceDir, null);
+    assertNotNull(cachingData);
+    Files.deleteIfExists(cachingData.getCacheFile());
+  }
+
+  private static void createResourceFile(@NotNull VirtualFile resourceDir, int index) throws IOException {
+    File dir = virtualToIoFile(resourceDir);
+    if (index % 2 == 0) {
+      StringBuilder values = new StringBuilder("<resources>\n");
+      for (int i = 0; i < ITEMS_PER_VALUES_FILE; i++) {
+        values.append(String.format("  <string name=\"string_%d_%d\">String %d of file %d</string>\n", index, i, i, index));
+        values.append(String.format("  <dimen name=\"dimen_%d_%d\">%ddp</dimen>\n", index, i, i));
+      }
+      values.append(String.format("  <attr name=\"attr_%d\" format=\"color\"/>\n", index));
+      values.append(String.format("  <declare-styleable name=\"Styleable_%d\">\n    <attr name=\"attr_%d\"/>\n  </declare-styleable>\n",
+                                  index, index));
+      values.append(String.format("  <style name=\"Style_%d\">\n    <item name=\"attr_%d\">#FF0000</item>\n  </style>\n", index, index));
+      values.append("</resources>\n");
+      FileUtil.writeToFile(new File(dir, String.format("values/values_%d.xml", index)), values.toString().getBytes(UTF_8));
+    }
+    else {
+      String layout = String.format(
+          "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+          "    android:layout_width=\"match_parent\" android:layout_height=\"match_parent\">\n" +
+          "  <TextView android:id=\"@+id/text_%d\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>\n" +
+          "  <Button android:id=\"@+id/button_%d\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>\n" +
+          "</LinearLayout>\n", index, index);
+      FileUtil.writeToFile(new File(dir, String.format("layout/layout_%d.xml", index)), layout.getBytes(UTF_8));
+    }
+  }
+
+  private interface RepositoryLoader {
+    @NotNull
+    ResourceFolderRepository load() throws IOException;
+  }
+}
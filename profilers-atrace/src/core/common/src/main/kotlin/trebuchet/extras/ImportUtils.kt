@@ -16,6 +16,7 @@
 
 package trebuchet.extras
 
+import trebuchet.io.MappedFileProducer
 import trebuchet.model.Model
 import trebuchet.task.ImportTask
 import trebuchet.util.PrintlnImportFeedback
@@ -25,7 +26,7 @@ import java.io.File
 fun parseTrace(file: File): Model {
     val before = System.nanoTime()
     val task = ImportTask(PrintlnImportFeedback())
-    val model = task.import(InputStreamAdapter(file))
+    val model = task.import(MappedFileProducer(file))
     val after = System.nanoTime()
     val duration = (after - before) / 1000000
     println("Parsing ${file.name} took ${duration}ms")
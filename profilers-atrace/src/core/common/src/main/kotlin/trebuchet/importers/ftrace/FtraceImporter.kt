@@ -24,10 +24,40 @@ import trebuchet.io.GenericByteBuffer
 import trebuchet.io.StreamingLineReader
 import trebuchet.io.StreamingReader
 import trebuchet.model.fragments.ModelFragment
+import trebuchet.util.StringCache
 import trebuchet.util.contains
+import java.util.ArrayDeque
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.regex.Pattern
 
-class FtraceImporter(val feedback: ImportFeedback) : Importer {
+/**
+ * Imports ftrace text. With a [parallelism] above 1, the lines are read in batches whose events are parsed on that many threads, while
+ * the parsed events are imported in the order of the trace, so that the model is the same whatever the parallelism.
+ */
+class FtraceImporter(val feedback: ImportFeedback,
+                     private val parallelism: Int = Runtime.getRuntime().availableProcessors()) : Importer {
+    companion object {
+        private const val BATCH_SIZE = 4096
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 10L
+
+        /**
+         * Names the parser threads, and makes them daemons so that they never keep the process alive.
+         */
+        private val parserThreadFactory = object : ThreadFactory {
+            private val threadCount = AtomicInteger()
+
+            override fun newThread(runnable: Runnable) =
+                Thread(runnable, "FtraceImporter Parser ${threadCount.incrementAndGet()}").apply { isDaemon = true }
+        }
+    }
+
     var foundHeader = false
     var state = FtraceImporterState(feedback)
     val parser = FtraceLine.Parser(state.stringCache)
@@ -40,7 +70,11 @@ class FtraceImporter(val feedback: ImportFeedback) : Importer {
     override fun import(stream: StreamingReader): ModelFragment? {
         val lineReader = StreamingLineReader(1024, stream)
         foundHeader = false
-        lineReader.forEachLine(lineReaderCallback)
+        if (parallelism > 1) {
+            importInParallel(lineReader)
+        } else {
+            lineReader.forEachLine(lineReaderCallback)
+        }
         return state.finish()
     }
 
@@ -49,6 +83,17 @@ class FtraceImporter(val feedback: ImportFeedback) : Importer {
         if (line.buffer.size < 2) {
             return
         }
+        if (handleComment(line)) {
+            importEvent(line) { parser.parseLine(line, ftraceParserCallback) }
+        }
+    }
+
+    /**
+     * Handles the comments of the trace.
+     *
+     * @return whether the line should be imported as an event.
+     */
+    private fun handleComment(line: DataSlice): Boolean {
         // The format of the line buffer should be either a series of comments, or a tracer line. Null and empty are handled
         // at a higher level.
         if (line[1] == '#'.toByte() && coreStartedRegex.matcher(line.toString()).matches()) {
@@ -59,18 +104,79 @@ class FtraceImporter(val feedback: ImportFeedback) : Importer {
             //  throw away the prefix of the trace where not all CPUs have events yet.
             state = FtraceImporterState(feedback)
             ftraceParserCallback = state::importLine
+            return false
         }
         else if (line[0] == '#'.toByte()) {
             foundHeader = true
-        } else if (foundHeader) {
-            try {
-                parser.parseLine(line, ftraceParserCallback)
-            } catch (ex: Exception) {
-                if (line.toString().isNotBlank()) {
-                    feedback.reportImportWarning("Failed to parse: '$line'")
-                    feedback.reportImportException(ex)
+            return false
+        }
+        return foundHeader
+    }
+
+    private inline fun importEvent(line: DataSlice, parse: () -> Unit) {
+        try {
+            parse()
+        } catch (ex: Exception) {
+            if (line.toString().isNotBlank()) {
+                feedback.reportImportWarning("Failed to parse: '$line'")
+                feedback.reportImportException(ex)
+            }
+        }
+    }
+
+    private fun importInParallel(lineReader: StreamingLineReader) {
+        val executor = Executors.newFixedThreadPool(parallelism, parserThreadFactory)
+        // Each thread parses with its own parser, as they are not thread safe.
+        val parsers = ThreadLocal.withInitial { FtraceLine.Parser(StringCache()) }
+        // Batches being parsed, in the order of the trace. Their number is bounded so that the trace is not loaded in memory at once.
+        val pending = ArrayDeque<Future<FtraceLine.Batch>>()
+        val parse = { batch: FtraceLine.Batch -> executor.submit(Callable { batch.apply { parse(parsers.get()) } }) }
+        try {
+            var batch = FtraceLine.Batch(BATCH_SIZE)
+            lineReader.forEachLine { line ->
+                batch.add(line)
+                if (batch.isFull) {
+                    pending.add(parse(batch))
+                    batch = FtraceLine.Batch(BATCH_SIZE)
+                    if (pending.size > 2 * parallelism) {
+                        importBatch(pending.remove())
+                    }
                 }
             }
+            pending.add(parse(batch))
+            while (pending.isNotEmpty()) {
+                importBatch(pending.remove())
+            }
+        } finally {
+            // Batches left by a failed import are cancelled, and the threads are waited for so that none outlive the import.
+            pending.forEach { it.cancel(true) }
+            shutdown(executor)
+        }
+    }
+
+    private fun shutdown(executor: ExecutorService) {
+        executor.shutdownNow()
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                feedback.reportImportWarning("Ftrace parser threads did not stop in $SHUTDOWN_TIMEOUT_SECONDS seconds")
+            }
+        } catch (ex: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+    }
+
+    private fun importBatch(future: Future<FtraceLine.Batch>) {
+        val batch = try {
+            future.get()
+        } catch (ex: ExecutionException) {
+            throw ex.cause ?: ex
+        }
+        val line = DataSlice()
+        for (i in 0 until batch.lineCount) {
+            batch.lineAt(i, line)
+            if (line.length >= 2 && handleComment(line)) {
+                importEvent(line) { batch.replay(i, state.stringCache, ftraceParserCallback) }
+            }
         }
     }
 
@@ -117,4 +117,89 @@ class FtraceLine private constructor() {
             callback(ftraceLine)
         }
     }
+
+    /**
+     * Consecutive lines of a trace, copied out of the stream so that they can be parsed on another thread than the one importing them.
+     * Lines are [add]ed and [parse]d, then [replay]ed in order as [Parser.parseLine] would have called back with them.
+     */
+    class Batch(val capacity: Int) {
+        private var buffer = ByteArray(capacity * 128)
+        private var size = 0
+        private val lineEnds = IntArray(capacity)
+        private var count = 0
+
+        private val tasks = arrayOfNulls<String>(capacity)
+        private val pids = IntArray(capacity)
+        private val tgids = IntArray(capacity)
+        private val cpus = IntArray(capacity)
+        private val timestamps = DoubleArray(capacity)
+        private val functionStarts = IntArray(capacity)
+        private val functionEnds = IntArray(capacity)
+        private val detailsStarts = IntArray(capacity)
+        // Null for the lines that were parsed successfully.
+        private val failures = arrayOfNulls<Exception>(capacity)
+
+        private val ftraceLine = FtraceLine()
+        private val reader = BufferReader()
+        private val replayedLine = DataSlice()
+        private val replayedFunction = DataSlice()
+
+        val lineCount get() = count
+        val isFull get() = count == capacity
+
+        fun add(line: DataSlice) {
+            if (size + line.length > buffer.size) {
+                buffer = buffer.copyOf(maxOf(buffer.size * 2, size + line.length))
+            }
+            System.arraycopy(line.buffer, line.startIndex, buffer, size, line.length)
+            size += line.length
+            lineEnds[count++] = size
+        }
+
+        /**
+         * Parses the lines that look like events, the others being left to the importer.
+         */
+        fun parse(parser: Parser) {
+            val line = DataSlice()
+            for (i in 0 until count) {
+                lineAt(i, line)
+                if (!isEvent(line)) continue
+                try {
+                    parser.parseLine(line) {
+                        tasks[i] = it.task
+                        pids[i] = it.pid
+                        tgids[i] = it.tgid
+                        cpus[i] = it.cpu
+                        timestamps[i] = it.timestamp
+                        functionStarts[i] = it.function.startIndex
+                        functionEnds[i] = it.function.endIndex
+                        detailsStarts[i] = it.functionDetailsReader.index
+                    }
+                } catch (ex: Exception) {
+                    failures[i] = ex
+                }
+            }
+        }
+
+        fun lineAt(lineIndex: Int, dest: DataSlice): DataSlice {
+            dest.set(buffer, if (lineIndex == 0) 0 else lineEnds[lineIndex - 1], lineEnds[lineIndex])
+            return dest
+        }
+
+        /**
+         * Calls [callback] with a line that was [parse]d, or throws the exception thrown when parsing it.
+         */
+        fun replay(lineIndex: Int, stringCache: StringCache, callback: (FtraceLine) -> Unit) {
+            failures[lineIndex]?.let { throw it }
+            replayedFunction.set(buffer, functionStarts[lineIndex], functionEnds[lineIndex])
+            reader.read(lineAt(lineIndex, replayedLine), stringCache) {
+                index = detailsStarts[lineIndex]
+                ftraceLine.set(tasks[lineIndex], pids[lineIndex], tgids[lineIndex], cpus[lineIndex], timestamps[lineIndex],
+                        replayedFunction, this)
+                callback(ftraceLine)
+            }
+        }
+
+        private fun isEvent(line: DataSlice) = line.length >= 2 && line[0] != '#'.toByte()
+    }
 }
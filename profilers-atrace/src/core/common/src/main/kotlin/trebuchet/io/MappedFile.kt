@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package trebuchet.io
+
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+/**
+ * A read-only memory mapping of a whole file, as consecutive segments of at most [segmentSize] bytes. A single mapping can't
+ * exceed 2GB, so larger files always have several segments.
+ *
+ * [close] drops the segments, and the JVM releases each mapping once it's garbage collected. Until then, some platforms
+ * (e.g. Windows) won't delete or replace the file. Views returned by [segment] must not be used once the file is closed.
+ */
+class MappedFile @Throws(IOException::class) constructor(file: File,
+                                                         segmentSize: Int = DEFAULT_SEGMENT_SIZE) : Closeable {
+    companion object {
+        const val DEFAULT_SEGMENT_SIZE = Int.MAX_VALUE
+    }
+
+    val length: Long
+    private var segments: List<ByteBuffer>
+
+    init {
+        if (segmentSize <= 0) throw IllegalArgumentException("Invalid segment size $segmentSize")
+        val channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+        try {
+            length = channel.size()
+            val mapped = mutableListOf<ByteBuffer>()
+            var position = 0L
+            while (position < length) {
+                val size = minOf(segmentSize.toLong(), length - position)
+                mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, position, size))
+                position += size
+            }
+            segments = mapped
+        } finally {
+            channel.close()
+        }
+    }
+
+    val segmentCount: Int get() = segments.size
+
+    /**
+     * @return an independent view of a segment, positioned at its start.
+     */
+    fun segment(index: Int): ByteBuffer = segments[index].duplicate()
+
+    /**
+     * Drops all segments, so their mappings can be garbage collected. There are no segments left afterwards.
+     */
+    override fun close() {
+        segments = emptyList()
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package trebuchet.io
+
+import java.io.File
+import java.io.IOException
+
+/**
+ * A [BufferProducer] reading a file on disk through a [MappedFile]. Chunks are copied out of the mapped memory in bulk,
+ * without going through stream buffers or read calls. A chunk never spans two segments of the file.
+ *
+ * The producer owns the mapping, which [close] closes. [trebuchet.task.ImportTask] closes its source once the import is
+ * done.
+ */
+class MappedFileProducer(private val file: MappedFile,
+                         private val chunkSize: Int = DEFAULT_CHUNK_SIZE) : BufferProducer {
+    companion object {
+        const val DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024
+    }
+
+    @JvmOverloads
+    @Throws(IOException::class)
+    constructor(file: File,
+                segmentSize: Int = MappedFile.DEFAULT_SEGMENT_SIZE,
+                chunkSize: Int = DEFAULT_CHUNK_SIZE) : this(MappedFile(file, segmentSize), chunkSize)
+
+    private var segmentIndex = 0
+    private var segment = if (file.segmentCount > 0) file.segment(0) else null
+
+    override fun next(): DataSlice? {
+        var current = segment ?: return null
+        while (!current.hasRemaining()) {
+            if (++segmentIndex >= file.segmentCount) {
+                segment = null
+                return null
+            }
+            current = file.segment(segmentIndex)
+            segment = current
+        }
+        // Lines crossing chunks, or segments, are handled by the StreamingReader like with any other producer.
+        val buffer = ByteArray(minOf(chunkSize, current.remaining()))
+        current.get(buffer)
+        return DataSlice(buffer)
+    }
+
+    override fun close() {
+        segment = null
+        segmentIndex = file.segmentCount
+        file.close()
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package trebuchet.queries
+
+import trebuchet.model.CpuModel
+import trebuchet.model.CpuProcessSlice
+import trebuchet.model.ThreadModel
+import trebuchet.model.base.Slice
+import trebuchet.model.base.SliceGroup
+
+/**
+ * Index of slices by depth, answering time and name queries without walking all of them.
+ *
+ * The slices of a thread are properly nested, and the slices of a CPU follow each other, so the slices at each depth don't overlap and
+ * are sorted by both start and end time. They are binary searched, instead of walked like in [SliceQueries].
+ */
+class SliceIndex<T : Slice> private constructor(private val levels: List<List<T>>) {
+    companion object {
+        @JvmStatic
+        fun of(thread: ThreadModel): SliceIndex<SliceGroup> = of(thread.slices)
+
+        @JvmStatic
+        fun of(cpu: CpuModel): SliceIndex<CpuProcessSlice> = flat(cpu.slices)
+
+        /**
+         * Indexes slices and their children, the slices at depth d being the children of the slices at depth d - 1.
+         */
+        @JvmStatic
+        fun of(slices: List<SliceGroup>): SliceIndex<SliceGroup> {
+            val levels = mutableListOf<List<SliceGroup>>()
+            var level = slices
+            while (level.isNotEmpty()) {
+                levels.add(level)
+                level = level.flatMap { it.children }
+            }
+            return SliceIndex(levels)
+        }
+
+        /**
+         * Indexes slices at a single depth.
+         */
+        @JvmStatic
+        fun <T : Slice> flat(slices: List<T>): SliceIndex<T> = SliceIndex(if (slices.isEmpty()) emptyList() else listOf(slices))
+
+        /**
+         * @return the index of the first of the non-overlapping, sorted [slices] ending at or after [time], or the number of slices if
+         * there is none.
+         */
+        @JvmStatic
+        fun <T : Slice> firstEndingAfter(slices: List<T>, time: Double): Int {
+            var low = 0
+            var high = slices.size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (slices[mid].endTime < time) {
+                    low = mid + 1
+                } else {
+                    high = mid
+                }
+            }
+            return low
+        }
+    }
+
+    // The slices of each name, longest first. Grouped on the first name query, as most captures are never queried by name.
+    private val slicesByName: Map<String, List<T>> by lazy {
+        levels.flatten().groupBy { it.name }.mapValues { (_, slices) -> slices.sortedByDescending { it.duration } }
+    }
+
+    /**
+     * The depth of the deepest slices, or -1 if there are none.
+     */
+    val maxDepth get() = levels.size - 1
+
+    /**
+     * @return the slices overlapping [startTime, endTime], by depth then by start time.
+     */
+    fun overlapping(startTime: Double, endTime: Double): List<T> {
+        val result = mutableListOf<T>()
+        levels.forEach { level ->
+            var index = firstEndingAfter(level, startTime)
+            while (index < level.size && level[index].startTime <= endTime) {
+                result.add(level[index++])
+            }
+        }
+        return result
+    }
+
+    /**
+     * @return the slice at the given depth containing the given time, or null if there is none.
+     */
+    @JvmOverloads
+    fun sliceAt(time: Double, depth: Int = 0): T? {
+        if (depth < 0 || depth >= levels.size) return null
+        val level = levels[depth]
+        val index = firstEndingAfter(level, time)
+        return if (index < level.size && level[index].startTime <= time) level[index] else null
+    }
+
+    /**
+     * @return the [count] longest slices with the given name, longest first.
+     */
+    fun longest(name: String, count: Int): List<T> = slicesByName[name]?.take(count) ?: emptyList()
+}
@@ -18,7 +18,6 @@ package com.android.tools.profilers.cpu;
 import com.android.tools.adtui.TabularLayout;
 import com.android.tools.adtui.event.DelegateMouseEventHandler;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.ui.HideablePanel;
 import com.android.tools.profilers.ProfilerColors;
 import com.android.tools.profilers.ProfilerLayout;
@@ -30,7 +29,6 @@ import com.intellij.ui.components.JBList;
 import com.intellij.util.ui.JBUI;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.List;
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.ListModel;
@@ -166,12 +164,12 @@ public final class CpuKernelsView {
     }
     CpuKernelModel.CpuState state = cpuModel.getElementAt(selectedIndex);
     Range tooltipRange = myStage.getTimeline().getTooltipRange();
-    List<SeriesData<CpuThreadSliceInfo>> process = state.getModel().getSeries().get(0).getSeriesForRange(tooltipRange);
-    if (process.isEmpty()) {
+    CpuThreadSliceInfo process = state.getThreadSliceInfoAt((long)tooltipRange.getMin());
+    if (process == null) {
       return;
     }
 
-    int id = process.get(0).value.getId();
+    int id = process.getId();
     CpuThreadsModel threadsModel = myStage.getThreadStates();
     for (int i = 0; i < threadsModel.getSize(); i++) {
       CpuThreadsModel.RangedCpuThread thread = threadsModel.getElementAt(i);
@@ -34,6 +34,7 @@ public class CpuThreadsTooltipView extends TooltipView {
   @NotNull private final JLabel myLabel;
   @NotNull private final JLabel myState;
   @NotNull private final JLabel myDuration;
+  @NotNull private final JLabel myTraceEvent;
   @NotNull private final JPanel myUnavailableDetails;
 
   protected CpuThreadsTooltipView(@NotNull JComponent parent, @NotNull CpuThreadsTooltip tooltip) {
@@ -44,6 +45,7 @@ public class CpuThreadsTooltipView extends TooltipView {
     myLabel = createTooltipLabel();
     myState = createTooltipLabel();
     myDuration = createTooltipLabel();
+    myTraceEvent = createTooltipLabel();
     // TODO(b/109661512): Move vgap scale into TabularLayout
     myUnavailableDetails = new JPanel(new TabularLayout("*").setVGap(JBUI.scale(1)));
     tooltip.addDependency(this).onChange(CpuThreadsTooltip.Aspect.THREAD_STATE, this::stateChanged);
@@ -71,6 +73,11 @@ public class CpuThreadsTooltipView extends TooltipView {
     myLabel.setText(String.format("Thread: %s", title));
     addRow(myContent, myLabel);
 
+    if (myTooltip.getTraceEventName() != null) {
+      myTraceEvent.setText(String.format("Trace event: %s", myTooltip.getTraceEventName()));
+      addRow(myContent, myTraceEvent);
+    }
+
     if (myTooltip.getThreadState() != null) {
       myState.setText(threadStateToString(myTooltip.getThreadState()));
       addRow(myContent, myState);
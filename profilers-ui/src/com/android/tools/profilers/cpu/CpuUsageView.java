@@ -160,9 +160,9 @@ abstract class CpuUsageView extends JBPanel {
       DetailedCpuUsage cpuUsage = myStage.getCpuUsage();
       LineChart lineChart = new LineChart(cpuUsage);
       lineChart.configure(cpuUsage.getCpuSeries(), new LineConfig(ProfilerColors.CPU_USAGE)
-        .setFilled(true).setStacked(true).setLegendIconType(LegendConfig.IconType.BOX));
+        .setFilled(true).setStacked(true).setDownsampled(true).setLegendIconType(LegendConfig.IconType.BOX));
       lineChart.configure(cpuUsage.getOtherCpuSeries(), new LineConfig(ProfilerColors.CPU_OTHER_USAGE)
-        .setFilled(true).setStacked(true).setLegendIconType(LegendConfig.IconType.BOX));
+        .setFilled(true).setStacked(true).setDownsampled(true).setLegendIconType(LegendConfig.IconType.BOX));
       lineChart.configure(cpuUsage.getThreadsCountSeries(), new LineConfig(ProfilerColors.THREADS_COUNT)
         .setStepped(true).setStroke(LineConfig.DEFAULT_DASH_STROKE).setLegendIconType(LegendConfig.IconType.DASHED_LINE));
       lineChart.setRenderOffset(0, (int)LineConfig.DEFAULT_DASH_STROKE.getLineWidth() / 2);
@@ -43,6 +43,11 @@ public class StatusPanel extends JComponent {
    */
   @NotNull
   private JLabel myDurationLabel = new JLabel();
+  /**
+   * How much of the operation is done, empty if it is not known.
+   */
+  @NotNull
+  private final JLabel myProgressLabel = createLabel("", false);
   /**
    * Status itself (e.g. recording, parsing).
    */
@@ -77,7 +82,7 @@ public class StatusPanel extends JComponent {
     // entire panel area.
     JPanel mainPanel = new JPanel(new TabularLayout("*,300px,*", "*,150px,*"));
     // TODO(b/109661512): Move vgap scale into TabularLayout
-    JPanel statusPanel = new JPanel(new TabularLayout("*,Fit,20px,Fit,*", "28px,Fit,Fit,Fit,Fit,*").setVGap(JBUI.scale(5)));
+    JPanel statusPanel = new JPanel(new TabularLayout("*,Fit,20px,Fit,*", "28px,Fit,Fit,Fit,Fit,Fit,*").setVGap(JBUI.scale(5)));
     statusPanel.setBorder(new LineBorder(ProfilerColors.CPU_CAPTURE_STATUS, 1));
 
     JLabel status = createLabel("Status", true);
@@ -85,6 +90,7 @@ public class StatusPanel extends JComponent {
     JLabel duration = createLabel("Duration", true);
     JLabel technology = createLabel("Type", true);
     JLabel actualTechnology = createLabel(myModel.getConfigurationText(), false);
+    JLabel progress = createLabel("Progress", true);
 
     statusPanel.add(status, new TabularLayout.Constraint(1, 1));
     statusPanel.add(actualStatus, new TabularLayout.Constraint(1, 3));
@@ -92,9 +98,11 @@ public class StatusPanel extends JComponent {
     statusPanel.add(myDurationLabel, new TabularLayout.Constraint(2, 3));
     statusPanel.add(technology, new TabularLayout.Constraint(3, 1));
     statusPanel.add(actualTechnology, new TabularLayout.Constraint(3, 3));
+    statusPanel.add(progress, new TabularLayout.Constraint(4, 1));
+    statusPanel.add(myProgressLabel, new TabularLayout.Constraint(4, 3));
 
     // Adds the button centralized in the 3 middle columns (2nd to 4th).
-    statusPanel.add(createButtonPanel(), new TabularLayout.Constraint(4, 3, 1));
+    statusPanel.add(createButtonPanel(), new TabularLayout.Constraint(5, 3, 1));
 
     mainPanel.add(statusPanel, new TabularLayout.Constraint(1, 1));
     setLayout(new BorderLayout());
@@ -103,6 +111,9 @@ public class StatusPanel extends JComponent {
 
   private void updateDuration() {
     myDurationLabel.setText(getDurationText());
+    // The range changes as time passes, which is also when progress should be refreshed.
+    double progress = myModel.getProgress();
+    myProgressLabel.setText(progress < 0 ? "" : String.format("%d%%", (int)(progress * 100)));
   }
 
   private static JLabel createLabel(String text, boolean isRightAligned) {
@@ -126,6 +137,11 @@ public class StatusPanel extends JComponent {
     return myDurationLabel;
   }
 
+  @VisibleForTesting
+  JLabel getProgressLabel() {
+    return myProgressLabel;
+  }
+
   @NotNull
   private String getDurationText() {
     return TimeFormatter
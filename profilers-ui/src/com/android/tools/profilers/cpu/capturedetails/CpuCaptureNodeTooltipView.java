@@ -21,6 +21,8 @@ import com.android.tools.adtui.common.AdtUiUtils;
 import com.android.tools.adtui.model.formatter.TimeFormatter;
 import com.android.tools.profilers.ProfilerColors;
 import com.android.tools.profilers.cpu.CaptureNode;
+import java.util.List;
+import java.util.stream.Collectors;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -31,10 +33,12 @@ import org.jetbrains.annotations.NotNull;
  */
 public class CpuCaptureNodeTooltipView extends TooltipView {
   @NotNull private final CaptureNode myCaptureNode;
+  @NotNull private final List<Long> myLongestOccurrenceDurationsUs;
 
   public CpuCaptureNodeTooltipView(@NotNull JComponent parent, @NotNull CpuCaptureNodeTooltip tooltip) {
     super(tooltip.getTimeline());
     myCaptureNode = tooltip.getCaptureNode();
+    myLongestOccurrenceDurationsUs = tooltip.getLongestOccurrenceDurationsUs();
   }
 
   @NotNull
@@ -56,8 +60,15 @@ public class CpuCaptureNodeTooltipView extends TooltipView {
     content.add(runningLabel, new TabularLayout.Constraint(1, 0));
     content.add(idleLabel, new TabularLayout.Constraint(2, 0));
     content.add(totalLabel, new TabularLayout.Constraint(3, 0));
-    content.add(AdtUiUtils.createHorizontalSeparator(), new TabularLayout.Constraint(4, 0));
-    content.add(contextHelpLabel, new TabularLayout.Constraint(5, 0));
+    int row = 4;
+    if (!myLongestOccurrenceDurationsUs.isEmpty()) {
+      String longest = myLongestOccurrenceDurationsUs.stream()
+        .map(TimeFormatter::getSingleUnitDurationString)
+        .collect(Collectors.joining(", "));
+      content.add(new JLabel(String.format("Longest: %s", longest)), new TabularLayout.Constraint(row++, 0));
+    }
+    content.add(AdtUiUtils.createHorizontalSeparator(), new TabularLayout.Constraint(row++, 0));
+    content.add(contextHelpLabel, new TabularLayout.Constraint(row, 0));
     return content;
   }
 }
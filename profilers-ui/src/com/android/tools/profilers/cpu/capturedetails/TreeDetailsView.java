@@ -125,6 +125,17 @@ public abstract class TreeDetailsView<T extends CpuTreeNode<T>> extends CaptureD
       resetTreeExpansionState();
     });
 
+    // The children of a node are only built when it's expanded.
+    myTree.addTreeWillExpandListener(new TreeWillExpandListener() {
+      @Override
+      public void treeWillExpand(TreeExpansionEvent event) {
+        model.expand((DefaultMutableTreeNode)event.getPath().getLastPathComponent());
+      }
+
+      @Override
+      public void treeWillCollapse(TreeExpansionEvent event) {
+      }
+    });
     myTree.addTreeExpansionListener(new ExpansionListener());
   }
 
@@ -477,17 +488,6 @@ public abstract class TreeDetailsView<T extends CpuTreeNode<T>> extends CaptureD
       assert myTree != null;
 
       myTree.setRootVisible(false);
-      myTree.addTreeWillExpandListener(new TreeWillExpandListener() {
-        @Override
-        public void treeWillExpand(TreeExpansionEvent event) {
-          DefaultMutableTreeNode node = (DefaultMutableTreeNode)event.getPath().getLastPathComponent();
-          ((BottomUpTreeModel)myTree.getModel()).expand(node);
-        }
-
-        @Override
-        public void treeWillCollapse(TreeExpansionEvent event) {
-        }
-      });
 
       model.addTreeModelListener(new TreeModelAdapter() {
         @Override
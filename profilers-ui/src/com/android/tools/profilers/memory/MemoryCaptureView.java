@@ -38,6 +38,8 @@ public final class MemoryCaptureView extends AspectObserver {
 
   @NotNull private final JLabel myLabel;
 
+  @NotNull private final JLabel myRetainedSizeProgressLabel;
+
   @NotNull private final JPanel myPanel;
 
   @Nullable private CaptureObject myCaptureObject = null;
@@ -46,11 +48,14 @@ public final class MemoryCaptureView extends AspectObserver {
     myStage = stage;
     myStage.getAspect().addDependency(this)
       .onChange(MemoryProfilerAspect.CURRENT_LOADING_CAPTURE, this::reset)
-      .onChange(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE, this::refresh);
+      .onChange(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE, this::refresh)
+      .onChange(MemoryProfilerAspect.CURRENT_HEAP_RETAINED_SIZE_PROGRESS, this::refreshRetainedSizeProgress);
 
     myPanel = new JPanel(createToolbarLayout());
     myLabel = new JLabel();
     myLabel.setBorder(new JBEmptyBorder(0, 11, 0, 3));
+    myRetainedSizeProgressLabel = new JLabel();
+    myRetainedSizeProgressLabel.setBorder(new JBEmptyBorder(0, 3, 0, 3));
     reset();
   }
 
@@ -60,6 +65,12 @@ public final class MemoryCaptureView extends AspectObserver {
     return myLabel;
   }
 
+  @VisibleForTesting
+  @NotNull
+  JLabel getRetainedSizeProgressLabel() {
+    return myRetainedSizeProgressLabel;
+  }
+
   @NotNull
   JComponent getComponent() {
     return myPanel;
@@ -78,7 +89,18 @@ public final class MemoryCaptureView extends AspectObserver {
     if (validCapture) {
       myLabel.setText(myCaptureObject.getName());
       myPanel.add(myLabel);
+      myPanel.add(myRetainedSizeProgressLabel);
       myPanel.add(new FlatSeparator());
+      refreshRetainedSizeProgress();
     }
   }
+
+  /**
+   * Shows how far the retained sizes are computed, as the retained size column fills in while the heap dump is browsed.
+   */
+  private void refreshRetainedSizeProgress() {
+    double progress = myCaptureObject == null ? 1 : myCaptureObject.getRetainedSizeProgress();
+    myRetainedSizeProgressLabel.setVisible(progress < 1);
+    myRetainedSizeProgressLabel.setText(String.format("Computing retained sizes: %d%%", (int)(progress * 100)));
+  }
 }
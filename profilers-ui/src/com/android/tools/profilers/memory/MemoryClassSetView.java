@@ -555,7 +555,7 @@ final class MemoryClassSetView extends AspectObserver {
 
   private void refreshSelectedInstance() {
     InstanceObject instanceObject = myStage.getSelectedInstanceObject();
-    if (myInstanceObject == instanceObject) {
+    if (Objects.equals(myInstanceObject, instanceObject)) {
       return;
     }
 
@@ -568,7 +568,7 @@ final class MemoryClassSetView extends AspectObserver {
 
     assert myTreeRoot != null && myTreeModel != null;
     for (MemoryObjectTreeNode<MemoryObject> node : myTreeRoot.getChildren()) {
-      if (node.getAdapter() == myInstanceObject) {
+      if (node.getAdapter().equals(myInstanceObject)) {
         selectPath(node);
         break;
       }
@@ -594,7 +594,7 @@ final class MemoryClassSetView extends AspectObserver {
 
     // TODO: select node which is not visible yet
     for (MemoryObjectTreeNode<MemoryObject> node : myTreeRoot.getChildren()) {
-      if (node.getAdapter() == myInstanceObject) {
+      if (node.getAdapter().equals(myInstanceObject)) {
         selectPath(node);
         return;
       }
@@ -642,7 +642,7 @@ final class MemoryClassSetView extends AspectObserver {
   private MemoryObjectTreeNode<MemoryObject> findSelectedInstanceNode() {
     assert myTree != null && myTreeModel != null && myTreeRoot != null && myInstanceObject != null;
     for (MemoryObjectTreeNode<MemoryObject> node : myTreeRoot.getChildren()) {
-      if (node.getAdapter() == myInstanceObject) {
+      if (node.getAdapter().equals(myInstanceObject)) {
         return node;
       }
     }
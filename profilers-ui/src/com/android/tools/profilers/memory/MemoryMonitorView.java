@@ -67,7 +67,7 @@ public class MemoryMonitorView extends ProfilerMonitorView<MemoryMonitor> {
     JPanel lineChartPanel = new JBPanel(new BorderLayout());
     lineChartPanel.setOpaque(false);
     lineChartPanel.setBorder(BorderFactory.createEmptyBorder(Y_AXIS_TOP_MARGIN, 0, 0, 0));
-    LineConfig memoryConfig = new LineConfig(ProfilerColors.MEMORY_TOTAL).setFilled(true);
+    LineConfig memoryConfig = new LineConfig(ProfilerColors.MEMORY_TOTAL).setFilled(true).setDownsampled(true);
     lineChart.configure(usage.getTotalMemorySeries(), memoryConfig);
     lineChartPanel.add(lineChart, BorderLayout.CENTER);
     lineChart.setMaxLineColor(ProfilerColors.MONITOR_MAX_LINE);
@@ -880,7 +880,7 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
   }
 
   private static void configureStackedFilledLine(LineChart chart, Color color, RangedContinuousSeries series) {
-    chart.configure(series, new LineConfig(color).setFilled(true).setStacked(true).setLegendIconType(LegendConfig.IconType.BOX));
+    chart.configure(series, new LineConfig(color).setFilled(true).setStacked(true).setDownsampled(true).setLegendIconType(LegendConfig.IconType.BOX));
   }
 
   /**
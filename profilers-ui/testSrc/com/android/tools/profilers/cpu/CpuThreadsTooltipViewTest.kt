@@ -125,6 +125,25 @@ class CpuThreadsTooltipViewTest {
     assertThat(labels[3].text).isEqualTo("1 s") // 1 second until the capture finishes
   }
 
+  @Test
+  fun traceEventIsShownAfterThreadName() {
+    val tooltipTime = TimeUnit.SECONDS.toMicros(1)
+    cpuStage.timeline.tooltipRange.set(tooltipTime.toDouble(), tooltipTime.toDouble())
+    val threadSeries = LegacyCpuThreadStateDataSeries(myProfilerClient.cpuClient, ProfilersTestData.SESSION_DATA, 1, selectedCapture)
+
+    cpuThreadsTooltip.setThread("myThread", threadSeries)
+    cpuThreadsTooltip.setTraceEventLookup { range -> if (range.min == tooltipTime.toDouble()) "doFrame" else null }
+    var labels = TreeWalker(cpuThreadsTooltipView.tooltipPanel).descendants().filterIsInstance<JLabel>()
+    assertThat(labels).hasSize(6) // time, name, trace event, state, duration, details unavailable
+    assertThat(labels[1].text).isEqualTo("Thread: myThread")
+    assertThat(labels[2].text).isEqualTo("Trace event: doFrame")
+    assertThat(labels[3].text).isEqualTo("Running")
+
+    cpuStage.timeline.tooltipRange.set(tooltipTime.toDouble() + 1, tooltipTime.toDouble() + 1)
+    labels = TreeWalker(cpuThreadsTooltipView.tooltipPanel).descendants().filterIsInstance<JLabel>()
+    assertThat(labels.map { it.text }).doesNotContain("Trace event: doFrame")
+  }
+
   private class FakeCpuThreadsTooltipView(
     parent: CpuProfilerStageView,
     tooltip: CpuThreadsTooltip)
@@ -50,6 +50,17 @@ class StatusPanelTest {
     assertThat(panel.durationLabel.text).contains("8")
   }
 
+  @Test
+  fun progressIsOnlyShownWhenKnown() {
+    val model = TestStatusPanelModel()
+    val panel = StatusPanel(model, "Status", "Abort")
+    model.testRange.max = TimeUnit.SECONDS.toNanos(6).toDouble()
+    assertThat(panel.progressLabel.text).isEmpty()
+    model.testProgress = 0.42
+    model.testRange.max = TimeUnit.SECONDS.toNanos(7).toDouble()
+    assertThat(panel.progressLabel.text).isEqualTo("42%")
+  }
+
   private fun getAbortbutton(panel: StatusPanel) = TreeWalker(panel)
     .descendants()
     .filterIsInstance<JButton>()
@@ -59,6 +70,7 @@ class StatusPanelTest {
 
 class TestStatusPanelModel : StatusPanelModel {
   var abortCalled = false
+  var testProgress = -1.0
   val testRange = Range(0.0, TimeUnit.SECONDS.toNanos(5).toDouble())
   override fun getConfigurationText(): String {
     return "Test"
@@ -68,6 +80,10 @@ class TestStatusPanelModel : StatusPanelModel {
     return testRange
   }
 
+  override fun getProgress(): Double {
+    return testProgress
+  }
+
   override fun abort() {
     abortCalled = true
   }
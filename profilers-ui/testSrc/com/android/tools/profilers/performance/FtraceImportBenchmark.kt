@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import trebuchet.extras.InputStreamAdapter
+import trebuchet.importers.ImportFeedback
+import trebuchet.importers.ftrace.FtraceImporter
+import trebuchet.io.StreamingReader
+import java.time.Instant
+import java.util.Random
+
+/**
+ * Measures how long [FtraceImporter] takes to import a synthetic trace of 2M lines, parsing its lines on a single thread and on one
+ * thread per processor.
+ */
+class FtraceImportBenchmark {
+  companion object {
+    private const val LINE_COUNT = 2_000_000
+    private const val THREAD_COUNT = 32
+    private const val CPU_COUNT = 8
+    private const val WARMUP_ITERATIONS = 2
+    private const val MAIN_ITERATIONS = 5
+  }
+
+  private val benchmark = Benchmark.Builder("Ftrace Import Timings (Millis)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun importTwoMillionLines() {
+    val trace = generateTrace().toByteArray()
+    measure(Metric("Import-2M-Lines-Sequential"), trace, 1)
+    measure(Metric("Import-2M-Lines-Parallel"), trace, Runtime.getRuntime().availableProcessors())
+  }
+
+  private fun measure(metric: Metric, trace: ByteArray, parallelism: Int) {
+    val feedback = object : ImportFeedback {
+      override fun reportImportWarning(warning: String) {}
+
+      override fun reportImportException(exception: Throwable) = throw exception
+    }
+    for (i in 0 until WARMUP_ITERATIONS + MAIN_ITERATIONS) {
+      val reader = StreamingReader(InputStreamAdapter(trace.inputStream()))
+      reader.loadIndex(reader.keepLoadedSize)
+      val startTime = System.currentTimeMillis()
+      val fragment = FtraceImporter(feedback, parallelism).import(reader)
+      val elapsed = System.currentTimeMillis() - startTime
+      assertThat(fragment!!.processes).isNotEmpty()
+      if (i >= WARMUP_ITERATIONS) {
+        metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), elapsed))
+      }
+    }
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+
+  /**
+   * Generates a trace of scheduling events, counters and nested slices on a few processes, threads and CPUs.
+   */
+  private fun generateTrace(): String {
+    val random = Random(42)
+    val depths = IntArray(THREAD_COUNT)
+    val builder = StringBuilder("# tracer: nop\n#\n#           TASK-PID    TGID   CPU#  ||||    TIMESTAMP  FUNCTION\n")
+    for (i in 0 until LINE_COUNT) {
+      val timestamp = "${1000 + i / 1_000_000}.${(i % 1_000_000).toString().padStart(6, '0')}"
+      val thread = random.nextInt(THREAD_COUNT)
+      val pid = 1000 + thread
+      val tgid = 100 + thread % 4
+      val cpu = random.nextInt(CPU_COUNT)
+      val prefix = "          thread$thread-$pid   ( $tgid) [00$cpu] ...1 $timestamp: "
+      when (random.nextInt(5)) {
+        0 -> {
+          val next = random.nextInt(THREAD_COUNT)
+          builder.append("          <idle>-0     (-----) [00$cpu] d..3 $timestamp: sched_switch: prev_comm=swapper/$cpu prev_pid=0 " +
+                         "prev_prio=120 prev_state=R ==> next_comm=thread$next next_pid=${1000 + next} next_prio=120\n")
+        }
+        1 -> builder.append("${prefix}sched_wakeup: comm=thread$thread pid=$pid prio=120 success=1 target_cpu=00$cpu\n")
+        2 -> builder.append("${prefix}tracing_mark_write: C|$tgid|counter$thread|${random.nextInt(100)}\n")
+        else -> {
+          if (depths[thread] > 0 && random.nextBoolean()) {
+            depths[thread]--
+            builder.append("${prefix}tracing_mark_write: E\n")
+          }
+          else {
+            depths[thread]++
+            builder.append("${prefix}tracing_mark_write: B|$tgid|slice${i % 1000}\n")
+          }
+        }
+      }
+    }
+    return builder.toString()
+  }
+}
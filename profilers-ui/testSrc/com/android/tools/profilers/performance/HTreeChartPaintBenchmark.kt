@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.adtui.chart.hchart.HRenderer
+import com.android.tools.adtui.chart.hchart.HTreeChart
+import com.android.tools.adtui.model.HNode
+import com.android.tools.adtui.model.Range
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.awt.image.BufferedImage
+import java.time.Instant
+
+/**
+ * Measures how long a [HTreeChart] of 12M nodes takes to index its tree, and to fetch and paint its nodes when zoomed out and zoomed in.
+ */
+class HTreeChartPaintBenchmark {
+  companion object {
+    // A complete tree of branch factor 5 and height 11 has (5^11 - 1) / 4 = 12,207,031 nodes.
+    private const val BRANCH = 5
+    private const val HEIGHT = 11
+    private const val NODE_COUNT = 12_207_031
+    private const val LEAF_LENGTH = 10L
+    private const val WIDTH = 1000
+    private const val CHART_HEIGHT = 400
+    private const val WARMUP_ITERATIONS = 5
+    private const val MAIN_ITERATIONS = 20
+  }
+
+  private val benchmark = Benchmark.Builder("HTreeChart Paint Timings (Nanos)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun paintTwelveMillionNodes() {
+    var leafCount = 1L
+    repeat(HEIGHT - 1) { leafCount *= BRANCH }
+    val root = buildTree(null, 0, leafCount * LEAF_LENGTH, 0)
+    assertThat(countNodes(root)).isEqualTo(NODE_COUNT)
+
+    val xRange = Range(0.0, root.getEnd().toDouble())
+    val chart = HTreeChart.Builder(null, xRange, HRenderer<Node> { g, _, _, drawingArea, _, _ -> g.fill(drawingArea) })
+      .setGlobalXRange(Range(xRange))
+      .build()
+    chart.setSize(WIDTH, CHART_HEIGHT)
+
+    val indexMetric = Metric("Index-12M-Nodes")
+    for (i in 0 until WARMUP_ITERATIONS + MAIN_ITERATIONS) {
+      val startTime = System.nanoTime()
+      chart.setHTree(root)
+      val elapsed = System.nanoTime() - startTime
+      if (i >= WARMUP_ITERATIONS) {
+        indexMetric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), elapsed))
+      }
+    }
+    commit(indexMetric)
+
+    measurePaint(Metric("Paint-12M-Nodes"), chart, xRange, 0.0, root.getEnd().toDouble())
+    // A thousandth of the tree, about 12K nodes with ten leaves per pixel.
+    val zoomedMin = root.getEnd() / 2.0
+    measurePaint(Metric("Paint-12M-Nodes-Zoomed"), chart, xRange, zoomedMin, zoomedMin + root.getEnd() / 1000.0)
+  }
+
+  private fun measurePaint(metric: Metric, chart: HTreeChart<Node>, xRange: Range, min: Double, max: Double) {
+    val image = BufferedImage(WIDTH, CHART_HEIGHT, BufferedImage.TYPE_INT_ARGB)
+    for (i in 0 until WARMUP_ITERATIONS + MAIN_ITERATIONS) {
+      // Alternating the range forces the chart to fetch its nodes again, as it would while the user pans.
+      xRange.set(min + i % 2, max)
+      val graphics = image.createGraphics()
+      val startTime = System.nanoTime()
+      chart.paint(graphics)
+      val elapsed = System.nanoTime() - startTime
+      graphics.dispose()
+      if (i >= WARMUP_ITERATIONS) {
+        metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), elapsed))
+      }
+    }
+    commit(metric)
+  }
+
+  private fun commit(metric: Metric) {
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+
+  /**
+   * Builds a complete tree whose children split the range of their parent in [BRANCH] equal, consecutive parts.
+   */
+  private fun buildTree(parent: Node?, start: Long, end: Long, depth: Int): Node {
+    val node = Node(parent, start, end, depth)
+    if (depth < HEIGHT - 1) {
+      val childLength = (end - start) / BRANCH
+      node.children = List(BRANCH) { i -> buildTree(node, start + i * childLength, start + (i + 1) * childLength, depth + 1) }
+    }
+    return node
+  }
+
+  private fun countNodes(node: Node): Int = 1 + node.children.sumBy { countNodes(it) }
+
+  /**
+   * A node lighter than [com.android.tools.adtui.model.DefaultHNode], so that the tree fits in the memory of the test.
+   */
+  private class Node(private val parent: Node?, private val start: Long, private val end: Long, private val depth: Int) : HNode<Node> {
+    var children: List<Node> = emptyList()
+
+    override fun getChildCount() = children.size
+
+    override fun getChildAt(index: Int) = children[index]
+
+    override fun getParent() = parent
+
+    override fun getStart() = start
+
+    override fun getEnd() = end
+
+    override fun getDepth() = depth
+  }
+}
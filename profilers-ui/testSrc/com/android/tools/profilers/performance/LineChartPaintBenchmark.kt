@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.adtui.chart.linechart.LineChart
+import com.android.tools.adtui.chart.linechart.LineConfig
+import com.android.tools.adtui.model.LineChartModel
+import com.android.tools.adtui.model.LongDataSeries
+import com.android.tools.adtui.model.LongSeries
+import com.android.tools.adtui.model.Range
+import com.android.tools.adtui.model.RangedContinuousSeries
+import com.android.tools.adtui.model.SeriesData
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import org.junit.Test
+import java.awt.Color
+import java.awt.image.BufferedImage
+import java.time.Instant
+
+/**
+ * Measures how long a [LineChart] takes to rebuild and paint a filled line of 1M samples, with and without
+ * [LineConfig.setDownsampled], which bounds the number of points drawn by the width of the chart.
+ */
+class LineChartPaintBenchmark {
+  companion object {
+    private const val SAMPLE_COUNT = 1_000_000
+    private const val WIDTH = 1000
+    private const val HEIGHT = 200
+    private const val WARMUP_ITERATIONS = 5
+    private const val MAIN_ITERATIONS = 20
+  }
+
+  private val benchmark = Benchmark.Builder("LineChart Paint Timings (Nanos)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun paintMillionSamples() {
+    measure(Metric("Paint-1M-Samples"), false)
+    measure(Metric("Paint-1M-Samples-Downsampled"), true)
+  }
+
+  private fun measure(metric: Metric, downsampled: Boolean) {
+    val samples = LongSeries(SAMPLE_COUNT)
+    for (i in 0 until SAMPLE_COUNT) {
+      // A noisy signal, so reducing consecutive points with the same value doesn't remove most of them.
+      samples.add(i.toLong(), ((i * 7919L) % 1000) + (i % 100) * 10)
+    }
+    val model = LineChartModel()
+    val series = RangedContinuousSeries("Samples", Range(0.0, SAMPLE_COUNT.toDouble()), Range(0.0, 2000.0), InMemorySeries(samples))
+    model.add(series)
+    val chart = LineChart(model)
+    chart.configure(series, LineConfig(Color.BLUE).setFilled(true).setDownsampled(downsampled))
+    chart.setSize(WIDTH, HEIGHT)
+
+    val image = BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB)
+    for (i in 0 until WARMUP_ITERATIONS + MAIN_ITERATIONS) {
+      // Forces the chart to rebuild its paths, as it would after every data update of a live session.
+      model.changed(LineChartModel.Aspect.LINE_CHART)
+      val graphics = image.createGraphics()
+      val startTime = System.nanoTime()
+      chart.paint(graphics)
+      val elapsed = System.nanoTime() - startTime
+      graphics.dispose()
+      if (i >= WARMUP_ITERATIONS) {
+        metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), elapsed))
+      }
+    }
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+
+  private class InMemorySeries(private val samples: LongSeries) : LongDataSeries {
+    override fun getDataForRange(range: Range, into: LongSeries) {
+      into.copyFrom(samples.subSeries(range))
+    }
+
+    override fun getDataForRange(range: Range): List<SeriesData<Long>> = samples.subSeries(range).toList()
+  }
+}
@@ -15,15 +15,21 @@
  */
 package com.android.tools.profilers;
 
+import com.android.tools.datastore.rpc.DataStoreStreamingServiceGrpc;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
 import com.android.tools.profiler.proto.EnergyServiceGrpc;
 import com.android.tools.profiler.proto.EventServiceGrpc;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import com.android.tools.profiler.proto.ProfilerServiceGrpc;
+import com.android.tools.profiler.proto.Transport;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
+import io.grpc.Context;
 import io.grpc.ManagedChannel;
 import io.grpc.inprocess.InProcessChannelBuilder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import org.jetbrains.annotations.NotNull;
 
 public class ProfilerClient {
@@ -35,6 +41,7 @@ public class ProfilerClient {
   @NotNull private final NetworkServiceGrpc.NetworkServiceBlockingStub myNetworkClient;
   @NotNull private final EventServiceGrpc.EventServiceBlockingStub myEventClient;
   @NotNull private final EnergyServiceGrpc.EnergyServiceBlockingStub myEnergyClient;
+  @NotNull private final DataStoreStreamingServiceGrpc.DataStoreStreamingServiceBlockingStub myStreamingClient;
 
   public ProfilerClient(String name) {
     // Optimization - In-process direct-executor channel which allows us to communicate between the profiler and transport-database without
@@ -47,6 +54,7 @@ public class ProfilerClient {
     myNetworkClient = NetworkServiceGrpc.newBlockingStub(channel);
     myEventClient = EventServiceGrpc.newBlockingStub(channel);
     myEnergyClient = EnergyServiceGrpc.newBlockingStub(channel);
+    myStreamingClient = DataStoreStreamingServiceGrpc.newBlockingStub(channel);
   }
 
   @NotNull
@@ -83,4 +91,36 @@ public class ProfilerClient {
   public EnergyServiceGrpc.EnergyServiceBlockingStub getEnergyClient() {
     return myEnergyClient;
   }
+
+  @NotNull
+  public DataStoreStreamingServiceGrpc.DataStoreStreamingServiceBlockingStub getStreamingClient() {
+    return myStreamingClient;
+  }
+
+  /**
+   * Writes the bytes the datastore has for the request to the given stream, chunk by chunk. Unlike
+   * {@link TransportServiceGrpc.TransportServiceBlockingStub#getBytes}, this never holds the whole payload in memory and works for
+   * payloads of any size.
+   *
+   * @return the number of bytes written, 0 if there are none for the request.
+   */
+  public long writeBytes(@NotNull Transport.BytesRequest request, @NotNull OutputStream output) throws IOException {
+    // Cancels the call if writing fails, so the datastore doesn't keep the payload open.
+    Context.CancellableContext context = Context.current().withCancellation();
+    Context previous = context.attach();
+    try {
+      long written = 0;
+      Iterator<Transport.BytesResponse> chunks = myStreamingClient.streamBytes(request);
+      while (chunks.hasNext()) {
+        Transport.BytesResponse chunk = chunks.next();
+        chunk.getContents().writeTo(output);
+        written += chunk.getContents().size();
+      }
+      return written;
+    }
+    finally {
+      context.detach(previous);
+      context.cancel(null);
+    }
+  }
 }
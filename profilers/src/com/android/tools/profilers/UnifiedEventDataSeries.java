@@ -22,12 +22,15 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
 import com.android.tools.profiler.proto.Transport.GetEventGroupsResponse;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Generic numeric (Long) data series that allows the caller to customize which field within the {@link Common.Event} to use when when
@@ -43,6 +46,7 @@ public class UnifiedEventDataSeries<T> implements DataSeries<T> {
   @NotNull private final Common.Event.Kind myKind;
   private final int myGroupId;
   @NotNull private final Function<List<Common.Event>, List<SeriesData<T>>> myDataExtractor;
+  @Nullable private UnifiedEventSubscription mySubscription;
 
   /**
    * @param client        the grpc client to request data from.
@@ -66,24 +70,69 @@ public class UnifiedEventDataSeries<T> implements DataSeries<T> {
     myDataExtractor = dataExtractor;
   }
 
+  /**
+   * Switches the series from re-querying its whole range on every update to a local copy of the events that is kept up to date by the
+   * datastore. The series keeps querying until the subscription has loaded the existing events, and falls back to querying if the
+   * subscription is dropped. Callers must call {@link #unsubscribe()} once the series is no longer used.
+   *
+   * @param rangeUs the range the series is going to be queried for first, which bounds the existing events that are loaded.
+   * @return a future set to whether the subscription is serving the series, once it is known. Does not block.
+   */
+  @NotNull
+  public ListenableFuture<Boolean> subscribe(@NotNull Range rangeUs) {
+    if (mySubscription == null) {
+      mySubscription = new UnifiedEventSubscription(myClient, buildRequest(0, 0));
+    }
+    return mySubscription.start(TimeUnit.MICROSECONDS.toNanos((long)rangeUs.getMin()),
+                                TimeUnit.MICROSECONDS.toNanos((long)rangeUs.getMax()));
+  }
+
+  public void unsubscribe() {
+    if (mySubscription != null) {
+      mySubscription.stop();
+      mySubscription = null;
+    }
+  }
+
   @Override
   public List<SeriesData<T>> getDataForRange(Range rangeUs) {
-    GetEventGroupsRequest request = GetEventGroupsRequest.newBuilder()
-      .setStreamId(myStreamId)
-      .setPid(myPid)
-      .setKind(myKind)
-      .setGroupId(myGroupId)
-      .setFromTimestamp(TimeUnit.MICROSECONDS.toNanos((long)rangeUs.getMin()))
-      .setToTimestamp(TimeUnit.MICROSECONDS.toNanos((long)rangeUs.getMax()))
-      .build();
+    List<Common.Event> events = getEventsForRange(rangeUs);
+    return events.isEmpty() ? new ArrayList<>() : myDataExtractor.apply(events);
+  }
+
+  /**
+   * @return the events of the series in the given range, from the subscription if there is an active one or else from the datastore.
+   */
+  @NotNull
+  protected List<Common.Event> getEventsForRange(@NotNull Range rangeUs) {
+    long fromNs = TimeUnit.MICROSECONDS.toNanos((long)rangeUs.getMin());
+    long toNs = TimeUnit.MICROSECONDS.toNanos((long)rangeUs.getMax());
+    List<Common.Event> subscribedEvents = mySubscription != null ? mySubscription.getEvents(fromNs, toNs) : null;
+    if (subscribedEvents != null) {
+      return subscribedEvents;
+    }
+
+    GetEventGroupsRequest request = buildRequest(fromNs, toNs);
     GetEventGroupsResponse response = myClient.getEventGroups(request);
     // We don't expect more than one data group in our numeric data series. This is to avoid having to sort the data from multiple groups
     // after they are added to the list. We can re-evaluate if the need arises.
     assert response.getGroupsCount() <= 1;
     if (response.getGroupsCount() == 0) {
-      return new ArrayList<>();
+      return Collections.emptyList();
     }
-    return myDataExtractor.apply(response.getGroups(0).getEventsList());
+    return response.getGroups(0).getEventsList();
+  }
+
+  @NotNull
+  private GetEventGroupsRequest buildRequest(long fromNs, long toNs) {
+    return GetEventGroupsRequest.newBuilder()
+      .setStreamId(myStreamId)
+      .setPid(myPid)
+      .setKind(myKind)
+      .setGroupId(myGroupId)
+      .setFromTimestamp(fromNs)
+      .setToTimestamp(toNs)
+      .build();
   }
 
   /**
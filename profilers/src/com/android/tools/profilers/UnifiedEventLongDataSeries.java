@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.android.tools.adtui.model.LongDataSeries;
+import com.android.tools.adtui.model.LongSeries;
+import com.android.tools.adtui.model.Range;
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.TransportServiceGrpc;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link UnifiedEventDataSeries} of numbers that extracts the samples from the events straight into a {@link LongSeries}, without boxing
+ * them.
+ */
+public class UnifiedEventLongDataSeries extends UnifiedEventDataSeries<Long> implements LongDataSeries {
+  @NotNull private final BiConsumer<List<Common.Event>, LongSeries> myDataExtractor;
+
+  /**
+   * @param dataExtractor the function that adds the samples of a list of events to a series.
+   * @see UnifiedEventDataSeries#UnifiedEventDataSeries
+   */
+  public UnifiedEventLongDataSeries(@NotNull TransportServiceGrpc.TransportServiceBlockingStub client,
+                                    long streamId,
+                                    int pid,
+                                    @NotNull Common.Event.Kind kind,
+                                    int groupId,
+                                    @NotNull BiConsumer<List<Common.Event>, LongSeries> dataExtractor) {
+    super(client, streamId, pid, kind, groupId, events -> {
+      LongSeries series = new LongSeries(Math.max(events.size(), 1));
+      dataExtractor.accept(events, series);
+      return series.toList();
+    });
+    myDataExtractor = dataExtractor;
+  }
+
+  @Override
+  public void getDataForRange(@NotNull Range rangeUs, @NotNull LongSeries into) {
+    into.clear();
+    myDataExtractor.accept(getEventsForRange(rangeUs), into);
+  }
+
+  /**
+   * Primitive counterpart of {@link UnifiedEventDataSeries#fromFieldToDataExtractor}.
+   */
+  @NotNull
+  public static BiConsumer<List<Common.Event>, LongSeries> fromFieldToDataExtractor(@NotNull ToLongFunction<Common.Event> fieldExtractor) {
+    return (events, series) -> {
+      for (Common.Event event : events) {
+        series.add(TimeUnit.NANOSECONDS.toMicros(event.getTimestamp()), fieldExtractor.applyAsLong(event));
+      }
+    };
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.android.tools.datastore.rpc.DataStoreStreamingServiceGrpc;
+import com.android.tools.datastore.rpc.SubscribeEventsResponse;
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.Transport.EventGroup;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsResponse;
+import com.android.tools.profiler.proto.TransportServiceGrpc;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps a local, timestamp-ordered copy of the events matching a filter. Instead of re-querying (and re-serializing) a growing range
+ * on every update, the events are pushed by the datastore's {@code DataStoreStreamingService.SubscribeEvents} call as they arrive.
+ * The events that already exist are queried once the datastore acknowledged the subscription, so no event inserted in between is missed.
+ * Both happen asynchronously, {@link #start} never blocks the calling thread.
+ * <p>
+ * Only the events around the last range passed to {@link #getEvents} (or {@link #start}, before that) are kept: older events are not
+ * loaded, or evicted once they are more than a range length (and at least {@link #MIN_RETAINED_MARGIN_NS}) before it, and ranges
+ * reaching back past them are not served.
+ * <p>
+ * Until the existing events are loaded, or if the subscription fails (e.g. the datastore drops a subscriber that is not keeping up),
+ * {@link #isActive()} returns false and callers are expected to query via
+ * {@link TransportServiceGrpc.TransportServiceBlockingStub#getEventGroups} instead, as they are when {@link #getEvents} returns null.
+ */
+public class UnifiedEventSubscription {
+  /**
+   * How far before the last requested range events are kept, at the least.
+   */
+  private static final long MIN_RETAINED_MARGIN_NS = TimeUnit.SECONDS.toNanos(10);
+
+  @NotNull private final TransportServiceGrpc.TransportServiceBlockingStub myClient;
+  @NotNull private final GetEventGroupsRequest myFilter;
+
+  // All fields below are guarded by this object's monitor.
+  private final List<Common.Event> myEvents = new ArrayList<>();
+  @Nullable private ClientCallStreamObserver<GetEventGroupsRequest> myCall;
+  /**
+   * Identifies the current subscription, so callbacks of a subscription that was stopped are ignored.
+   */
+  @Nullable private Object mySubscription;
+  @Nullable private SettableFuture<Boolean> myLoaded;
+  private boolean myIsLoaded;
+  /**
+   * Pushed events up to this timestamp may also have been returned by the initial query and are checked for duplicates.
+   */
+  private long myOverlapEndNs = Long.MAX_VALUE;
+  /**
+   * Events before this timestamp may have been evicted, except for the last one of them.
+   */
+  private long myRetainedFromNs = Long.MIN_VALUE;
+
+  /**
+   * @param filter stream id, pid, kind and group id to subscribe to. Timestamps are ignored.
+   */
+  public UnifiedEventSubscription(@NotNull TransportServiceGrpc.TransportServiceBlockingStub client, @NotNull GetEventGroupsRequest filter) {
+    myClient = client;
+    myFilter = filter.toBuilder().clearFromTimestamp().clearToTimestamp().build();
+  }
+
+  /**
+   * Subscribes to the events, and loads the existing ones once the datastore acknowledged the subscription. Only the events that
+   * {@link #getEvents} would keep for the given range are loaded.
+   *
+   * @param fromNs start of the range the events are going to be requested for first.
+   * @param toNs   end of that range.
+   * @return a future set to true once the existing events are loaded, or to false if the subscription failed or was stopped first.
+   */
+  @NotNull
+  public ListenableFuture<Boolean> start(long fromNs, long toNs) {
+    SettableFuture<Boolean> loaded = SettableFuture.create();
+    Object subscription = new Object();
+    synchronized (this) {
+      if (myLoaded != null) {
+        return myLoaded;
+      }
+      mySubscription = subscription;
+      myLoaded = loaded;
+    }
+
+    long loadFromNs = getRetainedFrom(fromNs, toNs);
+    DataStoreStreamingServiceGrpc.newStub(myClient.getChannel()).subscribeEvents(
+      myFilter, new ClientResponseObserver<GetEventGroupsRequest, SubscribeEventsResponse>() {
+        @Override
+        public void beforeStart(ClientCallStreamObserver<GetEventGroupsRequest> requestStream) {
+          synchronized (UnifiedEventSubscription.this) {
+            if (mySubscription == subscription) {
+              myCall = requestStream;
+            }
+          }
+        }
+
+        @Override
+        public void onNext(SubscribeEventsResponse response) {
+          if (response.getSubscribed()) {
+            loadExistingEvents(subscription, loadFromNs, loaded);
+          }
+          else if (response.hasEvent()) {
+            addEvent(subscription, response.getEvent());
+          }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          deactivate(subscription);
+          loaded.set(false);
+        }
+
+        @Override
+        public void onCompleted() {
+          deactivate(subscription);
+          loaded.set(false);
+        }
+      });
+    return loaded;
+  }
+
+  public void stop() {
+    Object subscription;
+    synchronized (this) {
+      subscription = mySubscription;
+    }
+    if (subscription != null) {
+      cancel(subscription);
+    }
+  }
+
+  public synchronized boolean isActive() {
+    return mySubscription != null && myIsLoaded;
+  }
+
+  /**
+   * Returns the events in [fromNs, toNs], plus the last event before and the first event after the range, matching the range semantics
+   * of {@link TransportServiceGrpc.TransportServiceBlockingStub#getEventGroups}.
+   *
+   * @return the events, or null if the subscription is not active or older events of the range have been evicted.
+   */
+  @Nullable
+  public synchronized List<Common.Event> getEvents(long fromNs, long toNs) {
+    if (!isActive() || fromNs < myRetainedFromNs) {
+      return null;
+    }
+    int start = Math.max(lowerBound(fromNs) - 1, 0);
+    int end = toNs == Long.MAX_VALUE ? myEvents.size() : Math.min(lowerBound(toNs + 1) + 1, myEvents.size());
+    List<Common.Event> events = start >= end ? new ArrayList<>() : new ArrayList<>(myEvents.subList(start, end));
+    evictBefore(getRetainedFrom(fromNs, toNs));
+    return events;
+  }
+
+  /**
+   * @return the timestamp before which events are not needed to serve the given range and the ranges around it, or
+   * {@link Long#MIN_VALUE} if all events are.
+   */
+  private static long getRetainedFrom(long fromNs, long toNs) {
+    long spanNs = toNs == Long.MAX_VALUE ? 0 : toNs - fromNs;
+    long marginNs = spanNs < 0 ? Long.MAX_VALUE : Math.max(MIN_RETAINED_MARGIN_NS, spanNs);
+    return fromNs >= Long.MIN_VALUE + marginNs ? fromNs - marginNs : Long.MIN_VALUE;
+  }
+
+  /**
+   * Queries the events that existed before the subscription, from the given timestamp on, without blocking the gRPC thread that received
+   * the acknowledgement.
+   */
+  private void loadExistingEvents(@NotNull Object subscription, long loadFromNs, @NotNull SettableFuture<Boolean> loaded) {
+    // The datastore only applies a start timestamp above 0, and then also returns the last event before it.
+    GetEventGroupsRequest request = myFilter.toBuilder().setFromTimestamp(Math.max(loadFromNs, 0)).setToTimestamp(Long.MAX_VALUE).build();
+    TransportServiceGrpc.newStub(myClient.getChannel()).getEventGroups(request, new StreamObserver<GetEventGroupsResponse>() {
+      @Override
+      public void onNext(GetEventGroupsResponse response) {
+        List<Common.Event> existing = new ArrayList<>();
+        for (EventGroup group : response.getGroupsList()) {
+          existing.addAll(group.getEventsList());
+        }
+        existing.sort(Comparator.comparingLong(Common.Event::getTimestamp));
+        loaded.set(addExistingEvents(subscription, existing, loadFromNs));
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        // Keep serving queries the regular way, the subscription is of no use without the existing events.
+        cancel(subscription);
+        loaded.set(false);
+      }
+
+      @Override
+      public void onCompleted() {
+        // Only if the response was empty, otherwise the future has already been set.
+        loaded.set(false);
+      }
+    });
+  }
+
+  /**
+   * Merges the timestamp-ordered events returned by the initial query into the ones pushed since the acknowledgement.
+   *
+   * @return whether the events belong to the current subscription.
+   */
+  private synchronized boolean addExistingEvents(@NotNull Object subscription, @NotNull List<Common.Event> existing, long loadFromNs) {
+    if (mySubscription != subscription) {
+      return false;
+    }
+    List<Common.Event> merged = new ArrayList<>(existing.size() + myEvents.size());
+    int pushed = 0;
+    for (Common.Event event : existing) {
+      for (; pushed < myEvents.size() && myEvents.get(pushed).getTimestamp() < event.getTimestamp(); pushed++) {
+        addIfAbsent(merged, myEvents.get(pushed));
+      }
+      merged.add(event);
+    }
+    for (; pushed < myEvents.size(); pushed++) {
+      addIfAbsent(merged, myEvents.get(pushed));
+    }
+    myEvents.clear();
+    myEvents.addAll(merged);
+    myOverlapEndNs = existing.isEmpty() ? Long.MIN_VALUE : existing.get(existing.size() - 1).getTimestamp();
+    myRetainedFromNs = Math.max(myRetainedFromNs, loadFromNs > 0 ? loadFromNs : Long.MIN_VALUE);
+    myIsLoaded = true;
+    return true;
+  }
+
+  private synchronized void addEvent(@NotNull Object subscription, @NotNull Common.Event event) {
+    if (mySubscription != subscription) {
+      return;
+    }
+    // Only events as old as the newest event returned by the initial query can be duplicates. Events pushed before the query returned
+    // are deduplicated when its events are merged in.
+    if (myIsLoaded && event.getTimestamp() <= myOverlapEndNs &&
+        containsWithSameTimestamp(myEvents, lowerBound(event.getTimestamp() + 1), event)) {
+      return;
+    }
+    insertEvent(event);
+  }
+
+  /**
+   * Inserts an event after the ones with the same timestamp. Events are pushed in order, so this is an append in practice.
+   */
+  private void insertEvent(@NotNull Common.Event event) {
+    if (myEvents.isEmpty() || myEvents.get(myEvents.size() - 1).getTimestamp() <= event.getTimestamp()) {
+      myEvents.add(event);
+    }
+    else {
+      myEvents.add(lowerBound(event.getTimestamp() + 1), event);
+    }
+  }
+
+  /**
+   * Evicts the events before the given timestamp, except the last one, which still applies at that timestamp. The events are only
+   * removed once they make up a quarter of the events kept, so the cost of shifting the remaining ones is amortized.
+   */
+  private void evictBefore(long timestampNs) {
+    if (timestampNs <= myRetainedFromNs) {
+      return;
+    }
+    int evictable = lowerBound(timestampNs) - 1;
+    if (evictable <= 0 || evictable < myEvents.size() / 4) {
+      return;
+    }
+    myEvents.subList(0, evictable).clear();
+    myRetainedFromNs = timestampNs;
+  }
+
+  private void cancel(@NotNull Object subscription) {
+    ClientCallStreamObserver<GetEventGroupsRequest> call;
+    synchronized (this) {
+      if (mySubscription != subscription) {
+        return;
+      }
+      call = myCall;
+      reset();
+    }
+    if (call != null) {
+      call.cancel("Unsubscribed", null);
+    }
+  }
+
+  private synchronized void deactivate(@NotNull Object subscription) {
+    if (mySubscription == subscription) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    if (myLoaded != null) {
+      myLoaded.set(false);
+    }
+    mySubscription = null;
+    myLoaded = null;
+    myCall = null;
+    myIsLoaded = false;
+    myOverlapEndNs = Long.MAX_VALUE;
+    myRetainedFromNs = Long.MIN_VALUE;
+    myEvents.clear();
+  }
+
+  /**
+   * Appends a pushed event to the merged events, unless the initial query returned it too, which happens for events pushed between the
+   * acknowledgement and the query.
+   */
+  private static void addIfAbsent(@NotNull List<Common.Event> merged, @NotNull Common.Event event) {
+    if (!containsWithSameTimestamp(merged, merged.size(), event)) {
+      merged.add(event);
+    }
+  }
+
+  /**
+   * @return whether one of the events with the same timestamp as {@code event} right before {@code end} equals it.
+   */
+  private static boolean containsWithSameTimestamp(@NotNull List<Common.Event> events, int end, @NotNull Common.Event event) {
+    for (int i = end - 1; i >= 0 && events.get(i).getTimestamp() == event.getTimestamp(); i--) {
+      if (events.get(i).equals(event)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return index of the first event with a timestamp >= the given one.
+   */
+  private int lowerBound(long timestampNs) {
+    int low = 0;
+    int high = myEvents.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myEvents.get(mid).getTimestamp() < timestampNs) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
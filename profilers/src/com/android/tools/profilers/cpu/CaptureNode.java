@@ -20,12 +20,14 @@ import com.android.tools.adtui.model.filter.Filter;
 import com.android.tools.adtui.model.filter.FilterResult;
 import com.android.tools.perflib.vmtrace.ClockType;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class CaptureNode implements HNode<CaptureNode> {
+  private static final CaptureNode[] NO_CHILDREN = new CaptureNode[0];
 
   /**
    * Start time with GLOBAL clock.
@@ -47,8 +49,14 @@ public class CaptureNode implements HNode<CaptureNode> {
    */
   private long myEndThread;
 
+  /**
+   * Children are kept in a plain array, only allocated for nodes that have children, rather than in a list. Most nodes of a trace are
+   * leaves, and an empty ArrayList would add about 24 bytes to each of them, a third of the size of the node itself.
+   */
   @NotNull
-  protected final List<CaptureNode> myChildren;
+  private CaptureNode[] myChildren = NO_CHILDREN;
+
+  private int myChildCount;
 
   @NotNull
   private ClockType myClockType;
@@ -73,7 +81,6 @@ public class CaptureNode implements HNode<CaptureNode> {
   private final CaptureNodeModel myData;
 
   public CaptureNode(@NotNull CaptureNodeModel model) {
-    myChildren = new ArrayList<>();
     myClockType = ClockType.GLOBAL;
     myFilterType = FilterType.MATCH;
     myDepth = 0;
@@ -81,13 +88,27 @@ public class CaptureNode implements HNode<CaptureNode> {
   }
 
   public void addChild(CaptureNode node) {
-    myChildren.add(node);
+    appendChild(node);
     node.myParent = this;
   }
 
+  /**
+   * Adds a node to the children of this node, without changing its parent.
+   */
+  protected final void appendChild(@NotNull CaptureNode node) {
+    if (myChildCount == myChildren.length) {
+      myChildren = Arrays.copyOf(myChildren, Math.max(2, myChildCount + (myChildCount >> 1)));
+    }
+    myChildren[myChildCount++] = node;
+  }
+
+  /**
+   * @return a read-only view of the children of this node, created on each call. Tree walks should use {@link #getChildCount()} and
+   * {@link #getChildAt(int)} instead.
+   */
   @NotNull
   public List<CaptureNode> getChildren() {
-    return myChildren;
+    return myChildCount == 0 ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(myChildren).subList(0, myChildCount));
   }
 
   @NotNull
@@ -97,13 +118,16 @@ public class CaptureNode implements HNode<CaptureNode> {
 
   @Override
   public int getChildCount() {
-    return myChildren.size();
+    return myChildCount;
   }
 
   @NotNull
   @Override
   public CaptureNode getChildAt(int index) {
-    return myChildren.get(index);
+    if (index >= myChildCount) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + myChildCount);
+    }
+    return myChildren[index];
   }
 
   @Nullable
@@ -208,7 +232,8 @@ public class CaptureNode implements HNode<CaptureNode> {
     ++totalCount;
 
     boolean allChildrenUnmatch = true;
-    for (CaptureNode child : getChildren()) {
+    for (int i = 0; i < myChildCount; i++) {
+      CaptureNode child = myChildren[i];
       FilterResult result = child.applyFilter(filter, matches);
       matchCount += result.getMatchCount();
       totalCount += result.getTotalCount();
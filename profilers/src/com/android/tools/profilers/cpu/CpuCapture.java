@@ -169,8 +169,8 @@ public class CpuCapture implements ConfigurableDurationData {
       return;
     }
     node.setClockType(clockType);
-    for (CaptureNode child : node.getChildren()) {
-      updateClockType(child, clockType);
+    for (int i = 0; i < node.getChildCount(); i++) {
+      updateClockType(node.getChildAt(i), clockType);
     }
   }
 
@@ -73,6 +73,16 @@ public class CpuCaptureHandler implements Updatable, StatusPanelModel {
     return myConfiguration.getName();
   }
 
+  /**
+   * {@link StatusPanelModel} interface override.
+   * Returns the fraction of the trace parsed so far, unknown until the parser reports any progress, as not all of them do.
+   */
+  @Override
+  public double getProgress() {
+    double fraction = myCaptureParser.getParsingProgress().getFraction();
+    return fraction > 0 ? fraction : -1;
+  }
+
   /**
    * {@link StatusPanelModel} interface override.
    * Aborts the capture parser.
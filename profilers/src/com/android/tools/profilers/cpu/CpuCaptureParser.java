@@ -34,6 +34,7 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -83,6 +84,12 @@ public class CpuCaptureParser {
    */
   private boolean myIsParsing;
 
+  /**
+   * Progress of the parsing in progress, replaced every time a parsing starts. Aborting the parsing cancels it, which the parsers check.
+   */
+  @NotNull
+  private volatile TraceParsingProgress myParsingProgress = new TraceParsingProgress();
+
   /**
    * Unix epoch time when capture parsing started.
    */
@@ -149,6 +156,8 @@ public class CpuCaptureParser {
    * Abort every capture parsing that might still be in progress.
    */
   public void abortParsing() {
+    // Cancelling the futures doesn't interrupt the parsers, they stop when they notice the progress is cancelled.
+    myParsingProgress.cancel();
     myCaptures.forEach((id, capture) -> {
       boolean isCaptureCancelled = capture.cancel(true);
       if (!isCaptureCancelled) {
@@ -161,6 +170,14 @@ public class CpuCaptureParser {
     return myIsParsing;
   }
 
+  /**
+   * @return the progress of the current parsing, which parsers that support it update as they go.
+   */
+  @NotNull
+  public TraceParsingProgress getParsingProgress() {
+    return myParsingProgress;
+  }
+
   public long getParsingElapsedTimeMs() {
     return System.currentTimeMillis() - myParsingStartTimeMs;
   }
@@ -193,6 +210,7 @@ public class CpuCaptureParser {
   @VisibleForTesting // In order to be accessible from com.android.tools.profilers.cpu.capturedetails
   public void updateParsingStateWhenStarting() {
     myParsingStartTimeMs = System.currentTimeMillis();
+    myParsingProgress = new TraceParsingProgress();
     myIsParsing = true;
     myAspect.changed(CpuProfilerAspect.CAPTURE_PARSING);
   }
@@ -265,31 +283,41 @@ public class CpuCaptureParser {
   }
 
   private CompletableFuture<CpuCapture> createCaptureFuture(@NotNull File traceFile) {
+    TraceParsingProgress progress = myParsingProgress;
     CompletableFuture<CpuCapture> future =
-      CompletableFuture.supplyAsync(() -> tryParsingFileWithDifferentParsers(traceFile), myServices.getPoolExecutor());
+      CompletableFuture.supplyAsync(() -> tryParsingFileWithDifferentParsers(traceFile, progress), myServices.getPoolExecutor());
     return future;
   }
 
   /**
    * Try parsing a given {@link File} into a {@link CpuCapture} using {@link ArtTraceParser}, then {@link SimpleperfTraceParser}
    * (if simpleperf flag is enabled), then {@link AtraceParser} (if atrace flag is enabled). Return null if the file can't be parsed by any
-   * of them.
+   * of them. ART and simpleperf traces are parsed on all available cores.
    */
-  private CpuCapture tryParsingFileWithDifferentParsers(File traceFile) {
+  private CpuCapture tryParsingFileWithDifferentParsers(File traceFile, @NotNull TraceParsingProgress progress) {
+    int parallelism = Runtime.getRuntime().availableProcessors();
     try {
       // First try parsing the trace file as an ART trace.
-      ArtTraceParser artTraceParser = new ArtTraceParser();
+      ArtTraceParser artTraceParser = new ArtTraceParser(progress, parallelism);
       return artTraceParser.parse(traceFile, IMPORTED_TRACE_ID);
     }
+    catch (CancellationException e) {
+      // The user aborted the parsing, don't try other parsers.
+      throw e;
+    }
     catch (Exception ignored) {
       // We should go on and try parsing the file as a simpleperf or atrace trace.
     }
 
     try {
       // Then, try parsing the file as a simpleperf trace.
-      SimpleperfTraceParser simpleperfParser = new SimpleperfTraceParser();
+      progress.setFraction(0);
+      SimpleperfTraceParser simpleperfParser = new SimpleperfTraceParser(progress, parallelism);
       return simpleperfParser.parse(traceFile, IMPORTED_TRACE_ID);
     }
+    catch (CancellationException e) {
+      throw e;
+    }
     catch (Exception ignored) {
       // We should go on and try parsing the file as an atrace trace.
     }
@@ -450,6 +478,7 @@ public class CpuCaptureParser {
     CpuCaptureMetadata metadata = myCaptureMetadataMap.containsKey(traceId) ?
                                   myCaptureMetadataMap.get(traceId) : new CpuCaptureMetadata(new ProfilingConfiguration());
 
+    TraceParsingProgress progress = myParsingProgress;
     CompletableFuture<CpuCapture> future =
       CompletableFuture.supplyAsync(() -> {
         ByteString processedBytes = traceBytes;
@@ -459,7 +488,7 @@ public class CpuCaptureParser {
           metadata.setStatus(CpuCaptureMetadata.CaptureStatus.PREPROCESS_FAILURE);
           return null;
         }
-        return traceBytesToCapture(session, traceId, processedBytes, profilerType);
+        return traceBytesToCapture(session, traceId, processedBytes, profilerType, progress);
       }, myServices.getPoolExecutor())
         .thenApplyAsync(capture -> {
           if (metadata.getStatus() == CpuCaptureMetadata.CaptureStatus.PREPROCESS_FAILURE) {
@@ -473,16 +502,16 @@ public class CpuCaptureParser {
   }
 
   private CpuCapture traceBytesToCapture(@NotNull Common.Session session, long traceId, @NotNull ByteString traceData,
-                                         CpuTraceType profilerType) {
+                                         CpuTraceType profilerType, @NotNull TraceParsingProgress progress) {
     // TODO: Remove layers, analyze whether we can keep the whole file in memory.
     try {
       File trace = CpuCaptureStage.saveCapture(traceId, traceData);
       TraceParser parser;
       if (profilerType == CpuTraceType.ART) {
-        parser = new ArtTraceParser();
+        parser = new ArtTraceParser(progress, Runtime.getRuntime().availableProcessors());
       }
       else if (profilerType == CpuTraceType.SIMPLEPERF) {
-        parser = new SimpleperfTraceParser();
+        parser = new SimpleperfTraceParser(progress, Runtime.getRuntime().availableProcessors());
       }
       else if (profilerType == CpuTraceType.ATRACE) {
         parser = new AtraceParser(session.getPid());
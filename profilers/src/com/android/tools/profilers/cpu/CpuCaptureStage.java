@@ -102,21 +102,34 @@ public class CpuCaptureStage extends Stage<Timeline> {
       return trace;
     }
     catch (IOException io) {
-      throw new IllegalStateException("Unable to save trace to disk");
+      throw new IllegalStateException("Unable to save trace to disk", io);
     }
   }
 
+  /**
+   * Streams the trace to disk, so traces of any size can be loaded without holding them in memory.
+   */
   @Nullable
   private static File getAndSaveCapture(@NotNull StudioProfilers profilers, long traceId) {
     Transport.BytesRequest traceRequest = Transport.BytesRequest.newBuilder()
       .setStreamId(profilers.getSession().getStreamId())
       .setId(String.valueOf(traceId))
       .build();
-    Transport.BytesResponse traceResponse = profilers.getClient().getTransportClient().getBytes(traceRequest);
-    if (!traceResponse.getContents().isEmpty()) {
-      return saveCapture(traceId, traceResponse.getContents());
+    try {
+      File trace = FileUtil.createTempFile(String.format(Locale.US, "cpu_trace_%d", traceId), ".trace", true);
+      long written;
+      try (FileOutputStream out = new FileOutputStream(trace)) {
+        written = profilers.getClient().writeBytes(traceRequest, out);
+      }
+      if (written == 0) {
+        FileUtil.delete(trace);
+        return null;
+      }
+      return trace;
+    }
+    catch (IOException io) {
+      throw new IllegalStateException("Unable to save trace to disk", io);
     }
-    return null;
   }
 
   /**
@@ -22,6 +22,7 @@ import com.android.tools.adtui.model.StateChartModel;
 import com.android.tools.profilers.cpu.atrace.AtraceCpuCapture;
 import com.android.tools.profilers.cpu.atrace.CpuThreadSliceInfo;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 
@@ -67,12 +68,15 @@ public class CpuKernelModel extends DefaultListModel<CpuKernelModel.CpuState> {
   public class CpuState {
     private final int myCpuId;
     @NotNull
+    private final AtraceCpuCapture myCapture;
+    @NotNull
     private final AtraceDataSeries<CpuThreadSliceInfo> myAtraceCpuStateDataSeries;
     @NotNull
     private final StateChartModel<CpuThreadSliceInfo> myModel;
 
     public CpuState(int cpuId, @NotNull AtraceCpuCapture atraceCpuCapture) {
       myCpuId = cpuId;
+      myCapture = atraceCpuCapture;
       myModel = new StateChartModel<>();
       myAtraceCpuStateDataSeries = new AtraceDataSeries<>(atraceCpuCapture, capture -> capture.getCpuThreadSliceInfoStates(myCpuId));
       // TODO(b/122964201) Pass data range as 3rd param to RangedSeries to only show data from current session
@@ -92,5 +96,13 @@ public class CpuKernelModel extends DefaultListModel<CpuKernelModel.CpuState> {
     public StateChartModel<CpuThreadSliceInfo> getModel() {
       return myModel;
     }
+
+    /**
+     * @return the thread running on this cpu at the given time, or null if the cpu is idle.
+     */
+    @Nullable
+    public CpuThreadSliceInfo getThreadSliceInfoAt(long timeUs) {
+      return myCapture.getCpuThreadSliceInfoAt(myCpuId, timeUs);
+    }
   }
 }
@@ -40,7 +40,6 @@ import com.android.tools.profilers.sessions.SessionsManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -197,7 +196,6 @@ public class CpuProfiler extends StudioProfiler {
         .setStreamId(profilers.getSession().getStreamId())
         .setId(String.valueOf(info.getTraceId()))
         .build();
-      Transport.BytesResponse traceResponse = profilers.getClient().getTransportClient().getBytes(traceRequest);
 
       // Atrace Format = [HEADER|ZlibData][HEADER|ZlibData]
       // Systrace Expected format = [HEADER|ZlipData]
@@ -209,12 +207,12 @@ public class CpuProfiler extends StudioProfiler {
       if (info.getConfiguration().getUserOptions().getTraceType() == CpuTraceType.ATRACE) {
         File trace = FileUtil.createTempFile(String.format("cpu_trace_%d", info.getTraceId()), ".trace", true);
         try (FileOutputStream out = new FileOutputStream(trace)) {
-          out.write(traceResponse.getContents().toByteArray());
+          profilers.getClient().writeBytes(traceRequest, out);
         }
         AtraceExporter.export(trace, outputStream);
       }
       else {
-        FileUtil.copy(new ByteArrayInputStream(traceResponse.getContents().toByteArray()), outputStream);
+        profilers.getClient().writeBytes(traceRequest, outputStream);
       }
     }
     catch (IOException exception) {
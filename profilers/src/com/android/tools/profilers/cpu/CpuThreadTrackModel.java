@@ -32,13 +32,20 @@ import com.android.tools.profilers.cpu.capturedetails.CaptureDetails;
 import com.android.tools.profilers.cpu.capturedetails.CpuCaptureNodeTooltip;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
+import trebuchet.model.base.SliceGroup;
 
 /**
  * Track model for CPU threads in CPU capture stage. Consists of thread states and trace events.
  */
 public class CpuThreadTrackModel implements CpuAnalyzable<CpuThreadTrackModel> {
+  /**
+   * Number of the longest occurrences of a trace event listed in its tooltip.
+   */
+  private static final int LONGEST_OCCURRENCE_COUNT = 3;
+
   private final StateChartModel<CpuProfilerStage.ThreadState> myThreadStateChartModel;
   private final CaptureDetails.CallChart myCallChartModel;
   private final CpuCapture myCapture;
@@ -60,6 +67,19 @@ public class CpuThreadTrackModel implements CpuAnalyzable<CpuThreadTrackModel> {
         new AtraceDataSeries<>((AtraceCpuCapture)capture, atraceCapture -> atraceCapture.getThreadStatesForThread(threadInfo.getId()));
       myThreadStateChartModel.addSeries(new RangedSeries<>(range, threadStateDataSeries));
       myThreadStateTooltip.setThread(threadInfo.getName(), threadStateDataSeries);
+      myThreadStateTooltip.setTraceEventLookup(tooltipRange -> {
+        // The deepest trace events come last.
+        List<SliceGroup> slices = ((AtraceCpuCapture)capture).getTraceEventsOverlapping(threadInfo.getId(), tooltipRange);
+        return slices.isEmpty() ? null : slices.get(slices.size() - 1).getName();
+      });
+      myTraceEventTooltipBuilder = captureNode -> {
+        List<Long> longestUs = ((AtraceCpuCapture)capture)
+          .getLongestTraceEventDurationsUs(threadInfo.getId(), captureNode.getData().getName(), LONGEST_OCCURRENCE_COUNT);
+        return new CpuCaptureNodeTooltip(timeline, captureNode, longestUs);
+      };
+    }
+    else {
+      myTraceEventTooltipBuilder = captureNode -> new CpuCaptureNodeTooltip(timeline, captureNode);
     }
 
     myCallChartModel = new CaptureDetails.CallChart(range, Collections.singletonList(capture.getCaptureNode(threadInfo.getId())), capture);
@@ -67,8 +87,6 @@ public class CpuThreadTrackModel implements CpuAnalyzable<CpuThreadTrackModel> {
     mySelectionRange = range;
     myThreadInfo = threadInfo;
 
-    myTraceEventTooltipBuilder = captureNode -> new CpuCaptureNodeTooltip(timeline, captureNode);
-
     myMultiSelectionModel = multiSelectionModel;
   }
 
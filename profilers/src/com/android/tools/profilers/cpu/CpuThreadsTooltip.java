@@ -24,6 +24,7 @@ import com.android.tools.adtui.model.TooltipModel;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -39,6 +40,8 @@ public class CpuThreadsTooltip extends AspectModel<CpuThreadsTooltip.Aspect> imp
   @Nullable private DataSeries<CpuProfilerStage.ThreadState> mySeries;
   @Nullable private CpuProfilerStage.ThreadState myThreadState;
   private long myDurationUs;
+  @Nullable private Function<Range, String> myTraceEventLookup;
+  @Nullable private String myTraceEventName;
 
   public CpuThreadsTooltip(@NotNull Timeline timeline) {
     myTimeline = timeline;
@@ -53,12 +56,16 @@ public class CpuThreadsTooltip extends AspectModel<CpuThreadsTooltip.Aspect> imp
   private void updateThreadState() {
     myThreadState = null;
     myDurationUs = 0;
+    myTraceEventName = null;
     if (mySeries == null) {
       changed(Aspect.THREAD_STATE);
       return;
     }
 
     Range tooltipRange = myTimeline.getTooltipRange();
+    if (myTraceEventLookup != null && !tooltipRange.isEmpty()) {
+      myTraceEventName = myTraceEventLookup.apply(tooltipRange);
+    }
     // We could get data for [tooltipRange.getMin() - buffer, tooltipRange.getMin() - buffer],
     // However it is tricky to come up with the buffer duration, a thread state can be longer than any buffer.
     // So, lets get data what the user sees and extract the hovered state.
@@ -93,6 +100,14 @@ public class CpuThreadsTooltip extends AspectModel<CpuThreadsTooltip.Aspect> imp
     updateThreadState();
   }
 
+  /**
+   * @param traceEventLookup returns the name of the innermost trace event of the thread overlapping a range, or null if there is none.
+   */
+  public void setTraceEventLookup(@Nullable Function<Range, String> traceEventLookup) {
+    myTraceEventLookup = traceEventLookup;
+    updateThreadState();
+  }
+
   @Nullable
   public String getThreadName() {
     return myThreadName;
@@ -103,6 +118,11 @@ public class CpuThreadsTooltip extends AspectModel<CpuThreadsTooltip.Aspect> imp
     return myThreadState;
   }
 
+  @Nullable
+  public String getTraceEventName() {
+    return myTraceEventName;
+  }
+
   public long getDurationUs() {
     return myDurationUs;
   }
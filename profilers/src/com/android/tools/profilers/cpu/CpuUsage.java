@@ -17,18 +17,17 @@ package com.android.tools.profilers.cpu;
 
 import com.android.tools.adtui.model.DataSeries;
 import com.android.tools.adtui.model.LineChartModel;
+import com.android.tools.adtui.model.LongSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profilers.StudioProfilers;
-import com.android.tools.profilers.UnifiedEventDataSeries;
+import com.android.tools.profilers.UnifiedEventLongDataSeries;
 import com.android.tools.profilers.cpu.atrace.AtraceCpuCapture;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -53,13 +52,13 @@ public class CpuUsage extends LineChartModel {
     myCpuRange = new Range(0, 100);
     DataSeries<Long> series;
     if (profilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
-      series = new UnifiedEventDataSeries<>(
+      series = new UnifiedEventLongDataSeries(
         profilers.getClient().getTransportClient(),
         profilers.getSession().getStreamId(),
         profilers.getSession().getPid(),
         Common.Event.Kind.CPU_USAGE,
         profilers.getSession().getPid(),
-        events -> extractData(events, false));
+        (events, into) -> extractData(events, false, into));
       if (cpuCapture != null && cpuCapture.getType() == Cpu.CpuTraceType.ATRACE) {
         AtraceCpuCapture atraceCapture = (AtraceCpuCapture)cpuCapture;
         series = new MergeCaptureDataSeries<>(cpuCapture, series,
@@ -88,20 +87,26 @@ public class CpuUsage extends LineChartModel {
   }
 
   /**
-   * Extracts CPU usage percentage data from a list of {@link Common.Event}.
-   *
-   * @return a list of SeriesData containing CPU usage percentage.
+   * Extracts CPU usage percentage data from a list of {@link Common.Event} and adds it to {@code into}.
    */
-  protected static List<SeriesData<Long>> extractData(List<Common.Event> dataList, boolean isOtherProcess) {
-    return IntStream.range(0, dataList.size() - 1)
-      // Calculate CPU usage percentage from two adjacent CPU usage data.
-      .mapToObj(index -> getCpuUsageData(dataList.get(index).getCpuUsage(), dataList.get(index + 1).getCpuUsage(), isOtherProcess))
-      .collect(Collectors.toList());
+  protected static void extractData(List<Common.Event> dataList, boolean isOtherProcess, LongSeries into) {
+    // Calculate CPU usage percentage from two adjacent CPU usage data.
+    for (int i = 0; i < dataList.size() - 1; ++i) {
+      addCpuUsageData(dataList.get(i).getCpuUsage(), dataList.get(i + 1).getCpuUsage(), isOtherProcess, into);
+    }
   }
 
   // TODO: make private after LegacyCpuUsageDataSeries is deprecated.
+  protected static void addCpuUsageData(Cpu.CpuUsageData prevData, Cpu.CpuUsageData data, boolean isOtherProcess, LongSeries into) {
+    into.add(TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp()), getCpuUsage(prevData, data, isOtherProcess));
+  }
+
+  // TODO: remove after LegacyCpuUsageDataSeries is deprecated.
   protected static SeriesData<Long> getCpuUsageData(Cpu.CpuUsageData prevData, Cpu.CpuUsageData data, boolean isOtherProcess) {
-    long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp());
+    return new SeriesData<>(TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp()), getCpuUsage(prevData, data, isOtherProcess));
+  }
+
+  private static long getCpuUsage(Cpu.CpuUsageData prevData, Cpu.CpuUsageData data, boolean isOtherProcess) {
     long elapsed = (data.getElapsedTimeInMillisec() - prevData.getElapsedTimeInMillisec());
     // TODO: consider using raw data instead of percentage to improve efficiency.
     double app = 100.0 * (data.getAppCpuTimeInMillisec() - prevData.getAppCpuTimeInMillisec()) / elapsed;
@@ -115,6 +120,6 @@ public class CpuUsage extends LineChartModel {
     system = Math.max(0, Math.min(system, 100.0));
     app = Math.max(0, Math.min(app, system));
 
-    return new SeriesData<>(dataTimestamp, (long)(isOtherProcess ? system - app : app));
+    return (long)(isOtherProcess ? system - app : app);
   }
 }
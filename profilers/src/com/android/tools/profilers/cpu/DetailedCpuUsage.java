@@ -20,7 +20,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profilers.StudioProfilers;
-import com.android.tools.profilers.UnifiedEventDataSeries;
+import com.android.tools.profilers.UnifiedEventLongDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 public class DetailedCpuUsage extends CpuUsage {
@@ -39,13 +39,13 @@ public class DetailedCpuUsage extends CpuUsage {
     if (profilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
       long streamId = profilers.getSession().getStreamId();
       int pid = profilers.getSession().getPid();
-      others = new UnifiedEventDataSeries<>(
+      others = new UnifiedEventLongDataSeries(
         profilers.getClient().getTransportClient(),
         streamId,
         pid,
         Common.Event.Kind.CPU_USAGE,
         pid,
-        events -> extractData(events, true));
+        (events, into) -> extractData(events, true, into));
       threads = new CpuThreadCountDataSeries(profilers.getClient().getTransportClient(), streamId, pid);
     }
     else {
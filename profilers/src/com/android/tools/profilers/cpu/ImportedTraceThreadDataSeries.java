@@ -59,8 +59,8 @@ public final class ImportedTraceThreadDataSeries extends InMemoryDataSeries<CpuP
     }
     // Root is the special node representing the thread itself ranges from earliest data in root children to latest data in root children.
     // We're interested in seeing the activities of each root children instead.
-    List<CaptureNode> rootChildren = root.getChildren();
-    for (CaptureNode rootChild : rootChildren) {
+    for (int i = 0; i < root.getChildCount(); i++) {
+      CaptureNode rootChild = root.getChildAt(i);
       states.add(new SeriesData<>(rootChild.getStart(), CpuProfilerStage.ThreadState.HAS_ACTIVITY));
       states.add(new SeriesData<>(rootChild.getEnd(), CpuProfilerStage.ThreadState.NO_ACTIVITY));
     }
@@ -24,7 +24,8 @@ import java.util.List;
 
 /**
  * Implementers of this class should implement {@link #inMemoryDataList}, which should return all the {@link DataSeries} that would be
- * returned if {@link #getDataForRange(Range)} receives a range with maximum length.
+ * returned if {@link #getDataForRange(Range)} receives a range with maximum length. The data is sorted by x, so that the start of the range
+ * is binary searched.
  */
 abstract class InMemoryDataSeries<T> implements DataSeries<T> {
 
@@ -32,36 +33,52 @@ abstract class InMemoryDataSeries<T> implements DataSeries<T> {
   public List<SeriesData<T>> getDataForRange(Range range) {
     long min = (long)range.getMin();
     long max = (long)range.getMax();
-    List<SeriesData<T>> series = new ArrayList<>();
     List<SeriesData<T>> seriesDataList = inMemoryDataList();
     if (seriesDataList.isEmpty()) {
-      return series;
+      return new ArrayList<>();
     }
-    for (int i = 0; i < seriesDataList.size() - 1; i++) {
-      SeriesData<T> data = seriesDataList.get(i);
-      SeriesData<T> nextData = seriesDataList.get(i + 1);
-      // If our series overlaps with the start of the range upto excluding the end. We add the series.
-      if (data.x >= max) {
-        break;
+    // The series is the element just before the range, which still applies at its start, followed by the elements before its max. As the
+    // data is sorted, that is a contiguous part of the list, copied at once instead of element by element.
+    int from = Math.max(0, firstAfter(seriesDataList, min) - 1);
+    int to = Math.max(from, firstAtOrAfter(seriesDataList, max));
+    return new ArrayList<>(seriesDataList.subList(from, to));
+  }
+
+  /**
+   * @return the index of the first element of a list sorted by x whose x is greater than {@code x}, or the size of the list if there is none.
+   */
+  private static <T> int firstAfter(List<SeriesData<T>> seriesDataList, long x) {
+    int low = 0;
+    int high = seriesDataList.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (seriesDataList.get(mid).x <= x) {
+        low = mid + 1;
       }
-      // If our next series is greater than our min then we add our current element to the return set. This works because
-      // we want to add the element just before our range starts so checking the next element gives us that.
-      // After that point all elements will be greater than our min until our current element is > than our max in which case
-      // we break out of the loop.
-      if (nextData.x > min) {
-        series.add(data);
+      else {
+        high = mid;
       }
     }
-    SeriesData<T> lastElement = seriesDataList.get(seriesDataList.size() - 1);
-    // Always add the last element if it is less than the max.
-    if (lastElement.x < max) {
-      series.add(lastElement);
+    return low;
+  }
+
+  private static <T> int firstAtOrAfter(List<SeriesData<T>> seriesDataList, long x) {
+    int low = 0;
+    int high = seriesDataList.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (seriesDataList.get(mid).x < x) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
     }
-    return series;
+    return low;
   }
 
   /**
-   * Returns all the {@link SeriesData} stored in memory, to be filtered by range in {@link #getDataForRange(Range)}
+   * Returns all the {@link SeriesData} stored in memory, sorted by x, to be filtered by range in {@link #getDataForRange(Range)}
    */
   protected abstract List<SeriesData<T>> inMemoryDataList();
 }
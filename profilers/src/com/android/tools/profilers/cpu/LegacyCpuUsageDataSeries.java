@@ -15,23 +15,23 @@
  */
 package com.android.tools.profilers.cpu;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.LongDataSeries;
+import com.android.tools.adtui.model.LongSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.CpuProfiler.CpuDataRequest;
 import com.android.tools.profiler.proto.CpuProfiler.CpuDataResponse;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Legacy class responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
  */
-public class LegacyCpuUsageDataSeries implements DataSeries<Long> {
+public class LegacyCpuUsageDataSeries implements LongDataSeries {
   @NotNull
   private CpuServiceGrpc.CpuServiceBlockingStub myClient;
 
@@ -48,6 +48,26 @@ public class LegacyCpuUsageDataSeries implements DataSeries<Long> {
 
   @Override
   public List<SeriesData<Long>> getDataForRange(@NotNull Range timeCurrentRangeUs) {
+    CpuDataResponse response = getData(timeCurrentRangeUs);
+    List<SeriesData<Long>> seriesData = new ArrayList<>();
+    for (int i = 0; i < response.getDataCount() - 1; ++i) {
+      seriesData.add(CpuUsage.getCpuUsageData(response.getData(i), response.getData(i + 1), myIsOtherProcess));
+    }
+    return seriesData;
+  }
+
+  @Override
+  public void getDataForRange(@NotNull Range timeCurrentRangeUs, @NotNull LongSeries into) {
+    CpuDataResponse response = getData(timeCurrentRangeUs);
+    into.clear();
+    // Calculate CPU usage percentage from two adjacent CPU usage data.
+    for (int i = 0; i < response.getDataCount() - 1; ++i) {
+      CpuUsage.addCpuUsageData(response.getData(i), response.getData(i + 1), myIsOtherProcess, into);
+    }
+  }
+
+  @NotNull
+  private CpuDataResponse getData(@NotNull Range timeCurrentRangeUs) {
     // Get an extra padding on each side, to have a smooth rendering at the edges.
     // TODO: Change the CPU API to allow specifying this padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
@@ -55,10 +75,6 @@ public class LegacyCpuUsageDataSeries implements DataSeries<Long> {
       .setSession(mySession)
       .setStartTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()) - bufferNs)
       .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
-    CpuDataResponse response = myClient.getData(dataRequestBuilder.build());
-    return IntStream.range(0, response.getDataList().size() - 1)
-      // Calculate CPU usage percentage from two adjacent CPU usage data.
-      .mapToObj(index -> CpuUsage.getCpuUsageData(response.getData(index), response.getData(index + 1), myIsOtherProcess))
-      .collect(Collectors.toList());
+    return myClient.getData(dataRequestBuilder.build());
   }
 }
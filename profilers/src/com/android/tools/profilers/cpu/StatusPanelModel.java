@@ -34,6 +34,13 @@ public interface StatusPanelModel {
   @NotNull
   Range getRange();
 
+  /**
+   * @return The fraction of the operation done so far, between 0 and 1, or a negative value if it is not known.
+   */
+  default double getProgress() {
+    return -1;
+  }
+
   /**
    * A way for the user to cancel / stop the current running operation if they deem it takes to long.
    */
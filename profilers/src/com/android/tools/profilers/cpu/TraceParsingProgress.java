@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Shared between a {@link TraceParser} and the code waiting on it, so the parser can report how much of the trace it has processed and
+ * stop early once the parsing is aborted. Parsers may update it from several threads.
+ */
+public final class TraceParsingProgress {
+  private volatile double myFraction;
+  private volatile boolean myIsCancelled;
+
+  /**
+   * @return the fraction of the trace parsed so far, between 0 and 1.
+   */
+  public double getFraction() {
+    return myFraction;
+  }
+
+  public void setFraction(double fraction) {
+    myFraction = Math.max(0, Math.min(1, fraction));
+  }
+
+  public void cancel() {
+    myIsCancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return myIsCancelled;
+  }
+
+  /**
+   * Called by parsers at regular intervals to stop parsing once it is cancelled.
+   */
+  public void checkCancelled() {
+    if (myIsCancelled) {
+      throw new CancellationException("Trace parsing was cancelled.");
+    }
+  }
+}
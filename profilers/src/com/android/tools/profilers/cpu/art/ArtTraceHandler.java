@@ -20,19 +20,39 @@ import com.android.tools.perflib.vmtrace.TraceAction;
 import com.android.tools.perflib.vmtrace.VmTraceHandler;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.TraceParsingProgress;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class ArtTraceHandler implements VmTraceHandler {
   private static final String MAIN_THREAD_NAME = "main";
   private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
+  /**
+   * Number of method actions between checks for cancellation.
+   */
+  private static final int CANCELLATION_CHECK_INTERVAL = 1 << 16;
+  private static final TraceAction[] TRACE_ACTIONS = TraceAction.values();
+  /**
+   * Fraction of the progress reached once all method actions are read, the rest is building the call trees.
+   */
+  static final double ACTIONS_READ_PROGRESS = 0.5;
+
+  @NotNull private final TraceParsingProgress myProgress;
+  private final int myParallelism;
   private long myStartTimeUs;
   private long myElapsedTimeUs;
 
@@ -47,13 +67,28 @@ public class ArtTraceHandler implements VmTraceHandler {
   private final Map<Long, CaptureNodeModel> myMethods = new HashMap<>();
 
   /**
-   * Map from thread id to per thread stack call constructor.
+   * Map from thread id to the method actions of the thread, in the order they were read. The call trees of the threads are independent,
+   * so they are only built once the whole trace is read, in parallel.
    */
-  private final Map<Integer, CaptureNodeConstructor> myNodeConstructors = new HashMap<>();
+  private final Map<Integer, ThreadActions> myThreadActions = new HashMap<>();
+
+  private int myActionCount;
 
   @Nullable
   private Map<CpuThreadInfo, CaptureNode> myThreadsGraph;
 
+  public ArtTraceHandler() {
+    this(new TraceParsingProgress(), Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param parallelism number of threads the call trees of the threads are built with.
+   */
+  public ArtTraceHandler(@NotNull TraceParsingProgress progress, int parallelism) {
+    myProgress = progress;
+    myParallelism = parallelism;
+  }
+
   @Override
   public void addThread(int id, String name) {
     myThreads.put(id, name);
@@ -77,13 +112,15 @@ public class ArtTraceHandler implements VmTraceHandler {
       myMethods.put(methodId, new SingleNameModel("unknown"));
     }
 
-    CaptureNodeConstructor constructor = myNodeConstructors.get(threadId);
-    if (constructor == null) {
-      CaptureNodeModel topLevelModel = createUniqueMethodForThread(threadId);
-      constructor = new CaptureNodeConstructor(topLevelModel);
-      myNodeConstructors.put(threadId, constructor);
+    ThreadActions actions = myThreadActions.get(threadId);
+    if (actions == null) {
+      actions = new ThreadActions(createUniqueMethodForThread(threadId));
+      myThreadActions.put(threadId, actions);
+    }
+    actions.add(myMethods.get(methodId), methodAction, threadTime, globalTime);
+    if (++myActionCount % CANCELLATION_CHECK_INTERVAL == 0) {
+      myProgress.checkCancelled();
     }
-    constructor.addTraceAction(myMethods.get(methodId), methodAction, threadTime, globalTime);
   }
 
   private CaptureNodeModel createUniqueMethodForThread(int threadId) {
@@ -104,30 +141,65 @@ public class ArtTraceHandler implements VmTraceHandler {
 
   @NotNull
   private Map<CpuThreadInfo, CaptureNode> createThreadsGraph() {
-    Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(myThreads.size());
-
+    List<CpuThreadInfo> threads = new ArrayList<>(myThreadActions.size());
+    List<ForkJoinTask<CaptureNode>> tasks = new ArrayList<>(myThreadActions.size());
+    AtomicInteger builtCount = new AtomicInteger();
     for (Map.Entry<Integer, String> entry : myThreads.entrySet()) {
       final int id = entry.getKey();
       final String name = entry.getValue();
 
-      CaptureNodeConstructor constructor = myNodeConstructors.get(id);
-      if (constructor == null) {
+      ThreadActions actions = myThreadActions.get(id);
+      if (actions == null) {
         continue;
       }
 
-      CaptureNode topLevelCall = constructor.getTopLevel();
-      assert topLevelCall != null;
-      CpuThreadInfo info = new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME));
-
-      long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
-      adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart);
+      threads.add(new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME)));
+      tasks.add(ForkJoinTask.adapt(() -> {
+        CaptureNode topLevelCall = buildCallTree(actions);
+        myProgress.setFraction(ACTIONS_READ_PROGRESS +
+                               (1 - ACTIONS_READ_PROGRESS) * builtCount.incrementAndGet() / myThreadActions.size());
+        return topLevelCall;
+      }));
+    }
 
-      threadsGraph.put(info, topLevelCall);
+    ForkJoinPool pool = new ForkJoinPool(myParallelism);
+    try {
+      pool.invoke(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          invokeAll(tasks);
+        }
+      });
+    }
+    finally {
+      pool.shutdown();
     }
 
+    Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(threads.size());
+    for (int i = 0; i < threads.size(); i++) {
+      threadsGraph.put(threads.get(i), tasks.get(i).join());
+    }
     return threadsGraph;
   }
 
+  @NotNull
+  private CaptureNode buildCallTree(@NotNull ThreadActions actions) {
+    CaptureNodeConstructor constructor = new CaptureNodeConstructor(actions.myTopLevelModel);
+    for (int i = 0; i < actions.mySize; i++) {
+      constructor.addTraceAction(actions.myModels[i], TRACE_ACTIONS[actions.myActions[i]],
+                                 actions.myThreadTimes[i], actions.myGlobalTimes[i]);
+      if (i % CANCELLATION_CHECK_INTERVAL == 0) {
+        myProgress.checkCancelled();
+      }
+    }
+
+    CaptureNode topLevelCall = constructor.getTopLevel();
+    assert topLevelCall != null;
+    long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
+    adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart);
+    return topLevelCall;
+  }
+
   /**
    * Adjusts global and thread time from relative to absolute time and the depth of nodes.
    */
@@ -148,8 +220,8 @@ public class ArtTraceHandler implements VmTraceHandler {
       current.setStartThread(topLevelStart + current.getStartThread());
       current.setEndThread(topLevelStart + current.getEndThread());
 
-      for (CaptureNode callee : current.getChildren()) {
-        stack.push(callee);
+      for (int i = 0; i < current.getChildCount(); i++) {
+        stack.push(current.getChildAt(i));
       }
     }
   }
@@ -178,4 +250,35 @@ public class ArtTraceHandler implements VmTraceHandler {
   public void setVersion(int version) {
     // We don't need this information
   }
+
+  /**
+   * The method actions of a thread, stored in parallel arrays as traces can hold hundreds of millions of them.
+   */
+  private static final class ThreadActions {
+    @NotNull private final CaptureNodeModel myTopLevelModel;
+    @NotNull private CaptureNodeModel[] myModels = new CaptureNodeModel[16];
+    @NotNull private byte[] myActions = new byte[16];
+    @NotNull private int[] myThreadTimes = new int[16];
+    @NotNull private int[] myGlobalTimes = new int[16];
+    private int mySize;
+
+    private ThreadActions(@NotNull CaptureNodeModel topLevelModel) {
+      myTopLevelModel = topLevelModel;
+    }
+
+    private void add(@NotNull CaptureNodeModel model, @NotNull TraceAction action, int threadTime, int globalTime) {
+      if (mySize == myModels.length) {
+        int capacity = mySize * 2;
+        myModels = Arrays.copyOf(myModels, capacity);
+        myActions = Arrays.copyOf(myActions, capacity);
+        myThreadTimes = Arrays.copyOf(myThreadTimes, capacity);
+        myGlobalTimes = Arrays.copyOf(myGlobalTimes, capacity);
+      }
+      myModels[mySize] = model;
+      myActions[mySize] = (byte)action.ordinal();
+      myThreadTimes[mySize] = threadTime;
+      myGlobalTimes[mySize] = globalTime;
+      mySize++;
+    }
+  }
 }
@@ -22,21 +22,37 @@ import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.TraceParser;
+import com.android.tools.profilers.cpu.TraceParsingProgress;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * Receives a binary trace file generated by using ART and parse it into a {@link CpuCapture}
  */
 public class ArtTraceParser implements TraceParser {
 
-  private final ArtTraceHandler myTraceHandler = new ArtTraceHandler();
+  @NotNull private final TraceParsingProgress myProgress;
+  private final ArtTraceHandler myTraceHandler;
+
+  public ArtTraceParser() {
+    this(new TraceParsingProgress(), Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param parallelism number of threads the call trees of the trace threads are built with.
+   */
+  public ArtTraceParser(@NotNull TraceParsingProgress progress, int parallelism) {
+    myProgress = progress;
+    myTraceHandler = new ArtTraceHandler(progress, parallelism);
+  }
 
   @Override
   public CpuCapture parse(File trace, long traceId) throws IOException {
     VmTraceParser parser = new VmTraceParser(trace, myTraceHandler);
     parser.parse();
+    myProgress.setFraction(ArtTraceHandler.ACTIONS_READ_PROGRESS);
     return new CpuCapture(this, traceId, Cpu.CpuTraceType.ART);
   }
 
@@ -16,16 +16,22 @@
 package com.android.tools.profilers.cpu.atrace;
 
 import com.android.annotations.NonNull;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuProfilerStage;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import trebuchet.model.CpuProcessSlice;
 import trebuchet.model.ProcessModel;
+import trebuchet.model.base.SliceGroup;
+import trebuchet.queries.SliceIndex;
 
 public class AtraceCpuCapture extends CpuCapture {
   @NonNull
@@ -37,6 +43,18 @@ public class AtraceCpuCapture extends CpuCapture {
   @NonNull
   private final List<SeriesData<Long>> myCpuUtilizationSeries;
 
+  @NonNull
+  private final Map<Integer, SliceIndex<CpuProcessSlice>> myCpuSliceIndices;
+
+  @NonNull
+  private final Map<Integer, SliceIndex<SliceGroup>> myThreadSliceIndices;
+
+  @NonNull
+  private final Function<Long, Double> myMonoUsToBootClockSeconds;
+
+  @NonNull
+  private final Function<Double, Long> myBootClockSecondsToMonoUs;
+
   private final int myRenderThreadId;
   private final boolean myIsMissingData;
 
@@ -49,6 +67,10 @@ public class AtraceCpuCapture extends CpuCapture {
     myThreadStateDataSeries = parser.getThreadStateDataSeries();
     myCpuThreadSliceInfoStates = parser.getCpuThreadSliceInfoStates();
     myCpuUtilizationSeries = parser.getCpuUtilizationSeries();
+    myCpuSliceIndices = parser.getCpuSliceIndices();
+    myThreadSliceIndices = parser.getThreadSliceIndices();
+    myMonoUsToBootClockSeconds = parser.convertToBootTimeSecondsFunction();
+    myBootClockSecondsToMonoUs = parser.convertToUserTimeUsFunction();
 
     myRenderThreadId = parser.getRenderThreadId();
     myIsMissingData = parser.isMissingData();
@@ -77,6 +99,57 @@ public class AtraceCpuCapture extends CpuCapture {
     return myCpuThreadSliceInfoStates.getOrDefault(cpu, new ArrayList<>());
   }
 
+  /**
+   * @param cpu    The cpu index to look the slice up in.
+   * @param timeUs mono clock time, as used by the UI.
+   * @return The {@link CpuThreadSliceInfo} of the thread running on the cpu at the given time, or null if the cpu is idle. Unlike
+   * {@link #getCpuThreadSliceInfoStates(int)}, the slices of the cpu are binary searched instead of filtered by range.
+   */
+  @Nullable
+  public CpuThreadSliceInfo getCpuThreadSliceInfoAt(int cpu, long timeUs) {
+    SliceIndex<CpuProcessSlice> index = myCpuSliceIndices.get(cpu);
+    CpuProcessSlice slice = index == null ? null : index.sliceAt(myMonoUsToBootClockSeconds.apply(timeUs));
+    if (slice == null) {
+      return null;
+    }
+    long durationUs = myBootClockSecondsToMonoUs.apply(slice.getEndTime()) - myBootClockSecondsToMonoUs.apply(slice.getStartTime());
+    return new CpuThreadSliceInfo(slice.getThreadId(), slice.getThreadName(), slice.getId(), slice.getName(), durationUs);
+  }
+
+  /**
+   * @param threadId Thread Id of the thread to look the trace events up in.
+   * @param rangeUs  mono clock range, as used by the UI, inclusive of its min and max.
+   * @return The trace events of the thread overlapping the given range, by depth then by start time.
+   */
+  @NotNull
+  public List<SliceGroup> getTraceEventsOverlapping(int threadId, @NotNull Range rangeUs) {
+    SliceIndex<SliceGroup> index = myThreadSliceIndices.get(threadId);
+    if (index == null) {
+      return Collections.emptyList();
+    }
+    return index.overlapping(myMonoUsToBootClockSeconds.apply((long)rangeUs.getMin()),
+                             myMonoUsToBootClockSeconds.apply((long)rangeUs.getMax()));
+  }
+
+  /**
+   * @param threadId Thread Id of the thread to look the trace events up in.
+   * @param name     Name of the trace events.
+   * @param count    Maximum number of durations to return.
+   * @return The durations, in micro seconds, of the {@code count} longest trace events of the thread with the given name, longest first.
+   */
+  @NotNull
+  public List<Long> getLongestTraceEventDurationsUs(int threadId, @NotNull String name, int count) {
+    SliceIndex<SliceGroup> index = myThreadSliceIndices.get(threadId);
+    if (index == null) {
+      return Collections.emptyList();
+    }
+    List<Long> durationsUs = new ArrayList<>();
+    for (SliceGroup slice : index.longest(name, count)) {
+      durationsUs.add(myBootClockSecondsToMonoUs.apply(slice.getEndTime()) - myBootClockSecondsToMonoUs.apply(slice.getStartTime()));
+    }
+    return durationsUs;
+  }
+
   /**
    * @return Cpu Utilization data series. This data series is computed from each core
    */
@@ -61,6 +61,9 @@ public final class AtraceExporter {
       deflaterOutputStream.flush();
     } catch (IOException ex) {
       throw new IOException("Failed to export atrace file.", ex);
+    } finally {
+      // Releases the trace file read by the producer.
+      buffer.close();
     }
   }
 }
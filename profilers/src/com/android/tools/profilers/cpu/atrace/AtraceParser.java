@@ -26,6 +26,7 @@ import com.android.tools.profilers.cpu.nodemodel.AtraceNodeModel;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -41,6 +42,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import trebuchet.importers.ImportFeedback;
 import trebuchet.model.CpuModel;
 import trebuchet.model.CpuProcessSlice;
 import trebuchet.model.Model;
@@ -48,6 +50,7 @@ import trebuchet.model.ProcessModel;
 import trebuchet.model.SchedSlice;
 import trebuchet.model.ThreadModel;
 import trebuchet.model.base.SliceGroup;
+import trebuchet.queries.SliceIndex;
 import trebuchet.task.ImportTask;
 import trebuchet.util.PrintlnImportFeedback;
 
@@ -100,6 +103,16 @@ public class AtraceParser implements TraceParser {
    */
   private final List<SeriesData<Long>> myCpuUtilizationSeries;
 
+  /**
+   * Map between CPU id, and the index of the slices of that CPU, answering time lookups without walking them.
+   */
+  private final Map<Integer, SliceIndex<CpuProcessSlice>> myCpuSliceIndices;
+
+  /**
+   * Map between thread id, and the index of the slices of that thread, answering time and name lookups without walking them.
+   */
+  private final Map<Integer, SliceIndex<SliceGroup>> myThreadSliceIndices;
+
   private int myProcessId;
   /**
    * The device boot time captured at the beginning of the trace.
@@ -131,6 +144,8 @@ public class AtraceParser implements TraceParser {
     myThreadStateData = new HashMap<>();
     myCpuSchedulingToCpuData = new HashMap<>();
     myCpuUtilizationSeries = new ArrayList<>();
+    myCpuSliceIndices = new HashMap<>();
+    myThreadSliceIndices = new HashMap<>();
   }
 
   @Override
@@ -168,8 +183,13 @@ public class AtraceParser implements TraceParser {
         throw new IOException("Failed to parse file: " + file.getAbsolutePath());
       }
 
-      ImportTask task = new ImportTask(new PrintlnImportFeedback());
-      myModel = task.importBuffer(producer);
+      ReadFailureImportFeedback feedback = new ReadFailureImportFeedback();
+      ImportTask task = new ImportTask(feedback);
+      Model model = task.importBuffer(producer);
+      if (feedback.getReadFailure() != null) {
+        throw new IOException("Failed to read file: " + file.getAbsolutePath(), feedback.getReadFailure());
+      }
+      myModel = model;
       // We check if we have a parent timestamp. If not this could be from an imported trace.
       // In the case it is 0, we use the first timestamp of our capture as a reference point.
       if (Double.compare(myModel.getParentTimestamp(), 0.0) == 0) {
@@ -299,6 +319,16 @@ public class AtraceParser implements TraceParser {
     return myCpuUtilizationSeries;
   }
 
+  @NotNull
+  public Map<Integer, SliceIndex<CpuProcessSlice>> getCpuSliceIndices() {
+    return myCpuSliceIndices;
+  }
+
+  @NotNull
+  public Map<Integer, SliceIndex<SliceGroup>> getThreadSliceIndices() {
+    return myThreadSliceIndices;
+  }
+
   public int getRenderThreadId() {
     return findRenderThreadId(myProcessModel);
   }
@@ -320,6 +350,7 @@ public class AtraceParser implements TraceParser {
         CaptureNode node = populateCaptureNode(slice, 1);
         root.addChild(node);
       }
+      myThreadSliceIndices.put(thread.getId(), SliceIndex.of(thread));
     }
   }
 
@@ -411,6 +442,7 @@ public class AtraceParser implements TraceParser {
       // We are done with this Cpu so we add a null process at the end to properly render this segment.
       processList.add(new SeriesData<>(convertToUserTimeUs(myModel.getEndTimestamp()), CpuThreadSliceInfo.NULL_THREAD));
       myCpuSchedulingToCpuData.put(cpu.getId(), processList);
+      myCpuSliceIndices.put(cpu.getId(), SliceIndex.of(cpu));
     }
 
     // When we have finished processing all CPUs the utilization series contains the total time each CPU spent in each bucket.
@@ -456,12 +488,23 @@ public class AtraceParser implements TraceParser {
   }
 
   // This provides a function that implements convertToUserTimeUs, without holding into the myModel object for the begin timestamp reference.
-  private Function<Double, Long> convertToUserTimeUsFunction() {
+  @NotNull
+  Function<Double, Long> convertToUserTimeUsFunction() {
     double beginTimestamp = myModel.getBeginTimestamp();
     double monoTimeAtBeginningSeconds = myMonoTimeAtBeginningSeconds;
     return timestampInSeconds -> (long)secondsToUs((timestampInSeconds - beginTimestamp) + monoTimeAtBeginningSeconds);
   }
 
+  /**
+   * The inverse of {@link #convertToUserTimeUsFunction()}, converting mono clock micros back to the boot clock seconds of the slices.
+   */
+  @NotNull
+  Function<Long, Double> convertToBootTimeSecondsFunction() {
+    double beginTimestamp = myModel.getBeginTimestamp();
+    double monoTimeAtBeginningSeconds = myMonoTimeAtBeginningSeconds;
+    return timestampUs -> timestampUs / 1000000.0 - monoTimeAtBeginningSeconds + beginTimestamp;
+  }
+
   /**
    * Returns the best assumed name for a process. It does this by first getting the process name.
    * If the process does not have a name it looks at each thread and if it finds one with the id
@@ -497,4 +540,31 @@ public class AtraceParser implements TraceParser {
     return Arrays.stream(getProcessList(SURFACE_FLINGER_PROCESS_NAME)).findFirst()
       .map(threadInfo -> myModel.getProcesses().get(threadInfo.getProcessId())).orElse(null);
   }
-}
\ No newline at end of file
+
+  /**
+   * Prints import problems like {@link PrintlnImportFeedback}, and keeps the first failure to read the trace. Trebuchet only reports it
+   * and stops reading, so it is rethrown once the import is done instead of returning a model missing the rest of the trace.
+   */
+  private static final class ReadFailureImportFeedback implements ImportFeedback {
+    @NotNull private final ImportFeedback myDelegate = new PrintlnImportFeedback();
+    @Nullable private IOException myReadFailure;
+
+    @Override
+    public void reportImportWarning(@NotNull String warning) {
+      myDelegate.reportImportWarning(warning);
+    }
+
+    @Override
+    public synchronized void reportImportException(@NotNull Throwable exception) {
+      if (exception instanceof UncheckedIOException && myReadFailure == null) {
+        myReadFailure = ((UncheckedIOException)exception).getCause();
+      }
+      myDelegate.reportImportException(exception);
+    }
+
+    @Nullable
+    synchronized IOException getReadFailure() {
+      return myReadFailure;
+    }
+  }
+}
@@ -16,12 +16,15 @@
 package com.android.tools.profilers.cpu.atrace;
 
 import com.android.tools.idea.protobuf.ByteString;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import trebuchet.io.BufferProducer;
 import trebuchet.io.DataSlice;
+import trebuchet.io.MappedFile;
+import trebuchet.io.MappedFileProducer;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -46,8 +49,13 @@ public class AtraceProducer implements TrebuchetBufferProducer {
   private boolean myIsFinished = false;
   private Queue<String> myLineQueue = new LinkedList<>();
   private String myLastPartialLine = "";
-  private InputStream myInputStream;
+  /**
+   * The compressed trace, read directly from its mapping in memory, and the part of it that hasn't been read yet.
+   */
+  private MappedFileProducer myInput;
+  private DataSlice myInputChunk = new DataSlice();
   private Inflater myInflater;
+  private final int mySegmentSize;
 
   /**
    * The TRACE:\n header comes from atrace when it dumps data to disk. Each compressed chunk starts with this.
@@ -59,12 +67,22 @@ public class AtraceProducer implements TrebuchetBufferProducer {
   }
 
   public AtraceProducer() {
+    this(MappedFile.DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * @param segmentSize the size of the segments the trace file is mapped as.
+   */
+  @VisibleForTesting
+  AtraceProducer(int segmentSize) {
+    mySegmentSize = segmentSize;
   }
 
   @Override
   public boolean parseFile(File file) {
     try {
-      myInputStream = new FileInputStream(file);
+      myInput = new MappedFileProducer(file, mySegmentSize);
+      myInputChunk = new DataSlice();
       myInflater = new Inflater();
 
       // Read the initial header of the input file.
@@ -74,6 +92,9 @@ public class AtraceProducer implements TrebuchetBufferProducer {
       return true;
     } catch (IOException ex) {
       getLogger().error(ex);
+      if (myInput != null) {
+        myInput.close();
+      }
       return false;
     }
   }
@@ -111,7 +132,33 @@ public class AtraceProducer implements TrebuchetBufferProducer {
   private int fillInputBuffer() throws IOException {
     shift(myInputBuffer, myInputBufferOffset, 0, myInputBuffer.length - myInputBufferOffset);
     myInputBufferOffset = myInputBuffer.length - myInputBufferOffset;
-    return myInputStream.read(myInputBuffer, myInputBufferOffset, myInputBuffer.length - myInputBufferOffset);
+    return readInput(myInputBuffer, myInputBufferOffset, myInputBuffer.length - myInputBufferOffset);
+  }
+
+  /**
+   * Copies up to {@code length} bytes of the mapped input to {@code buffer}, like {@link InputStream#read(byte[], int, int)}.
+   *
+   * @return the number of bytes copied, or -1 at the end of the input.
+   */
+  private int readInput(byte[] buffer, int offset, int length) {
+    if (!hasRemainingInput()) {
+      return length == 0 ? 0 : -1;
+    }
+    int read = Math.min(length, myInputChunk.getLength());
+    System.arraycopy(myInputChunk.getBuffer(), myInputChunk.getStartIndex(), buffer, offset, read);
+    myInputChunk.setStartIndex(myInputChunk.getStartIndex() + read);
+    return read;
+  }
+
+  private boolean hasRemainingInput() {
+    while (myInputChunk.getLength() == 0) {
+      DataSlice next = myInput.next();
+      if (next == null) {
+        return false;
+      }
+      myInputChunk = next;
+    }
+    return true;
   }
 
   /**
@@ -156,9 +203,8 @@ public class AtraceProducer implements TrebuchetBufferProducer {
       if (myInflater.finished()) {
         // If we have no more input then we are at the end of the file, and have nothing left to
         // decompress.
-        if (myInputStream.available() == 0) {
+        if (!hasRemainingInput()) {
           myIsFinished = true;
-          myInputStream.close();
           myLineQueue.add(myLastPartialLine);
           myLastPartialLine = "";
           break;
@@ -208,17 +254,13 @@ public class AtraceProducer implements TrebuchetBufferProducer {
   }
 
   /**
-   * Required by {@link BufferProducer}, closes the streams held by the decompressor.
+   * Required by {@link BufferProducer}, closes the streams held by the decompressor and releases the mapping of the trace file.
    */
   @Override
   public void close() {
-    try {
-      myInflater.end();
-      myInputStream.close();
-    }
-    catch (IOException ex) {
-      getLogger().warn(ex);
-    }
+    myInflater.end();
+    myInputChunk = new DataSlice();
+    myInput.close();
   }
 
   /**
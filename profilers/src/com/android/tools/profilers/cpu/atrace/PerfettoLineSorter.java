@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This class takes lines converted from {@link PerfettoTrace.FtraceEventBundle}s and returns them sorted by timestamp.
+ * This is done because the bundles come in out of order, as well as the lines within a bundle are out of order.
+ * The lines are sorted with an external merge sort, so that traces larger than the heap can be imported: lines are buffered until they
+ * reach a bounded amount of memory, then sorted and written to a temporary file as a run. Once all lines have been added, the class is
+ * reset for iteration and the iterator merges the runs, returning individual lines. Lines with the same timestamp are returned in the order
+ * they were added.
+ */
+public class PerfettoLineSorter implements Iterator<String> {
+  /**
+   * Default bound of the memory used by the lines being buffered.
+   */
+  private static final long DEFAULT_MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+  /**
+   * Approximate size of a buffered line, excluding its characters: the line object, the string and the headers of their arrays.
+   */
+  private static final int LINE_OVERHEAD_BYTES = 64;
+  private static final int RUN_BUFFER_SIZE = 64 * 1024;
+  private static final Comparator<Line> TIMESTAMP_COMPARATOR = Comparator.comparingLong(line -> line.myTimestamp);
+
+  private final long myMaxBufferedBytes;
+  @NotNull private final List<Line> myBuffer = new ArrayList<>();
+  private long myBufferedBytes = 0;
+  /**
+   * The runs written to disk, in the order the lines were added.
+   */
+  @NotNull private final List<FileRun> myFileRuns = new ArrayList<>();
+  /**
+   * The runs being merged, by the timestamp of their next line then by the order of the runs. Null until {@link #resetForIterator()}.
+   */
+  @Nullable private PriorityQueue<Run> myMergedRuns;
+
+  public PerfettoLineSorter() {
+    this(DEFAULT_MAX_BUFFERED_BYTES);
+  }
+
+  @VisibleForTesting
+  public PerfettoLineSorter(long maxBufferedBytes) {
+    myMaxBufferedBytes = maxBufferedBytes;
+  }
+
+  /**
+   * As a trace file is loaded each line converted from its events should be added to the sorter.
+   *
+   * @throws IOException if the buffered lines can't be written to disk. Keeping them in memory instead could exhaust the heap.
+   */
+  public void addLine(long timestamp, @NotNull String line) throws IOException {
+    myBuffer.add(new Line(timestamp, line));
+    myBufferedBytes += LINE_OVERHEAD_BYTES + 2L * line.length();
+    if (myBufferedBytes >= myMaxBufferedBytes) {
+      myBuffer.sort(TIMESTAMP_COMPARATOR);
+      myFileRuns.add(FileRun.write(myFileRuns.size(), myBuffer));
+      myBuffer.clear();
+      myBufferedBytes = 0;
+    }
+  }
+
+  /**
+   * This function should be called when we want to finalize this class for writing and enable it for reading.
+   * The lines still buffered are sorted, and merged with the runs written to disk.
+   *
+   * @throws IOException if a run written to disk can't be read back.
+   */
+  public void resetForIterator() throws IOException {
+    myBuffer.sort(TIMESTAMP_COMPARATOR);
+    myMergedRuns = new PriorityQueue<>(Math.max(1, myFileRuns.size() + 1),
+                                       Comparator.<Run>comparingLong(run -> run.myHead.myTimestamp).thenComparingInt(run -> run.myIndex));
+    for (FileRun run : myFileRuns) {
+      run.open();
+      addToMerge(run);
+    }
+    addToMerge(new BufferRun(myFileRuns.size(), myBuffer));
+  }
+
+  /**
+   * Close the files of the runs, delete them and free resources.
+   */
+  public void close() {
+    for (FileRun run : myFileRuns) {
+      run.close();
+    }
+    // Reset to the initial state.
+    myFileRuns.clear();
+    myBuffer.clear();
+    myBufferedBytes = 0;
+    myMergedRuns = null;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return myMergedRuns != null && !myMergedRuns.isEmpty();
+  }
+
+  /**
+   * @throws UncheckedIOException if a run written to disk can't be read back, as the rest of the lines can't be returned in order.
+   */
+  @Override
+  @NotNull
+  public String next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Run run = myMergedRuns.poll();
+    String line = run.myHead.myLine;
+    try {
+      addToMerge(run);
+    }
+    catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return line;
+  }
+
+  /**
+   * Moves a run to its next line, and adds it to the runs being merged unless it is exhausted.
+   */
+  private void addToMerge(@NotNull Run run) throws IOException {
+    assert myMergedRuns != null;
+    if (run.advance()) {
+      myMergedRuns.add(run);
+    }
+  }
+
+  private static final class Line {
+    private final long myTimestamp;
+    @NotNull private final String myLine;
+
+    private Line(long timestamp, @NotNull String line) {
+      myTimestamp = timestamp;
+      myLine = line;
+    }
+  }
+
+  /**
+   * Lines sorted by timestamp, read one at a time.
+   */
+  private abstract static class Run {
+    /**
+     * The position of the run in the order the lines were added.
+     */
+    private final int myIndex;
+    private Line myHead;
+
+    private Run(int index) {
+      myIndex = index;
+    }
+
+    /**
+     * Reads the next line of the run into {@link #myHead}.
+     *
+     * @return false if there are no more lines.
+     */
+    final boolean advance() throws IOException {
+      myHead = readNext();
+      return myHead != null;
+    }
+
+    @Nullable
+    abstract Line readNext() throws IOException;
+  }
+
+  private static final class BufferRun extends Run {
+    @NotNull private final Iterator<Line> myLines;
+
+    private BufferRun(int index, @NotNull List<Line> lines) {
+      super(index);
+      myLines = lines.iterator();
+    }
+
+    @Nullable
+    @Override
+    Line readNext() {
+      return myLines.hasNext() ? myLines.next() : null;
+    }
+  }
+
+  /**
+   * A run written to a temporary file, as its timestamps each followed by the length and the UTF-8 bytes of its line.
+   */
+  private static final class FileRun extends Run {
+    @NotNull private final File myFile;
+    private final int myLineCount;
+    @Nullable private DataInputStream myInput;
+    private int myReadCount = 0;
+
+    private FileRun(int index, @NotNull File file, int lineCount) {
+      super(index);
+      myFile = file;
+      myLineCount = lineCount;
+    }
+
+    @NotNull
+    static FileRun write(int index, @NotNull List<Line> lines) throws IOException {
+      File file = FileUtil.createTempFile("perfetto", ".run", true);
+      try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), RUN_BUFFER_SIZE))) {
+        for (Line line : lines) {
+          byte[] bytes = line.myLine.getBytes(StandardCharsets.UTF_8);
+          output.writeLong(line.myTimestamp);
+          output.writeInt(bytes.length);
+          output.write(bytes);
+        }
+      }
+      catch (IOException ex) {
+        FileUtil.delete(file);
+        throw ex;
+      }
+      return new FileRun(index, file, lines.size());
+    }
+
+    void open() throws IOException {
+      myInput = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile), RUN_BUFFER_SIZE));
+    }
+
+    @Nullable
+    @Override
+    Line readNext() throws IOException {
+      if (myInput == null || myReadCount == myLineCount) {
+        return null;
+      }
+      long timestamp = myInput.readLong();
+      byte[] bytes = new byte[myInput.readInt()];
+      myInput.readFully(bytes);
+      myReadCount++;
+      return new Line(timestamp, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    void close() {
+      if (myInput != null) {
+        try {
+          myInput.close();
+        }
+        catch (IOException ignored) { }
+        finally { myInput = null; }
+      }
+      FileUtil.delete(myFile);
+    }
+  }
+}
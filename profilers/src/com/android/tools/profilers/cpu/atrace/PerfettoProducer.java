@@ -21,9 +21,11 @@ import com.android.tools.idea.protobuf.ExtensionRegistryLite;
 import com.google.common.base.Charsets;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.util.containers.Predicate;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
@@ -32,6 +34,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import perfetto.protos.PerfettoTrace;
 import trebuchet.io.DataSlice;
+import trebuchet.io.MappedFile;
 
 /**
  * This class converts perfetto traces to {@link DataSlice} objects. The {@link DataSlice} objects are then used by the
@@ -51,7 +54,7 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
 
   // Maps thread id to thread group id. A tgid is the thread id at the root of the tree. This is also known as the PID in user space.
   private final ArrayDeque<String> myGeneratedTrebuchetLines = new ArrayDeque<>();
-  private final PerfettoPacketDBSorter mySorter = new PerfettoPacketDBSorter();
+  private final PerfettoLineSorter mySorter = new PerfettoLineSorter();
 
   private static double nanosToSeconds(double nanos) {
     return nanos / TimeUnit.SECONDS.toNanos(1);
@@ -68,11 +71,10 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
    * @return true if one {@link PerfettoTrace.TracePacket} was able to be read from the file.
    */
   public static boolean verifyFileHasPerfettoTraceHeader(@NotNull File file) {
-    try {
-      CodedInputStream inputStream = CodedInputStream.newInstance(new FileInputStream(file));
+    try (TraceInput input = new TraceInput(file)) {
       ExtensionRegistryLite packetRegistry = ExtensionRegistryLite.newInstance();
       PerfettoTrace.registerAllExtensions(packetRegistry);
-      PerfettoTrace.TracePacket packet = readOnePacket(inputStream, packetRegistry);
+      PerfettoTrace.TracePacket packet = readOnePacket(input.myStream, packetRegistry);
       // If we can load 1 packet then we assume this is a perfetto file.
       return packet != null;
     }
@@ -82,6 +84,33 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
     }
   }
 
+  /**
+   * A trace opened so that packets are decoded directly from its mapping in memory, unless it's too large to be mapped at once. Closing it
+   * releases the mapping, or the stream.
+   */
+  private static final class TraceInput implements Closeable {
+    @NotNull private final CodedInputStream myStream;
+    @NotNull private final Closeable myResource;
+
+    private TraceInput(@NotNull File file) throws IOException {
+      if (file.length() > Integer.MAX_VALUE) {
+        FileInputStream stream = new FileInputStream(file);
+        myStream = CodedInputStream.newInstance(stream);
+        myResource = stream;
+      }
+      else {
+        MappedFile mappedFile = new MappedFile(file, MappedFile.DEFAULT_SEGMENT_SIZE);
+        myStream = CodedInputStream.newInstance(mappedFile.getSegmentCount() == 0 ? ByteBuffer.allocate(0) : mappedFile.segment(0));
+        myResource = mappedFile;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      myResource.close();
+    }
+  }
+
   /**
    * Helper function for reading one packet from the {@link PerfettoTrace.Trace} proto.
    * We read one proto this way because reading the full {@link PerfettoTrace.Trace} requires us to store each
@@ -151,49 +180,51 @@ public class PerfettoProducer implements TrebuchetBufferProducer {
     // map threads to processes.
     ExtensionRegistryLite packetRegistry = ExtensionRegistryLite.newInstance();
     PerfettoTrace.registerAllExtensions(packetRegistry);
-    CodedInputStream inputStream = CodedInputStream.newInstance(new FileInputStream(file));
     PerfettoTrace.TracePacket packet;
-    while ((packet = readOnePacket(inputStream, packetRegistry)) != null) {
-      if (packet.hasFtraceEvents()) {
-        PerfettoTrace.FtraceEventBundle bundle = packet.getFtraceEvents();
-        for (PerfettoTrace.FtraceEvent event : bundle.getEventList()) {
-          if (!event.hasSchedSwitch()) {
-            continue;
+    try (TraceInput input = new TraceInput(file)) {
+      while ((packet = readOnePacket(input.myStream, packetRegistry)) != null) {
+        if (packet.hasFtraceEvents()) {
+          PerfettoTrace.FtraceEventBundle bundle = packet.getFtraceEvents();
+          for (PerfettoTrace.FtraceEvent event : bundle.getEventList()) {
+            if (!event.hasSchedSwitch()) {
+              continue;
+            }
+            PerfettoTrace.SchedSwitchFtraceEvent schedSwitch = event.getSchedSwitch();
+            myTidToName.putIfAbsent(schedSwitch.getPrevPid(), schedSwitch.getPrevComm());
+            myTidToName.putIfAbsent(schedSwitch.getNextPid(), schedSwitch.getNextComm());
           }
-          PerfettoTrace.SchedSwitchFtraceEvent schedSwitch = event.getSchedSwitch();
-          myTidToName.putIfAbsent(schedSwitch.getPrevPid(), schedSwitch.getPrevComm());
-          myTidToName.putIfAbsent(schedSwitch.getNextPid(), schedSwitch.getNextComm());
-        }
-      }
-      else if (packet.hasProcessTree()) {
-        PerfettoTrace.ProcessTree processTree = packet.getProcessTree();
-        for (PerfettoTrace.ProcessTree.Process process : processTree.getProcessesList()) {
-          // Main threads will have the same pid as tgid.
-          myTidToTgid.putIfAbsent(process.getPid(), process.getPid());
         }
-        for (PerfettoTrace.ProcessTree.Thread thread : processTree.getThreadsList()) {
-          myTidToTgid.putIfAbsent(thread.getTid(), thread.getTgid());
-          if (thread.hasName()) {
-            myTidToName.putIfAbsent(thread.getTid(), thread.getName());
+        else if (packet.hasProcessTree()) {
+          PerfettoTrace.ProcessTree processTree = packet.getProcessTree();
+          for (PerfettoTrace.ProcessTree.Process process : processTree.getProcessesList()) {
+            // Main threads will have the same pid as tgid.
+            myTidToTgid.putIfAbsent(process.getPid(), process.getPid());
+          }
+          for (PerfettoTrace.ProcessTree.Thread thread : processTree.getThreadsList()) {
+            myTidToTgid.putIfAbsent(thread.getTid(), thread.getTgid());
+            if (thread.hasName()) {
+              myTidToName.putIfAbsent(thread.getTid(), thread.getName());
+            }
           }
         }
-      }
-      else if (packet.hasClockSnapshot() && clockSyncPacket == null) {
-        // We only want the first clock sync packet.
-        clockSyncPacket = packet;
+        else if (packet.hasClockSnapshot() && clockSyncPacket == null) {
+          // We only want the first clock sync packet.
+          clockSyncPacket = packet;
+        }
       }
     }
 
     LineFormatter formatter = new LineFormatter(myTidToTgid, myTidToName);
 
     // Do a second pass on the file now that we have all thread names do a second pass on the file to generate the lines for trebuchet.
-    inputStream = CodedInputStream.newInstance(new FileInputStream(file));
-    while ((packet = readOnePacket(inputStream, packetRegistry)) != null) {
-      if (packet.hasFtraceEvents()) {
-        PerfettoTrace.FtraceEventBundle bundle = packet.getFtraceEvents();
-        for(PerfettoTrace.FtraceEvent event : bundle.getEventList())
-        if (IS_SUPPORTED_EVENT.apply(event)) {
-          mySorter.addLine(event.getTimestamp(), formatter.formatLine(event, bundle.getCpu()));
+    try (TraceInput input = new TraceInput(file)) {
+      while ((packet = readOnePacket(input.myStream, packetRegistry)) != null) {
+        if (packet.hasFtraceEvents()) {
+          PerfettoTrace.FtraceEventBundle bundle = packet.getFtraceEvents();
+          for(PerfettoTrace.FtraceEvent event : bundle.getEventList())
+          if (IS_SUPPORTED_EVENT.apply(event)) {
+            mySorter.addLine(event.getTimestamp(), formatter.formatLine(event, bundle.getCpu()));
+          }
         }
       }
     }
@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu.atrace;
 import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
 import trebuchet.model.base.SliceGroup;
+import trebuchet.queries.SliceIndex;
 
 import java.util.List;
 import java.util.function.Function;
@@ -113,21 +114,25 @@ public final class SliceStream {
                                                         @NotNull Pattern pattern,
                                                         @NotNull Range range,
                                                         Function<SliceGroup, EnumerationResult> action) {
-    for (SliceGroup slice : sliceGroups) {
-      if (slice.getStartTime() <= range.getMax() && slice.getEndTime() >= range.getMin()) {
-        boolean skipChildren = false;
-        if (pattern.matcher(slice.getName()).matches()) {
-          EnumerationResult continueResult = action.apply(slice);
-          if (continueResult == EnumerationResult.TERMINATE) {
-            return continueResult;
-          }
-          skipChildren = continueResult == EnumerationResult.SKIP_CHILDREN;
+    // Sibling slices don't overlap, so they are sorted by both start and end time, and the first one overlapping the range can be
+    // binary searched.
+    for (int i = SliceIndex.firstEndingAfter(sliceGroups, range.getMin()); i < sliceGroups.size(); i++) {
+      SliceGroup slice = sliceGroups.get(i);
+      if (slice.getStartTime() > range.getMax()) {
+        break;
+      }
+      boolean skipChildren = false;
+      if (pattern.matcher(slice.getName()).matches()) {
+        EnumerationResult continueResult = action.apply(slice);
+        if (continueResult == EnumerationResult.TERMINATE) {
+          return continueResult;
         }
-        if (!skipChildren) {
-          EnumerationResult result = forEachMatchingSlice(slice.getChildren(), pattern, range, action);
-          if (result == EnumerationResult.TERMINATE) {
-            return result;
-          }
+        skipChildren = continueResult == EnumerationResult.SKIP_CHILDREN;
+      }
+      if (!skipChildren) {
+        EnumerationResult result = forEachMatchingSlice(slice.getChildren(), pattern, range, action);
+        if (result == EnumerationResult.TERMINATE) {
+          return result;
         }
       }
     }
@@ -57,8 +57,8 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
         allNodes.add(curNode);
       }
       // Adding in reverse order so that the first child is processed first
-      for (int i = curNode.getChildren().size() - 1; i >= 0; --i) {
-        stack.add(curNode.getChildren().get(i));
+      for (int i = curNode.getChildCount() - 1; i >= 0; --i) {
+        stack.add(curNode.getChildAt(i));
       }
     }
 
@@ -163,8 +163,8 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
       }
 
       self += getIntersection(range, node, ClockType.GLOBAL);
-      for (CaptureNode child : node.getChildren()) {
-        self -= getIntersection(range, child, ClockType.GLOBAL);
+      for (int i = 0; i < node.getChildCount(); i++) {
+        self -= getIntersection(range, node.getChildAt(i), ClockType.GLOBAL);
       }
     }
 
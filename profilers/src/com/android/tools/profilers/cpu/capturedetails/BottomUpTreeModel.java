@@ -47,6 +47,8 @@ public class BottomUpTreeModel extends CpuTreeModel<BottomUpNode> {
     if (treeChanged) {
       getAspect().changed(Aspect.TREE_MODEL);
     }
+    // Keeps the loaded children in sync with the range from now on.
+    super.expand(node);
   }
 
   private void loadChildren(@NotNull DefaultMutableTreeNode node) {
@@ -18,15 +18,28 @@ package com.android.tools.profilers.cpu.capturedetails;
 import com.android.tools.adtui.model.Timeline;
 import com.android.tools.adtui.model.TooltipModel;
 import com.android.tools.profilers.cpu.CaptureNode;
+import java.util.Collections;
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
 
 public class CpuCaptureNodeTooltip implements TooltipModel {
   @NotNull private final Timeline myTimeline;
   @NotNull private final CaptureNode myCaptureNode;
+  @NotNull private final List<Long> myLongestOccurrenceDurationsUs;
 
   public CpuCaptureNodeTooltip(@NotNull Timeline timeline, @NotNull CaptureNode captureNode) {
+    this(timeline, captureNode, Collections.emptyList());
+  }
+
+  /**
+   * @param longestOccurrenceDurationsUs durations of the longest occurrences of the node's event in its thread, longest first.
+   */
+  public CpuCaptureNodeTooltip(@NotNull Timeline timeline,
+                               @NotNull CaptureNode captureNode,
+                               @NotNull List<Long> longestOccurrenceDurationsUs) {
     myTimeline = timeline;
     myCaptureNode = captureNode;
+    myLongestOccurrenceDurationsUs = longestOccurrenceDurationsUs;
   }
 
   @NotNull
@@ -38,4 +51,9 @@ public class CpuCaptureNodeTooltip implements TooltipModel {
   public CaptureNode getCaptureNode() {
     return myCaptureNode;
   }
+
+  @NotNull
+  public List<Long> getLongestOccurrenceDurationsUs() {
+    return myLongestOccurrenceDurationsUs;
+  }
 }
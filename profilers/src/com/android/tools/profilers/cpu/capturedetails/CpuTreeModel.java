@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 import com.android.tools.adtui.model.AspectModel;
 import com.android.tools.adtui.model.AspectObserver;
 import com.android.tools.adtui.model.Range;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,6 +44,10 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
   private final AspectObserver myAspectObserver;
   private final AspectModel<Aspect> myAspectModel;
   private final boolean myIsRootNodeIdValid;
+  /**
+   * Nodes that have been expanded at least once. The root is always considered expanded, as it's either hidden or expanded by default.
+   */
+  private final Set<DefaultMutableTreeNode> myExpandedNodes = new HashSet<>();
 
   public CpuTreeModel(@NotNull Range range, @NotNull T node) {
     super(new DefaultMutableTreeNode(node));
@@ -51,6 +56,7 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
     myCurrentRange = new Range();
     myAspectModel = new AspectModel<>();
     myAspectObserver = new AspectObserver();
+    myExpandedNodes.add((DefaultMutableTreeNode)getRoot());
     myRange.addDependency(myAspectObserver).onChange(Range.Aspect.RANGE, this::rangeChanged);
     rangeChanged();
   }
@@ -95,33 +101,84 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
     T data = (T)node.getUserObject();
 
     if (changes(data, ranges)) {
-      Enumeration e = node.children();
-      Map<T, DefaultMutableTreeNode> children = new HashMap<>();
-      while (e.hasMoreElements()) {
-        DefaultMutableTreeNode child = (DefaultMutableTreeNode)e.nextElement();
-        children.put((T)child.getUserObject(), child);
+      if (isVisible(node)) {
+        updateChildren(node, range, ranges);
       }
-      Set<T> actual = new HashSet<>();
-      for (T child : data.getChildren()) {
-        if (child.inRange(range)) {
-          actual.add(child);
-          DefaultMutableTreeNode existing = children.get(child);
-          if (existing == null) {
-            existing = new DefaultMutableTreeNode(child);
-            insertNodeInto(existing, node, node.getChildCount());
-          }
-          update(existing, range, ranges);
-        } else {
-          child.reset();
+      data.update(range);
+      nodeChanged(node);
+    }
+  }
+
+  /**
+   * Only the children of visible nodes, i.e the root and the children of expanded nodes, are kept in sync with the range. They're
+   * needed to know whether a node can be expanded, while their own children are only built once the node is expanded.
+   */
+  private boolean isVisible(@NotNull DefaultMutableTreeNode node) {
+    DefaultMutableTreeNode parent = (DefaultMutableTreeNode)node.getParent();
+    return parent == null || myExpandedNodes.contains(parent);
+  }
+
+  /**
+   * @return true if any child was added to or removed from {@param node}.
+   */
+  private boolean updateChildren(DefaultMutableTreeNode node, Range range, List<Range> ranges) {
+    T data = (T)node.getUserObject();
+    boolean treeChanged = false;
+
+    Enumeration e = node.children();
+    Map<T, DefaultMutableTreeNode> children = new HashMap<>();
+    while (e.hasMoreElements()) {
+      DefaultMutableTreeNode child = (DefaultMutableTreeNode)e.nextElement();
+      children.put((T)child.getUserObject(), child);
+    }
+    Set<T> actual = new HashSet<>();
+    for (T child : data.getChildren()) {
+      if (child.inRange(range)) {
+        actual.add(child);
+        DefaultMutableTreeNode existing = children.get(child);
+        if (existing == null) {
+          existing = new DefaultMutableTreeNode(child);
+          insertNodeInto(existing, node, node.getChildCount());
+          treeChanged = true;
         }
+        update(existing, range, ranges);
+      } else {
+        child.reset();
       }
-      for (Map.Entry<T, DefaultMutableTreeNode> entry : children.entrySet()) {
-        if (!actual.contains(entry.getKey())) {
-          removeNodeFromParent(entry.getValue());
-        }
+    }
+    for (Map.Entry<T, DefaultMutableTreeNode> entry : children.entrySet()) {
+      if (!actual.contains(entry.getKey())) {
+        removeNodeFromParent(entry.getValue());
+        forgetExpandedNodes(entry.getValue());
+        treeChanged = true;
       }
-      data.update(range);
-      nodeChanged(node);
+    }
+    return treeChanged;
+  }
+
+  private void forgetExpandedNodes(@NotNull DefaultMutableTreeNode removed) {
+    Enumeration e = removed.breadthFirstEnumeration();
+    while (e.hasMoreElements()) {
+      myExpandedNodes.remove(e.nextElement());
+    }
+  }
+
+  /**
+   * Builds the children of the children of {@param node}, as they're about to become visible.
+   */
+  public void expand(@NotNull DefaultMutableTreeNode node) {
+    if (!myExpandedNodes.add(node)) {
+      // The subtree is already kept in sync with the range.
+      return;
+    }
+
+    List<Range> ranges = Collections.singletonList(myRange);
+    boolean treeChanged = false;
+    for (int i = 0; i < node.getChildCount(); ++i) {
+      treeChanged |= updateChildren((DefaultMutableTreeNode)node.getChildAt(i), myRange, ranges);
+    }
+    if (treeChanged) {
+      myAspectModel.changed(Aspect.TREE_MODEL);
     }
   }
 
@@ -134,6 +191,4 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
     T data = (T)((DefaultMutableTreeNode)getRoot()).getUserObject();
     return data.getGlobalTotal() == 0;
   }
-
-  abstract void expand(@NotNull DefaultMutableTreeNode node);
 }
@@ -91,7 +91,8 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
     for (CaptureNode node : myNodes) {
       myGlobalTotal += getIntersection(range, node, ClockType.GLOBAL);
       myThreadTotal += getIntersection(range, node, ClockType.THREAD);
-      for (CaptureNode child : node.getChildren()) {
+      for (int i = 0; i < node.getChildCount(); i++) {
+        CaptureNode child = node.getChildAt(i);
         myGlobalChildrenTotal += getIntersection(range, child, ClockType.GLOBAL);
         myThreadChildrenTotal += getIntersection(range, child, ClockType.THREAD);
       }
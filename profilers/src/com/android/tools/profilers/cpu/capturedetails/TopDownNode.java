@@ -19,6 +19,8 @@ import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -29,22 +31,45 @@ import java.util.TreeMap;
 public class TopDownNode extends CpuTreeNode<TopDownNode> {
   private static final String INVALID_ID = "";
 
+  private boolean myChildrenBuilt;
+
   public TopDownNode(@NotNull CaptureNode node) {
     super(node.getData() == null ? INVALID_ID : node.getData().getId());
     addNode(node);
+  }
 
-    // We're adding unmatched children separately, because we don't want to merge unmatched with matched,
-    // i.e all merged children should have the same {@link CaptureNode.FilterType}.
-    addChildren(node, false);
-    addChildren(node, true);
+  /**
+   * The children are merged on first access, so that only the parts of the tree that are actually visited, e.g expanded in the UI,
+   * are built.
+   */
+  @Override
+  public List<TopDownNode> getChildren() {
+    if (!myChildrenBuilt) {
+      myChildrenBuilt = true;
+      buildChildren();
+    }
+    return super.getChildren();
+  }
+
+  private void buildChildren() {
+    // We use a separate map for unmatched children, because we can not merge unmatched with matched,
+    // i.e all merged children should have the same {@link CaptureNode.FilterType};
+    Map<String, TopDownNode> children = new HashMap<>();
+    Map<String, TopDownNode> unmatchedChildren = new HashMap<>();
+    for (CaptureNode node : getNodes()) {
+      addChildren(node, false, children);
+      addChildren(node, true, unmatchedChildren);
+    }
   }
 
   /**
-   * Adds children of {@param node} whose filter type matches to the flag {@param unmatched}.
+   * Adds children of {@param node} whose filter type matches to the flag {@param unmatched}, merging them with the ones in
+   * {@param merged} that have the same id.
    */
-  private void addChildren(@NotNull CaptureNode node, boolean unmatched) {
+  private void addChildren(@NotNull CaptureNode node, boolean unmatched, @NotNull Map<String, TopDownNode> merged) {
     Map<String, TopDownNode> children = new TreeMap<>();
-    for (CaptureNode child : node.getChildren()) {
+    for (int i = 0; i < node.getChildCount(); i++) {
+      CaptureNode child = node.getChildAt(i);
       assert child.getData() != null;
 
       if (unmatched != child.isUnmatched()) {
@@ -52,46 +77,22 @@ public class TopDownNode extends CpuTreeNode<TopDownNode> {
       }
 
       TopDownNode prev = children.get(child.getData().getId());
-      TopDownNode other = new TopDownNode(child);
       if (prev == null) {
-        children.put(child.getData().getId(), other);
-        addChild(other);
+        children.put(child.getData().getId(), new TopDownNode(child));
       }
       else {
-        prev.merge(other);
+        prev.addNode(child);
       }
     }
-  }
-
-  private void merge(TopDownNode other) {
-    addNodes(other.getNodes());
-
-    // We use a separate map for unmatched children, because we can not merge unmatched with matched,
-    // i.e all merged children should have the same {@link CaptureNode.FilterType};
-    Map<String, TopDownNode> children = new TreeMap<>();
-    Map<String, TopDownNode> unmatchedChildren = new TreeMap<>();
 
-    for (TopDownNode child : getChildren()) {
-      if (child.isUnmatched()) {
-        unmatchedChildren.put(child.getId(), child);
-      } else {
-        children.put(child.getId(), child);
-      }
-    }
-
-    for (TopDownNode otherChild : other.getChildren()) {
-      TopDownNode existing;
-
-      if (otherChild.isUnmatched()) {
-        existing = unmatchedChildren.get(otherChild.getId());
-      } else {
-        existing = children.get(otherChild.getId());
-      }
-      if (existing != null) {
-        existing.merge(otherChild);
+    for (TopDownNode child : children.values()) {
+      TopDownNode existing = merged.get(child.getId());
+      if (existing == null) {
+        merged.put(child.getId(), child);
+        addChild(child);
       }
       else {
-        addChild(otherChild);
+        existing.addNodes(child.getNodes());
       }
     }
   }
@@ -18,14 +18,8 @@ package com.android.tools.profilers.cpu.capturedetails;
 import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
 
-import javax.swing.tree.DefaultMutableTreeNode;
-
 public class TopDownTreeModel extends CpuTreeModel<TopDownNode> {
   public TopDownTreeModel(@NotNull Range range, @NotNull TopDownNode node) {
     super(range, node);
   }
-
-  @Override
-  void expand(@NotNull DefaultMutableTreeNode node) {
-  }
 }
@@ -16,12 +16,14 @@
 package com.android.tools.profilers.cpu.simpleperf;
 
 import com.android.tools.adtui.model.Range;
+import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profiler.proto.SimpleperfReport;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.TraceParser;
+import com.android.tools.profilers.cpu.TraceParsingProgress;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.NoSymbolModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
@@ -31,17 +33,27 @@ import com.intellij.openapi.diagnostic.Logger;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Parses a trace file obtained using simpleperf to a map threadId -> {@link CaptureNode}.
@@ -65,6 +77,30 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private static final String DATA_APP_DIR = "/data/app";
 
+  /**
+   * Number of records decoded by a single parsing task, large enough to amortize the cost of scheduling the tasks.
+   */
+  private static final int RECORD_BATCH_SIZE = 4096;
+
+  /**
+   * Fractions of the progress reached once the records are located in the trace file and once they are decoded. The rest is building the
+   * call trees.
+   */
+  private static final double RECORDS_LOCATED_PROGRESS = 0.1;
+  private static final double RECORDS_DECODED_PROGRESS = 0.6;
+
+  @NotNull private final TraceParsingProgress myProgress;
+
+  /**
+   * Number of threads the records are decoded, and the call trees of the trace threads are built with.
+   */
+  private final int myParallelism;
+
+  /**
+   * Runs the parallel phases of a parse, which share it. Created on first use, and shut down once {@link #parse} completes.
+   */
+  @Nullable private ForkJoinPool myPool;
+
   /**
    * Version of the trace file to be parsed. Should be obtained from the file itself.
    */
@@ -90,6 +126,12 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private final Map<CpuThreadInfo, CaptureNode> myCaptureTrees;
 
+  /**
+   * Models of the call chain entries seen so far. Each sample creates nodes for the entries that differ from the previous sample of its
+   * thread, so the same models would otherwise be created over and over again.
+   */
+  private final Map<ModelKey, CaptureNodeModel> myModels = new ConcurrentHashMap<>();
+
   /**
    * Number of samples read from trace file.
    */
@@ -119,9 +161,16 @@ public class SimpleperfTraceParser implements TraceParser {
   private String myAppDataFolderPrefix;
 
   public SimpleperfTraceParser() {
+    this(new TraceParsingProgress(), Runtime.getRuntime().availableProcessors());
+  }
+
+  public SimpleperfTraceParser(@NotNull TraceParsingProgress progress, int parallelism) {
+    myProgress = progress;
+    myParallelism = parallelism;
     myFiles = new HashMap<>();
     mySamples = new ArrayList<>();
-    myCaptureTrees = new HashMap<>();
+    // Call trees of different threads are built concurrently.
+    myCaptureTrees = new ConcurrentHashMap<>();
     myThreads = new HashMap<>();
   }
 
@@ -161,8 +210,16 @@ public class SimpleperfTraceParser implements TraceParser {
 
   @Override
   public CpuCapture parse(File trace, long traceId) throws IOException {
-    parseTraceFile(trace);
-    parseSampleData();
+    try {
+      parseTraceFile(trace);
+      parseSampleData();
+    }
+    finally {
+      if (myPool != null) {
+        myPool.shutdown();
+        myPool = null;
+      }
+    }
     return new CpuCapture(this, traceId, Cpu.CpuTraceType.SIMPLEPERF);
   }
 
@@ -218,48 +275,36 @@ public class SimpleperfTraceParser implements TraceParser {
     verifyMagicNumber(buffer);
     parseVersionNumber(buffer);
 
+    // Records are prefixed with their size, so locating them is cheap compared to decoding them, which is done in parallel.
+    int[] recordOffsets = new int[16];
+    int[] recordSizes = new int[16];
+    int recordCount = 0;
     // Read the first record size
     int recordSize = buffer.getInt();
 
     // 0 is used to indicate the end of the trace
     while (recordSize != 0) {
-      // The next recordSize bytes should represent the record
-      byte[] recordBytes = new byte[recordSize];
-      buffer.get(recordBytes);
-      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBytes);
-
-      switch (record.getRecordDataCase()) {
-        case FILE:
-          SimpleperfReport.File file = record.getFile();
-          myFiles.put(file.getId(), file);
-          break;
-        case LOST:
-          // Only one occurrence of LOST type is expected.
-          SimpleperfReport.LostSituation situation = record.getLost();
-          mySampleCount = situation.getSampleCount();
-          myLostSampleCount = situation.getLostCount();
-          break;
-        case SAMPLE:
-          SimpleperfReport.Sample sample = record.getSample();
-          mySamples.add(sample);
-          break;
-        case THREAD:
-          SimpleperfReport.Thread thread = record.getThread();
-          myThreads.put(thread.getThreadId(), thread);
-          break;
-        case META_INFO:
-          SimpleperfReport.MetaInfo info = record.getMetaInfo();
-          myEventTypes = info.getEventTypeList();
-          myAppPackageName = info.getAppPackageName();
-          myAppDataFolderPrefix = String.format("%s/%s", DATA_APP_DIR, myAppPackageName);
-          break;
-        default:
-          getLog().warn("Unexpected record data type " + record.getRecordDataCase());
+      if (recordSize < 0 || recordSize > buffer.remaining()) {
+        throw new BufferUnderflowException();
       }
+      if (recordCount == recordOffsets.length) {
+        recordOffsets = Arrays.copyOf(recordOffsets, recordCount * 2);
+        recordSizes = Arrays.copyOf(recordSizes, recordCount * 2);
+      }
+      recordOffsets[recordCount] = buffer.position();
+      recordSizes[recordCount] = recordSize;
+      recordCount++;
+      buffer.position(buffer.position() + recordSize);
 
       // read the next record size
       recordSize = buffer.getInt();
     }
+    myProgress.setFraction(RECORDS_LOCATED_PROGRESS);
+
+    SimpleperfReport.Record[] records = decodeRecords(buffer, recordOffsets, recordSizes, recordCount);
+    for (SimpleperfReport.Record record : records) {
+      addRecord(record);
+    }
 
     if (mySamples.size() != mySampleCount) {
       // TODO: create a trace file to test this exception is thrown when it should.
@@ -267,6 +312,91 @@ public class SimpleperfTraceParser implements TraceParser {
     }
   }
 
+  /**
+   * Decodes the records located in the trace in parallel batches.
+   */
+  @NotNull
+  private SimpleperfReport.Record[] decodeRecords(@NotNull ByteBuffer buffer, @NotNull int[] offsets, @NotNull int[] sizes, int count)
+    throws IOException {
+    SimpleperfReport.Record[] records = new SimpleperfReport.Record[count];
+    AtomicInteger decodedCount = new AtomicInteger();
+    List<ForkJoinTask<?>> batches = new ArrayList<>();
+    for (int start = 0; start < count; start += RECORD_BATCH_SIZE) {
+      int batchStart = start;
+      int batchEnd = Math.min(start + RECORD_BATCH_SIZE, count);
+      batches.add(ForkJoinTask.adapt(() -> {
+        myProgress.checkCancelled();
+        // Each batch reads through its own view of the buffer, as reading moves the buffer's position.
+        ByteBuffer view = buffer.duplicate();
+        for (int i = batchStart; i < batchEnd; i++) {
+          view.limit(offsets[i] + sizes[i]).position(offsets[i]);
+          try {
+            records[i] = SimpleperfReport.Record.parseFrom(view);
+          }
+          catch (InvalidProtocolBufferException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+        myProgress.setFraction(RECORDS_LOCATED_PROGRESS +
+                               (RECORDS_DECODED_PROGRESS - RECORDS_LOCATED_PROGRESS) * decodedCount.addAndGet(batchEnd - batchStart) / count);
+      }));
+    }
+
+    try {
+      runInParallel(batches);
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return records;
+  }
+
+  private void addRecord(@NotNull SimpleperfReport.Record record) {
+    switch (record.getRecordDataCase()) {
+      case FILE:
+        SimpleperfReport.File file = record.getFile();
+        myFiles.put(file.getId(), file);
+        break;
+      case LOST:
+        // Only one occurrence of LOST type is expected.
+        SimpleperfReport.LostSituation situation = record.getLost();
+        mySampleCount = situation.getSampleCount();
+        myLostSampleCount = situation.getLostCount();
+        break;
+      case SAMPLE:
+        SimpleperfReport.Sample sample = record.getSample();
+        mySamples.add(sample);
+        break;
+      case THREAD:
+        SimpleperfReport.Thread thread = record.getThread();
+        myThreads.put(thread.getThreadId(), thread);
+        break;
+      case META_INFO:
+        SimpleperfReport.MetaInfo info = record.getMetaInfo();
+        myEventTypes = info.getEventTypeList();
+        myAppPackageName = info.getAppPackageName();
+        myAppDataFolderPrefix = String.format("%s/%s", DATA_APP_DIR, myAppPackageName);
+        break;
+      default:
+        getLog().warn("Unexpected record data type " + record.getRecordDataCase());
+    }
+  }
+
+  /**
+   * Runs parsing tasks on {@link #myParallelism} threads of the parse's {@link #myPool}, and waits for all of them to complete.
+   */
+  private void runInParallel(@NotNull List<? extends ForkJoinTask<?>> tasks) {
+    if (myPool == null) {
+      myPool = new ForkJoinPool(myParallelism);
+    }
+    myPool.invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+  }
+
   /**
    * Parses the next 16-bit number of the given {@link ByteBuffer} as the trace version.
    */
@@ -301,10 +431,18 @@ public class SimpleperfTraceParser implements TraceParser {
     // Split the samples per thread.
     Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
 
-    // Process the samples for each thread
+    // Process the samples for each thread. The call trees of the threads are independent, so they are built in parallel.
+    AtomicInteger parsedCount = new AtomicInteger();
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(threadSamples.size());
     for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
+      tasks.add(ForkJoinTask.adapt(() -> {
+        myProgress.checkCancelled();
+        parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
+        myProgress.setFraction(RECORDS_DECODED_PROGRESS +
+                               (1 - RECORDS_DECODED_PROGRESS) * parsedCount.incrementAndGet() / threadSamples.size());
+      }));
     }
+    runInParallel(tasks);
   }
 
   /**
@@ -448,7 +586,7 @@ public class SimpleperfTraceParser implements TraceParser {
     for (int i = startIndex; i < callChain.size(); i++) {
       // Get the parent function vAddress. That corresponds to the line of the parent function where the current function is called.
       long parentVAddress = i > 0 ? callChain.get(i - 1).getVaddrInFile() : -1;
-      CaptureNode child = createCaptureNode(methodModelFromCallchainEntry(callChain.get(i), parentVAddress), startTimestamp);
+      CaptureNode child = createCaptureNode(internMethodModel(callChain.get(i), parentVAddress), startTimestamp);
       node.addChild(child);
       child.setDepth(node.getDepth() + 1);
       node = child;
@@ -457,6 +595,15 @@ public class SimpleperfTraceParser implements TraceParser {
     return node;
   }
 
+  @NotNull
+  private CaptureNodeModel internMethodModel(SimpleperfReport.Sample.CallChainEntry callChainEntry, long parentVAddress) {
+    // Models of entries without a symbol only depend on their address, and the others on their symbol and the address of their caller.
+    ModelKey key = callChainEntry.getSymbolId() == INVALID_SYMBOL_ID ?
+                   new ModelKey(callChainEntry.getFileId(), INVALID_SYMBOL_ID, callChainEntry.getVaddrInFile()) :
+                   new ModelKey(callChainEntry.getFileId(), callChainEntry.getSymbolId(), parentVAddress);
+    return myModels.computeIfAbsent(key, unused -> methodModelFromCallchainEntry(callChainEntry, parentVAddress));
+  }
+
   private CaptureNodeModel methodModelFromCallchainEntry(SimpleperfReport.Sample.CallChainEntry callChainEntry, long parentVAddress) {
     int symbolId = callChainEntry.getSymbolId();
     SimpleperfReport.File symbolFile = myFiles.get(callChainEntry.getFileId());
@@ -474,4 +621,30 @@ public class SimpleperfTraceParser implements TraceParser {
     boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
     return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten, symbolFile.getPath(), parentVAddress);
   }
+
+  private static final class ModelKey {
+    private final int myFileId;
+    private final int mySymbolId;
+    private final long myVAddress;
+
+    private ModelKey(int fileId, int symbolId, long vAddress) {
+      myFileId = fileId;
+      mySymbolId = symbolId;
+      myVAddress = vAddress;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ModelKey)) {
+        return false;
+      }
+      ModelKey other = (ModelKey)obj;
+      return myFileId == other.myFileId && mySymbolId == other.mySymbolId && myVAddress == other.myVAddress;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myFileId, mySymbolId, myVAddress);
+    }
+  }
 }
@@ -20,6 +20,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.profilers.StudioProfilers;
 import com.android.tools.profilers.UnifiedEventDataSeries;
+import com.android.tools.profilers.UnifiedEventLongDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 public class DetailedMemoryUsage extends MemoryUsage {
@@ -52,23 +53,23 @@ public class DetailedMemoryUsage extends MemoryUsage {
     if (profilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
       myJavaSeries = createRangedSeries(profilers, JAVA_MEM, getMemoryRange(),
                                         UnifiedEventDataSeries.DEFAULT_GROUP_ID,
-                                        UnifiedEventDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getJavaMem()));
+                                        UnifiedEventLongDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getJavaMem()));
       myNativeSeries = createRangedSeries(profilers, NATIVE_MEM, getMemoryRange(),
                                           UnifiedEventDataSeries.DEFAULT_GROUP_ID,
-                                          UnifiedEventDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getNativeMem()));
+                                          UnifiedEventLongDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getNativeMem()));
       myGraphicsSeries = createRangedSeries(profilers, GRAPHICS_MEM, getMemoryRange(),
                                             UnifiedEventDataSeries.DEFAULT_GROUP_ID,
-                                            UnifiedEventDataSeries
+                                            UnifiedEventLongDataSeries
                                               .fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getGraphicsMem()));
       myStackSeries = createRangedSeries(profilers, STACK_MEM, getMemoryRange(),
                                          UnifiedEventDataSeries.DEFAULT_GROUP_ID,
-                                         UnifiedEventDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getStackMem()));
+                                         UnifiedEventLongDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getStackMem()));
       myCodeSeries = createRangedSeries(profilers, CODE_MEM, getMemoryRange(),
                                         UnifiedEventDataSeries.DEFAULT_GROUP_ID,
-                                        UnifiedEventDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getCodeMem()));
+                                        UnifiedEventLongDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getCodeMem()));
       myOtherSeries = createRangedSeries(profilers, OTHERS_MEM, getMemoryRange(),
                                          UnifiedEventDataSeries.DEFAULT_GROUP_ID,
-                                         UnifiedEventDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getOthersMem()));
+                                         UnifiedEventLongDataSeries.fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getOthersMem()));
     }
     else {
       myJavaSeries = createLegacyRangedSeries(profilers, JAVA_MEM, getMemoryRange(), sample -> (long)sample.getMemoryUsage().getJavaMem());
@@ -15,7 +15,8 @@
  */
 package com.android.tools.profilers.memory;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.LongDataSeries;
+import com.android.tools.adtui.model.LongSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
@@ -28,16 +29,16 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
-public final class MemoryDataSeries implements DataSeries<Long> {
+public final class MemoryDataSeries implements LongDataSeries {
   @NotNull private MemoryServiceGrpc.MemoryServiceBlockingStub myClient;
   @NotNull private final Common.Session mySession;
-  @NotNull private Function<MemorySample, Long> mySampleTransformer;
+  @NotNull private ToLongFunction<MemorySample> mySampleTransformer;
 
   public MemoryDataSeries(@NotNull MemoryServiceGrpc.MemoryServiceBlockingStub client,
                           @NotNull Common.Session session,
-                          @NotNull Function<MemorySample, Long> transformer) {
+                          @NotNull ToLongFunction<MemorySample> transformer) {
     myClient = client;
     mySession = session;
     mySampleTransformer = transformer;
@@ -45,19 +46,33 @@ public final class MemoryDataSeries implements DataSeries<Long> {
 
   @Override
   public List<SeriesData<Long>> getDataForRange(@NotNull Range timeCurrentRangeUs) {
+    MemoryData response = getData(timeCurrentRangeUs);
+    List<SeriesData<Long>> seriesData = new ArrayList<>();
+    for (MemoryData.MemorySample sample : response.getMemSamplesList()) {
+      long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp());
+      seriesData.add(new SeriesData<>(dataTimestamp, mySampleTransformer.applyAsLong(sample)));
+    }
+    return seriesData;
+  }
+
+  @Override
+  public void getDataForRange(@NotNull Range timeCurrentRangeUs, @NotNull LongSeries into) {
+    MemoryData response = getData(timeCurrentRangeUs);
+    into.clear();
+    for (MemoryData.MemorySample sample : response.getMemSamplesList()) {
+      long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp());
+      into.add(dataTimestamp, mySampleTransformer.applyAsLong(sample));
+    }
+  }
+
+  @NotNull
+  private MemoryData getData(@NotNull Range timeCurrentRangeUs) {
     // TODO: Change the Memory API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     MemoryRequest.Builder dataRequestBuilder = MemoryRequest.newBuilder()
       .setSession(mySession)
       .setStartTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()) - bufferNs)
       .setEndTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
-    MemoryData response = myClient.getData(dataRequestBuilder.build());
-
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
-    for (MemoryData.MemorySample sample : response.getMemSamplesList()) {
-      long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp());
-      seriesData.add(new SeriesData<>(dataTimestamp, mySampleTransformer.apply(sample)));
-    }
-    return seriesData;
+    return myClient.getData(dataRequestBuilder.build());
   }
 }
@@ -25,6 +25,7 @@ public enum MemoryProfilerAspect {
   CURRENT_HEAP_UPDATING,
   CURRENT_HEAP_UPDATED,
   CURRENT_HEAP_CONTENTS,
+  CURRENT_HEAP_RETAINED_SIZE_PROGRESS,
   CURRENT_CLASS,
   CURRENT_INSTANCE,
   CURRENT_FIELD_PATH,
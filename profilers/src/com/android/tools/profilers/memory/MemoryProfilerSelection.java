@@ -130,7 +130,7 @@ public final class MemoryProfilerSelection {
    */
   public boolean selectInstanceObject(@Nullable InstanceObject instanceObject) {
     assert instanceObject == null || myCaptureObject != null;
-    if (myInstanceObject == instanceObject) {
+    if (Objects.equals(myInstanceObject, instanceObject)) {
       return false;
     }
 
@@ -164,7 +164,7 @@ public final class MemoryProfilerSelection {
   }
 
   private void setInstanceObject(@Nullable InstanceObject instanceObject) {
-    if (myInstanceObject != instanceObject) {
+    if (!Objects.equals(myInstanceObject, instanceObject)) {
       myInstanceObject = instanceObject;
       myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_INSTANCE);
     }
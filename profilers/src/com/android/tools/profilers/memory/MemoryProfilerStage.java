@@ -123,6 +123,10 @@ public class MemoryProfilerStage extends StreamingStage implements CodeNavigator
   @NotNull
   private final Common.Session mySessionData;
   private DurationDataModel<GcDurationData> myGcStatsModel;
+  /**
+   * The GC series when the unified pipeline is enabled, kept up to date by a datastore subscription while the stage is shown.
+   */
+  @Nullable private final UnifiedEventDataSeries<GcDurationData> myUnifiedGcSeries;
 
   @NotNull
   private AspectModel<MemoryProfilerAspect> myAspect = new AspectModel<>();
@@ -175,7 +179,7 @@ public class MemoryProfilerStage extends StreamingStage implements CodeNavigator
     mySelection = new MemoryProfilerSelection(this);
     myConfiguration = new MemoryProfilerConfiguration(this);
 
-    DataSeries<GcDurationData> gcSeries =
+    myUnifiedGcSeries =
       getStudioProfilers().getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled() ?
       new UnifiedEventDataSeries<>(getStudioProfilers().getClient().getTransportClient(),
                                    mySessionData.getStreamId(),
@@ -187,7 +191,9 @@ public class MemoryProfilerStage extends StreamingStage implements CodeNavigator
                                                                   new GcDurationData(
                                                                     TimeUnit.NANOSECONDS.toMicros(evt.getMemoryGc().getDuration()))))
                                      .collect(Collectors.toList())) :
-      new LegacyGcStatsDataSeries(myClient, mySessionData);
+      null;
+    DataSeries<GcDurationData> gcSeries =
+      myUnifiedGcSeries != null ? myUnifiedGcSeries : new LegacyGcStatsDataSeries(myClient, mySessionData);
     myGcStatsModel = new DurationDataModel<>(new RangedSeries<>(viewRange, gcSeries));
     myAllocationSamplingRateDataSeries =
       new AllocationSamplingRateDataSeries(getStudioProfilers().getClient(),
@@ -290,6 +296,9 @@ public class MemoryProfilerStage extends StreamingStage implements CodeNavigator
     getStudioProfilers().getUpdater().register(myMemoryAxis);
     getStudioProfilers().getUpdater().register(myObjectsAxis);
     getStudioProfilers().getUpdater().register(myGcStatsModel);
+    if (myUnifiedGcSeries != null) {
+      myUnifiedGcSeries.subscribe(getTimeline().getViewRange());
+    }
     getStudioProfilers().getUpdater().register(myAllocationSamplingRateDurations);
     getStudioProfilers().getUpdater().register(myCaptureElapsedTimeUpdatable);
     getStudioProfilers().getUpdater().register(myAllocationSamplingRateUpdatable);
@@ -311,6 +320,9 @@ public class MemoryProfilerStage extends StreamingStage implements CodeNavigator
     getStudioProfilers().getUpdater().unregister(myMemoryAxis);
     getStudioProfilers().getUpdater().unregister(myObjectsAxis);
     getStudioProfilers().getUpdater().unregister(myGcStatsModel);
+    if (myUnifiedGcSeries != null) {
+      myUnifiedGcSeries.unsubscribe();
+    }
     getStudioProfilers().getUpdater().unregister(myAllocationSamplingRateDurations);
     getStudioProfilers().getUpdater().unregister(myCaptureElapsedTimeUpdatable);
     getStudioProfilers().getUpdater().unregister(myAllocationSamplingRateUpdatable);
@@ -603,6 +615,10 @@ public class MemoryProfilerStage extends StreamingStage implements CodeNavigator
     myFilterHandler.refreshFilterContent();
   }
 
+  public void refreshRetainedSizeProgress() {
+    myAspect.changed(MemoryProfilerAspect.CURRENT_HEAP_RETAINED_SIZE_PROGRESS);
+  }
+
   public void selectHeapSet(@Nullable HeapSet heapSet) {
     mySelection.selectHeapSet(heapSet);
     myFilterHandler.refreshFilterContent();
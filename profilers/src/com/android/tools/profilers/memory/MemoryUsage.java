@@ -16,17 +16,19 @@
 package com.android.tools.profilers.memory;
 
 import com.android.tools.adtui.model.LineChartModel;
+import com.android.tools.adtui.model.LongSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
 import com.android.tools.profilers.StudioProfilers;
 import com.android.tools.profilers.UnifiedEventDataSeries;
+import com.android.tools.profilers.UnifiedEventLongDataSeries;
 import java.util.List;
-import java.util.function.Function;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
 import org.jetbrains.annotations.NotNull;
 
 public class MemoryUsage extends LineChartModel {
@@ -39,7 +41,7 @@ public class MemoryUsage extends LineChartModel {
     if (profilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
       myTotalMemorySeries = createRangedSeries(profilers, getTotalSeriesLabel(), myMemoryRange,
                                                UnifiedEventDataSeries.DEFAULT_GROUP_ID,
-                                               UnifiedEventDataSeries
+                                               UnifiedEventLongDataSeries
                                                  .fromFieldToDataExtractor(e -> (long)e.getMemoryUsage().getTotalMem()));
     }
     else {
@@ -52,7 +54,7 @@ public class MemoryUsage extends LineChartModel {
   protected RangedContinuousSeries createLegacyRangedSeries(@NotNull StudioProfilers profilers,
                                                             @NotNull String name,
                                                             @NotNull Range range,
-                                                            @NotNull Function<MemorySample, Long> getter) {
+                                                            @NotNull ToLongFunction<MemorySample> getter) {
     MemoryServiceGrpc.MemoryServiceBlockingStub client = profilers.getClient().getMemoryClient();
     MemoryDataSeries series = new MemoryDataSeries(client, profilers.getSession(), getter);
     return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series, profilers.getTimeline().getDataRange());
@@ -62,9 +64,9 @@ public class MemoryUsage extends LineChartModel {
                                                       @NotNull String name,
                                                       @NotNull Range range,
                                                       int groupId,
-                                                      Function<List<Common.Event>, List<SeriesData<Long>>> dataExtractor) {
+                                                      BiConsumer<List<Common.Event>, LongSeries> dataExtractor) {
     TransportServiceGrpc.TransportServiceBlockingStub client = profilers.getClient().getTransportClient();
-    UnifiedEventDataSeries<Long> series = new UnifiedEventDataSeries<>(client,
+    UnifiedEventLongDataSeries series = new UnifiedEventLongDataSeries(client,
                                                                        profilers.getSession().getStreamId(),
                                                                        profilers.getSession().getPid(),
                                                                        Common.Event.Kind.MEMORY_USAGE,
@@ -129,6 +129,13 @@ public interface CaptureObject extends MemoryObject {
     return null;
   }
 
+  /**
+   * @return the fraction of the retained sizes computed so far, 1 once the retained sizes of all instances are known.
+   */
+  default double getRetainedSizeProgress() {
+    return 1;
+  }
+
   default boolean isExportable() {
     return false;
   }
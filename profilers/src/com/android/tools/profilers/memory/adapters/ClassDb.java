@@ -16,15 +16,16 @@
 package com.android.tools.profilers.memory.adapters;
 
 import com.google.common.annotations.VisibleForTesting;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * A class that shares class name {@link String}s, and provides facilities for splitting the class name to its constituent parts.
+ * Classes can be registered concurrently, e.g. by the workers loading a heap dump.
  */
 public final class ClassDb {
   public static final int INVALID_CLASS_ID = -1;
@@ -32,10 +33,10 @@ public final class ClassDb {
   public static final String JAVA_LANG_CLASS = "java.lang.Class";
 
   // class id to class mapping.
-  private final Map<Long, ClassEntry> myClassEntries = new HashMap<>();
-  private boolean myResolvedSubclasses = false;
+  private final Map<Long, ClassEntry> myClassEntries = new ConcurrentHashMap<>();
+  private volatile boolean myResolvedSubclasses = false;
 
-  public void clear() {
+  public synchronized void clear() {
     myClassEntries.clear();
     myResolvedSubclasses = false;
   }
@@ -45,11 +46,16 @@ public final class ClassDb {
     return registerClass(classId, INVALID_CLASS_ID, className);
   }
 
+  /**
+   * Registers a class, returning the already registered entry if it is identical so repeated registrations (e.g. once per instance of the
+   * class) don't create new entries.
+   */
   @NotNull
   public ClassEntry registerClass(long classId, long superClassId, @NotNull String className) {
-    ClassEntry entry = new ClassEntry(classId, superClassId, className);
-    myClassEntries.put(classId, entry);
-    return entry;
+    return myClassEntries.compute(classId, (id, existing) ->
+      existing != null && existing.getSuperClassId() == superClassId && existing.getClassName().equals(className)
+      ? existing
+      : new ClassEntry(classId, superClassId, className));
   }
 
   @NotNull
@@ -96,7 +102,7 @@ public final class ClassDb {
    * children classes), and it should be called only after all the classes have been registered.
    * @return false if the subclass information is already resolved previously, true otherwise.
    */
-  private boolean resolveSubClasses() {
+  private synchronized boolean resolveSubClasses() {
     if (myResolvedSubclasses) {
       return false;
     }
@@ -33,11 +33,11 @@ public abstract class ClassifierSet implements MemoryObject {
   @Nullable private Supplier<String> myNameSupplier = null;
 
   // The set of instances that make up our baseline snapshot (e.g. live objects at the left of a selection range).
-  @NotNull protected final Set<InstanceObject> mySnapshotInstances = new LinkedHashSet<>(0);
+  @NotNull protected final Set<InstanceObject> mySnapshotInstances = new InstanceObjectSet();
   // The set of instances that have delta events (e.g. delta allocations/deallocations within a selection range).
   // Note that instances here can also appear in the set of snapshot instances (e.g. when a instance is allocated before the selection
   // and deallocation within the selection).
-  @NotNull protected final Set<InstanceObject> myDeltaInstances = new LinkedHashSet<>(0);
+  @NotNull protected final Set<InstanceObject> myDeltaInstances = new InstanceObjectSet();
 
   // Lazily create the Classifier, as it is configurable and isn't necessary until nodes under this node needs to be classified.
   @Nullable protected Classifier myClassifier = null;
@@ -168,6 +168,29 @@ public abstract class ClassifierSet implements MemoryObject {
     myNeedsRefiltering = true;
   }
 
+  /**
+   * Moves the instances and the accounting of {@code other} into this set. Neither set may have been partitioned yet, and they must not
+   * share instances. This allows sets to be populated in parallel and combined afterwards.
+   */
+  public void merge(@NotNull ClassifierSet other) {
+    assert myClassifier == null && other.myClassifier == null;
+    mySnapshotInstances.addAll(other.mySnapshotInstances);
+    myDeltaInstances.addAll(other.myDeltaInstances);
+    mySnapshotObjectCount += other.mySnapshotObjectCount;
+    myDeltaAllocations += other.myDeltaAllocations;
+    myDeltaDeallocations += other.myDeltaDeallocations;
+    myTotalNativeSize += other.myTotalNativeSize;
+    myTotalShallowSize += other.myTotalShallowSize;
+    myTotalRetainedSize += other.myTotalRetainedSize;
+    myInstancesWithStackInfoCount += other.myInstancesWithStackInfoCount;
+    myObjectSetCount += other.myObjectSetCount;
+    myFilteredObjectSetCount += other.myFilteredObjectSetCount;
+    myFilterMatchCount += other.myFilterMatchCount;
+    myIsMatched |= other.myIsMatched;
+    myIsFiltered &= other.myIsFiltered;
+    myNeedsRefiltering |= other.myNeedsRefiltering;
+  }
+
   // Add delta alloc information into the ClassifierSet
   // Return true if the set did not contain the instance prior to invocation
   public boolean addDeltaInstanceObject(@NotNull InstanceObject instanceObject) {
@@ -270,6 +293,27 @@ public abstract class ClassifierSet implements MemoryObject {
     return instanceRemoved;
   }
 
+  /**
+   * Adds the retained size of an instance of this set, which was unknown when the instance was added, to the totals of the sets holding
+   * it. This avoids re-adding all instances as the retained sizes of a heap dump become known.
+   *
+   * @return true if the instance is part of this set.
+   */
+  public boolean addRetainedSize(@NotNull InstanceObject instanceObject, long retainedSize) {
+    boolean instanceFound = mySnapshotInstances.contains(instanceObject) || myDeltaInstances.contains(instanceObject);
+    if (!instanceFound && myClassifier != null && !myClassifier.isTerminalClassifier()) {
+      ClassifierSet classifierSet = myClassifier.getClassifierSet(instanceObject, false);
+      instanceFound = classifierSet != null && classifierSet.addRetainedSize(instanceObject, retainedSize);
+    }
+
+    if (instanceFound) {
+      myTotalRetainedSize += retainedSize;
+      // The totals of filtered sets are the sums of their unfiltered children, recomputed by the next filter pass.
+      myNeedsRefiltering = true;
+    }
+    return instanceFound;
+  }
+
   public void clearClassifierSets() {
     mySnapshotInstances.clear();
     myDeltaInstances.clear();
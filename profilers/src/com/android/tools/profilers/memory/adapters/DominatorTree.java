@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Computes the dominator tree of a graph of integer nodes using the Semi-NCA algorithm, a variant of Lengauer-Tarjan that is simpler and
+ * as fast in practice. All state is kept in primitive arrays indexed by preorder number, so heap dumps with tens of millions of instances
+ * can be processed without per-node allocations.
+ *
+ * The graph is given in compressed sparse row form: the successors of node {@code n} are
+ * {@code successors[successorOffsets[n]...successorOffsets[n + 1])}. A virtual root precedes the given roots, so nodes that are only
+ * dominated by it have no immediate dominator.
+ */
+final class DominatorTree {
+  /**
+   * Receives batches of nodes whose retained sizes are final while {@link #computeRetainedSizes(long[], RetainedSizeListener)} runs.
+   */
+  interface RetainedSizeListener {
+    /**
+     * @param retained the array being computed. The entries of {@code nodes} are final and are not written to anymore.
+     * @param nodes    the nodes whose retained sizes became final since the previous batch.
+     * @param progress the fraction of the reachable nodes whose retained sizes are final.
+     */
+    void onRetainedSizesFinal(@NotNull long[] retained, @NotNull int[] nodes, double progress);
+  }
+
+  static final int NO_DOMINATOR = -1;
+  private static final int NONE = -1;
+  /**
+   * Number of steps between checks for cancellation and progress reports.
+   */
+  private static final int CHECK_INTERVAL = 1 << 16;
+
+  private final int myNodeCount;
+  @NotNull private final int[] mySuccessorOffsets;
+  @NotNull private final int[] mySuccessors;
+  @NotNull private final int[] myRoots;
+  @NotNull private final BooleanSupplier myIsCancelled;
+  @NotNull private final DoubleConsumer myProgress;
+
+  // Indexed by preorder number, 0 being the virtual root.
+  private int[] myVertices;
+  private int[] myParents;
+  private int[] myDominators;
+  // Indexed by node, NONE for nodes not reachable from the roots.
+  private int[] myPreorder;
+  private int myReachableCount;
+  private int mySteps;
+
+  /**
+   * @param isCancelled polled while computing, the computation throws a {@link CancellationException} once it returns true.
+   * @param progress    receives the fraction of the computation done so far.
+   */
+  DominatorTree(int nodeCount,
+                @NotNull int[] successorOffsets,
+                @NotNull int[] successors,
+                @NotNull int[] roots,
+                @NotNull BooleanSupplier isCancelled,
+                @NotNull DoubleConsumer progress) {
+    assert successorOffsets.length == nodeCount + 1;
+    myNodeCount = nodeCount;
+    mySuccessorOffsets = successorOffsets;
+    mySuccessors = successors;
+    myRoots = roots;
+    myIsCancelled = isCancelled;
+    myProgress = progress;
+  }
+
+  /**
+   * Computes the immediate dominators of all nodes.
+   */
+  void compute() {
+    depthFirstSearch();
+    myProgress.accept(0.3);
+    int[][] predecessors = computePredecessors();
+    myProgress.accept(0.4);
+    int[] semi = computeSemiDominators(predecessors[0], predecessors[1]);
+    myProgress.accept(0.9);
+
+    // The immediate dominator of a vertex is the nearest common ancestor of its parent and semi-dominator in the dominator tree.
+    myDominators = new int[myReachableCount];
+    for (int i = 1; i < myReachableCount; i++) {
+      int dominator = myParents[i];
+      while (dominator > semi[i]) {
+        dominator = myDominators[dominator];
+      }
+      myDominators[i] = dominator;
+      step(0.9, 0.1, i, myReachableCount);
+    }
+    myProgress.accept(1);
+  }
+
+  /**
+   * @return the immediate dominator of a node, or {@link #NO_DOMINATOR} if it is a root, only dominated by the roots collectively, or not
+   * reachable from the roots.
+   */
+  int getImmediateDominator(int node) {
+    int preorder = myPreorder[node];
+    if (preorder == NONE || myDominators[preorder] == 0) {
+      return NO_DOMINATOR;
+    }
+    return myVertices[myDominators[preorder]];
+  }
+
+  boolean isReachable(int node) {
+    return myPreorder[node] != NONE;
+  }
+
+  /**
+   * @return the sum of the sizes of the nodes each node dominates, including itself. Unreachable nodes only retain themselves.
+   */
+  @NotNull
+  long[] computeRetainedSizes(@NotNull long[] sizes) {
+    return computeRetainedSizes(sizes, (retained, nodes, progress) -> {});
+  }
+
+  /**
+   * Same as {@link #computeRetainedSizes(long[])}, reporting the nodes whose retained sizes are final to {@code listener} every
+   * {@link #CHECK_INTERVAL} nodes, so they can be shown before the sizes of their dominators are known.
+   */
+  @NotNull
+  long[] computeRetainedSizes(@NotNull long[] sizes, @NotNull RetainedSizeListener listener) {
+    long[] retained = Arrays.copyOf(sizes, myNodeCount);
+    int[] batch = new int[Math.min(CHECK_INTERVAL, Math.max(0, myReachableCount - 1))];
+    int batchSize = 0;
+    // Dominators precede the vertices they dominate in preorder, so a reverse traversal completes each subtree before its dominator.
+    for (int i = myReachableCount - 1; i > 0; i--) {
+      int dominator = myDominators[i];
+      if (dominator != 0) {
+        retained[myVertices[dominator]] += retained[myVertices[i]];
+      }
+      batch[batchSize++] = myVertices[i];
+      if (batchSize == batch.length) {
+        listener.onRetainedSizesFinal(retained, Arrays.copyOf(batch, batchSize), (double)(myReachableCount - i) / (myReachableCount - 1));
+        batchSize = 0;
+        if (myIsCancelled.getAsBoolean()) {
+          throw new CancellationException();
+        }
+      }
+    }
+    if (batchSize > 0) {
+      listener.onRetainedSizesFinal(retained, Arrays.copyOf(batch, batchSize), 1);
+    }
+    return retained;
+  }
+
+  private void depthFirstSearch() {
+    myPreorder = new int[myNodeCount];
+    Arrays.fill(myPreorder, NONE);
+    myVertices = new int[myNodeCount + 1];
+    myParents = new int[myNodeCount + 1];
+    myVertices[0] = NONE;
+    int count = 1;
+
+    // Explicit stack of nodes and the position of the next successor to visit, as heap graphs are far too deep to recurse.
+    int[] stackNodes = new int[16];
+    int[] stackCursors = new int[16];
+    for (int root : myRoots) {
+      if (myPreorder[root] != NONE) {
+        continue;
+      }
+      myPreorder[root] = count;
+      myVertices[count] = root;
+      myParents[count] = 0;
+      count++;
+      int depth = 0;
+      stackNodes[0] = root;
+      stackCursors[0] = mySuccessorOffsets[root];
+      while (depth >= 0) {
+        int node = stackNodes[depth];
+        int cursor = stackCursors[depth];
+        if (cursor == mySuccessorOffsets[node + 1]) {
+          depth--;
+          continue;
+        }
+        stackCursors[depth]++;
+        int successor = mySuccessors[cursor];
+        if (myPreorder[successor] != NONE) {
+          continue;
+        }
+        myPreorder[successor] = count;
+        myVertices[count] = successor;
+        myParents[count] = myPreorder[node];
+        step(0, 0.3, count, myNodeCount);
+        count++;
+        if (++depth == stackNodes.length) {
+          stackNodes = Arrays.copyOf(stackNodes, depth * 2);
+          stackCursors = Arrays.copyOf(stackCursors, depth * 2);
+        }
+        stackNodes[depth] = successor;
+        stackCursors[depth] = mySuccessorOffsets[successor];
+      }
+    }
+    myReachableCount = count;
+  }
+
+  /**
+   * @return the predecessors of the reachable vertices in compressed sparse row form, by preorder number. Roots are preceded by the
+   * virtual root.
+   */
+  @NotNull
+  private int[][] computePredecessors() {
+    int[] offsets = new int[myReachableCount + 1];
+    for (int i = 1; i < myReachableCount; i++) {
+      int node = myVertices[i];
+      for (int edge = mySuccessorOffsets[node]; edge < mySuccessorOffsets[node + 1]; edge++) {
+        offsets[myPreorder[mySuccessors[edge]] + 1]++;
+      }
+    }
+    for (int root : myRoots) {
+      offsets[myPreorder[root] + 1]++;
+    }
+    for (int i = 0; i < myReachableCount; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+
+    int[] predecessors = new int[offsets[myReachableCount]];
+    int[] fill = Arrays.copyOf(offsets, myReachableCount);
+    for (int i = 1; i < myReachableCount; i++) {
+      int node = myVertices[i];
+      for (int edge = mySuccessorOffsets[node]; edge < mySuccessorOffsets[node + 1]; edge++) {
+        predecessors[fill[myPreorder[mySuccessors[edge]]]++] = i;
+      }
+    }
+    for (int root : myRoots) {
+      predecessors[fill[myPreorder[root]]++] = 0;
+    }
+    return new int[][]{offsets, predecessors};
+  }
+
+  /**
+   * Computes the semi-dominators of all vertices, evaluating paths with a forest linked in reverse preorder and path compression.
+   */
+  @NotNull
+  private int[] computeSemiDominators(@NotNull int[] predecessorOffsets, @NotNull int[] predecessors) {
+    int[] semi = new int[myReachableCount];
+    int[] labels = new int[myReachableCount];
+    int[] ancestors = new int[myReachableCount];
+    for (int i = 0; i < myReachableCount; i++) {
+      semi[i] = i;
+      labels[i] = i;
+      ancestors[i] = NONE;
+    }
+
+    int[] path = new int[16];
+    for (int w = myReachableCount - 1; w > 0; w--) {
+      for (int edge = predecessorOffsets[w]; edge < predecessorOffsets[w + 1]; edge++) {
+        int v = predecessors[edge];
+        int u = v;
+        if (ancestors[v] != NONE) {
+          // Compress the path from v to the root of its tree in the forest, so each vertex is labeled with the vertex of minimal
+          // semi-dominator on its path.
+          int length = 0;
+          int x = v;
+          while (ancestors[ancestors[x]] != NONE) {
+            if (length == path.length) {
+              path = Arrays.copyOf(path, length * 2);
+            }
+            path[length++] = x;
+            x = ancestors[x];
+          }
+          while (length > 0) {
+            x = path[--length];
+            int ancestor = ancestors[x];
+            if (semi[labels[ancestor]] < semi[labels[x]]) {
+              labels[x] = labels[ancestor];
+            }
+            ancestors[x] = ancestors[ancestor];
+          }
+          u = labels[v];
+        }
+        if (semi[u] < semi[w]) {
+          semi[w] = semi[u];
+        }
+      }
+      ancestors[w] = myParents[w];
+      step(0.4, 0.5, myReachableCount - w, myReachableCount);
+    }
+    return semi;
+  }
+
+  private void step(double phaseStart, double phaseLength, int done, int total) {
+    if (++mySteps % CHECK_INTERVAL != 0) {
+      return;
+    }
+    if (myIsCancelled.getAsBoolean()) {
+      throw new CancellationException();
+    }
+    myProgress.accept(phaseStart + phaseLength * done / total);
+  }
+}
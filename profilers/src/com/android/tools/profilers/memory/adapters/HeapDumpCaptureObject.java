@@ -27,6 +27,7 @@ import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.perflib.heap.ClassObj;
 import com.android.tools.perflib.heap.Heap;
 import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.RootObj;
 import com.android.tools.perflib.heap.Snapshot;
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
 import com.android.tools.perflib.heap.io.InMemoryBuffer;
@@ -45,8 +46,9 @@ import com.android.tools.proguard.ProguardMap;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import gnu.trove.TLongObjectHashMap;
+import com.intellij.openapi.diagnostic.Logger;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -55,16 +57,34 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class HeapDumpCaptureObject implements CaptureObject {
+  /**
+   * Number of instances a heap dump loading task processes, large enough to amortize the cost of scheduling and merging the tasks.
+   */
+  private static final int LOAD_BATCH_SIZE = 8192;
+  /**
+   * Share of {@link #getRetainedSizeProgress()} taken by the dominator tree, the rest being the summing of the retained sizes.
+   */
+  private static final double DOMINATOR_PROGRESS_SHARE = 0.8;
+  /**
+   * Minimum time between two publications of partial retained sizes, each of which adds the new sizes to the classifier sets and refreshes
+   * the selected heap.
+   */
+  private static final long PARTIAL_RETAINED_SIZES_INTERVAL_MS = 1000;
 
   @NotNull
   private final ProfilerClient myClient;
@@ -78,8 +98,8 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @NotNull
   private final Map<Integer, HeapSet> myHeapSets = new HashMap<>();
 
-  @NotNull
-  private final TLongObjectHashMap<InstanceObject> myInstanceIndex = new TLongObjectHashMap<>();
+  @Nullable
+  private volatile HeapDumpInstanceStore myStore;
 
   @NotNull
   private final ClassDb myClassDb = new ClassDb();
@@ -90,9 +110,6 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @Nullable
   private final ProguardMap myProguardMap;
 
-  @Nullable
-  private volatile Snapshot mySnapshot;
-
   private volatile boolean myIsLoadingError = false;
 
   private boolean myHasNativeAllocations;
@@ -104,21 +121,40 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   private final Set<CaptureObjectInstanceFilter> myCurrentInstanceFilters = new HashSet<>();
 
+  private final int myLoadParallelism;
+
   private final ExecutorService myExecutorService =
     Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("memory-heapdump-instancefilters").build());
 
+  private final ExecutorService myDominatorExecutorService =
+    Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("memory-heapdump-dominators").build());
+
+  private volatile double myRetainedSizeProgress = 0;
+
   public HeapDumpCaptureObject(@NotNull ProfilerClient client,
                                @NotNull Common.Session session,
                                @NotNull HeapDumpInfo heapDumpInfo,
                                @Nullable ProguardMap proguardMap,
                                @NotNull FeatureTracker featureTracker,
                                @NotNull MemoryProfilerStage stage) {
+    this(client, session, heapDumpInfo, proguardMap, featureTracker, stage, Runtime.getRuntime().availableProcessors());
+  }
+
+  @VisibleForTesting
+  HeapDumpCaptureObject(@NotNull ProfilerClient client,
+                        @NotNull Common.Session session,
+                        @NotNull HeapDumpInfo heapDumpInfo,
+                        @Nullable ProguardMap proguardMap,
+                        @NotNull FeatureTracker featureTracker,
+                        @NotNull MemoryProfilerStage stage,
+                        int loadParallelism) {
     myClient = client;
     mySession = session;
     myHeapDumpInfo = heapDumpInfo;
     myProguardMap = proguardMap;
     myFeatureTracker = featureTracker;
     myStage = stage;
+    myLoadParallelism = loadParallelism;
 
     mySupportedInstanceFilters = ImmutableSet.of(new ActivityFragmentLeakInstanceFilter(),
                                                  new ProjectClassesInstanceFilter(myStage.getStudioProfilers().getIdeServices()));
@@ -155,8 +191,7 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @NotNull
   @Override
   public Collection<HeapSet> getHeapSets() {
-    Snapshot snapshot = mySnapshot;
-    if (snapshot == null) {
+    if (myStore == null) {
       return Collections.emptyList();
     }
     return myHeapSets.values();
@@ -171,8 +206,7 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @NotNull
   @Override
   public Stream<InstanceObject> getInstances() {
-    Snapshot snapshot = mySnapshot;
-    if (snapshot == null) {
+    if (myStore == null) {
       return Stream.empty();
     }
     return getHeapSets().stream().map(ClassifierSet::getInstancesStream).flatMap(Function.identity());
@@ -218,52 +252,56 @@ public class HeapDumpCaptureObject implements CaptureObject {
     else {
       snapshot = Snapshot.createSnapshot(buffer, new ProguardMap(), Collections.singletonList(nativeRegistryPostProcessor));
     }
-    snapshot.computeDominators();
+    // Only resolve the references and depths here, the dominators are computed once all instances are loaded.
+    snapshot.prepareDominatorComputation();
     myHasNativeAllocations = nativeRegistryPostProcessor.getHasNativeAllocations();
-    mySnapshot = snapshot;
+
+    int instanceCount = 0;
+    for (Heap heap : snapshot.getHeaps()) {
+      instanceCount += heap.getClasses().size() + heap.getInstancesCount();
+    }
+    HeapDumpInstanceStore store = new HeapDumpInstanceStore(this, instanceCount, snapshot::findInstance);
 
     Map<Heap, HeapSet> heapSets = new HashMap<>(snapshot.getHeaps().size());
-    InstanceObject javaLangClassObject = null;
+    ClassDb.ClassEntry javaLangClassEntry = null;
     for (Heap heap : snapshot.getHeaps()) {
       HeapSet heapSet = new HeapSet(this, heap.getName(), heap.getId());
       heapSets.put(heap, heapSet);
-      if (javaLangClassObject == null) {
+      if (javaLangClassEntry == null) {
         ClassObj javaLangClass =
           heap.getClasses().stream().filter(classObj -> JAVA_LANG_CLASS.equals(classObj.getClassName())).findFirst().orElse(null);
         if (javaLangClass != null) {
-          javaLangClassObject = createClassObjectInstance(null, javaLangClass);
+          javaLangClassEntry = registerClassObject(null, javaLangClass);
         }
       }
     }
 
-    InstanceObject finalJavaLangClassObject = javaLangClassObject;
+    int index = 0;
     for (Heap heap : snapshot.getHeaps()) {
       HeapSet heapSet = heapSets.get(heap);
-      heap.getClasses().forEach(classObj -> {
-        InstanceObject classObject = createClassObjectInstance(finalJavaLangClassObject, classObj);
-        assert !myInstanceIndex.containsKey(classObj.getId());
-        myInstanceIndex.put(classObj.getId(), classObject);
-        heapSet.addDeltaInstanceObject(classObject);
-      });
+      for (ClassObj classObj : heap.getClasses()) {
+        store.set(index, classObj, registerClassObject(javaLangClassEntry, classObj), ValueObject.ValueType.CLASS);
+        heapSet.addDeltaInstanceObject(store.getInstanceObject(index));
+        index++;
+      }
     }
 
-    for (Heap heap : snapshot.getHeaps()) {
-      HeapSet heapSet = heapSets.get(heap);
-      heap.forEachInstance(instance -> {
-        assert !JAVA_LANG_CLASS.equals(instance.getClassObj().getClassName());
-
-        ClassObj classObj = instance.getClassObj();
-        ClassDb.ClassEntry classEntry =
-          classObj.getSuperClassObj() != null ?
-          myClassDb.registerClass(classObj.getId(), classObj.getSuperClassObj().getId(), classObj.getClassName()) :
-          myClassDb.registerClass(classObj.getId(), classObj.getClassName());
-        InstanceObject instanceObject = new HeapDumpInstanceObject(this, instance, classEntry, null);
-        assert !myInstanceIndex.containsKey(instance.getId());
-        myInstanceIndex.put(instance.getId(), instanceObject);
-        heapSet.addDeltaInstanceObject(instanceObject);
-        return true;
-      });
+    ForkJoinPool pool = new ForkJoinPool(myLoadParallelism);
+    try {
+      for (Heap heap : snapshot.getHeaps()) {
+        index = loadInstances(pool, heap, heapSets.get(heap), store, index);
+      }
+      store.buildIndex();
+    }
+    finally {
+      pool.shutdown();
     }
+    int[] roots = snapshot.getGCRoots().stream()
+      .map(RootObj::getReferredInstance)
+      .filter(instance -> instance != null)
+      .mapToInt(store::indexOf)
+      .filter(rootIndex -> rootIndex >= 0)
+      .toArray();
     heapSets.forEach((key, value) -> {
       if ("default".equals(key.getName())) {
         if (heapSets.size() == 1 || key.getInstancesCount() > 0) {
@@ -274,15 +312,204 @@ public class HeapDumpCaptureObject implements CaptureObject {
         myHeapSets.put(key.getId(), value);
       }
     });
+    // Marks the capture as loaded, the heap dump is only accessed through the store from now on.
+    myStore = store;
 
-    myStage.refreshSelectedHeap();
+    if (queryJoiner == null) {
+      publishRetainedSizes(store, computeRetainedSizes(roots, store, null), IntStream.range(0, store.size()).toArray());
+      myRetainedSizeProgress = 1;
+      myStage.refreshSelectedHeap();
+    }
+    else {
+      myStage.refreshSelectedHeap();
+      // Retained sizes show up as unknown until they are computed, so the instances can be browsed in the meantime. Sizes are published
+      // as soon as the sizes of everything an instance dominates are known, smallest subtrees first.
+      myDominatorExecutorService.submit(() -> {
+        try {
+          computeRetainedSizes(roots, store, queryJoiner);
+        }
+        catch (CancellationException ignored) {
+        }
+        catch (RuntimeException e) {
+          getLogger().error("Failed to compute the retained sizes of heap dump instances", e);
+        }
+      });
+    }
 
     return true;
   }
 
+  /**
+   * @return the fraction of the retained size computation done so far, 1 once the retained sizes of all instances are known.
+   */
+  @Override
+  public double getRetainedSizeProgress() {
+    return myRetainedSizeProgress;
+  }
+
+  /**
+   * @param roots       the indices of the instances referred to by GC roots.
+   * @param queryJoiner if not null, receives progress updates and publishes the retained sizes, in batches as they become known.
+   */
+  @NotNull
+  private long[] computeRetainedSizes(@NotNull int[] roots, @NotNull HeapDumpInstanceStore store, @Nullable Executor queryJoiner) {
+    int[][] references = store.computeHardReferences();
+    DominatorTree dominatorTree = new DominatorTree(store.size(), references[0], references[1], roots,
+                                                    () -> Thread.currentThread().isInterrupted(),
+                                                    progress -> setRetainedSizeProgress(DOMINATOR_PROGRESS_SHARE * progress, queryJoiner));
+    dominatorTree.compute();
+
+    // Seeded with the shallow sizes, like perflib's Instance.getTotalRetainedSize(). Native sizes are reported in their own column.
+    long[] sizes = new long[store.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = store.getShallowSize(i);
+    }
+    List<int[]> pendingIndices = new ArrayList<>();
+    long[] lastPublishMs = {System.currentTimeMillis()};
+    long[] retainedSizes = dominatorTree.computeRetainedSizes(sizes, (retained, indices, progress) -> {
+      setRetainedSizeProgress(DOMINATOR_PROGRESS_SHARE + (1 - DOMINATOR_PROGRESS_SHARE) * progress, queryJoiner);
+      if (queryJoiner == null) {
+        return;
+      }
+      pendingIndices.add(indices);
+      long nowMs = System.currentTimeMillis();
+      if (nowMs - lastPublishMs[0] >= PARTIAL_RETAINED_SIZES_INTERVAL_MS) {
+        lastPublishMs[0] = nowMs;
+        List<int[]> batches = new ArrayList<>(pendingIndices);
+        pendingIndices.clear();
+        queryJoiner.execute(() -> {
+          batches.forEach(batch -> publishRetainedSizes(store, retained, batch));
+          myStage.refreshSelectedHeap();
+        });
+      }
+    });
+
+    if (queryJoiner != null) {
+      // Unreachable instances are not reported by the dominator tree, they only retain themselves.
+      pendingIndices.add(IntStream.range(0, store.size()).filter(index -> !dominatorTree.isReachable(index)).toArray());
+      queryJoiner.execute(() -> {
+        pendingIndices.forEach(batch -> publishRetainedSizes(store, retainedSizes, batch));
+        myRetainedSizeProgress = 1;
+        myStage.refreshSelectedHeap();
+        myStage.refreshRetainedSizeProgress();
+      });
+    }
+    return retainedSizes;
+  }
+
+  /**
+   * Publishes the retained sizes of some instances and adds them to the totals of the classifier sets holding the instances, which only
+   * accounted for unknown sizes until then. Must be called from the thread reading the classifier sets.
+   */
+  private void publishRetainedSizes(@NotNull HeapDumpInstanceStore store, @NotNull long[] retainedSizes, @NotNull int[] indices) {
+    store.publishRetainedSizes(retainedSizes, indices);
+    for (int index : indices) {
+      HeapSet heapSet = myHeapSets.get(store.getHeapId(index));
+      if (heapSet != null) {
+        heapSet.addRetainedSize(store.getInstanceObject(index), retainedSizes[index]);
+      }
+    }
+  }
+
+  /**
+   * Notifies the stage whenever the progress moves by a percent, rather than on every report.
+   */
+  private void setRetainedSizeProgress(double progress, @Nullable Executor queryJoiner) {
+    // Completion is only reported once the last retained sizes are published.
+    if (progress >= 1) {
+      return;
+    }
+    double previous = myRetainedSizeProgress;
+    myRetainedSizeProgress = progress;
+    if (queryJoiner != null && (int)(progress * 100) != (int)(previous * 100)) {
+      queryJoiner.execute(myStage::refreshRetainedSizeProgress);
+    }
+  }
+
+  /**
+   * Adds a heap's instances to the store, starting at the given index. The instances are split in batches which are loaded in parallel into
+   * partial {@link HeapSet}s, which are then merged in order, so the result is the same as loading the instances sequentially.
+   *
+   * @return the index following the heap's instances.
+   */
+  private int loadInstances(@NotNull ForkJoinPool pool,
+                            @NotNull Heap heap,
+                            @NotNull HeapSet heapSet,
+                            @NotNull HeapDumpInstanceStore store,
+                            int baseIndex) {
+    List<Instance> instances = new ArrayList<>(heap.getInstancesCount());
+    heap.forEachInstance(instance -> {
+      instances.add(instance);
+      return true;
+    });
+
+    List<InstanceBatchLoader> batches = new ArrayList<>();
+    for (int start = 0; start < instances.size(); start += LOAD_BATCH_SIZE) {
+      batches.add(new InstanceBatchLoader(heap, instances, store, baseIndex, start, Math.min(start + LOAD_BATCH_SIZE, instances.size())));
+    }
+    pool.invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(batches);
+      }
+    });
+    for (InstanceBatchLoader batch : batches) {
+      heapSet.merge(batch.join());
+    }
+    return baseIndex + instances.size();
+  }
+
+  /**
+   * Adds a range of a heap's instances to the store, and their views to a partial {@link HeapSet}.
+   */
+  private final class InstanceBatchLoader extends RecursiveTask<HeapSet> {
+    @NotNull private final Heap myHeap;
+    @NotNull private final List<Instance> myInstances;
+    @NotNull private final HeapDumpInstanceStore myStore;
+    private final int myBaseIndex;
+    private final int myStart;
+    private final int myEnd;
+
+    private InstanceBatchLoader(@NotNull Heap heap,
+                                @NotNull List<Instance> instances,
+                                @NotNull HeapDumpInstanceStore store,
+                                int baseIndex,
+                                int start,
+                                int end) {
+      myHeap = heap;
+      myInstances = instances;
+      myStore = store;
+      myBaseIndex = baseIndex;
+      myStart = start;
+      myEnd = end;
+    }
+
+    @Override
+    protected HeapSet compute() {
+      HeapSet partialSet = new HeapSet(HeapDumpCaptureObject.this, myHeap.getName(), myHeap.getId());
+      // Most instances of a batch share a handful of classes, so each class is only registered once per batch instead of contending on
+      // the shared ClassDb for every instance.
+      Map<Long, ClassDb.ClassEntry> classEntries = new HashMap<>();
+      for (int i = myStart; i < myEnd; i++) {
+        Instance instance = myInstances.get(i);
+        assert !JAVA_LANG_CLASS.equals(instance.getClassObj().getClassName());
+
+        ClassObj classObj = instance.getClassObj();
+        ClassDb.ClassEntry classEntry = classEntries.computeIfAbsent(
+          classObj.getId(),
+          id -> classObj.getSuperClassObj() != null ?
+                myClassDb.registerClass(id, classObj.getSuperClassObj().getId(), classObj.getClassName()) :
+                myClassDb.registerClass(id, classObj.getClassName()));
+        myStore.set(myBaseIndex + i, instance, classEntry, HeapDumpInstanceObject.computeValueType(instance));
+        partialSet.addDeltaInstanceObject(myStore.getInstanceObject(myBaseIndex + i));
+      }
+      return partialSet;
+    }
+  }
+
   @Override
   public boolean isDoneLoading() {
-    return mySnapshot != null || myIsLoadingError;
+    return myStore != null || myIsLoadingError;
   }
 
   @Override
@@ -293,6 +520,7 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @Override
   public void unload() {
     myExecutorService.shutdownNow();
+    myDominatorExecutorService.shutdownNow();
   }
 
   @NotNull
@@ -315,29 +543,37 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @Nullable
   public InstanceObject findInstanceObject(@NotNull Instance instance) {
-    if (mySnapshot == null) {
+    HeapDumpInstanceStore store = myStore;
+    if (store == null) {
       return null;
     }
+    int index = store.indexOf(instance);
+    return index < 0 ? null : store.getInstanceObject(index);
+  }
 
-    return myInstanceIndex.get(instance.getId());
+  /**
+   * @return the retained size of an instance of the loaded heap dump, or {@link MemoryObject#INVALID_VALUE} if the instance is not part of
+   * it or its retained size is still being computed.
+   */
+  long getRetainedSize(@NotNull Instance instance) {
+    HeapDumpInstanceStore store = myStore;
+    int index = store == null ? -1 : store.indexOf(instance);
+    return index < 0 ? INVALID_VALUE : store.getRetainedSize(index);
   }
 
+  /**
+   * Registers the class of a class object.
+   *
+   * @return the class entry of the class object itself, which is the entry of java.lang.Class if it is known.
+   */
   @NotNull
-  InstanceObject createClassObjectInstance(@Nullable InstanceObject javaLangClass, @NotNull ClassObj classObj) {
-    String className = javaLangClass == null ? JAVA_LANG_CLASS : classObj.getClassName();
+  private ClassDb.ClassEntry registerClassObject(@Nullable ClassDb.ClassEntry javaLangClassEntry, @NotNull ClassObj classObj) {
+    String className = javaLangClassEntry == null ? JAVA_LANG_CLASS : classObj.getClassName();
     ClassDb.ClassEntry classEntry = classObj.getSuperClassObj() != null ?
                                     myClassDb.registerClass(classObj.getId(), classObj.getSuperClassObj().getId(), className) :
                                     myClassDb.registerClass(classObj.getId(), className);
-    InstanceObject classObject;
-    if (javaLangClass == null) {
-      // Handle java.lang.Class which is a special case. All its instances are other classes, so wee need to create an InstanceObject for it
-      // first for all classes to reference.
-      classObject = new HeapDumpInstanceObject(this, classObj, classEntry, ValueObject.ValueType.CLASS);
-    }
-    else {
-      classObject = new HeapDumpInstanceObject(this, classObj, javaLangClass.getClassEntry(), ValueObject.ValueType.CLASS);
-    }
-    return classObject;
+    // Handle java.lang.Class which is a special case. All its instances are other classes, so they all share its entry.
+    return javaLangClassEntry == null ? classEntry : javaLangClassEntry;
   }
 
   @NotNull
@@ -395,8 +631,12 @@ public class HeapDumpCaptureObject implements CaptureObject {
     myExecutorService.submit(() -> {
       // Run the remaining analyzers on the full instance set, since we don't know the the instances that have been removed from the
       // HeapSets using the filter that we are removing.
-      Set<InstanceObject> allInstances = new HashSet<>(myInstanceIndex.size());
-      myInstanceIndex.forEachValue(instance -> allInstances.add(instance));
+      HeapDumpInstanceStore store = myStore;
+      assert store != null;
+      Set<InstanceObject> allInstances = new HashSet<>(store.size());
+      for (int i = 0; i < store.size(); i++) {
+        allInstances.add(store.getInstanceObject(i));
+      }
       Set<InstanceObject> matchedInstances = allInstances;
       for (CaptureObjectInstanceFilter filter : myCurrentInstanceFilters) {
         matchedInstances = filter.filter(matchedInstances, myClassDb);
@@ -415,6 +655,11 @@ public class HeapDumpCaptureObject implements CaptureObject {
     });
   }
 
+  @NotNull
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
+
   @Override
   public boolean canSafelyLoad() {
     Transport.BytesResponse response = myClient.getTransportClient().getBytes(Transport.BytesRequest.newBuilder()
@@ -79,7 +79,8 @@ final class HeapDumpFieldObject implements FieldObject {
 
         myNativeSize = instance.getNativeSize();
         myShallowSize = instance.getSize();
-        myRetainedSize = instance.getTotalRetainedSize();
+        // Instances that are not part of the loaded heap dump are not in its dominator tree.
+        myRetainedSize = INVALID_VALUE;
         myDepth = instance.getDistanceToGcRoot();
       }
     }
@@ -107,10 +108,10 @@ final class HeapDumpFieldObject implements FieldObject {
     }
 
     HeapDumpFieldObject other = (HeapDumpFieldObject)obj;
-    return other.myInstanceObject == myInstanceObject &&
+    return Objects.equals(other.myInstanceObject, myInstanceObject) &&
            getFieldName().equals(other.getFieldName()) &&
            getValueType() == other.getValueType() &&
-           (getAsInstance() == other.getAsInstance() || Objects.equals(myField.getValue(), other.myField.getValue()));
+           (Objects.equals(getAsInstance(), other.getAsInstance()) || Objects.equals(myField.getValue(), other.myField.getValue()));
   }
 
   @NotNull
@@ -131,7 +132,8 @@ final class HeapDumpFieldObject implements FieldObject {
 
   @Override
   public long getRetainedSize() {
-    return myRetainedSize;
+    // Instances of the heap dump get their retained size once the dominator tree is computed, which may be after this field was created.
+    return myInstanceObject != null ? myInstanceObject.getRetainedSize() : myRetainedSize;
   }
 
   @Override
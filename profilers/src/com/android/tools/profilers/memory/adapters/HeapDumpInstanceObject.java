@@ -28,7 +28,7 @@ import java.util.*;
 import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.*;
 
 /**
- * A UI representation of a {@link ClassInstance}.
+ * A UI representation of a {@link ClassInstance}, as a view of an instance in a {@link HeapDumpInstanceStore}.
  */
 class HeapDumpInstanceObject implements InstanceObject {
   private static final String NAME_FORMATTER = "%s@%d (0x%x)";
@@ -47,43 +47,61 @@ class HeapDumpInstanceObject implements InstanceObject {
     .put(Type.OBJECT, OBJECT)
     .build();
 
-  @NotNull protected ValueType myValueType;
-
-  @NotNull private final HeapDumpCaptureObject myCaptureObject;
-  @NotNull private final Instance myInstance;
-  @NotNull private final ClassDb.ClassEntry myClassEntry;
-  @NotNull private final String myMemoizedLabel;
+  @NotNull private final HeapDumpInstanceStore myStore;
+  private final int myIndex;
 
+  /**
+   * Creates the view of an instance that is not part of a loaded heap dump, for tests.
+   */
+  @VisibleForTesting
   HeapDumpInstanceObject(@NotNull HeapDumpCaptureObject captureObject,
                          @NotNull Instance instance,
                          @NotNull ClassDb.ClassEntry classEntry,
                          @Nullable ValueType precomputedValueType) {
-    myCaptureObject = captureObject;
-    myInstance = instance;
-    myClassEntry = classEntry;
-
-    myMemoizedLabel =
-      String.format(NAME_FORMATTER, myClassEntry.getSimpleClassName(), myInstance.getUniqueId(), myInstance.getUniqueId());
-    if (precomputedValueType != null) {
-      myValueType = precomputedValueType;
-      return;
-    }
+    this(HeapDumpInstanceStore.detached(captureObject, instance, classEntry,
+                                        precomputedValueType != null ? precomputedValueType : computeValueType(instance)), 0);
+  }
 
+  /**
+   * Creates a view of an instance in a {@link HeapDumpInstanceStore}, use {@link HeapDumpInstanceStore#getInstanceObject(int)} instead.
+   * Views hold no state of their own, so they are created whenever needed rather than kept for every instance.
+   */
+  HeapDumpInstanceObject(@NotNull HeapDumpInstanceStore store, int index) {
+    myStore = store;
+    myIndex = index;
+  }
+
+  @NotNull
+  static ValueType computeValueType(@NotNull Instance instance) {
     ClassObj classObj = instance.getClassObj();
     if (instance instanceof ClassObj) {
-      myValueType = CLASS;
+      return CLASS;
     }
     else if (instance instanceof ClassInstance && classObj.getClassName().equals(ClassDb.JAVA_LANG_STRING)) {
-      myValueType = STRING;
+      return STRING;
     }
     else if (classObj.getClassName().endsWith("[]")) {
-      myValueType = ARRAY;
+      return ARRAY;
     }
     else {
-      myValueType = OBJECT;
+      return OBJECT;
     }
   }
 
+  @NotNull
+  Instance getInstance() {
+    return myStore.getInstance(myIndex);
+  }
+
+  @NotNull
+  HeapDumpInstanceStore getStore() {
+    return myStore;
+  }
+
+  int getIndex() {
+    return myIndex;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (!(obj instanceof HeapDumpInstanceObject)) {
@@ -91,12 +109,12 @@ class HeapDumpInstanceObject implements InstanceObject {
     }
 
     HeapDumpInstanceObject otherInstance = (HeapDumpInstanceObject)obj;
-    return myInstance == otherInstance.myInstance;
+    return myStore == otherInstance.myStore && myIndex == otherInstance.myIndex;
   }
 
   @Override
   public int hashCode() {
-    return myInstance.hashCode();
+    return Long.hashCode(myStore.getId(myIndex));
   }
 
   @NotNull
@@ -109,14 +127,15 @@ class HeapDumpInstanceObject implements InstanceObject {
   @Override
   public String getValueText() {
     // TODO show length of array instance
-    return myMemoizedLabel;
+    long id = getInstance().getUniqueId();
+    return String.format(NAME_FORMATTER, myStore.getClassEntry(myIndex).getSimpleClassName(), id, id);
   }
 
   @NotNull
   @Override
   public String getToStringText() {
-    if (myValueType == STRING) {
-      String text = ((ClassInstance)myInstance).getAsString(MAX_VALUE_TEXT_LENGTH);
+    if (getValueType() == STRING) {
+      String text = ((ClassInstance)getInstance()).getAsString(MAX_VALUE_TEXT_LENGTH);
       if (text != null) {
         int textLength = text.length();
         StringBuilder builder = new StringBuilder(6 + textLength);
@@ -139,47 +158,49 @@ class HeapDumpInstanceObject implements InstanceObject {
 
   @Override
   public int getHeapId() {
-    return myInstance.getHeap().getId();
+    return myStore.getHeapId(myIndex);
   }
 
   @NotNull
   @Override
   public ClassDb.ClassEntry getClassEntry() {
-    return myClassEntry;
+    return myStore.getClassEntry(myIndex);
   }
 
   @Override
   public int getDepth() {
-    return myInstance.getDistanceToGcRoot();
+    return myStore.getDepth(myIndex);
   }
 
   @Override
   public long getNativeSize() {
-    return myInstance.getNativeSize();
+    return myStore.getNativeSize(myIndex);
   }
 
   @Override
   public int getShallowSize() {
-    return myInstance.getSize();
+    return myStore.getShallowSize(myIndex);
   }
 
   @Override
   public long getRetainedSize() {
-    return myInstance.getTotalRetainedSize();
+    // Detached instances are looked up in the store of the loaded heap dump, which holds the retained sizes of the dominator tree.
+    return myStore.isDetached() ? myStore.getCaptureObject().getRetainedSize(getInstance()) : myStore.getRetainedSize(myIndex);
   }
 
   @Override
   public int getFieldCount() {
-    if (myInstance instanceof ClassInstance) {
-      ClassInstance classInstance = (ClassInstance)myInstance;
+    Instance instance = getInstance();
+    if (instance instanceof ClassInstance) {
+      ClassInstance classInstance = (ClassInstance)instance;
       return classInstance.getValues().size();
     }
-    else if (myInstance instanceof ArrayInstance) {
-      ArrayInstance arrayInstance = (ArrayInstance)myInstance;
+    else if (instance instanceof ArrayInstance) {
+      ArrayInstance arrayInstance = (ArrayInstance)instance;
       return arrayInstance.getLength();
     }
-    else if (myInstance instanceof ClassObj) {
-      ClassObj classObj = (ClassObj)myInstance;
+    else if (instance instanceof ClassObj) {
+      ClassObj classObj = (ClassObj)instance;
       return classObj.getStaticFieldValues().size();
     }
     return 0;
@@ -189,27 +210,29 @@ class HeapDumpInstanceObject implements InstanceObject {
   @Override
   public List<FieldObject> getFields() {
     List<FieldObject> fields = new ArrayList<>();
-    if (myInstance instanceof ClassInstance) {
-      ClassInstance classInstance = (ClassInstance)myInstance;
+    Instance instance = getInstance();
+    HeapDumpCaptureObject captureObject = myStore.getCaptureObject();
+    if (instance instanceof ClassInstance) {
+      ClassInstance classInstance = (ClassInstance)instance;
       for (FieldValue field : classInstance.getValues()) {
-        fields.add(new HeapDumpFieldObject(myCaptureObject, myInstance, field));
+        fields.add(new HeapDumpFieldObject(captureObject, instance, field));
       }
     }
-    else if (myInstance instanceof ArrayInstance) {
-      ArrayInstance arrayInstance = (ArrayInstance)myInstance;
+    else if (instance instanceof ArrayInstance) {
+      ArrayInstance arrayInstance = (ArrayInstance)instance;
       Type arrayType = arrayInstance.getArrayType();
       int arrayIndex = 0;
       for (Object value : arrayInstance.getValues()) {
         FieldValue field = new FieldValue(new Field(arrayType, Integer.toString(arrayIndex)), value);
-        fields.add(new HeapDumpFieldObject(myCaptureObject, myInstance, field));
+        fields.add(new HeapDumpFieldObject(captureObject, instance, field));
         arrayIndex++;
       }
     }
-    else if (myInstance instanceof ClassObj) {
-      ClassObj classObj = (ClassObj)myInstance;
+    else if (instance instanceof ClassObj) {
+      ClassObj classObj = (ClassObj)instance;
       for (Map.Entry<Field, Object> entry : classObj.getStaticFieldValues().entrySet()) {
         FieldValue field = new FieldValue(entry.getKey(), entry.getValue());
-        fields.add(new HeapDumpFieldObject(myCaptureObject, myInstance, field));
+        fields.add(new HeapDumpFieldObject(captureObject, instance, field));
       }
     }
 
@@ -219,11 +242,12 @@ class HeapDumpInstanceObject implements InstanceObject {
   @Nullable
   @Override
   public ArrayObject getArrayObject() {
-    if (!(myInstance instanceof ArrayInstance)) {
+    Instance instance = getInstance();
+    if (!(instance instanceof ArrayInstance)) {
       return null;
     }
 
-    ArrayInstance arrayInstance = (ArrayInstance)myInstance;
+    ArrayInstance arrayInstance = (ArrayInstance)instance;
     return new ArrayObject() {
       @NotNull
       @Override
@@ -265,19 +289,20 @@ class HeapDumpInstanceObject implements InstanceObject {
   @Override
   @NotNull
   public ValueType getValueType() {
-    return myValueType;
+    return myStore.getValueType(myIndex);
   }
 
   @Nullable
   @Override
   public AllocationStack getAllocationCallStack() {
-    if (myInstance.getStack() == null) {
+    StackTrace stack = getInstance().getStack();
+    if (stack == null) {
       return null;
     }
 
     AllocationStack.Builder builder = AllocationStack.newBuilder();
     AllocationStack.StackFrameWrapper.Builder frameBuilder = AllocationStack.StackFrameWrapper.newBuilder();
-    for (StackFrame stackFrame : myInstance.getStack().getFrames()) {
+    for (StackFrame stackFrame : stack.getFrames()) {
       String fileName = stackFrame.getFilename();
       String guessedClassName = fileName.endsWith(".java") ? fileName.substring(0, fileName.length() - ".java".length()) : fileName;
       frameBuilder.addFrames(
@@ -290,7 +315,7 @@ class HeapDumpInstanceObject implements InstanceObject {
 
   @Override
   public boolean getIsRoot() {
-    return myInstance instanceof RootObj;
+    return getInstance() instanceof RootObj;
   }
 
   @NotNull
@@ -302,59 +327,77 @@ class HeapDumpInstanceObject implements InstanceObject {
   @VisibleForTesting
   @NotNull
   public List<ReferenceObject> extractReferences() {
+    if (myStore.hasReferrers()) {
+      // The referrers are already resolved and sorted by the store.
+      int[] referrerIndices = myStore.getReferrers(myIndex);
+      List<ReferenceObject> referrers = new ArrayList<>(referrerIndices.length);
+      for (int referrerIndex : referrerIndices) {
+        referrers.add(new ReferenceObject(getReferencingFieldNames(myStore.getInstance(referrerIndex)),
+                                          myStore.getInstanceObject(referrerIndex)));
+      }
+      return referrers;
+    }
+
+    Instance instance = getInstance();
     // Sort hard referrers to appear first.
-    List<Instance> sortedReferences = new ArrayList<>(myInstance.getHardReverseReferences());
+    List<Instance> sortedReferences = new ArrayList<>(instance.getHardReverseReferences());
     sortedReferences.sort(DEPTH_COMPARATOR);
 
     // Sort soft referrers to appear second.
-    if (myInstance.getSoftReverseReferences() != null) {
-      List<Instance> sortedSoftReferences = new ArrayList<>(myInstance.getSoftReverseReferences());
+    if (instance.getSoftReverseReferences() != null) {
+      List<Instance> sortedSoftReferences = new ArrayList<>(instance.getSoftReverseReferences());
       sortedSoftReferences.sort(DEPTH_COMPARATOR);
       sortedReferences.addAll(sortedSoftReferences);
     }
 
     List<ReferenceObject> referrers = new ArrayList<>(sortedReferences.size());
-
-    // Determine the variable names of references.
     for (Instance reference : sortedReferences) {
-      // Note that each instance can have multiple references to the same object.
-      List<String> referencingFieldNames = new ArrayList<>(3);
-      if (reference instanceof ClassInstance) {
-        ClassInstance classInstance = (ClassInstance)reference;
-        for (ClassInstance.FieldValue entry : classInstance.getValues()) {
-          // This instance is referenced by a field of the referrer class
-          if (entry.getField().getType() == Type.OBJECT && entry.getValue() == myInstance) {
-            referencingFieldNames.add(entry.getField().getName());
-          }
+      InstanceObject referencingInstance = myStore.getCaptureObject().findInstanceObject(reference);
+      assert referencingInstance != null;
+      referrers.add(new ReferenceObject(getReferencingFieldNames(reference), referencingInstance));
+    }
+
+    return referrers;
+  }
+
+  /**
+   * Determines the variable names of a referrer's references to this instance.
+   */
+  @NotNull
+  private List<String> getReferencingFieldNames(@NotNull Instance reference) {
+    Instance instance = getInstance();
+    // Note that each instance can have multiple references to the same object.
+    List<String> referencingFieldNames = new ArrayList<>(3);
+    if (reference instanceof ClassInstance) {
+      ClassInstance classInstance = (ClassInstance)reference;
+      for (ClassInstance.FieldValue entry : classInstance.getValues()) {
+        // This instance is referenced by a field of the referrer class
+        if (entry.getField().getType() == Type.OBJECT && entry.getValue() == instance) {
+          referencingFieldNames.add(entry.getField().getName());
         }
       }
-      else if (reference instanceof ArrayInstance) {
-        ArrayInstance arrayInstance = (ArrayInstance)reference;
-        assert arrayInstance.getArrayType() == Type.OBJECT;
-        Object[] values = arrayInstance.getValues();
-        for (int i = 0; i < values.length; ++i) {
-          // This instance is referenced by an array
-          if (values[i] == myInstance) {
-            referencingFieldNames.add(String.valueOf(i));
-          }
+    }
+    else if (reference instanceof ArrayInstance) {
+      ArrayInstance arrayInstance = (ArrayInstance)reference;
+      assert arrayInstance.getArrayType() == Type.OBJECT;
+      Object[] values = arrayInstance.getValues();
+      for (int i = 0; i < values.length; ++i) {
+        // This instance is referenced by an array
+        if (values[i] == instance) {
+          referencingFieldNames.add(String.valueOf(i));
         }
       }
-      else if (reference instanceof ClassObj) {
-        ClassObj classObj = (ClassObj)reference;
-        Map<Field, Object> staticValues = classObj.getStaticFieldValues();
-        for (Map.Entry<Field, Object> entry : staticValues.entrySet()) {
-          // This instance is referenced by a static field of a Class object.
-          if (entry.getKey().getType() == Type.OBJECT && entry.getValue() == myInstance) {
-            referencingFieldNames.add(entry.getKey().getName());
-          }
+    }
+    else if (reference instanceof ClassObj) {
+      ClassObj classObj = (ClassObj)reference;
+      Map<Field, Object> staticValues = classObj.getStaticFieldValues();
+      for (Map.Entry<Field, Object> entry : staticValues.entrySet()) {
+        // This instance is referenced by a static field of a Class object.
+        if (entry.getKey().getType() == Type.OBJECT && entry.getValue() == instance) {
+          referencingFieldNames.add(entry.getKey().getName());
         }
       }
-
-      InstanceObject referencingInstance = myCaptureObject.findInstanceObject(reference);
-      assert referencingInstance != null;
-      referrers.add(new ReferenceObject(referencingFieldNames, referencingInstance));
     }
-
-    return referrers;
+    return referencingFieldNames;
   }
 }
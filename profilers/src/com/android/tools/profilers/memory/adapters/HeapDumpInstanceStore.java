@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.perflib.heap.Instance;
+import com.android.tools.profilers.memory.adapters.ValueObject.ValueType;
+import gnu.trove.TLongIntHashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Column-oriented storage of the instances of a heap dump. Each instance is identified by its index in the columns, which hold the
+ * attributes the classifier sets and the instance table need for every instance. Everything else, such as field values or referrers, is
+ * read from the perflib {@link Instance}, which is looked up by id only when needed. The {@link HeapDumpInstanceObject}s representing the
+ * instances are lightweight views over a store and an index, created whenever they are needed and not kept by the store. The referrers of all instances are
+ * resolved into indices in compressed sparse row form the first time they are requested.
+ */
+final class HeapDumpInstanceStore {
+  private static final int NO_INDEX = -1;
+  private static final ValueType[] VALUE_TYPES = ValueType.values();
+  private static final Comparator<Instance> DEPTH_COMPARATOR = Comparator.comparingInt(Instance::getDistanceToGcRoot);
+  /**
+   * Number of instances whose referrers are resolved by the same task.
+   */
+  private static final int REFERRERS_BATCH_SIZE = 8192;
+
+  @NotNull private final HeapDumpCaptureObject myCaptureObject;
+  @NotNull private final LongFunction<Instance> myInstanceResolver;
+  @NotNull private final long[] myIds;
+  @NotNull private final ClassDb.ClassEntry[] myClassEntries;
+  @NotNull private final byte[] myValueTypes;
+  @NotNull private final int[] myHeapIds;
+  @NotNull private final int[] myDepths;
+  @NotNull private final int[] myShallowSizes;
+  @NotNull private final long[] myNativeSizes;
+  // Null for detached stores, whose only instance is found by comparing ids.
+  @Nullable private TLongIntHashMap myIndices;
+  private boolean myIsDetached;
+
+  // Referrers of instance i are myReferrers[myReferrerOffsets[i]...myReferrerOffsets[i + 1]), hard referrers first, each sorted by depth.
+  @Nullable private volatile int[] myReferrerOffsets;
+  @Nullable private int[] myReferrers;
+  // Computed from the dominator tree once the whole heap dump is loaded, null until then. Filled in as the sizes become known, each entry
+  // being written once, so that threads reading sizes while others are published see either INVALID_VALUE or the final size.
+  @Nullable private volatile AtomicLongArray myRetainedSizes;
+
+  /**
+   * @param instanceResolver finds the perflib instances of the store by id.
+   */
+  HeapDumpInstanceStore(@NotNull HeapDumpCaptureObject captureObject, int capacity, @NotNull LongFunction<Instance> instanceResolver) {
+    myCaptureObject = captureObject;
+    myInstanceResolver = instanceResolver;
+    myIds = new long[capacity];
+    myClassEntries = new ClassDb.ClassEntry[capacity];
+    myValueTypes = new byte[capacity];
+    myHeapIds = new int[capacity];
+    myDepths = new int[capacity];
+    myShallowSizes = new int[capacity];
+    myNativeSizes = new long[capacity];
+  }
+
+  /**
+   * Creates a store holding a single instance, for tests that build instance objects without loading a heap dump. The attributes of such
+   * instances are read from the perflib instance rather than stored, and their referrers are resolved through
+   * {@link HeapDumpCaptureObject#findInstanceObject(Instance)}.
+   */
+  @NotNull
+  static HeapDumpInstanceStore detached(@NotNull HeapDumpCaptureObject captureObject,
+                                        @NotNull Instance instance,
+                                        @NotNull ClassDb.ClassEntry classEntry,
+                                        @NotNull ValueType valueType) {
+    HeapDumpInstanceStore store = new HeapDumpInstanceStore(captureObject, 1, id -> instance);
+    store.myIds[0] = instance.getId();
+    store.myClassEntries[0] = classEntry;
+    store.myValueTypes[0] = (byte)valueType.ordinal();
+    store.myIsDetached = true;
+    return store;
+  }
+
+  /**
+   * Sets the instance at an index. Different indices can be set concurrently, but {@link #buildIndex()} must be called afterwards.
+   */
+  void set(int index, @NotNull Instance instance, @NotNull ClassDb.ClassEntry classEntry, @NotNull ValueType valueType) {
+    myIds[index] = instance.getId();
+    myClassEntries[index] = classEntry;
+    myValueTypes[index] = (byte)valueType.ordinal();
+    myHeapIds[index] = instance.getHeap().getId();
+    myDepths[index] = instance.getDistanceToGcRoot();
+    myShallowSizes[index] = instance.getSize();
+    myNativeSizes[index] = instance.getNativeSize();
+  }
+
+  /**
+   * Maps the ids of all instances to their index.
+   */
+  void buildIndex() {
+    TLongIntHashMap indices = new TLongIntHashMap(myIds.length);
+    for (int i = 0; i < myIds.length; i++) {
+      assert !indices.containsKey(myIds[i]);
+      indices.put(myIds[i], i);
+    }
+    myIndices = indices;
+  }
+
+  /**
+   * Resolves the referrers of the instances in [start, end), which must all have been indexed. The rows are computed independently of the
+   * other instances', so ranges can be computed in parallel and assembled with {@link #setReferrers(List)}.
+   *
+   * @return the lengths of the rows, followed by their contents.
+   */
+  @NotNull
+  int[][] computeReferrers(int start, int end) {
+    int[] lengths = new int[end - start];
+    List<Instance> referrers = new ArrayList<>();
+    int[] contents = new int[0];
+    int size = 0;
+    for (int i = start; i < end; i++) {
+      referrers.clear();
+      Instance instance = getInstance(i);
+      int hardCount = instance.getHardReverseReferences().size();
+      referrers.addAll(instance.getHardReverseReferences());
+      referrers.subList(0, hardCount).sort(DEPTH_COMPARATOR);
+      if (instance.getSoftReverseReferences() != null) {
+        referrers.addAll(instance.getSoftReverseReferences());
+        referrers.subList(hardCount, referrers.size()).sort(DEPTH_COMPARATOR);
+      }
+
+      for (Instance referrer : referrers) {
+        int referrerIndex = indexOf(referrer);
+        if (referrerIndex == NO_INDEX) {
+          continue;
+        }
+        if (size == contents.length) {
+          int[] grown = new int[Math.max(16, contents.length * 2)];
+          System.arraycopy(contents, 0, grown, 0, size);
+          contents = grown;
+        }
+        contents[size++] = referrerIndex;
+        lengths[i - start]++;
+      }
+    }
+    int[] trimmed = new int[size];
+    System.arraycopy(contents, 0, trimmed, 0, size);
+    return new int[][]{lengths, trimmed};
+  }
+
+  /**
+   * @param ranges the results of {@link #computeReferrers(int, int)} for consecutive ranges covering all instances.
+   */
+  void setReferrers(@NotNull List<int[][]> ranges) {
+    int[] offsets = new int[myIds.length + 1];
+    int edgeCount = 0;
+    for (int[][] range : ranges) {
+      edgeCount += range[1].length;
+    }
+    int[] referrers = new int[edgeCount];
+    int instance = 0;
+    int edge = 0;
+    for (int[][] range : ranges) {
+      for (int length : range[0]) {
+        offsets[instance++] = edge;
+        edge += length;
+      }
+      System.arraycopy(range[1], 0, referrers, offsets[instance - range[0].length], range[1].length);
+    }
+    assert instance == myIds.length;
+    offsets[instance] = edge;
+    myReferrers = referrers;
+    myReferrerOffsets = offsets;
+  }
+
+  /**
+   * Resolves the referrers of all instances, in parallel batches, unless that was already done. Most heap dumps are only browsed by class,
+   * so this is deferred until the referrers of an instance are first requested.
+   */
+  private void ensureReferrers() {
+    if (myReferrerOffsets != null) {
+      return;
+    }
+    synchronized (this) {
+      if (myReferrerOffsets == null) {
+        setReferrers(IntStream.range(0, (myIds.length + REFERRERS_BATCH_SIZE - 1) / REFERRERS_BATCH_SIZE)
+                       .parallel()
+                       .mapToObj(batch -> computeReferrers(batch * REFERRERS_BATCH_SIZE,
+                                                          Math.min((batch + 1) * REFERRERS_BATCH_SIZE, myIds.length)))
+                       .collect(Collectors.toList()));
+      }
+    }
+  }
+
+  /**
+   * Builds the graph of hard references between instances, the input of the dominator tree.
+   *
+   * @return the offsets of the successors of each instance, followed by the successors, in compressed sparse row form.
+   */
+  @NotNull
+  int[][] computeHardReferences() {
+    int[] offsets = new int[myIds.length + 1];
+    for (int i = 0; i < myIds.length; i++) {
+      for (Instance referrer : getInstance(i).getHardReverseReferences()) {
+        int referrerIndex = indexOf(referrer);
+        if (referrerIndex != NO_INDEX) {
+          offsets[referrerIndex + 1]++;
+        }
+      }
+    }
+    for (int i = 0; i < myIds.length; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+
+    int[] successors = new int[offsets[myIds.length]];
+    int[] fill = new int[myIds.length];
+    System.arraycopy(offsets, 0, fill, 0, myIds.length);
+    for (int i = 0; i < myIds.length; i++) {
+      for (Instance referrer : getInstance(i).getHardReverseReferences()) {
+        int referrerIndex = indexOf(referrer);
+        if (referrerIndex != NO_INDEX) {
+          successors[fill[referrerIndex]++] = i;
+        }
+      }
+    }
+    return new int[][]{offsets, successors};
+  }
+
+  /**
+   * Makes the retained sizes of some instances available before the others are known. Must always be called from the same thread.
+   *
+   * @param retainedSizes sizes indexed like the instances of the store, only the entries of {@code indices} are read. They are copied, so
+   *                      the array can keep being written for the other instances.
+   */
+  void publishRetainedSizes(@NotNull long[] retainedSizes, @NotNull int[] indices) {
+    AtomicLongArray published = myRetainedSizes;
+    if (published == null) {
+      published = new AtomicLongArray(myIds.length);
+      for (int i = 0; i < myIds.length; i++) {
+        published.lazySet(i, MemoryObject.INVALID_VALUE);
+      }
+      myRetainedSizes = published;
+    }
+    for (int index : indices) {
+      published.set(index, retainedSizes[index]);
+    }
+  }
+
+  boolean isDetached() {
+    return myIsDetached;
+  }
+
+  /**
+   * @return the retained size of an instance, or {@link MemoryObject#INVALID_VALUE} while it is being computed.
+   */
+  long getRetainedSize(int index) {
+    AtomicLongArray retainedSizes = myRetainedSizes;
+    return retainedSizes == null ? MemoryObject.INVALID_VALUE : retainedSizes.get(index);
+  }
+
+  int size() {
+    return myIds.length;
+  }
+
+  /**
+   * @return the index of the instance, or -1 if it is not part of the store.
+   */
+  int indexOf(@NotNull Instance instance) {
+    long id = instance.getId();
+    TLongIntHashMap indices = myIndices;
+    if (indices == null) {
+      return myIsDetached && myIds[0] == id ? 0 : NO_INDEX;
+    }
+    return indices.containsKey(id) ? indices.get(id) : NO_INDEX;
+  }
+
+  @NotNull
+  HeapDumpCaptureObject getCaptureObject() {
+    return myCaptureObject;
+  }
+
+  /**
+   * @return the perflib instance, for the attributes that are not stored in the columns.
+   */
+  @NotNull
+  Instance getInstance(int index) {
+    Instance instance = myInstanceResolver.apply(myIds[index]);
+    assert instance != null;
+    return instance;
+  }
+
+  long getId(int index) {
+    return myIds[index];
+  }
+
+  @NotNull
+  ClassDb.ClassEntry getClassEntry(int index) {
+    return myClassEntries[index];
+  }
+
+  @NotNull
+  ValueType getValueType(int index) {
+    return VALUE_TYPES[myValueTypes[index]];
+  }
+
+  int getHeapId(int index) {
+    return myIsDetached ? getInstance(index).getHeap().getId() : myHeapIds[index];
+  }
+
+  int getDepth(int index) {
+    return myIsDetached ? getInstance(index).getDistanceToGcRoot() : myDepths[index];
+  }
+
+  int getShallowSize(int index) {
+    return myIsDetached ? getInstance(index).getSize() : myShallowSizes[index];
+  }
+
+  long getNativeSize(int index) {
+    return myIsDetached ? getInstance(index).getNativeSize() : myNativeSizes[index];
+  }
+
+  /**
+   * @return whether the referrers can be read from the store, which is the case for all instances of a loaded heap dump.
+   */
+  boolean hasReferrers() {
+    return !myIsDetached;
+  }
+
+  /**
+   * @return the indices of the referrers of an instance, hard referrers first, each sorted by depth.
+   */
+  @NotNull
+  int[] getReferrers(int index) {
+    ensureReferrers();
+    int[] offsets = myReferrerOffsets;
+    assert offsets != null && myReferrers != null;
+    int start = offsets[index];
+    int[] referrers = new int[offsets[index + 1] - start];
+    System.arraycopy(myReferrers, start, referrers, 0, referrers.length);
+    return referrers;
+  }
+
+  /**
+   * @return a new view of an instance, equal to the other views of the same instance.
+   */
+  @NotNull
+  HeapDumpInstanceObject getInstanceObject(int index) {
+    return new HeapDumpInstanceObject(this, index);
+  }
+}
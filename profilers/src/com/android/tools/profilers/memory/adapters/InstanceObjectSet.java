@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The instances of a {@link ClassifierSet}, iterated in insertion order. Instances of a loaded heap dump are held as their index in their
+ * {@link HeapDumpInstanceStore}, and their {@link HeapDumpInstanceObject} views are created again when iterated, so that the classifier
+ * sets of a heap dump don't keep an object per instance. Other instances are held as they are.
+ */
+final class InstanceObjectSet extends AbstractSet<InstanceObject> {
+  @NotNull private final Set<InstanceObject> myObjects = new LinkedHashSet<>(0);
+  // The store of the indices, set by the first instance of a loaded heap dump added to the set.
+  @Nullable private HeapDumpInstanceStore myStore;
+  @Nullable private TIntArrayList myIndices;
+  @Nullable private TIntHashSet myIndexSet;
+
+  @Override
+  public int size() {
+    return myObjects.size() + (myIndices == null ? 0 : myIndices.size());
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    HeapDumpInstanceObject instance = asStoredInstance(o);
+    return instance == null ? myObjects.contains(o) : myIndexSet.contains(instance.getIndex());
+  }
+
+  @Override
+  public boolean add(@NotNull InstanceObject instanceObject) {
+    if (myStore == null && instanceObject instanceof HeapDumpInstanceObject) {
+      HeapDumpInstanceStore store = ((HeapDumpInstanceObject)instanceObject).getStore();
+      if (!store.isDetached()) {
+        myStore = store;
+        myIndices = new TIntArrayList();
+        myIndexSet = new TIntHashSet();
+      }
+    }
+
+    HeapDumpInstanceObject instance = asStoredInstance(instanceObject);
+    if (instance == null) {
+      return myObjects.add(instanceObject);
+    }
+    if (!myIndexSet.add(instance.getIndex())) {
+      return false;
+    }
+    myIndices.add(instance.getIndex());
+    return true;
+  }
+
+  @Override
+  public boolean addAll(@NotNull Collection<? extends InstanceObject> instances) {
+    if (!(instances instanceof InstanceObjectSet) || !((InstanceObjectSet)instances).myObjects.isEmpty()) {
+      return super.addAll(instances);
+    }
+
+    // Merging the sets of a heap dump only copies the indices.
+    InstanceObjectSet other = (InstanceObjectSet)instances;
+    if (other.myIndices == null) {
+      return false;
+    }
+    if (myStore == null) {
+      myStore = other.myStore;
+      myIndices = new TIntArrayList(other.myIndices.size());
+      myIndexSet = new TIntHashSet(other.myIndices.size());
+    }
+    else if (myStore != other.myStore) {
+      return super.addAll(instances);
+    }
+    boolean changed = false;
+    for (int i = 0; i < other.myIndices.size(); i++) {
+      int index = other.myIndices.get(i);
+      if (myIndexSet.add(index)) {
+        myIndices.add(index);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    HeapDumpInstanceObject instance = asStoredInstance(o);
+    if (instance == null) {
+      return myObjects.remove(o);
+    }
+    if (!myIndexSet.remove(instance.getIndex())) {
+      return false;
+    }
+    myIndices.remove(myIndices.indexOf(instance.getIndex()));
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    myObjects.clear();
+    myStore = null;
+    myIndices = null;
+    myIndexSet = null;
+  }
+
+  @NotNull
+  @Override
+  public Iterator<InstanceObject> iterator() {
+    Iterator<InstanceObject> objects = myObjects.iterator();
+    return new Iterator<InstanceObject>() {
+      private int myNextPosition = 0;
+      private boolean myIsIteratingObjects = true;
+
+      @Override
+      public boolean hasNext() {
+        return objects.hasNext() || (myIndices != null && myNextPosition < myIndices.size());
+      }
+
+      @Override
+      public InstanceObject next() {
+        if (objects.hasNext()) {
+          return objects.next();
+        }
+        if (myIndices == null || myNextPosition >= myIndices.size()) {
+          throw new NoSuchElementException();
+        }
+        myIsIteratingObjects = false;
+        return myStore.getInstanceObject(myIndices.get(myNextPosition++));
+      }
+
+      @Override
+      public void remove() {
+        if (myIsIteratingObjects) {
+          objects.remove();
+          return;
+        }
+        if (myNextPosition == 0) {
+          throw new IllegalStateException();
+        }
+        myNextPosition--;
+        myIndexSet.remove(myIndices.get(myNextPosition));
+        myIndices.remove(myNextPosition);
+      }
+    };
+  }
+
+  /**
+   * @return the instance as a view of an instance of {@link #myStore}, or null if it is held as an object.
+   */
+  @Nullable
+  private HeapDumpInstanceObject asStoredInstance(@Nullable Object o) {
+    if (myStore != null && o instanceof HeapDumpInstanceObject && ((HeapDumpInstanceObject)o).getStore() == myStore) {
+      return (HeapDumpInstanceObject)o;
+    }
+    return null;
+  }
+}
@@ -21,20 +21,28 @@ import static com.android.tools.profiler.proto.Common.Event.EventGroupIds.NETWOR
 import com.android.tools.adtui.model.FakeTimer;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.datastore.rpc.SubscribeEventsResponse;
 import com.android.tools.idea.transport.faketransport.FakeGrpcChannel;
 import com.android.tools.idea.transport.faketransport.FakeTransportService;
 import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.Transport;
 import com.google.common.truth.Truth;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import org.junit.Rule;
 import org.junit.Test;
 
 public class UnifiedEventDataSeriesTest {
   // Use an arbitrary stream id because we don't care in the data series.
   private static final int STREAM_ID = 1;
+  private static final Range ALL = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
 
-  private final FakeTransportService myService = new FakeTransportService(new FakeTimer());
+  private final SubscribingTransportService myService = new SubscribingTransportService();
   @Rule public FakeGrpcChannel myGrpcChannel = new FakeGrpcChannel("UnifiedEventDataSeriesTest", myService);
 
   @Test
@@ -84,4 +92,136 @@ public class UnifiedEventDataSeriesTest {
                                                                           event -> event.getNetworkSpeed().getThroughput()));
     series1.getDataForRange(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testSubscribedSeriesIsUpdatedWithoutQuerying() throws Exception {
+    myService.addEventToStream(STREAM_ID, ProfilersTestData.generateNetworkTxEvent(1, 10).build());
+    // Inserted between the acknowledgement and the initial query, so it is both pushed and returned by the query.
+    myService.myEventsOnSubscribe.add(ProfilersTestData.generateNetworkTxEvent(3, 30).build());
+
+    UnifiedEventDataSeries<Long> series = createTxSeries();
+    Truth.assertThat(series.subscribe(ALL).get(5, TimeUnit.SECONDS)).isTrue();
+    Truth.assertThat(myService.myQueryCount).isEqualTo(1);
+    myService.publish(STREAM_ID, ProfilersTestData.generateNetworkTxEvent(5, 50).build());
+
+    List<SeriesData<Long>> data = series.getDataForRange(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    Truth.assertThat(data.stream().map(d -> d.x).collect(Collectors.toList())).containsExactly(1L, 3L, 5L).inOrder();
+    Truth.assertThat(data.stream().map(d -> d.value).collect(Collectors.toList())).containsExactly(10L, 30L, 50L).inOrder();
+    Truth.assertThat(myService.myQueryCount).isEqualTo(1);
+
+    series.unsubscribe();
+    series.getDataForRange(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    Truth.assertThat(myService.myQueryCount).isEqualTo(2);
+  }
+
+  @Test
+  public void testSeriesFallsBackToQueryingWithoutSubscriptions() throws Exception {
+    myService.myIsSubscriptionSupported = false;
+    myService.addEventToStream(STREAM_ID, ProfilersTestData.generateNetworkTxEvent(1, 10).build());
+
+    UnifiedEventDataSeries<Long> series = createTxSeries();
+    Truth.assertThat(series.subscribe(ALL).get(5, TimeUnit.SECONDS)).isFalse();
+    myService.addEventToStream(STREAM_ID, ProfilersTestData.generateNetworkTxEvent(3, 30).build());
+
+    List<SeriesData<Long>> data = series.getDataForRange(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    Truth.assertThat(data.stream().map(d -> d.x).collect(Collectors.toList())).containsExactly(1L, 3L).inOrder();
+    series.unsubscribe();
+  }
+
+  @Test
+  public void testEventsFarBeforeTheLastRangeAreEvicted() throws Exception {
+    UnifiedEventDataSeries<Long> series = createTxSeries();
+    Truth.assertThat(series.subscribe(ALL).get(5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 1; i <= 100; i++) {
+      myService.publish(STREAM_ID, ProfilersTestData.generateNetworkTxEvent(TimeUnit.SECONDS.toMicros(i), i).build());
+    }
+
+    // Events more than a range length before the range are evicted, except the last one, which still applies to the range.
+    Range lastTenSeconds = new Range(TimeUnit.SECONDS.toMicros(90), TimeUnit.SECONDS.toMicros(100));
+    Truth.assertThat(series.getDataForRange(lastTenSeconds).stream().map(d -> d.value).collect(Collectors.toList()))
+      .containsExactlyElementsIn(LongStream.rangeClosed(89, 100).boxed().collect(Collectors.toList())).inOrder();
+    Truth.assertThat(myService.myQueryCount).isEqualTo(1);
+    Truth.assertThat(series.getDataForRange(new Range(TimeUnit.SECONDS.toMicros(85), TimeUnit.SECONDS.toMicros(95)))).hasSize(13);
+    Truth.assertThat(myService.myQueryCount).isEqualTo(1);
+
+    // Ranges reaching back past the evicted events are queried instead.
+    Range firstTenSeconds = new Range(TimeUnit.SECONDS.toMicros(10), TimeUnit.SECONDS.toMicros(20));
+    Truth.assertThat(series.getDataForRange(firstTenSeconds).stream().map(d -> d.value).collect(Collectors.toList()))
+      .containsExactlyElementsIn(LongStream.rangeClosed(9, 21).boxed().collect(Collectors.toList())).inOrder();
+    Truth.assertThat(myService.myQueryCount).isEqualTo(2);
+    series.unsubscribe();
+  }
+
+  @Test
+  public void testOnlyEventsAroundTheFirstRangeAreLoaded() throws Exception {
+    for (int i = 1; i <= 100; i++) {
+      myService.addEventToStream(STREAM_ID, ProfilersTestData.generateNetworkTxEvent(TimeUnit.SECONDS.toMicros(i), i).build());
+    }
+
+    Range lastTenSeconds = new Range(TimeUnit.SECONDS.toMicros(90), TimeUnit.SECONDS.toMicros(100));
+    UnifiedEventDataSeries<Long> series = createTxSeries();
+    Truth.assertThat(series.subscribe(lastTenSeconds).get(5, TimeUnit.SECONDS)).isTrue();
+    // The initial query starts a range length before the range.
+    Truth.assertThat(myService.myLastQuery.getFromTimestamp()).isEqualTo(TimeUnit.SECONDS.toNanos(80));
+    Truth.assertThat(myService.myQueryCount).isEqualTo(1);
+
+    Range earlierRange = new Range(TimeUnit.SECONDS.toMicros(85), TimeUnit.SECONDS.toMicros(95));
+    Truth.assertThat(series.getDataForRange(earlierRange).stream().map(d -> d.value).collect(Collectors.toList()))
+      .containsExactlyElementsIn(LongStream.rangeClosed(84, 96).boxed().collect(Collectors.toList())).inOrder();
+    Truth.assertThat(myService.myQueryCount).isEqualTo(1);
+
+    // Ranges reaching back past the loaded events are queried instead.
+    Range firstTenSeconds = new Range(TimeUnit.SECONDS.toMicros(10), TimeUnit.SECONDS.toMicros(20));
+    Truth.assertThat(series.getDataForRange(firstTenSeconds)).hasSize(13);
+    Truth.assertThat(myService.myQueryCount).isEqualTo(2);
+    series.unsubscribe();
+  }
+
+  private UnifiedEventDataSeries<Long> createTxSeries() {
+    return new UnifiedEventDataSeries<>(new ProfilerClient(myGrpcChannel.getName()).getTransportClient(),
+                                        STREAM_ID,
+                                        0,
+                                        Common.Event.Kind.NETWORK_SPEED,
+                                        NETWORK_TX_VALUE,
+                                        UnifiedEventDataSeries.fromFieldToDataExtractor(event -> event.getNetworkSpeed().getThroughput()));
+  }
+
+  /**
+   * Acknowledges subscriptions the way the datastore does and pushes the events passed to {@link #publish} to every subscriber. Filters
+   * are ignored, so tests should only publish events matching the subscribed series.
+   */
+  private static class SubscribingTransportService extends FakeTransportService {
+    private final List<StreamObserver<SubscribeEventsResponse>> mySubscribers = new CopyOnWriteArrayList<>();
+    private final List<Common.Event> myEventsOnSubscribe = new ArrayList<>();
+    private boolean myIsSubscriptionSupported = true;
+    private int myQueryCount;
+    private Transport.GetEventGroupsRequest myLastQuery;
+
+    SubscribingTransportService() {
+      super(new FakeTimer());
+    }
+
+    void publish(long streamId, Common.Event event) {
+      addEventToStream(streamId, event);
+      mySubscribers.forEach(subscriber -> subscriber.onNext(SubscribeEventsResponse.newBuilder().setEvent(event).build()));
+    }
+
+    @Override
+    public void subscribeEvents(Transport.GetEventGroupsRequest request, StreamObserver<SubscribeEventsResponse> responseObserver) {
+      if (!myIsSubscriptionSupported) {
+        super.subscribeEvents(request, responseObserver);
+        return;
+      }
+      responseObserver.onNext(SubscribeEventsResponse.newBuilder().setSubscribed(true).build());
+      mySubscribers.add(responseObserver);
+      myEventsOnSubscribe.forEach(event -> publish(STREAM_ID, event));
+    }
+
+    @Override
+    public void getEventGroups(Transport.GetEventGroupsRequest request, StreamObserver<Transport.GetEventGroupsResponse> responseObserver) {
+      myQueryCount++;
+      myLastQuery = request;
+      super.getEventGroups(request, responseObserver);
+    }
+  }
+}
@@ -68,6 +68,31 @@ public class CaptureNodeTest {
     assertThat(node.getDuration()).isEqualTo(10);
   }
 
+  @Test
+  public void childrenKeepTheirInsertionOrder() {
+    CaptureNode parent = new CaptureNode(new StubCaptureNodeModel());
+    assertThat(parent.getChildren()).isEmpty();
+    assertThat(parent.getFirstChild()).isNull();
+
+    List<CaptureNode> children = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      CaptureNode child = new CaptureNode(new StubCaptureNodeModel());
+      children.add(child);
+      parent.addChild(child);
+    }
+    assertThat(parent.getChildCount()).isEqualTo(10);
+    assertThat(parent.getChildren()).containsExactlyElementsIn(children).inOrder();
+    assertThat(parent.getLastChild()).isSameAs(children.get(9));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void childrenBeyondTheCountCannotBeAccessed() {
+    CaptureNode parent = new CaptureNode(new StubCaptureNodeModel());
+    parent.addChild(new CaptureNode(new StubCaptureNodeModel()));
+    // The children array has room for more than one child.
+    parent.getChildAt(1);
+  }
+
   @Test
   public void addChild() {
     CaptureNode realParent = new CaptureNode(new StubCaptureNodeModel());
@@ -23,7 +23,9 @@ import com.android.tools.profilers.FakeIdeProfilerServices
 import com.android.tools.profilers.FakeProfilerService
 import com.android.tools.profilers.ProfilerClient
 import com.android.tools.profilers.StudioProfilers
+import com.android.tools.profilers.cpu.atrace.AtraceCpuCapture
 import com.android.tools.profilers.cpu.atrace.AtraceParser
+import com.android.tools.profilers.cpu.atrace.CpuThreadSliceInfo
 import com.android.tools.profilers.event.FakeEventService
 import com.android.tools.profilers.memory.FakeMemoryService
 import com.android.tools.profilers.network.FakeNetworkService
@@ -64,6 +66,25 @@ class CpuKernelModelTest {
     assertThat(myCpuModel.size).isEqualTo(4)
   }
 
+  @Test
+  fun threadSliceInfoAtMatchesSeries() {
+    val parser = AtraceParser(1)
+    val capture = parser.parse(CpuProfilerTestUtils.getTraceFile("atrace.ctrace"), 0) as AtraceCpuCapture
+    myStage.capture = capture;
+    for (i in 0 until myCpuModel.size) {
+      val state = myCpuModel[i]
+      val series = capture.getCpuThreadSliceInfoStates(state.cpuId)
+      assertThat(state.getThreadSliceInfoAt(series[0].x - 1)).isNull()
+      // Look one microsecond into each slice, the series' start times being rounded down.
+      for (data in series.filter { it.value != CpuThreadSliceInfo.NULL_THREAD && it.value.durationUs > 1 }) {
+        val info = state.getThreadSliceInfoAt(data.x + 1)!!
+        assertThat(info.id).isEqualTo(data.value.id)
+        assertThat(info.name).isEqualTo(data.value.name)
+        assertThat(info.durationUs).isEqualTo(data.value.durationUs)
+      }
+    }
+  }
+
   @Test
   fun fireContentsChanged() {
     var itemAddedCalled = 0
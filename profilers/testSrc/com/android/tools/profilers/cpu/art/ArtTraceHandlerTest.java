@@ -19,6 +19,7 @@ import com.android.tools.perflib.vmtrace.VmTraceParser;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.TraceParsingProgress;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -26,6 +27,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.Assert.*;
 
@@ -97,6 +99,26 @@ public class ArtTraceHandlerTest {
     }
   }
 
+  @Test
+  public void testProgressIsCompleteOnceTreesAreBuilt() throws IOException {
+    TraceParsingProgress progress = new TraceParsingProgress();
+    ArtTraceHandler handler = new ArtTraceHandler(progress, 2);
+    new VmTraceParser(CpuProfilerTestUtils.getTraceFile("basic.trace"), handler).parse();
+    assertEquals(0, progress.getFraction(), 0);
+
+    handler.getThreadsGraph();
+    assertEquals(1, progress.getFraction(), 0);
+  }
+
+  @Test(expected = CancellationException.class)
+  public void testCancelledParsingDoesNotBuildTrees() throws IOException {
+    TraceParsingProgress progress = new TraceParsingProgress();
+    ArtTraceHandler handler = new ArtTraceHandler(progress, 2);
+    new VmTraceParser(CpuProfilerTestUtils.getTraceFile("basic.trace"), handler).parse();
+    progress.cancel();
+    handler.getThreadsGraph();
+  }
+
   private static CaptureNode parseCaptureNode() throws IOException {
     ArtTraceHandler handler = new ArtTraceHandler();
     VmTraceParser parser = new VmTraceParser(CpuProfilerTestUtils.getTraceFile("basic.trace"), handler);
@@ -132,6 +132,21 @@ class AtraceParserTest {
     assertThat(dataSeries[0]!![2].value.name).matches("rcu_preempt")
   }
 
+  @Test
+  fun testTraceEventLookups() {
+    val capture = myCapture as AtraceCpuCapture
+    val middle = ((SINGLE_CHILD_EXPECTED_START + SINGLE_CHILD_EXPECTED_END) / 2).toDouble()
+    val events = capture.getTraceEventsOverlapping(TEST_PID, Range(middle, middle))
+    assertThat(events.map { it.name }).contains(EXPECTED_METHOD_NAME)
+    assertThat(capture.getTraceEventsOverlapping(-1, Range(middle, middle))).isEmpty()
+
+    val longestUs = capture.getLongestTraceEventDurationsUs(TEST_PID, EXPECTED_METHOD_NAME, 3)
+    assertThat(longestUs).isNotEmpty()
+    assertThat(longestUs.map { -it }).isOrdered()
+    assertThat(longestUs[0]).isAtLeast(SINGLE_CHILD_EXPECTED_END - SINGLE_CHILD_EXPECTED_START - 1)
+    assertThat(capture.getLongestTraceEventDurationsUs(-1, EXPECTED_METHOD_NAME, 3)).isEmpty()
+  }
+
   @Test
   fun testInvalidProcessIdThrows() {
     var expectedExceptionCaught = false
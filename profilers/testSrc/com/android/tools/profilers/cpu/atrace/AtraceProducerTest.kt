@@ -102,6 +102,15 @@ class AtraceProducerTest {
     while (line != null)
   }
 
+  @Test
+  fun testSmallSegmentsProduceTheSameLines() {
+    val traceFile = CpuProfilerTestUtils.getTraceFile("atrace.ctrace")
+    // Segments smaller than the input buffer, so that the compressed data is read across many segment boundaries.
+    val producer = AtraceProducer(1000)
+    assertThat(producer.parseFile(traceFile)).isTrue()
+    assertThat(producer.lines.asSequence().toList()).containsExactlyElementsIn(myProducer.lines.asSequence().toList()).inOrder()
+  }
+
   // Adding a kotlin property fopr AtraceProducer to assist with iterating lines.
   val AtraceProducer.lines: Iterator<String>
     get() = object : Iterator<String> {
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import trebuchet.extras.InputStreamAdapter
+import trebuchet.importers.ftrace.FtraceImporter
+import trebuchet.io.MappedFileProducer
+import trebuchet.io.StreamingReader
+import trebuchet.model.Model
+import trebuchet.model.base.SliceGroup
+import trebuchet.task.ImportTask
+import trebuchet.util.PrintlnImportFeedback
+import java.io.File
+import java.util.Random
+
+class FtraceImporterTest {
+  @Test
+  fun parallelImportBuildsTheSameModel() {
+    // Several batches of lines, so that they are parsed concurrently.
+    val trace = generateTrace(20_000)
+    val sequentialModel = import(trace, 1)
+    val parallelModel = import(trace, 4)
+
+    assertThat(sequentialModel.processes).isNotEmpty()
+    assertThat(sequentialModel.cpus).isNotEmpty()
+    assertThat(describe(parallelModel)).isEqualTo(describe(sequentialModel))
+  }
+
+  @Test
+  fun eventsBeforeAllCpusStartedAreDropped() {
+    val trace = "# tracer: nop\n" +
+                "#\n" +
+                "          foo-101   ( 100) [000] ...1 1000.000001: tracing_mark_write: B|100|dropped\n" +
+                "##### CPU 1 buffer started ####\n" +
+                "          foo-101   ( 100) [001] ...1 1000.000002: tracing_mark_write: B|100|kept\n" +
+                "          foo-101   ( 100) [001] ...1 1000.000003: tracing_mark_write: E\n"
+
+    for (parallelism in listOf(1, 4)) {
+      val thread = import(trace, parallelism).processes.getValue(100).threads.single { it.id == 101 }
+      assertThat(thread.slices.map { it.name }).containsExactly("kept")
+    }
+  }
+
+  @Test
+  fun importFromSmallSegmentsBuildsTheSameModel() {
+    val trace = generateTrace(20_000)
+    val file = File.createTempFile("ftrace", ".txt")
+    try {
+      file.writeText(trace)
+      val streamModel = ImportTask(PrintlnImportFeedback()).import(InputStreamAdapter(trace.byteInputStream()))
+      // Segment and chunk sizes that don't line up with the lines, so that lines are split across both.
+      val mappedModel = ImportTask(PrintlnImportFeedback()).import(MappedFileProducer(file, 64 * 1024 + 7, 4093))
+
+      assertThat(mappedModel.processes).isNotEmpty()
+      assertThat(describe(mappedModel)).isEqualTo(describe(streamModel))
+    }
+    finally {
+      file.delete()
+    }
+  }
+
+  private fun import(trace: String, parallelism: Int): Model {
+    val reader = StreamingReader(InputStreamAdapter(trace.byteInputStream()))
+    reader.loadIndex(reader.keepLoadedSize)
+    return Model(FtraceImporter(PrintlnImportFeedback(), parallelism).import(reader)!!)
+  }
+
+  private fun describe(model: Model): String {
+    val builder = StringBuilder("${model.beginTimestamp} ${model.endTimestamp}\n")
+    model.processes.values.sortedBy { it.id }.forEach { process ->
+      builder.append("process ${process.id} ${process.name}\n")
+      process.counters.forEach { builder.append("  counter ${it.name} ${it.events}\n") }
+      process.threads.forEach { thread ->
+        builder.append("  thread ${thread.id} ${thread.name}\n")
+        thread.slices.forEach { describe(it, builder, "    ") }
+        thread.schedSlices.forEach { builder.append("    sched ${it.state} ${it.startTime} ${it.endTime}\n") }
+      }
+    }
+    model.cpus.forEach { cpu ->
+      builder.append("cpu ${cpu.id}\n")
+      cpu.slices.forEach { builder.append("  ${it.id} ${it.threadId} ${it.threadName} ${it.startTime} ${it.endTime}\n") }
+    }
+    return builder.toString()
+  }
+
+  private fun describe(slice: SliceGroup, builder: StringBuilder, indent: String) {
+    builder.append("$indent${slice.name} ${slice.startTime} ${slice.endTime}\n")
+    slice.children.forEach { describe(it, builder, "$indent  ") }
+  }
+
+  /**
+   * Generates a trace of scheduling events and nested slices on a few processes, threads and CPUs.
+   */
+  private fun generateTrace(lineCount: Int): String {
+    val random = Random(42)
+    val depths = IntArray(16)
+    val builder = StringBuilder("# tracer: nop\n#\n#           TASK-PID    TGID   CPU#  ||||    TIMESTAMP  FUNCTION\n")
+    for (i in 0 until lineCount) {
+      val timestamp = "${1000 + i / 1_000_000}.${(i % 1_000_000).toString().padStart(6, '0')}"
+      val thread = random.nextInt(depths.size)
+      val pid = 1000 + thread
+      val tgid = 100 + thread % 4
+      val cpu = random.nextInt(4)
+      val prefix = "          thread$thread-$pid   ( $tgid) [00$cpu] ...1 $timestamp: "
+      when (random.nextInt(5)) {
+        0 -> {
+          val next = random.nextInt(depths.size)
+          builder.append("          <idle>-0     (-----) [00$cpu] d..3 $timestamp: sched_switch: prev_comm=swapper/$cpu prev_pid=0 " +
+                         "prev_prio=120 prev_state=R ==> next_comm=thread$next next_pid=${1000 + next} next_prio=120\n")
+        }
+        1 -> builder.append("${prefix}sched_wakeup: comm=thread$thread pid=$pid prio=120 success=1 target_cpu=00$cpu\n")
+        2 -> builder.append("${prefix}tracing_mark_write: C|$tgid|counter$thread|${random.nextInt(100)}\n")
+        else -> {
+          if (depths[thread] > 0 && random.nextBoolean()) {
+            depths[thread]--
+            builder.append("${prefix}tracing_mark_write: E\n")
+          }
+          else {
+            depths[thread]++
+            builder.append("${prefix}tracing_mark_write: B|$tgid|slice$i\n")
+          }
+        }
+      }
+      if (i % 5_000 == 0) {
+        builder.append("this is not an event\n")
+      }
+    }
+    return builder.toString()
+  }
+}
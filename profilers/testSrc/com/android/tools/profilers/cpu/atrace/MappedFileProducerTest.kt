@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import trebuchet.io.MappedFile
+import trebuchet.io.MappedFileProducer
+import java.io.File
+
+class MappedFileProducerTest {
+  private lateinit var file: File
+  private val contents = ByteArray(1000) { it.toByte() }
+
+  @Before
+  fun setUp() {
+    file = File.createTempFile("mapped", ".bin")
+    file.writeBytes(contents)
+  }
+
+  @After
+  fun tearDown() {
+    file.delete()
+  }
+
+  @Test
+  fun fileIsMappedAsConsecutiveSegments() {
+    MappedFile(file, 300).use { mappedFile ->
+      assertThat(mappedFile.length).isEqualTo(1000L)
+      assertThat((0 until mappedFile.segmentCount).map { mappedFile.segment(it).remaining() }).containsExactly(300, 300, 300, 100).inOrder()
+    }
+  }
+
+  @Test
+  fun chunksStopAtSegmentBoundaries() {
+    val producer = MappedFileProducer(file, 300, 128)
+    val chunks = generateSequence { producer.next() }.toList()
+    producer.close()
+
+    assertThat(chunks.map { it.length }).containsExactly(128, 128, 44, 128, 128, 44, 128, 128, 44, 100).inOrder()
+    assertThat(chunks.flatMap { chunk -> (0 until chunk.length).map { chunk[it] } }).containsExactlyElementsIn(contents.toList()).inOrder()
+  }
+
+  @Test
+  fun closeReleasesTheMapping() {
+    val mappedFile = MappedFile(file, 300)
+    val producer = MappedFileProducer(mappedFile, 128)
+    assertThat(producer.next()).isNotNull()
+
+    producer.close()
+    assertThat(mappedFile.segmentCount).isEqualTo(0)
+    assertThat(producer.next()).isNull()
+  }
+
+  @Test
+  fun emptyFileHasNoChunks() {
+    file.writeBytes(ByteArray(0))
+    val producer = MappedFileProducer(file)
+    assertThat(producer.next()).isNull()
+    producer.close()
+  }
+}
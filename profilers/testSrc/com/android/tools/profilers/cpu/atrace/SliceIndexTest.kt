@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import trebuchet.model.base.SliceGroup
+import trebuchet.model.fragments.SliceGroupBuilder
+import trebuchet.queries.SliceIndex
+
+class SliceIndexTest {
+  // Ten slices [10i, 10i + 8], each with two children [10i, 10i + 2] and [10i + 4, 10i + 8], the second one having a child.
+  private val slices = (0 until 10).map { i ->
+    val start = 10.0 * i
+    slice("Parent", start, start + 8,
+          slice("Short", start, start + 2),
+          slice("Child$i", start + 4, start + 8, slice("Short", start + 5, start + 5 + i / 10.0)))
+  }
+  private val index = SliceIndex.of(slices)
+
+  @Test
+  fun overlappingSlicesAreByDepthThenByTime() {
+    assertThat(index.maxDepth).isEqualTo(2)
+    assertThat(index.overlapping(25.0, 33.0).map { "${it.name} ${it.startTime}" }).containsExactly(
+      "Parent 20.0", "Parent 30.0",
+      "Child2 24.0", "Short 30.0",
+      "Short 25.0").inOrder()
+    assertThat(index.overlapping(8.5, 9.5)).isEmpty()
+    assertThat(index.overlapping(100.0, 200.0)).isEmpty()
+  }
+
+  @Test
+  fun sliceAtTimeAndDepth() {
+    assertThat(index.sliceAt(41.0)!!.startTime).isEqualTo(40.0)
+    assertThat(index.sliceAt(41.0, 1)!!.name).isEqualTo("Short")
+    assertThat(index.sliceAt(43.0, 1)).isNull()
+    assertThat(index.sliceAt(45.2, 2)!!.startTime).isEqualTo(45.0)
+    assertThat(index.sliceAt(45.0, 3)).isNull()
+    assertThat(index.sliceAt(-1.0)).isNull()
+    assertThat(index.sliceAt(99.0)).isNull()
+  }
+
+  @Test
+  fun flatSlicesAtTime() {
+    val flatIndex = SliceIndex.flat(slices)
+    assertThat(flatIndex.maxDepth).isEqualTo(0)
+    assertThat(flatIndex.sliceAt(48.0)!!.startTime).isEqualTo(40.0)
+    assertThat(flatIndex.sliceAt(49.0)).isNull()
+    assertThat(flatIndex.sliceAt(45.0, 1)).isNull()
+  }
+
+  @Test
+  fun longestSlicesByName() {
+    assertThat(index.longest("Short", 3).map { it.duration }).containsExactly(2.0, 2.0, 2.0)
+    assertThat(index.longest("Short", 20).map { -it.duration }).isOrdered()
+    assertThat(index.longest("Child3", 5)).hasSize(1)
+    assertThat(index.longest("Missing", 5)).isEmpty()
+  }
+
+  @Test
+  fun emptyIndex() {
+    val emptyIndex = SliceIndex.of(emptyList<SliceGroup>())
+    assertThat(emptyIndex.maxDepth).isEqualTo(-1)
+    assertThat(emptyIndex.overlapping(0.0, 100.0)).isEmpty()
+    assertThat(emptyIndex.sliceAt(0.0)).isNull()
+    assertThat(SliceIndex.flat(emptyList<SliceGroup>()).sliceAt(0.0)).isNull()
+  }
+
+  private fun slice(name: String, start: Double, end: Double, vararg children: SliceGroupBuilder.MutableSliceGroup) =
+    SliceGroupBuilder.MutableSliceGroup(start, end, false, 0.0, name, children.toMutableList())
+}
@@ -133,6 +133,54 @@ public class TopDownTreeModelTest {
     Truth.assertThat(treeModelChangeCount[0]).isEqualTo(1);
   }
 
+  @Test
+  public void childrenAreOnlyBuiltForExpandedNodes() {
+    CaptureNode tree = createChain();
+    Range range = new Range(-Double.MAX_VALUE, Double.MAX_VALUE);
+    CpuTreeModel model = new TopDownTreeModel(range, new TopDownNode(tree));
+
+    TreeNode root = (TreeNode)model.getRoot();
+    // The children of the root's children are needed to show whether they can be expanded, but nothing deeper.
+    assertEquals(ImmutableSet.of("C"), getChildrenIds(getNode(root, "A", new String[]{"B"})));
+    assertEquals(0, getNode(root, "A", new String[]{"B", "C"}).getChildCount());
+
+    model.expand((DefaultMutableTreeNode)getNode(root, "A", new String[]{"B"}));
+    assertEquals(ImmutableSet.of("D"), getChildrenIds(getNode(root, "A", new String[]{"B", "C"})));
+    assertEquals(0, getNode(root, "A", new String[]{"B", "C", "D"}).getChildCount());
+    assertEquals(2, getTotal(root, "A", "B", "C", "D"), 0);
+  }
+
+  @Test
+  public void expandedNodesFollowRangeChanges() {
+    CaptureNode tree = createChain();
+    Range range = new Range(-Double.MAX_VALUE, Double.MAX_VALUE);
+    CpuTreeModel model = new TopDownTreeModel(range, new TopDownNode(tree));
+
+    TreeNode root = (TreeNode)model.getRoot();
+    model.expand((DefaultMutableTreeNode)getNode(root, "A", new String[]{"B"}));
+
+    range.set(0, 4);
+    assertEquals(1, getTotal(root, "A", "B", "C", "D"), 0);
+
+    range.set(0, 2);
+    assertEquals(ImmutableSet.of(), getChildrenIds(getNode(root, "A", new String[]{"B"})));
+  }
+
+  /**
+   * A -> B -> C -> D -> E
+   */
+  private static CaptureNode createChain() {
+    CaptureNode root = newNode("A", 0, 10);
+    CaptureNode b = newNode("B", 1, 9);
+    CaptureNode c = newNode("C", 2, 8);
+    CaptureNode d = newNode("D", 3, 5);
+    d.addChild(newNode("E", 3, 4));
+    c.addChild(d);
+    b.addChild(c);
+    root.addChild(b);
+    return root;
+  }
+
   private static double getTotal(TreeNode node, String id, String... ids) {
     node = getNode(node, id, ids);
     return getTotal(node);
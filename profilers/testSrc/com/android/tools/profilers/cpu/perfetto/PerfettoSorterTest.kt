@@ -16,17 +16,18 @@
 package com.android.tools.profilers.cpu.perfetto
 
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils
-import com.android.tools.profilers.cpu.atrace.PerfettoPacketDBSorter
+import com.android.tools.profilers.cpu.atrace.PerfettoLineSorter
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
 import perfetto.protos.PerfettoTrace
 import java.io.FileInputStream
+import java.util.Random
 
 class PerfettoSorterTest {
 
   @Test
   fun formattedLinesAreReturnedOnNext() {
-    val sorter = PerfettoPacketDBSorter()
+    val sorter = PerfettoLineSorter()
     sorter.addLine(0, "Some line")
     assertThat(sorter.hasNext()).isFalse()
     sorter.resetForIterator()
@@ -36,7 +37,7 @@ class PerfettoSorterTest {
 
   @Test
   fun hasNextCanBeCalledMultipleTimes() {
-    val sorter = PerfettoPacketDBSorter()
+    val sorter = PerfettoLineSorter()
     sorter.addLine(0, "Some Line")
     assertThat(sorter.hasNext()).isFalse()
     sorter.resetForIterator()
@@ -45,4 +46,22 @@ class PerfettoSorterTest {
     assertThat(sorter.hasNext()).isTrue()
     assertThat(sorter.next()).isEqualTo("Some Line")
   }
+
+  @Test
+  fun linesAreSortedAcrossRunsWrittenToDisk() {
+    // A few kilobytes of buffer, so that lines are written to disk in many runs.
+    val sorter = PerfettoLineSorter(4096)
+    val random = Random(0)
+    val timestamps = (0 until 10_000).map { random.nextInt(1000).toLong() }
+    timestamps.forEachIndexed { index, timestamp -> sorter.addLine(timestamp, "$timestamp $index") }
+    sorter.resetForIterator()
+
+    val lines = mutableListOf<String>()
+    sorter.forEachRemaining { lines.add(it) }
+    sorter.close()
+    // Lines with the same timestamp are returned in the order they were added.
+    val expected = timestamps.withIndex().sortedBy { it.value }.map { "${it.value} ${it.index}" }
+    assertThat(lines).containsExactlyElementsIn(expected).inOrder()
+    assertThat(sorter.hasNext()).isFalse()
+  }
 }
@@ -21,10 +21,12 @@ import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.TraceParsingProgress;
 import com.android.tools.profilers.cpu.nodemodel.CppFunctionModel;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.util.io.FileUtil;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
@@ -33,6 +35,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 
 import static com.android.tools.profilers.cpu.CpuProfilerTestUtils.traceFileToByteString;
@@ -233,6 +236,46 @@ public class SimpleperfTraceParserTest {
     assertEquals(expected.getMax(), myParser.getRange().getMax(), 0);
   }
 
+  @Test
+  public void parallelParsingMatchesSequentialParsing() throws IOException {
+    SimpleperfTraceParser sequentialParser = new SimpleperfTraceParser(new TraceParsingProgress(), 1);
+    sequentialParser.parse(myTraceFile, 0);
+    TraceParsingProgress progress = new TraceParsingProgress();
+    SimpleperfTraceParser parallelParser = new SimpleperfTraceParser(progress, 4);
+    parallelParser.parse(myTraceFile, 0);
+    assertEquals(1, progress.getFraction(), 0);
+
+    assertEquals(sequentialParser.mySamples, parallelParser.mySamples);
+    assertEquals(flattenTrees(sequentialParser), flattenTrees(parallelParser));
+  }
+
+  @Test(expected = CancellationException.class)
+  public void cancelledParsingStops() throws IOException {
+    TraceParsingProgress progress = new TraceParsingProgress();
+    progress.cancel();
+    new SimpleperfTraceParser(progress, 4).parse(myTraceFile, 0);
+  }
+
+  private static Map<Integer, List<String>> flattenTrees(SimpleperfTraceParser parser) {
+    Map<Integer, List<String>> trees = new HashMap<>();
+    parser.getCaptureTrees().forEach((thread, tree) -> trees.put(thread.getId(), flatten(tree)));
+    return trees;
+  }
+
+  /**
+   * @return a description of the nodes of a tree, in pre-order.
+   */
+  private static List<String> flatten(CaptureNode tree) {
+    List<String> nodes = new ArrayList<>();
+    List<CaptureNode> stack = Lists.newArrayList(tree);
+    while (!stack.isEmpty()) {
+      CaptureNode node = stack.remove(stack.size() - 1);
+      nodes.add(String.format("%s %d %d-%d", node.getData().getFullName(), node.getDepth(), node.getStart(), node.getEnd()));
+      stack.addAll(Lists.reverse(node.getChildren()));
+    }
+    return nodes;
+  }
+
   /**
    * Checks that a {@link CaptureNode} tree starts with "__start_thread -> __pthread_start", then verifies the node just after then.
    */
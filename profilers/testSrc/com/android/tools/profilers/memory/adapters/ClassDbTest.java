@@ -18,6 +18,11 @@ package com.android.tools.profilers.memory.adapters;
 import static com.android.tools.profilers.memory.adapters.ClassDb.INVALID_CLASS_ID;
 import static com.google.common.truth.Truth.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Test;
 
 public class ClassDbTest {
@@ -55,4 +60,25 @@ public class ClassDbTest {
     assertThat(db.getDescendantClasses(classId4)).containsExactly(entry4, entry5);
     assertThat(db.getDescendantClasses(classId5)).containsExactly(entry5);
   }
+
+  @Test
+  public void testRepeatedRegistrationsShareEntries() throws Exception {
+    ClassDb db = new ClassDb();
+    ClassDb.ClassEntry entry = db.registerClass(1, INVALID_CLASS_ID, "Class1");
+    assertThat(db.registerClass(1, INVALID_CLASS_ID, "Class1")).isSameAs(entry);
+    // A different registration for the same id replaces the entry.
+    assertThat(db.registerClass(1, INVALID_CLASS_ID, "Renamed")).isNotSameAs(entry);
+    assertThat(db.getEntry(1).getClassName()).isEqualTo("Renamed");
+
+    // Concurrent registrations end up with a single entry per class.
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<ClassDb.ClassEntry>> entries = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      entries.add(executor.submit(() -> db.registerClass(2, 1, "Class2")));
+    }
+    for (Future<ClassDb.ClassEntry> future : entries) {
+      assertThat(future.get()).isSameAs(db.getEntry(2));
+    }
+    executor.shutdown();
+  }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.android.tools.profilers.memory.adapters.DominatorTree.NO_DOMINATOR;
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class DominatorTreeTest {
+  @Test
+  public void diamondIsDominatedByItsSource() {
+    // 0 -> {1, 2} -> 3 -> 4
+    DominatorTree tree = compute(5, new int[][]{{0, 1}, {0, 2}, {1, 3}, {2, 3}, {3, 4}}, 0);
+    assertThat(dominators(tree, 5)).asList().containsExactly(NO_DOMINATOR, 0, 0, 0, 3).inOrder();
+    assertThat(tree.computeRetainedSizes(new long[]{1, 2, 4, 8, 16})).asList().containsExactly(31L, 2L, 4L, 24L, 16L).inOrder();
+  }
+
+  @Test
+  public void cyclesSkipTheirSemiDominator() {
+    // 0 -> 1 -> 2 -> 3 -> 1 and 0 -> 3, so 3 and 1 can both be reached without going through the other.
+    DominatorTree tree = compute(4, new int[][]{{0, 1}, {1, 2}, {2, 3}, {3, 1}, {0, 3}}, 0);
+    assertThat(dominators(tree, 4)).asList().containsExactly(NO_DOMINATOR, 0, 1, 0).inOrder();
+  }
+
+  @Test
+  public void instancesSharedByRootsHaveNoDominator() {
+    DominatorTree tree = compute(4, new int[][]{{0, 2}, {1, 2}, {2, 3}}, 0, 1);
+    assertThat(dominators(tree, 4)).asList().containsExactly(NO_DOMINATOR, NO_DOMINATOR, NO_DOMINATOR, 2).inOrder();
+    assertThat(tree.computeRetainedSizes(new long[]{1, 1, 1, 1})).asList().containsExactly(1L, 1L, 2L, 1L).inOrder();
+  }
+
+  @Test
+  public void unreachableInstancesOnlyRetainThemselves() {
+    DominatorTree tree = compute(3, new int[][]{{0, 1}, {2, 1}}, 0);
+    assertThat(tree.isReachable(2)).isFalse();
+    assertThat(dominators(tree, 3)).asList().containsExactly(NO_DOMINATOR, 0, NO_DOMINATOR).inOrder();
+    assertThat(tree.computeRetainedSizes(new long[]{1, 1, 1})).asList().containsExactly(2L, 1L, 1L).inOrder();
+  }
+
+  @Test
+  public void longChainsDoNotOverflowTheStack() {
+    int count = 200_000;
+    int[][] edges = new int[count - 1][];
+    for (int i = 0; i < count - 1; i++) {
+      edges[i] = new int[]{i, i + 1};
+    }
+    List<Double> progress = new ArrayList<>();
+    DominatorTree tree = buildTree(count, edges, () -> false, progress::add, 0);
+    tree.compute();
+    assertThat(tree.getImmediateDominator(count - 1)).isEqualTo(count - 2);
+    long[] sizes = new long[count];
+    Arrays.fill(sizes, 1);
+    assertThat(tree.computeRetainedSizes(sizes)[0]).isEqualTo(count);
+    assertThat(progress).isOrdered();
+    assertThat(progress.get(progress.size() - 1)).isEqualTo(1.0);
+  }
+
+  @Test
+  public void retainedSizesArePublishedOnceFinal() {
+    // A root retaining 200000 leaves, each leaf is final before the root is.
+    int count = 200_001;
+    int[][] edges = new int[count - 1][];
+    for (int i = 0; i < count - 1; i++) {
+      edges[i] = new int[]{0, i + 1};
+    }
+    DominatorTree tree = compute(count, edges, 0);
+    long[] sizes = new long[count];
+    Arrays.fill(sizes, 2);
+    long[] published = new long[count];
+    Arrays.fill(published, -1);
+    List<Double> progress = new ArrayList<>();
+    long[] retained = tree.computeRetainedSizes(sizes, (partial, nodes, done) -> {
+      for (int node : nodes) {
+        assertThat(published[node]).isEqualTo(-1L);
+        published[node] = partial[node];
+      }
+      progress.add(done);
+    });
+    assertThat(progress.size()).isGreaterThan(1);
+    assertThat(progress).isOrdered();
+    assertThat(progress.get(progress.size() - 1)).isEqualTo(1.0);
+    // The root comes first in preorder, so it is published last, once all the vertices it dominates are.
+    assertThat(published).isEqualTo(retained);
+    assertThat(retained[0]).isEqualTo(2L * count);
+  }
+
+  @Test(expected = CancellationException.class)
+  public void computationCanBeCancelled() {
+    int count = 200_000;
+    int[][] edges = new int[count - 1][];
+    for (int i = 0; i < count - 1; i++) {
+      edges[i] = new int[]{0, i + 1};
+    }
+    buildTree(count, edges, () -> true, progress -> {}, 0).compute();
+  }
+
+  @NotNull
+  private static DominatorTree compute(int nodeCount, @NotNull int[][] edges, int... roots) {
+    DominatorTree tree = buildTree(nodeCount, edges, () -> false, progress -> {}, roots);
+    tree.compute();
+    return tree;
+  }
+
+  @NotNull
+  private static DominatorTree buildTree(int nodeCount,
+                                         @NotNull int[][] edges,
+                                         @NotNull BooleanSupplier isCancelled,
+                                         @NotNull DoubleConsumer progress,
+                                         int... roots) {
+    int[] offsets = new int[nodeCount + 1];
+    for (int[] edge : edges) {
+      offsets[edge[0] + 1]++;
+    }
+    for (int i = 0; i < nodeCount; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    int[] successors = new int[edges.length];
+    int[] fill = Arrays.copyOf(offsets, nodeCount);
+    for (int[] edge : edges) {
+      successors[fill[edge[0]]++] = edge[1];
+    }
+    return new DominatorTree(nodeCount, offsets, successors, roots, isCancelled, progress);
+  }
+
+  @NotNull
+  private static int[] dominators(@NotNull DominatorTree tree, int nodeCount) {
+    int[] dominators = new int[nodeCount];
+    for (int i = 0; i < nodeCount; i++) {
+      dominators[i] = tree.getImmediateDominator(i);
+    }
+    return dominators;
+  }
+}
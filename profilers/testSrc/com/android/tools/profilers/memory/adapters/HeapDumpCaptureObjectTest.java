@@ -27,7 +27,11 @@ import com.android.tools.adtui.model.FakeTimer;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.idea.transport.faketransport.FakeGrpcChannel;
 import com.android.tools.idea.transport.faketransport.FakeTransportService;
+import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.Snapshot;
 import com.android.tools.perflib.heap.SnapshotBuilder;
+import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
+import com.android.tools.perflib.heap.io.InMemoryBuffer;
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo;
 import com.android.tools.profilers.FakeIdeProfilerServices;
 import com.android.tools.profilers.ProfilerClient;
@@ -38,6 +42,7 @@ import com.android.tools.profilers.memory.FakeMemoryService;
 import com.android.tools.profilers.memory.MemoryProfilerStage;
 import com.android.tools.profilers.memory.adapters.instancefilters.ActivityFragmentLeakInstanceFilter;
 import com.android.tools.profilers.memory.adapters.instancefilters.CaptureObjectInstanceFilter;
+import com.android.tools.proguard.ProguardMap;
 import com.google.common.truth.Truth;
 import java.io.File;
 import java.io.FileInputStream;
@@ -50,6 +55,8 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
@@ -178,6 +185,36 @@ public class HeapDumpCaptureObjectTest {
     assertNotNull(defaultHeap);
   }
 
+  @Test
+  public void testParallelLoadingMatchesSequentialLoading() throws Exception {
+    // Enough instances to span multiple loading batches.
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(20000, 0, 0).addReferences(1, 2).addRoot(1);
+    myTransportService.addFile("1", ByteString.copyFrom(snapshotBuilder.getByteBuffer()));
+    HeapDumpCaptureObject sequential = loadCapture(1, 1);
+    HeapDumpCaptureObject parallel = loadCapture(1, 4);
+
+    HeapSet sequentialHeap = sequential.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().get();
+    HeapSet parallelHeap = parallel.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().get();
+    assertEquals(sequentialHeap.getInstancesCount(), parallelHeap.getInstancesCount());
+    assertEquals(sequentialHeap.getDeltaAllocationCount(), parallelHeap.getDeltaAllocationCount());
+    assertEquals(sequentialHeap.getTotalShallowSize(), parallelHeap.getTotalShallowSize());
+    assertEquals(sequentialHeap.getTotalRetainedSize(), parallelHeap.getTotalRetainedSize());
+    assertEquals(sequentialHeap.getTotalObjectSetCount(), parallelHeap.getTotalObjectSetCount());
+    assertEquals(sequentialHeap.getFilteredObjectSetCount(), parallelHeap.getFilteredObjectSetCount());
+    assertEquals(sequentialHeap.getFilterMatchCount(), parallelHeap.getFilterMatchCount());
+    Truth.assertThat(parallelHeap.getInstancesStream().map(InstanceObject::getValueText).collect(Collectors.toList()))
+      .containsExactlyElementsIn(sequentialHeap.getInstancesStream().map(InstanceObject::getValueText).collect(Collectors.toList()))
+      .inOrder();
+    // References are resolved through the instance index.
+    InstanceObject instance0 =
+      parallelHeap.getInstancesStream().filter(instance -> instance.getValueText().startsWith("Class0@1 ")).findFirst().get();
+    Truth.assertThat(parallelHeap.getInstancesStream().anyMatch(instance -> instance.equals(instance0.getFields().get(0).getAsInstance())))
+      .isTrue();
+    // Retained sizes come from the dominator tree of the loaded heap dump.
+    Truth.assertThat(instance0.getRetainedSize()).isGreaterThan(0L);
+    Truth.assertThat(instance0.getFields().get(0).getRetainedSize()).isEqualTo(instance0.getFields().get(0).getAsInstance().getRetainedSize());
+  }
+
   @Test
   public void testLoadingFailure() throws Exception {
     HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
@@ -241,6 +278,81 @@ public class HeapDumpCaptureObjectTest {
     Truth.assertThat(capture.getInstances().count()).isEqualTo(allInstanceCount);
   }
 
+  @Test
+  public void testRetainedSizesMatchPerflib() throws Exception {
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(0).setEndTime(1).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getName()), ProfilersTestData.SESSION_DATA,
+                                dumpInfo, null, myIdeProfilerServices.getFeatureTracker(), myStage);
+
+    File hprof = TestUtils.getWorkspaceFile("tools/adt/idea/profilers/testData/hprofs/displayingbitmaps_leakedActivity.hprof");
+    FileInputStream inputStream = new FileInputStream(hprof);
+    MappedByteBuffer buffer = inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, inputStream.getChannel().size());
+    buffer.load();
+
+    myTransportService.addFile(Long.toString(0), ByteString.copyFrom(buffer));
+    capture.load(null, null);
+    assertFalse(capture.isError());
+
+    // Perflib's own dominator computation, on a snapshot parsed the same way, with native sizes attached to the instances.
+    buffer.rewind();
+    Snapshot snapshot = Snapshot.createSnapshot(new InMemoryBuffer(buffer), new ProguardMap(),
+                                                Collections.singletonList(new NativeRegistryPostProcessor()));
+    snapshot.computeDominators();
+
+    List<HeapDumpInstanceObject> reachableInstances = capture.getInstances()
+      .map(instance -> (HeapDumpInstanceObject)instance)
+      .filter(instance -> instance.getDepth() != Integer.MAX_VALUE)
+      .collect(Collectors.toList());
+    Truth.assertThat(reachableInstances).isNotEmpty();
+    for (HeapDumpInstanceObject instance : reachableInstances) {
+      Instance perflibInstance = snapshot.findInstance(instance.getInstance().getId());
+      assertNotNull(perflibInstance);
+      assertEquals(instance.getValueText(), perflibInstance.getTotalRetainedSize(), instance.getRetainedSize());
+    }
+  }
+
+  @Test
+  public void testRetainedSizesPublishedInBatchesAddUpInHeapSets() throws Exception {
+    File hprof = TestUtils.getWorkspaceFile("tools/adt/idea/profilers/testData/hprofs/displayingbitmaps_leakedActivity.hprof");
+    FileInputStream inputStream = new FileInputStream(hprof);
+    MappedByteBuffer buffer = inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, inputStream.getChannel().size());
+    myTransportService.addFile(Long.toString(0), ByteString.copyFrom(buffer));
+
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getName()), ProfilersTestData.SESSION_DATA,
+                                HeapDumpInfo.newBuilder().setStartTime(0).setEndTime(1).build(), null,
+                                myIdeProfilerServices.getFeatureTracker(), myStage);
+    CountDownLatch retainedSizesLatch = new CountDownLatch(1);
+    Executor queryJoiner = task -> {
+      task.run();
+      if (capture.getRetainedSizeProgress() == 1) {
+        retainedSizesLatch.countDown();
+      }
+    };
+    assertTrue(capture.load(null, queryJoiner));
+    assertTrue(retainedSizesLatch.await(1, TimeUnit.MINUTES));
+
+    HeapDumpCaptureObject synchronousCapture = loadCapture(0, 1);
+    for (HeapSet heapSet : capture.getHeapSets()) {
+      List<Long> retainedSizes = heapSet.getInstancesStream().map(InstanceObject::getRetainedSize).collect(Collectors.toList());
+      Truth.assertThat(retainedSizes).doesNotContain((long)MemoryObject.INVALID_VALUE);
+      long retainedSize = retainedSizes.stream().mapToLong(Long::longValue).sum();
+      assertEquals(retainedSize, heapSet.getTotalRetainedSize());
+      assertEquals(synchronousCapture.getHeapSet(heapSet.getId()).getTotalRetainedSize(), heapSet.getTotalRetainedSize());
+    }
+  }
+
+  @NotNull
+  private HeapDumpCaptureObject loadCapture(long startTimeNs, int loadParallelism) {
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getName()), ProfilersTestData.SESSION_DATA,
+                                HeapDumpInfo.newBuilder().setStartTime(startTimeNs).setEndTime(startTimeNs + 1).build(), null,
+                                myIdeProfilerServices.getFeatureTracker(), myStage, loadParallelism);
+    assertTrue(capture.load(null, null));
+    return capture;
+  }
+
   private static void verifyInstance(@NotNull InstanceObject instance,
                                      @NotNull String valueText,
                                      int depth,
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.OBJECT;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.Type;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+public class HeapDumpInstanceStoreTest {
+  private static final String MOCK_CLASS = "MockClass";
+
+  @Test
+  public void referrersAreStoredHardFirstAndSortedByDepth() {
+    MockClassInstance target = new MockClassInstance(1, 4, MOCK_CLASS);
+    MockClassInstance deepReferrer = new MockClassInstance(2, 3, MOCK_CLASS);
+    MockClassInstance shallowReferrer = new MockClassInstance(3, 1, MOCK_CLASS);
+    MockClassInstance softReferrer = new MockClassInstance(4, 0, MOCK_CLASS);
+    deepReferrer.addFieldValue(Type.OBJECT, "deep", target);
+    shallowReferrer.addFieldValue(Type.OBJECT, "shallow", target);
+    softReferrer.addFieldValue(Type.OBJECT, "soft", target);
+    target.addHardReference(deepReferrer);
+    target.addHardReference(shallowReferrer);
+    target.addSoftReferences(softReferrer);
+
+    ClassDb.ClassEntry classEntry = new ClassDb.ClassEntry(1, ClassDb.INVALID_CLASS_ID, MOCK_CLASS);
+    Map<Long, Instance> instances = Stream.of(target, deepReferrer, shallowReferrer, softReferrer)
+      .collect(Collectors.toMap(Instance::getId, Function.identity()));
+    HeapDumpInstanceStore store = new HeapDumpInstanceStore(mock(HeapDumpCaptureObject.class), 4, instances::get);
+    store.set(0, target, classEntry, OBJECT);
+    store.set(1, deepReferrer, classEntry, OBJECT);
+    store.set(2, shallowReferrer, classEntry, OBJECT);
+    store.set(3, softReferrer, classEntry, OBJECT);
+    store.buildIndex();
+
+    // The referrers are resolved on first use.
+    assertThat(store.getReferrers(0)).asList().containsExactly(2, 1, 3).inOrder();
+    assertThat(store.getReferrers(1)).isEmpty();
+    assertThat(store.indexOf(shallowReferrer)).isEqualTo(2);
+
+    HeapDumpInstanceObject view = store.getInstanceObject(0);
+    assertThat(view).isEqualTo(store.getInstanceObject(0));
+    assertThat(view.hashCode()).isEqualTo(store.getInstanceObject(0).hashCode());
+    assertThat(view.getDepth()).isEqualTo(4);
+    assertThat(view.getValueText()).isEqualTo("MockClass@1 (0x1)");
+    assertThat(view.extractReferences().stream().map(reference -> reference.getReferenceFieldNames().get(0)).collect(Collectors.toList()))
+      .containsExactly("shallow", "deep", "soft").inOrder();
+  }
+
+  @Test
+  public void referrersComputedInRangesAreAssembledInOrder() {
+    MockClassInstance target = new MockClassInstance(1, 2, MOCK_CLASS);
+    MockClassInstance referrer = new MockClassInstance(2, 1, MOCK_CLASS);
+    MockClassInstance otherTarget = new MockClassInstance(3, 2, MOCK_CLASS);
+    target.addHardReference(referrer);
+    otherTarget.addHardReference(referrer);
+    otherTarget.addHardReference(target);
+
+    ClassDb.ClassEntry classEntry = new ClassDb.ClassEntry(1, ClassDb.INVALID_CLASS_ID, MOCK_CLASS);
+    Map<Long, Instance> instances = Stream.of(target, referrer, otherTarget)
+      .collect(Collectors.toMap(Instance::getId, Function.identity()));
+    HeapDumpInstanceStore store = new HeapDumpInstanceStore(mock(HeapDumpCaptureObject.class), 3, instances::get);
+    store.set(0, target, classEntry, OBJECT);
+    store.set(1, referrer, classEntry, OBJECT);
+    store.set(2, otherTarget, classEntry, OBJECT);
+    store.buildIndex();
+    store.setReferrers(Arrays.asList(store.computeReferrers(0, 1), store.computeReferrers(1, 3)));
+
+    assertThat(store.getReferrers(0)).asList().containsExactly(1);
+    assertThat(store.getReferrers(1)).isEmpty();
+    assertThat(store.getReferrers(2)).asList().containsExactly(1, 0).inOrder();
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.OBJECT;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.android.tools.perflib.heap.Instance;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+public class InstanceObjectSetTest {
+  private static final String MOCK_CLASS = "MockClass";
+
+  @Test
+  public void heapDumpInstancesAreHeldByIndexInInsertionOrder() {
+    HeapDumpCaptureObject captureObject = mock(HeapDumpCaptureObject.class);
+    MockClassInstance instance0 = new MockClassInstance(1, 0, MOCK_CLASS);
+    MockClassInstance instance1 = new MockClassInstance(2, 1, MOCK_CLASS);
+    MockClassInstance instance2 = new MockClassInstance(3, 1, MOCK_CLASS);
+    ClassDb.ClassEntry classEntry = new ClassDb.ClassEntry(1, ClassDb.INVALID_CLASS_ID, MOCK_CLASS);
+    Map<Long, Instance> instances = Stream.of(instance0, instance1, instance2)
+      .collect(Collectors.toMap(Instance::getId, Function.identity()));
+    HeapDumpInstanceStore store = new HeapDumpInstanceStore(captureObject, 3, instances::get);
+    store.set(0, instance0, classEntry, OBJECT);
+    store.set(1, instance1, classEntry, OBJECT);
+    store.set(2, instance2, classEntry, OBJECT);
+    store.buildIndex();
+
+    InstanceObjectSet set = new InstanceObjectSet();
+    assertThat(set.add(store.getInstanceObject(2))).isTrue();
+    assertThat(set.add(store.getInstanceObject(0))).isTrue();
+    assertThat(set.add(store.getInstanceObject(2))).isFalse();
+    assertThat(set).containsExactly(store.getInstanceObject(2), store.getInstanceObject(0)).inOrder();
+    assertThat(set.contains(store.getInstanceObject(1))).isFalse();
+
+    // Instances that are not part of the loaded heap dump are held as objects.
+    HeapDumpInstanceObject detached = new HeapDumpInstanceObject(captureObject, instance1, classEntry, OBJECT);
+    assertThat(set.add(detached)).isTrue();
+    assertThat(set).hasSize(3);
+    assertThat(set.contains(detached)).isTrue();
+
+    InstanceObjectSet other = new InstanceObjectSet();
+    other.add(store.getInstanceObject(1));
+    other.add(store.getInstanceObject(0));
+    assertThat(set.remove(detached)).isTrue();
+    assertThat(set.addAll(other)).isTrue();
+    assertThat(set).containsExactly(store.getInstanceObject(2), store.getInstanceObject(0), store.getInstanceObject(1)).inOrder();
+
+    assertThat(set.remove(store.getInstanceObject(0))).isTrue();
+    assertThat(set).containsExactly(store.getInstanceObject(2), store.getInstanceObject(1)).inOrder();
+    set.clear();
+    assertThat(set).isEmpty();
+  }
+}
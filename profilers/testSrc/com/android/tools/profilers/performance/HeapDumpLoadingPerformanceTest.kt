@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.adtui.model.FakeTimer
+import com.android.tools.idea.protobuf.ByteString
+import com.android.tools.idea.transport.faketransport.FakeGrpcChannel
+import com.android.tools.idea.transport.faketransport.FakeTransportService
+import com.android.tools.perflib.heap.SnapshotBuilder
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profiler.proto.Memory.HeapDumpInfo
+import com.android.tools.profilers.FakeIdeProfilerServices
+import com.android.tools.profilers.ProfilerClient
+import com.android.tools.profilers.ProfilersTestData
+import com.android.tools.profilers.StudioProfilers
+import com.android.tools.profilers.memory.FakeCaptureObjectLoader
+import com.android.tools.profilers.memory.FakeMemoryService
+import com.android.tools.profilers.memory.MemoryProfilerStage
+import com.android.tools.profilers.memory.adapters.HeapDumpCaptureObject
+import org.junit.Rule
+import org.junit.Test
+import java.time.Instant
+
+/**
+ * Reports [HeapDumpCaptureObject.load] latency on synthetic heap dumps of growing sizes, which includes parsing the hprof, computing
+ * dominators and building the instance index and heap sets on all available cores.
+ */
+class HeapDumpLoadingPerformanceTest {
+  companion object {
+    private val INSTANCE_COUNTS = listOf(10_000, 100_000, 500_000)
+    private const val LOAD_COUNT = 5
+  }
+
+  private val timer = FakeTimer()
+  private val transportService = FakeTransportService(timer)
+  private val ideServices = FakeIdeProfilerServices()
+
+  @get:Rule
+  val grpcChannel = FakeGrpcChannel("HeapDumpLoadingPerformanceTest", transportService, FakeMemoryService())
+
+  private val benchmark = Benchmark.Builder("HeapDump Loading Timings (Nanos)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun runPerformanceTest() {
+    val stage = MemoryProfilerStage(StudioProfilers(ProfilerClient(grpcChannel.name), ideServices, timer), FakeCaptureObjectLoader())
+    for (count in INSTANCE_COUNTS) {
+      // Chain the instances so the dominator tree and retained sizes are non-trivial.
+      val builder = SnapshotBuilder(count, 0, 0).addRoot(1)
+      for (i in 1 until count) {
+        builder.addReferences(i, i + 1)
+      }
+      val dumpId = count.toLong()
+      transportService.addFile(dumpId.toString(), ByteString.copyFrom(builder.byteBuffer))
+
+      val metric = Metric("Load-$count")
+      // The first load warms up the JIT, we don't want to account for it.
+      for (i in 0..LOAD_COUNT) {
+        val capture = HeapDumpCaptureObject(ProfilerClient(grpcChannel.name), ProfilersTestData.SESSION_DATA,
+                                            HeapDumpInfo.newBuilder().setStartTime(dumpId).setEndTime(dumpId + 1).build(), null,
+                                            ideServices.featureTracker, stage)
+        val startTime = System.nanoTime()
+        capture.load(null, null)
+        if (i != 0) {
+          metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), System.nanoTime() - startTime))
+        }
+        capture.unload()
+      }
+      metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                             .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                             .build()))
+      metric.commit()
+    }
+  }
+}
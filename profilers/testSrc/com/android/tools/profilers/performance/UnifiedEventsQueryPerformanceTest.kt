@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import org.junit.Test
+import java.io.File
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+/**
+ * Reports [UnifiedEventsTable.queryUnifiedEventGroups] latency for growing database sizes, so regressions in the table layout or
+ * the query planner show up as a change in the slope of query time vs. event count.
+ */
+class UnifiedEventsQueryPerformanceTest {
+  companion object {
+    private val DATABASE_SIZES = listOf(10_000, 100_000, 500_000)
+    private const val GROUP_COUNT = 50
+    private const val QUERY_COUNT = 50
+    private val INTERVAL = TimeUnit.MILLISECONDS.toNanos(10)
+    private val QUERY_RANGE = TimeUnit.SECONDS.toNanos(10)
+  }
+
+  private val benchmark = Benchmark.Builder("UnifiedEvents Query Timings (Nanos)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun runPerformanceTest() {
+    for (size in DATABASE_SIZES) {
+      val dbFile = File.createTempFile("UnifiedEventsQueryPerformanceTest", "sql")
+      dbFile.deleteOnExit()
+      val database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+      val table = UnifiedEventsTable()
+      table.initialize(database.connection)
+      populate(table, size)
+      database.connection.commit()
+
+      val endTime = size * INTERVAL
+      val rangeMetric = Metric("Range-Query-$size")
+      val groupMetric = Metric("Group-Query-$size")
+      for (i in 0 until QUERY_COUNT) {
+        // Spread queries across the whole timeline, including scrolling back to the start of the capture.
+        val from = endTime * i / QUERY_COUNT
+        val rangeRequest = GetEventGroupsRequest.newBuilder()
+          .setKind(Common.Event.Kind.CPU_USAGE)
+          .setStreamId(1)
+          .setFromTimestamp(from)
+          .setToTimestamp(from + QUERY_RANGE)
+          .build()
+        recordQuery(table, rangeRequest, rangeMetric, i != 0)
+        recordQuery(table, rangeRequest.toBuilder().setGroupId((i % GROUP_COUNT + 1).toLong()).build(), groupMetric, i != 0)
+      }
+      listOf(rangeMetric, groupMetric).forEach {
+        it.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+        it.commit()
+      }
+      database.disconnect()
+    }
+  }
+
+  private fun populate(table: UnifiedEventsTable, size: Int) {
+    val batch = mutableListOf<Common.Event>()
+    for (i in 0 until size) {
+      batch.add(Common.Event.newBuilder()
+                  .setKind(Common.Event.Kind.CPU_USAGE)
+                  .setPid(1)
+                  .setGroupId((i % GROUP_COUNT + 1).toLong())
+                  .setTimestamp(i * INTERVAL)
+                  .build())
+      if (batch.size == 1000) {
+        table.insertUnifiedEvents(1, batch)
+        batch.clear()
+      }
+    }
+    table.insertUnifiedEvents(1, batch)
+  }
+
+  private fun recordQuery(table: UnifiedEventsTable, request: GetEventGroupsRequest, metric: Metric, recordMetric: Boolean) {
+    val startTime = System.nanoTime()
+    table.queryUnifiedEventGroups(request)
+    // The first query prepares and caches the statements, we don't want to account for it.
+    if (recordMetric) {
+      metric.addSamples(benchmark, Metric.MetricSample(Instant.now().toEpochMilli(), System.nanoTime() - startTime))
+    }
+  }
+}
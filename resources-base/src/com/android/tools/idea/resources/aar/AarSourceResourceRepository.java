@@ -34,6 +34,7 @@ import com.android.tools.idea.resources.base.Base128InputStream;
 import com.android.tools.idea.resources.base.Base128OutputStream;
 import com.android.tools.idea.resources.base.BasicFileResourceItem;
 import com.android.tools.idea.resources.base.BasicResourceItem;
+import com.android.tools.idea.resources.base.MappedResourceCache;
 import com.android.tools.idea.resources.base.NamespaceResolver;
 import com.android.tools.idea.resources.base.RepositoryConfiguration;
 import com.android.tools.idea.resources.base.RepositoryLoader;
@@ -42,7 +43,6 @@ import com.android.tools.idea.resources.base.ResourceSourceFile;
 import com.android.tools.idea.resources.base.ResourceSourceFileImpl;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.NullableLazyValue;
 import java.io.BufferedReader;
@@ -75,7 +75,7 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
    * Increment when making changes that may affect content of repository cache files.
    * Used together with CachingData.codeVersion. Important for developer builds.
    */
-  static final String CACHE_FILE_FORMAT_VERSION = "3";
+  static final String CACHE_FILE_FORMAT_VERSION = "4";
   private static final byte[] CACHE_FILE_HEADER = "Resource cache".getBytes(UTF_8);
   private static final Logger LOG = Logger.getInstance(AarSourceResourceRepository.class);
 
@@ -244,7 +244,7 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
    */
   private void createPersistentCache(@NotNull CachingData cachingData) {
     byte[] header = ResourceSerializationUtil.getCacheFileHeader(stream -> writeCacheHeaderContent(cachingData, stream));
-    ResourceSerializationUtil.createPersistentCache(cachingData.getCacheFile(), header, stream -> writeToStream(stream, config -> true));
+    MappedResourceCache.write(cachingData.getCacheFile(), header, myResources, config -> true);
   }
 
   protected void writeCacheHeaderContent(@NotNull CachingData cachingData, @NotNull Base128OutputStream stream) throws IOException {
@@ -256,15 +256,19 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
   }
 
   /**
-   * Loads contents the repository from a cache file on disk.
-   * @see ResourceSerializationUtil#createPersistentCache
+   * Loads contents the repository from a cache file on disk. The cache file is mapped into memory and resource items are created when
+   * they are requested for the first time.
+   * @see MappedResourceCache#write
    */
   private boolean loadFromPersistentCache(@NotNull Path cacheFile, @NotNull byte[] fileHeader) {
-    try (Base128InputStream stream = new Base128InputStream(cacheFile)) {
-      if (!stream.validateContents(fileHeader)) {
+    try {
+      MappedResourceCache cache = MappedResourceCache.open(cacheFile, fileHeader, this, true);
+      if (cache == null) {
         return false; // Cache file header doesn't match.
       }
-      loadFromStream(stream, Maps.newHashMapWithExpectedSize(1000), null);
+      for (ResourceType type : cache.getResourceTypes()) {
+        myResources.put(type, cache.getResources(type));
+      }
 
       populatePublicResourcesMap();
       freezeResources();
@@ -289,7 +293,8 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
   }
 
   /**
-   * Writes contents of the repository to the given output stream.
+   * Writes contents of the repository to the given output stream. Used for the resource tables of framework_res.jar, persistent caches
+   * are written by {@link MappedResourceCache#write}.
    *
    * @param stream the stream to write to
    * @param configFilter only resources belonging to configurations satisfying this filter are written to the stream
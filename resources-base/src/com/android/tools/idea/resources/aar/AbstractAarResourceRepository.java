@@ -22,6 +22,7 @@ import com.android.ide.common.resources.ResourceItemWithVisibility;
 import com.android.ide.common.resources.ResourceVisitor;
 import com.android.resources.ResourceType;
 import com.android.resources.ResourceVisibility;
+import com.android.tools.idea.resources.base.MappedResourceMap;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
@@ -72,12 +73,16 @@ public abstract class AbstractAarResourceRepository extends AbstractResourceRepo
 
   /**
    * Populates the {@link #myPublicResources} map. Has to be called after {@link #myResources} has been populated.
+   * The public resources of {@link MappedResourceMap}s are obtained from the maps when they are requested.
    */
   protected final void populatePublicResourcesMap() {
     for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> entry : myResources.entrySet()) {
       ResourceType resourceType = entry.getKey();
       ImmutableSet.Builder<ResourceItem> setBuilder = null;
       ListMultimap<String, ResourceItem> items = entry.getValue();
+      if (items instanceof MappedResourceMap) {
+        continue;
+      }
       for (ResourceItem item : items.values()) {
         if (((ResourceItemWithVisibility)item).getVisibility() == ResourceVisibility.PUBLIC) {
           if (setBuilder == null) {
@@ -95,7 +100,9 @@ public abstract class AbstractAarResourceRepository extends AbstractResourceRepo
    */
   protected void freezeResources() {
     for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> entry : myResources.entrySet()) {
-      myResources.put(entry.getKey(), ImmutableListMultimap.copyOf(entry.getValue()));
+      if (!(entry.getValue() instanceof MappedResourceMap)) {
+        myResources.put(entry.getKey(), ImmutableListMultimap.copyOf(entry.getValue()));
+      }
     }
   }
 
@@ -134,6 +141,12 @@ public abstract class AbstractAarResourceRepository extends AbstractResourceRepo
       return Collections.emptySet();
     }
     Set<ResourceItem> resourceItems = myPublicResources.get(type);
+    if (resourceItems == null) {
+      ListMultimap<String, ResourceItem> map = myResources.get(type);
+      if (map instanceof MappedResourceMap) {
+        return ((MappedResourceMap)map).getPublicResources();
+      }
+    }
     return resourceItems == null ? Collections.emptySet() : resourceItems;
   }
 
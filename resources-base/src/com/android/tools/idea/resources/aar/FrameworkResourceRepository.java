@@ -28,11 +28,13 @@ import com.android.tools.idea.resources.base.Base128InputStream;
 import com.android.tools.idea.resources.base.Base128OutputStream;
 import com.android.tools.idea.resources.base.BasicResourceItem;
 import com.android.tools.idea.resources.base.BasicResourceItemBase;
-import com.android.tools.idea.resources.base.BasicValueResourceItemBase;
+import com.android.tools.idea.resources.base.MappedResourceCache;
+import com.android.tools.idea.resources.base.MappedResourceMap;
 import com.android.tools.idea.resources.base.NamespaceResolver;
 import com.android.tools.idea.resources.base.RepositoryConfiguration;
 import com.android.tools.idea.resources.base.RepositoryLoader;
 import com.android.tools.idea.resources.base.ResourceSerializationUtil;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
@@ -48,8 +50,11 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -164,21 +169,29 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
                     @NotNull Loader loader,
                     @Nullable Set<String> languageGroups,
                     @NotNull Set<String> languageGroupsLoadedFromSourceRepositoryOrCache) {
-    Map<String, String> stringCache = Maps.newHashMapWithExpectedSize(10000);
-    Map<NamespaceResolver, NamespaceResolver> namespaceResolverCache = new HashMap<>();
     Set<RepositoryConfiguration> configurationsToTakeOver =
-        sourceRepository == null ? ImmutableSet.of() : copyFromRepository(sourceRepository, stringCache, namespaceResolverCache);
+        sourceRepository == null ? ImmutableSet.of() : copyFromRepository(sourceRepository);
 
     // If not loading from a jar file, try to load from a cache file first. A separate cache file is not used
     // when loading from framework_res.jar since it already contains data in the cache format. Loading from
     // framework_res.jar or a cache file is significantly faster than reading individual resource files.
+    List<MappedResourceCache> caches = ImmutableList.of();
     if (!loader.isLoadingFromZipArchive() && cachingData != null) {
-      loadFromPersistentCache(cachingData, languageGroups, languageGroupsLoadedFromSourceRepositoryOrCache, stringCache,
-                              namespaceResolverCache);
+      caches = loadFromPersistentCache(cachingData, languageGroups, languageGroupsLoadedFromSourceRepositoryOrCache);
     }
 
     myLanguageGroups.addAll(languageGroupsLoadedFromSourceRepositoryOrCache);
-    if (languageGroups == null || !languageGroupsLoadedFromSourceRepositoryOrCache.containsAll(languageGroups)) {
+    boolean loadFromOrigin = languageGroups == null || !languageGroupsLoadedFromSourceRepositoryOrCache.containsAll(languageGroups);
+    if (sourceRepository == null && !loadFromOrigin) {
+      // All resources come from cache files, so resource items can be created when they are requested.
+      useMappedResources(caches);
+    }
+    else {
+      for (MappedResourceCache cache : caches) {
+        cache.forEachItem(this::addResourceItem);
+      }
+    }
+    if (loadFromOrigin) {
       loader.loadRepositoryContents(this);
     }
 
@@ -212,32 +225,18 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
    * Copies resources from another FrameworkResourceRepository.
    *
    * @param sourceRepository the repository to copy resources from
-   * @param stringCache the string cache to populate with the names of copied resources
-   * @param namespaceResolverCache the namespace resolver cache to populate with namespace resolvers referenced by the copied resources
    * @return the {@link RepositoryConfiguration} objects referenced by the copied resources
    */
   @NotNull
-  private Set<RepositoryConfiguration> copyFromRepository(@NotNull FrameworkResourceRepository sourceRepository,
-                                                          @NotNull Map<String, String> stringCache,
-                                                          @NotNull Map<NamespaceResolver, NamespaceResolver> namespaceResolverCache) {
+  private Set<RepositoryConfiguration> copyFromRepository(@NotNull FrameworkResourceRepository sourceRepository) {
     Collection<ListMultimap<String, ResourceItem>> resourceMaps = sourceRepository.myResources.values();
 
-    // Copy resources from the source repository, get AarConfigurations that need to be taken over by this repository,
-    // and pre-populate string and namespace resolver caches.
+    // Copy resources from the source repository and get AarConfigurations that need to be taken over by this repository.
     Set<RepositoryConfiguration> sourceConfigurations = Sets.newIdentityHashSet();
     for (ListMultimap<String, ResourceItem> resourceMap : resourceMaps) {
       for (ResourceItem item : resourceMap.values()) {
         addResourceItem(item);
-
         sourceConfigurations.add(((BasicResourceItemBase)item).getRepositoryConfiguration());
-        if (item instanceof BasicValueResourceItemBase) {
-          ResourceNamespace.Resolver resolver = ((BasicValueResourceItemBase)item).getNamespaceResolver();
-          NamespaceResolver namespaceResolver =
-              resolver == ResourceNamespace.Resolver.EMPTY_RESOLVER ? NamespaceResolver.EMPTY : (NamespaceResolver)resolver;
-          namespaceResolverCache.put(namespaceResolver, namespaceResolver);
-        }
-        String name = item.getName();
-        stringCache.put(name, name);
       }
     }
 
@@ -245,26 +244,33 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
     return sourceConfigurations;
   }
 
-  private void loadFromPersistentCache(@NotNull CachingData cachingData, @Nullable Set<String> languagesToLoad,
-                                          @NotNull Set<String> loadedLanguages,
-                                          @NotNull Map<String, String> stringCache,
-                                          @Nullable Map<NamespaceResolver, NamespaceResolver> namespaceResolverCache) {
+  /**
+   * Opens the cache files of the given languages, except the ones in {@code loadedLanguages}, and adds their languages to
+   * {@code loadedLanguages}.
+   *
+   * @return the opened cache files
+   */
+  @NotNull
+  private List<MappedResourceCache> loadFromPersistentCache(@NotNull CachingData cachingData, @Nullable Set<String> languagesToLoad,
+                                                            @NotNull Set<String> loadedLanguages) {
     CacheFileNameGenerator fileNameGenerator = new CacheFileNameGenerator((cachingData));
     Set<String> languages = languagesToLoad == null ? fileNameGenerator.getAllCacheFileLanguages() : languagesToLoad;
+    List<MappedResourceCache> caches = new ArrayList<>();
 
     for (String language : languages) {
       if (!loadedLanguages.contains(language)) {
         Path cacheFile = fileNameGenerator.getCacheFile(language);
-        try (Base128InputStream stream = new Base128InputStream(cacheFile)) {
+        try {
           byte[] header = ResourceSerializationUtil.getCacheFileHeader(s -> writeCacheHeaderContent(cachingData, language, s));
-          if (!stream.validateContents(header)) {
+          MappedResourceCache cache = MappedResourceCache.open(cacheFile, header, this, true);
+          if (cache == null) {
             // Cache file header doesn't match.
             if (language.isEmpty()) {
               break; // Don't try to load language-specific resources if language-neutral ones could not be loaded.
             }
             continue;
           }
-          loadFromStream(stream, stringCache, namespaceResolverCache);
+          caches.add(cache);
           loadedLanguages.add(language);
           myNumberOfLanguageGroupsLoadedFromCache++;
         }
@@ -276,6 +282,7 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
         }
         catch (Throwable e) {
           cleanupAfterFailedLoadingFromCache();
+          caches.clear();
           loadedLanguages.clear();
           myNumberOfLanguageGroupsLoadedFromCache = 0;
           LOG.warn("Failed to load from cache file " + cacheFile.toString(), e);
@@ -283,6 +290,22 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
         }
       }
     }
+    return caches;
+  }
+
+  /**
+   * Makes the resources of the given cache files the contents of this repository without creating the resource items.
+   */
+  private void useMappedResources(@NotNull List<MappedResourceCache> caches) {
+    Map<ResourceType, List<MappedResourceMap>> maps = new EnumMap<>(ResourceType.class);
+    for (MappedResourceCache cache : caches) {
+      for (ResourceType type : cache.getResourceTypes()) {
+        maps.computeIfAbsent(type, t -> new ArrayList<>()).add(cache.getResources(type));
+      }
+    }
+    for (Map.Entry<ResourceType, List<MappedResourceMap>> entry : maps.entrySet()) {
+      myResources.put(entry.getKey(), MappedResourceMap.concat(entry.getValue()));
+    }
   }
 
   private void createPersistentCache(@NotNull CachingData cachingData, @NotNull Set<String> languagesToSkip) {
@@ -291,8 +314,7 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
       if (!languagesToSkip.contains(language)) {
         Path cacheFile = fileNameGenerator.getCacheFile(language);
         byte[] header = ResourceSerializationUtil.getCacheFileHeader(stream -> writeCacheHeaderContent(cachingData, language, stream));
-        ResourceSerializationUtil.createPersistentCache(
-            cacheFile, header, stream -> writeToStream(stream, config -> language.equals(getLanguageGroup(config))));
+        MappedResourceCache.write(cacheFile, header, myResources, config -> language.equals(getLanguageGroup(config)));
       }
     }
   }
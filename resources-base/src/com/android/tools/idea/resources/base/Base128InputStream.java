@@ -18,6 +18,7 @@ package com.android.tools.idea.resources.base;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -52,6 +53,16 @@ public final class Base128InputStream extends BufferedInputStream {
     super(Files.newInputStream(file));
   }
 
+  /**
+   * Reads the remaining bytes of the given buffer. The position of the buffer is not affected.
+   *
+   * @param buffer the buffer to read from
+   */
+  public Base128InputStream(@NotNull ByteBuffer buffer) {
+    // Reads from a buffer are short, so a large read-ahead buffer would only cost an allocation.
+    super(new ByteBufferInputStream(buffer.duplicate()), 256);
+  }
+
   /**
    * If the {@code stringCache} parameter is not null, the {@link #readString()} method will use that cache
    * to avoid returning distinct String instances that are equal to each other.
@@ -219,6 +230,37 @@ public final class Base128InputStream extends BufferedInputStream {
     return result;
   }
 
+  private static class ByteBufferInputStream extends InputStream {
+    @NotNull private final ByteBuffer myBuffer;
+
+    ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+      myBuffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return myBuffer.hasRemaining() ? myBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!myBuffer.hasRemaining()) {
+        return -1;
+      }
+      length = Math.min(length, myBuffer.remaining());
+      myBuffer.get(bytes, offset, length);
+      return length;
+    }
+
+    @Override
+    public int available() {
+      return myBuffer.remaining();
+    }
+  }
+
   /**
    * Exception thrown when invalid data is encountered while reading from a stream.
    */
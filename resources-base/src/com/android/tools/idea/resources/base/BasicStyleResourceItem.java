@@ -23,14 +23,14 @@ import com.android.ide.common.rendering.api.StyleResourceValue;
 import com.android.resources.ResourceType;
 import com.android.resources.ResourceVisibility;
 import com.android.tools.idea.resources.base.Base128InputStream.StreamFormatException;
-import com.google.common.collect.ImmutableTable;
-import com.google.common.collect.Table;
 import com.intellij.openapi.diagnostic.Logger;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,9 +44,21 @@ import org.jetbrains.annotations.Nullable;
 public final class BasicStyleResourceItem extends BasicValueResourceItemBase implements StyleResourceValue {
   private static final Logger LOG = Logger.getInstance(BasicStyleResourceItem.class);
 
+  /** Styles with more items than this are searched using {@link #mySortedItemIndexes}. */
+  private static final int LINEAR_SEARCH_LIMIT = 8;
+  private static final StyleItemResourceValue[] NO_ITEMS = new StyleItemResourceValue[0];
+  private static final String[] NO_NAMES = new String[0];
+  private static final ResourceNamespace[] NO_NAMESPACES = new ResourceNamespace[0];
+
   @Nullable private final String myParentStyle;
-  /** Style items keyed by the namespace and the name of the attribute they define. */
-  @NotNull private final Table<ResourceNamespace, String, StyleItemResourceValue> myStyleItemTable;
+  /** Items of the style in the order of their definition. Items redefining an attribute are not included. */
+  @NotNull private final StyleItemResourceValue[] myStyleItems;
+  /** Names of the attributes defined by {@link #myStyleItems}, in the same order. */
+  @NotNull private final String[] myAttrNames;
+  /** Namespaces of the attributes defined by {@link #myStyleItems}, in the same order. */
+  @NotNull private final ResourceNamespace[] myAttrNamespaces;
+  /** Indexes of {@link #myStyleItems} sorted by attribute name, or null if the style has few items. */
+  @Nullable private final int[] mySortedItemIndexes;
 
   /**
    * Initializes the resource.
@@ -63,8 +75,9 @@ public final class BasicStyleResourceItem extends BasicValueResourceItemBase imp
                                 @Nullable String parentStyle,
                                 @NotNull Collection<StyleItemResourceValue> styleItems) {
     super(ResourceType.STYLE, name, sourceFile, visibility);
-    myParentStyle = parentStyle;
-    ImmutableTable.Builder<ResourceNamespace, String, StyleItemResourceValue> tableBuilder = ImmutableTable.builder();
+    myParentStyle = ResourceStringPool.intern(parentStyle);
+    List<StyleItemResourceValue> items = new ArrayList<>(styleItems.size());
+    List<ResourceReference> attrs = new ArrayList<>(styleItems.size());
     Map<ResourceReference, StyleItemResourceValue> duplicateCheckMap = new HashMap<>();
     for (StyleItemResourceValue styleItem : styleItems) {
       ResourceReference attr = styleItem.getAttr();
@@ -72,14 +85,39 @@ public final class BasicStyleResourceItem extends BasicValueResourceItemBase imp
         // Check for duplicate style item definitions. Such duplicate definitions are present in the framework resources.
         StyleItemResourceValue previouslyDefined = duplicateCheckMap.put(attr, styleItem);
         if (previouslyDefined == null) {
-          tableBuilder.put(attr.getNamespace(), attr.getName(), styleItem);
+          items.add(styleItem);
+          attrs.add(attr);
         }
         else if (!previouslyDefined.equals(styleItem)) {
           LOG.warn("Conflicting definitions of \"" + styleItem.getAttrName() + "\" in style \"" + name + "\"");
         }
       }
     }
-    myStyleItemTable = tableBuilder.build();
+
+    int n = items.size();
+    myStyleItems = items.toArray(NO_ITEMS);
+    myAttrNames = n == 0 ? NO_NAMES : new String[n];
+    myAttrNamespaces = n == 0 ? NO_NAMESPACES : new ResourceNamespace[n];
+    for (int i = 0; i < n; i++) {
+      ResourceReference attr = attrs.get(i);
+      myAttrNames[i] = ResourceStringPool.intern(attr.getName());
+      myAttrNamespaces[i] = attr.getNamespace();
+    }
+
+    if (n > LINEAR_SEARCH_LIMIT) {
+      Integer[] order = new Integer[n];
+      for (int i = 0; i < n; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, Comparator.comparing(i -> myAttrNames[i]));
+      mySortedItemIndexes = new int[n];
+      for (int i = 0; i < n; i++) {
+        mySortedItemIndexes[i] = order[i];
+      }
+    }
+    else {
+      mySortedItemIndexes = null;
+    }
   }
 
   @Override
@@ -91,20 +129,64 @@ public final class BasicStyleResourceItem extends BasicValueResourceItemBase imp
   @Override
   @Nullable
   public StyleItemResourceValue getItem(@NotNull ResourceNamespace namespace, @NotNull String name) {
-    return myStyleItemTable.get(namespace, name);
+    int index = findItem(namespace, name);
+    return index < 0 ? null : myStyleItems[index];
   }
 
   @Override
   @Nullable
   public StyleItemResourceValue getItem(@NotNull ResourceReference attr) {
     assert attr.getResourceType() == ResourceType.ATTR;
-    return myStyleItemTable.get(attr.getNamespace(), attr.getName());
+    return getItem(attr.getNamespace(), attr.getName());
   }
 
   @Override
   @NotNull
   public Collection<StyleItemResourceValue> getDefinedItems() {
-    return myStyleItemTable.values();
+    return Collections.unmodifiableList(Arrays.asList(myStyleItems));
+  }
+
+  /**
+   * Returns the index in {@link #myStyleItems} of the item defining the given attribute, or -1 if the style doesn't define it.
+   */
+  private int findItem(@NotNull ResourceNamespace namespace, @NotNull String name) {
+    int[] sortedIndexes = mySortedItemIndexes;
+    if (sortedIndexes == null) {
+      for (int i = 0; i < myStyleItems.length; i++) {
+        if (myAttrNames[i].equals(name) && myAttrNamespaces[i].equals(namespace)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    int low = 0;
+    int high = sortedIndexes.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = myAttrNames[sortedIndexes[mid]].compareTo(name);
+      if (c < 0) {
+        low = mid + 1;
+      }
+      else if (c > 0) {
+        high = mid - 1;
+      }
+      else {
+        // Attributes with the same name may belong to different namespaces.
+        for (int i = mid; i >= 0 && myAttrNames[sortedIndexes[i]].equals(name); i--) {
+          if (myAttrNamespaces[sortedIndexes[i]].equals(namespace)) {
+            return sortedIndexes[i];
+          }
+        }
+        for (int i = mid + 1; i < sortedIndexes.length && myAttrNames[sortedIndexes[i]].equals(name); i++) {
+          if (myAttrNamespaces[sortedIndexes[i]].equals(namespace)) {
+            return sortedIndexes[i];
+          }
+        }
+        return -1;
+      }
+    }
+    return -1;
   }
 
   @Override
@@ -112,7 +194,17 @@ public final class BasicStyleResourceItem extends BasicValueResourceItemBase imp
     if (this == obj) return true;
     if (!super.equals(obj)) return false;
     BasicStyleResourceItem other = (BasicStyleResourceItem) obj;
-    return Objects.equals(myParentStyle, other.myParentStyle) && myStyleItemTable.equals(other.myStyleItemTable);
+    if (!Objects.equals(myParentStyle, other.myParentStyle) || myStyleItems.length != other.myStyleItems.length) {
+      return false;
+    }
+    // Attributes are unique within a style, so matching every attribute of this style is enough regardless of order.
+    for (int i = 0; i < myStyleItems.length; i++) {
+      int index = other.findItem(myAttrNamespaces[i], myAttrNames[i]);
+      if (index < 0 || !myStyleItems[i].equals(other.myStyleItems[index])) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
@@ -122,8 +214,8 @@ public final class BasicStyleResourceItem extends BasicValueResourceItemBase imp
                         @NotNull Object2IntMap<ResourceNamespace.Resolver> namespaceResolverIndexes) throws IOException {
     super.serialize(stream, configIndexes, sourceFileIndexes, namespaceResolverIndexes);
     stream.writeString(myParentStyle);
-    stream.writeInt(myStyleItemTable.size());
-    for (StyleItemResourceValue styleItem : myStyleItemTable.values()) {
+    stream.writeInt(myStyleItems.length);
+    for (StyleItemResourceValue styleItem : myStyleItems) {
       stream.writeString(styleItem.getAttrName());
       stream.writeString(styleItem.getValue());
       int index = namespaceResolverIndexes.getInt(styleItem.getNamespaceResolver());
@@ -46,7 +46,7 @@ public class BasicValueResourceItem extends BasicValueResourceItemBase {
                                 @NotNull ResourceVisibility visibility,
                                 @Nullable String value) {
     super(type, name, sourceFile, visibility);
-    myValue = value;
+    myValue = ResourceStringPool.internIfReference(value);
   }
 
   @Override
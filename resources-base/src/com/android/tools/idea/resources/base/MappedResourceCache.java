@@ -0,0 +1,717 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.resources.base;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.android.ide.common.rendering.api.ResourceNamespace;
+import com.android.ide.common.resources.ResourceItem;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.resources.ResourceType;
+import com.android.resources.ResourceVisibility;
+import com.android.tools.idea.resources.base.Base128InputStream.StreamFormatException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A resource repository cache file that is used in place instead of being deserialized when it is opened. The file is memory-mapped,
+ * resource names are looked up in a per-type index, and a resource item is only created when it is requested for the first time.
+ *
+ * <p>The file consists of the following parts:
+ * <ol>
+ *   <li>The header provided by the caller (sequence of bytes)</li>
+ *   <li>Format marker (int)</li>
+ *   <li>String table: number of strings (int), offsets of the strings and of the end of the last one relative to the string data
+ *       (ints), the strings encoded in UTF-8</li>
+ *   <li>Number of folder configurations (int), string indexes of their qualifiers (ints)</li>
+ *   <li>Number of value resource files (int), their record offsets (ints)</li>
+ *   <li>Number of namespace resolvers (int), their record offsets (ints)</li>
+ *   <li>Number of resource items (int), their record offsets in the order they were written (ints), their visibility ordinals
+ *       (bytes)</li>
+ *   <li>Number of resource types (int), followed for each type by: the type ordinal (int), the number of resource names (int),
+ *       the string indexes of the names sorted by code point (ints), the position of the first item of each name and of the end of
+ *       the last one in the list of items of the type (ints), the item numbers of the type grouped by name (ints)</li>
+ *   <li>Size of the record area (int), followed by the record area. The records are in the format of the {@code serialize} methods of
+ *       {@link ResourceSourceFile}, {@link NamespaceResolver} and {@link BasicResourceItemBase}.</li>
+ * </ol>
+ * Integers outside of records take 4 bytes and are big-endian, so that any of them can be read without reading the ones before it.
+ *
+ * <p>Instances are thread-safe. Records are decoded without locking; when two threads decode the same record concurrently, one of
+ * the results is kept and returned to both, so every record corresponds to a single object. A mapped file is never unmapped
+ * explicitly, since a concurrent read of an unmapped buffer would crash the JVM; the mapping is released when the cache is garbage
+ * collected.
+ *
+ * @see MappedResourceMap
+ */
+public final class MappedResourceCache {
+  private static final int FORMAT_MARKER = 0x52434D31; // "RCM1"
+  private static final ResourceType[] RESOURCE_TYPES = ResourceType.values();
+  private static final ResourceVisibility[] VISIBILITIES = ResourceVisibility.values();
+
+  @NotNull private final Path myCacheFile;
+  @NotNull private final ByteBuffer myBuffer;
+  @NotNull private final LoadableResourceRepository myRepository;
+  @NotNull private final List<RepositoryConfiguration> myConfigurations;
+
+  private final int myStringCount;
+  private final int myStringOffsetsPos;
+  private final int myStringDataPos;
+  /** Decoded strings. Strings are immutable, so they may be cached without synchronization. */
+  @NotNull private final String[] myStrings;
+
+  private final int mySourceFileOffsetsPos;
+  private final int myNamespaceResolverOffsetsPos;
+  private final int myItemCount;
+  private final int myItemOffsetsPos;
+  private final int myItemVisibilitiesPos;
+  private final int myRecordsPos;
+  private final int myRecordsSize;
+  @NotNull private final Map<ResourceType, TypeSection> myTypeSections = new EnumMap<>(ResourceType.class);
+
+  @NotNull private final List<ResourceSourceFile> mySourceFiles;
+  @NotNull private final List<ResourceNamespace.Resolver> myNamespaceResolvers;
+
+  // The following fields are filled on demand.
+  @NotNull private final AtomicReferenceArray<ResourceSourceFile> myDecodedSourceFiles;
+  @NotNull private final AtomicReferenceArray<ResourceNamespace.Resolver> myDecodedNamespaceResolvers;
+  @NotNull private final AtomicReferenceArray<BasicResourceItem> myDecodedItems;
+  @NotNull private final Map<String, String> myStringCache = new ConcurrentHashMap<>();
+
+  private MappedResourceCache(@NotNull Path cacheFile, @NotNull ByteBuffer buffer, int headerSize,
+                              @NotNull LoadableResourceRepository repository) throws IOException {
+    myCacheFile = cacheFile;
+    myBuffer = buffer;
+    myRepository = repository;
+    Reader reader = new Reader(buffer, headerSize);
+
+    if (reader.readInt() != FORMAT_MARKER) {
+      throw StreamFormatException.invalidFormat();
+    }
+
+    myStringCount = reader.readCount();
+    myStringOffsetsPos = reader.skipInts(myStringCount + 1);
+    myStringDataPos = reader.skipBytes(buffer.getInt(myStringOffsetsPos + myStringCount * 4));
+    myStrings = new String[myStringCount];
+
+    int configurationCount = reader.readCount();
+    List<RepositoryConfiguration> configurations = new ArrayList<>(configurationCount);
+    for (int i = 0; i < configurationCount; i++) {
+      int stringIndex = reader.readCount();
+      if (stringIndex >= myStringCount) {
+        throw StreamFormatException.invalidFormat();
+      }
+      String qualifier = getString(stringIndex);
+      FolderConfiguration folderConfiguration = FolderConfiguration.getConfigForQualifierString(qualifier);
+      if (folderConfiguration == null) {
+        throw StreamFormatException.invalidFormat();
+      }
+      configurations.add(new RepositoryConfiguration(repository, folderConfiguration));
+    }
+    myConfigurations = configurations;
+
+    int sourceFileCount = reader.readCount();
+    mySourceFileOffsetsPos = reader.skipInts(sourceFileCount);
+    myDecodedSourceFiles = new AtomicReferenceArray<>(sourceFileCount);
+    mySourceFiles = new LazyList<>(sourceFileCount, this::getSourceFile);
+
+    int namespaceResolverCount = reader.readCount();
+    myNamespaceResolverOffsetsPos = reader.skipInts(namespaceResolverCount);
+    myDecodedNamespaceResolvers = new AtomicReferenceArray<>(namespaceResolverCount);
+    myNamespaceResolvers = new LazyList<>(namespaceResolverCount, this::getNamespaceResolver);
+
+    myItemCount = reader.readCount();
+    myItemOffsetsPos = reader.skipInts(myItemCount);
+    myItemVisibilitiesPos = reader.skipBytes(myItemCount);
+    myDecodedItems = new AtomicReferenceArray<>(myItemCount);
+
+    int typeCount = reader.readCount();
+    for (int i = 0; i < typeCount; i++) {
+      int typeOrdinal = reader.readInt();
+      if (typeOrdinal < 0 || typeOrdinal >= RESOURCE_TYPES.length) {
+        throw StreamFormatException.invalidFormat();
+      }
+      int nameCount = reader.readCount();
+      int namesPos = reader.skipInts(nameCount);
+      int firstItemsPos = reader.skipInts(nameCount + 1);
+      int itemCount = buffer.getInt(firstItemsPos + nameCount * 4);
+      int itemNumbersPos = reader.skipInts(itemCount);
+      myTypeSections.put(RESOURCE_TYPES[typeOrdinal], new TypeSection(nameCount, namesPos, firstItemsPos, itemCount, itemNumbersPos));
+    }
+
+    myRecordsSize = reader.readCount();
+    myRecordsPos = reader.skipBytes(myRecordsSize);
+  }
+
+  /**
+   * Opens a cache file created by {@link #write}.
+   *
+   * @param cacheFile the cache file
+   * @param fileHeader the header the file is expected to start with
+   * @param repository the repository the resources in the file belong to
+   * @param mapIntoMemory whether to map the file into memory, or to read it into a heap buffer. A mapped file cannot be overwritten on
+   *     some platforms until it is garbage collected, so it should only be mapped when it is not expected to change while it is used.
+   * @return the opened cache, or null if the file doesn't start with {@code fileHeader}
+   * @throws java.nio.file.NoSuchFileException if the file does not exist
+   * @throws IOException if the file cannot be read or its format is invalid
+   */
+  @Nullable
+  public static MappedResourceCache open(@NotNull Path cacheFile, @NotNull byte[] fileHeader,
+                                         @NotNull LoadableResourceRepository repository, boolean mapIntoMemory) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+      // Check the header before mapping the file, so that a stale cache file is never mapped and can be replaced.
+      ByteBuffer header = ByteBuffer.allocate(fileHeader.length);
+      readFully(channel, header);
+      if (header.hasRemaining() || !Arrays.equals(header.array(), fileHeader)) {
+        return null;
+      }
+
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw StreamFormatException.invalidFormat();
+      }
+      if (mapIntoMemory) {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      else {
+        buffer = ByteBuffer.allocate((int)size);
+        channel.position(0);
+        readFully(channel, buffer);
+        if (buffer.hasRemaining()) {
+          throw StreamFormatException.prematureEndOfFile();
+        }
+      }
+    }
+    return new MappedResourceCache(cacheFile, buffer, fileHeader.length, repository);
+  }
+
+  /**
+   * Writes resources to a cache file that can be opened by {@link #open}.
+   *
+   * @param cacheFile the cache file to create or replace
+   * @param fileHeader the header to start the file with
+   * @param resources the resources to write
+   * @param configFilter only resources belonging to configurations satisfying this filter are written to the file
+   */
+  public static void write(@NotNull Path cacheFile, @NotNull byte[] fileHeader,
+                           @NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> resources,
+                           @NotNull Predicate<FolderConfiguration> configFilter) {
+    ResourceSerializationUtil.createPersistentCache(cacheFile, fileHeader, stream -> stream.write(encode(resources, configFilter)));
+  }
+
+  /**
+   * Returns the types of the resources contained in the cache.
+   */
+  @NotNull
+  public Set<ResourceType> getResourceTypes() {
+    return myTypeSections.keySet();
+  }
+
+  /**
+   * Returns the resources of the given type, or null if the cache doesn't contain resources of that type. Resource items are created
+   * when they are requested from the returned map for the first time.
+   */
+  @Nullable
+  public MappedResourceMap getResources(@NotNull ResourceType type) {
+    TypeSection section = myTypeSections.get(type);
+    return section == null ? null : new MappedResourceMap(ImmutableList.of(section));
+  }
+
+  /**
+   * Passes all resource items to the given consumer in the order they were written. Intended for repositories that need all items up
+   * front. The items are the same objects as those returned by {@link #getResources}.
+   */
+  public void forEachItem(@NotNull Consumer<BasicResourceItem> consumer) {
+    for (int i = 0; i < myItemCount; i++) {
+      consumer.accept(getItem(i));
+    }
+  }
+
+  @NotNull
+  private BasicResourceItem getItem(int itemNumber) {
+    BasicResourceItem item = myDecodedItems.get(itemNumber);
+    if (item == null) {
+      try (Base128InputStream stream = openRecord(myItemOffsetsPos, itemNumber)) {
+        item = BasicResourceItemBase.deserialize(stream, myConfigurations, mySourceFiles, myNamespaceResolvers);
+      }
+      catch (IOException e) {
+        throw corrupted(e);
+      }
+      if (!myDecodedItems.compareAndSet(itemNumber, null, item)) {
+        item = myDecodedItems.get(itemNumber);
+      }
+    }
+    return item;
+  }
+
+  @NotNull
+  private ResourceSourceFile getSourceFile(int index) {
+    ResourceSourceFile sourceFile = myDecodedSourceFiles.get(index);
+    if (sourceFile == null) {
+      try (Base128InputStream stream = openRecord(mySourceFileOffsetsPos, index)) {
+        sourceFile = myRepository.deserializeResourceSourceFile(stream, myConfigurations);
+      }
+      catch (IOException e) {
+        throw corrupted(e);
+      }
+      if (!myDecodedSourceFiles.compareAndSet(index, null, sourceFile)) {
+        sourceFile = myDecodedSourceFiles.get(index);
+      }
+    }
+    return sourceFile;
+  }
+
+  @NotNull
+  private ResourceNamespace.Resolver getNamespaceResolver(int index) {
+    ResourceNamespace.Resolver resolver = myDecodedNamespaceResolvers.get(index);
+    if (resolver == null) {
+      try (Base128InputStream stream = openRecord(myNamespaceResolverOffsetsPos, index)) {
+        resolver = NamespaceResolver.deserialize(stream);
+      }
+      catch (IOException e) {
+        throw corrupted(e);
+      }
+      if (!myDecodedNamespaceResolvers.compareAndSet(index, null, resolver)) {
+        resolver = myDecodedNamespaceResolvers.get(index);
+      }
+    }
+    return resolver;
+  }
+
+  @NotNull
+  private Base128InputStream openRecord(int offsetsPos, int index) throws IOException {
+    int offset = myBuffer.getInt(offsetsPos + index * 4);
+    if (offset < 0 || offset >= myRecordsSize) {
+      throw StreamFormatException.invalidFormat();
+    }
+    ByteBuffer record = myBuffer.duplicate();
+    record.limit(myRecordsPos + myRecordsSize);
+    record.position(myRecordsPos + offset);
+    Base128InputStream stream = new Base128InputStream(record);
+    stream.setStringCache(myStringCache); // Share string instances between items.
+    return stream;
+  }
+
+  @NotNull
+  private UncheckedIOException corrupted(@NotNull IOException e) {
+    return new UncheckedIOException("Corrupted resource cache file " + myCacheFile.toString(), e);
+  }
+
+  @NotNull
+  private String getString(int index) {
+    String str = myStrings[index];
+    if (str == null) {
+      int start = getStringStart(index);
+      byte[] bytes = new byte[getStringStart(index + 1) - start];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = myBuffer.get(start + i);
+      }
+      str = new String(bytes, UTF_8);
+      myStrings[index] = str;
+    }
+    return str;
+  }
+
+  private int getStringStart(int index) {
+    return myStringDataPos + myBuffer.getInt(myStringOffsetsPos + index * 4);
+  }
+
+  /**
+   * Compares a string to a string in the string table by code point, without decoding the latter.
+   */
+  private int compareToString(@NotNull String str, int index) {
+    int pos = getStringStart(index);
+    int end = getStringStart(index + 1);
+    int i = 0;
+    while (i < str.length() && pos < end) {
+      int c1 = str.codePointAt(i);
+      i += Character.charCount(c1);
+      int b = myBuffer.get(pos++) & 0xFF;
+      int c2;
+      if (b < 0x80) {
+        c2 = b;
+      }
+      else if (b < 0xE0) {
+        c2 = (b & 0x1F) << 6 | myBuffer.get(pos++) & 0x3F;
+      }
+      else if (b < 0xF0) {
+        c2 = (b & 0x0F) << 12 | (myBuffer.get(pos++) & 0x3F) << 6 | myBuffer.get(pos++) & 0x3F;
+      }
+      else {
+        c2 = (b & 0x07) << 18 | (myBuffer.get(pos++) & 0x3F) << 12 | (myBuffer.get(pos++) & 0x3F) << 6 | myBuffer.get(pos++) & 0x3F;
+      }
+      if (c1 != c2) {
+        return Integer.compare(c1, c2);
+      }
+    }
+    return i < str.length() ? 1 : pos < end ? -1 : 0;
+  }
+
+  private static int compareByCodePoint(@NotNull String s1, @NotNull String s2) {
+    int i1 = 0;
+    int i2 = 0;
+    while (i1 < s1.length() && i2 < s2.length()) {
+      int c1 = s1.codePointAt(i1);
+      int c2 = s2.codePointAt(i2);
+      if (c1 != c2) {
+        return Integer.compare(c1, c2);
+      }
+      i1 += Character.charCount(c1);
+      i2 += Character.charCount(c2);
+    }
+    return Boolean.compare(i1 < s1.length(), i2 < s2.length());
+  }
+
+  @NotNull
+  private static byte[] encode(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> resources,
+                               @NotNull Predicate<FolderConfiguration> configFilter) throws IOException {
+    Object2IntOpenHashMap<String> qualifierIndexes = new Object2IntOpenHashMap<>();
+    qualifierIndexes.defaultReturnValue(-1);
+    Object2IntOpenHashMap<ResourceSourceFile> sourceFileIndexes = new Object2IntOpenHashMap<>();
+    sourceFileIndexes.defaultReturnValue(-1);
+    Object2IntOpenHashMap<ResourceNamespace.Resolver> namespaceResolverIndexes = new Object2IntOpenHashMap<>();
+    namespaceResolverIndexes.defaultReturnValue(-1);
+    List<BasicResourceItemBase> items = new ArrayList<>();
+    // Item numbers by name, with names sorted by code point, by type.
+    Map<ResourceType, TreeMap<String, IntArrayList>> typeIndex = new EnumMap<>(ResourceType.class);
+
+    for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> entry : resources.entrySet()) {
+      for (ResourceItem item : entry.getValue().values()) {
+        if (configFilter.test(item.getConfiguration())) {
+          ResourceSerializationUtil.addToIndexes(item, qualifierIndexes, sourceFileIndexes, namespaceResolverIndexes);
+          typeIndex.computeIfAbsent(item.getType(), type -> new TreeMap<>(MappedResourceCache::compareByCodePoint))
+                   .computeIfAbsent(item.getName(), name -> new IntArrayList())
+                   .add(items.size());
+          items.add((BasicResourceItemBase)item);
+        }
+      }
+    }
+
+    // Write the records.
+    ResourceSourceFile[] sourceFiles =
+        ResourceSerializationUtil.toArray(sourceFileIndexes, new ResourceSourceFile[sourceFileIndexes.size()]);
+    ResourceNamespace.Resolver[] namespaceResolvers =
+        ResourceSerializationUtil.toArray(namespaceResolverIndexes, new ResourceNamespace.Resolver[namespaceResolverIndexes.size()]);
+    int[] sourceFileOffsets = new int[sourceFiles.length];
+    int[] namespaceResolverOffsets = new int[namespaceResolvers.length];
+    int[] itemOffsets = new int[items.size()];
+    ByteArrayOutputStream records = new ByteArrayOutputStream();
+    try (Base128OutputStream stream = new Base128OutputStream(records)) {
+      for (int i = 0; i < sourceFiles.length; i++) {
+        stream.flush();
+        sourceFileOffsets[i] = records.size();
+        sourceFiles[i].serialize(stream, qualifierIndexes);
+      }
+      for (int i = 0; i < namespaceResolvers.length; i++) {
+        stream.flush();
+        namespaceResolverOffsets[i] = records.size();
+        ResourceSerializationUtil.toSerializableResolver(namespaceResolvers[i]).serialize(stream);
+      }
+      for (int i = 0; i < items.size(); i++) {
+        stream.flush();
+        itemOffsets[i] = records.size();
+        items.get(i).serialize(stream, qualifierIndexes, sourceFileIndexes, namespaceResolverIndexes);
+      }
+    }
+
+    // Build the string table out of configuration qualifiers and resource names.
+    Object2IntOpenHashMap<String> stringIndexes = new Object2IntOpenHashMap<>();
+    List<byte[]> strings = new ArrayList<>();
+    String[] qualifiers = ResourceSerializationUtil.toArray(qualifierIndexes, new String[qualifierIndexes.size()]);
+    for (String qualifier : qualifiers) {
+      addString(qualifier, stringIndexes, strings);
+    }
+    for (TreeMap<String, IntArrayList> names : typeIndex.values()) {
+      for (String name : names.keySet()) {
+        addString(name, stringIndexes, strings);
+      }
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() + items.size() * 16);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(FORMAT_MARKER);
+
+    out.writeInt(strings.size());
+    int stringOffset = 0;
+    for (byte[] string : strings) {
+      out.writeInt(stringOffset);
+      stringOffset += string.length;
+    }
+    out.writeInt(stringOffset);
+    for (byte[] string : strings) {
+      out.write(string);
+    }
+
+    out.writeInt(qualifiers.length);
+    for (String qualifier : qualifiers) {
+      out.writeInt(stringIndexes.getInt(qualifier));
+    }
+
+    writeInts(sourceFileOffsets, out);
+    writeInts(namespaceResolverOffsets, out);
+    writeInts(itemOffsets, out);
+    for (BasicResourceItemBase item : items) {
+      out.writeByte(item.getVisibility().ordinal());
+    }
+
+    out.writeInt(typeIndex.size());
+    for (Map.Entry<ResourceType, TreeMap<String, IntArrayList>> entry : typeIndex.entrySet()) {
+      TreeMap<String, IntArrayList> names = entry.getValue();
+      out.writeInt(entry.getKey().ordinal());
+      out.writeInt(names.size());
+      for (String name : names.keySet()) {
+        out.writeInt(stringIndexes.getInt(name));
+      }
+      int firstItem = 0;
+      for (IntArrayList itemNumbers : names.values()) {
+        out.writeInt(firstItem);
+        firstItem += itemNumbers.size();
+      }
+      out.writeInt(firstItem);
+      for (IntArrayList itemNumbers : names.values()) {
+        for (int i = 0; i < itemNumbers.size(); i++) {
+          out.writeInt(itemNumbers.getInt(i));
+        }
+      }
+    }
+
+    out.writeInt(records.size());
+    records.writeTo(out);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void addString(@NotNull String str, @NotNull Object2IntOpenHashMap<String> stringIndexes, @NotNull List<byte[]> strings) {
+    if (!stringIndexes.containsKey(str)) {
+      stringIndexes.put(str, strings.size());
+      strings.add(str.getBytes(UTF_8));
+    }
+  }
+
+  private static void writeInts(@NotNull int[] values, @NotNull DataOutputStream out) throws IOException {
+    out.writeInt(values.length);
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+      // Keep reading until the buffer is full or the end of the file is reached.
+    }
+  }
+
+  /**
+   * The index of the resources of one type: resource names sorted by code point, and the numbers of their items.
+   */
+  final class TypeSection {
+    private final int myNameCount;
+    private final int myNamesPos;
+    private final int myFirstItemsPos;
+    private final int myItemCount;
+    private final int myItemNumbersPos;
+    /** Items by name index, filled on demand. */
+    @NotNull private final AtomicReferenceArray<List<ResourceItem>> myItemsByName;
+
+    TypeSection(int nameCount, int namesPos, int firstItemsPos, int itemCount, int itemNumbersPos) {
+      myNameCount = nameCount;
+      myNamesPos = namesPos;
+      myFirstItemsPos = firstItemsPos;
+      myItemCount = itemCount;
+      myItemNumbersPos = itemNumbersPos;
+      myItemsByName = new AtomicReferenceArray<>(nameCount);
+    }
+
+    int getNameCount() {
+      return myNameCount;
+    }
+
+    int getItemCount() {
+      return myItemCount;
+    }
+
+    @NotNull
+    String getName(int nameIndex) {
+      return getString(getNameStringIndex(nameIndex));
+    }
+
+    /**
+     * Returns the index of the given name, or -1 if there are no resources with that name.
+     */
+    int findName(@NotNull String name) {
+      int low = 0;
+      int high = myNameCount - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = compareToString(name, getNameStringIndex(mid));
+        if (cmp > 0) {
+          low = mid + 1;
+        }
+        else if (cmp < 0) {
+          high = mid - 1;
+        }
+        else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Returns the items with the name at the given index, in the order they were written.
+     */
+    @NotNull
+    List<ResourceItem> getItems(int nameIndex) {
+      List<ResourceItem> items = myItemsByName.get(nameIndex);
+      if (items == null) {
+        int start = getFirstItem(nameIndex);
+        int end = getFirstItem(nameIndex + 1);
+        ImmutableList.Builder<ResourceItem> builder = ImmutableList.builder();
+        for (int i = start; i < end; i++) {
+          builder.add(getItem(getItemNumber(i)));
+        }
+        items = builder.build();
+        if (!myItemsByName.compareAndSet(nameIndex, null, items)) {
+          items = myItemsByName.get(nameIndex);
+        }
+      }
+      return items;
+    }
+
+    /**
+     * Passes the public items of this type to the given consumer. Only the public items are created.
+     */
+    void forEachPublicItem(@NotNull Consumer<ResourceItem> consumer) {
+      for (int i = 0; i < myItemCount; i++) {
+        int itemNumber = getItemNumber(i);
+        if (VISIBILITIES[myBuffer.get(myItemVisibilitiesPos + itemNumber)] == ResourceVisibility.PUBLIC) {
+          consumer.accept(getItem(itemNumber));
+        }
+      }
+    }
+
+    private int getNameStringIndex(int nameIndex) {
+      return myBuffer.getInt(myNamesPos + nameIndex * 4);
+    }
+
+    private int getFirstItem(int nameIndex) {
+      return myBuffer.getInt(myFirstItemsPos + nameIndex * 4);
+    }
+
+    private int getItemNumber(int i) {
+      return myBuffer.getInt(myItemNumbersPos + i * 4);
+    }
+  }
+
+  /**
+   * Reads the fixed-size part of the file, checking that everything it refers to is within the file.
+   */
+  private static class Reader {
+    @NotNull private final ByteBuffer myBuffer;
+    private int myPos;
+
+    Reader(@NotNull ByteBuffer buffer, int pos) {
+      myBuffer = buffer;
+      myPos = pos;
+    }
+
+    int readInt() throws StreamFormatException {
+      int pos = skipBytes(4);
+      return myBuffer.getInt(pos);
+    }
+
+    int readCount() throws StreamFormatException {
+      int count = readInt();
+      if (count < 0) {
+        throw StreamFormatException.invalidFormat();
+      }
+      return count;
+    }
+
+    /**
+     * Skips the given number of ints and returns the position of the first one.
+     */
+    int skipInts(int count) throws StreamFormatException {
+      if (count > Integer.MAX_VALUE / 4) {
+        throw StreamFormatException.invalidFormat();
+      }
+      return skipBytes(count * 4);
+    }
+
+    /**
+     * Skips the given number of bytes and returns the position of the first one.
+     */
+    int skipBytes(int count) throws StreamFormatException {
+      if (count < 0) {
+        throw StreamFormatException.invalidFormat();
+      }
+      if (count > myBuffer.limit() - myPos) {
+        throw StreamFormatException.prematureEndOfFile();
+      }
+      int pos = myPos;
+      myPos += count;
+      return pos;
+    }
+  }
+
+  private static class LazyList<T> extends AbstractList<T> {
+    private final int mySize;
+    @NotNull private final IntFunction<T> myGetter;
+
+    LazyList(int size, @NotNull IntFunction<T> getter) {
+      mySize = size;
+      myGetter = getter;
+    }
+
+    @Override
+    public T get(int index) {
+      if (index < 0 || index >= mySize) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+      }
+      return myGetter.apply(index);
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+  }
+}
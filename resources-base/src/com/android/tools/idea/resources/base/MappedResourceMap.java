@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.resources.base;
+
+import com.android.ide.common.resources.ResourceItem;
+import com.google.common.collect.ForwardingListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import java.util.List;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable map from resource names to resource items of one type, backed by one or more {@link MappedResourceCache} files.
+ *
+ * <p>{@link #get}, {@link #containsKey}, {@link #size} and {@link #keySet} only create the items they return, if any. Methods that need
+ * all items, like {@link #values} or {@link #entries}, create them all once and delegate to an {@link ImmutableListMultimap}. Names are
+ * ordered by code point within each cache file, and the items of a name are in the order of the cache files.
+ */
+public final class MappedResourceMap extends ForwardingListMultimap<String, ResourceItem> {
+  @NotNull private final List<MappedResourceCache.TypeSection> mySections;
+  private final int mySize;
+  @Nullable private volatile ImmutableSet<String> myKeySet;
+  @Nullable private volatile ImmutableSet<ResourceItem> myPublicResources;
+  @Nullable private volatile ImmutableListMultimap<String, ResourceItem> myDelegate;
+
+  MappedResourceMap(@NotNull List<MappedResourceCache.TypeSection> sections) {
+    mySections = sections;
+    int size = 0;
+    for (MappedResourceCache.TypeSection section : sections) {
+      size += section.getItemCount();
+    }
+    mySize = size;
+  }
+
+  /**
+   * Returns a map containing the resources of the given maps, in the order of the list.
+   */
+  @NotNull
+  public static MappedResourceMap concat(@NotNull List<MappedResourceMap> maps) {
+    if (maps.size() == 1) {
+      return maps.get(0);
+    }
+    ImmutableList.Builder<MappedResourceCache.TypeSection> sections = ImmutableList.builder();
+    for (MappedResourceMap map : maps) {
+      sections.addAll(map.mySections);
+    }
+    return new MappedResourceMap(sections.build());
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> get(@Nullable String name) {
+    if (name == null) {
+      return ImmutableList.of();
+    }
+    if (mySections.size() == 1) {
+      MappedResourceCache.TypeSection section = mySections.get(0);
+      int nameIndex = section.findName(name);
+      return nameIndex < 0 ? ImmutableList.of() : section.getItems(nameIndex);
+    }
+
+    ImmutableList.Builder<ResourceItem> builder = null;
+    for (MappedResourceCache.TypeSection section : mySections) {
+      int nameIndex = section.findName(name);
+      if (nameIndex >= 0) {
+        if (builder == null) {
+          builder = ImmutableList.builder();
+        }
+        builder.addAll(section.getItems(nameIndex));
+      }
+    }
+    return builder == null ? ImmutableList.of() : builder.build();
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    if (!(key instanceof String)) {
+      return false;
+    }
+    for (MappedResourceCache.TypeSection section : mySections) {
+      if (section.findName((String)key) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  @NotNull
+  public Set<String> keySet() {
+    ImmutableSet<String> keySet = myKeySet;
+    if (keySet == null) {
+      ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+      for (MappedResourceCache.TypeSection section : mySections) {
+        for (int i = 0; i < section.getNameCount(); i++) {
+          builder.add(section.getName(i));
+        }
+      }
+      keySet = builder.build();
+      myKeySet = keySet;
+    }
+    return keySet;
+  }
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  /**
+   * Returns the public resources of the map. Only the public resource items are created.
+   */
+  @NotNull
+  public Set<ResourceItem> getPublicResources() {
+    ImmutableSet<ResourceItem> publicResources = myPublicResources;
+    if (publicResources == null) {
+      ImmutableSet.Builder<ResourceItem> builder = ImmutableSet.builder();
+      for (MappedResourceCache.TypeSection section : mySections) {
+        section.forEachPublicItem(builder::add);
+      }
+      publicResources = builder.build();
+      myPublicResources = publicResources;
+    }
+    return publicResources;
+  }
+
+  @Override
+  @NotNull
+  protected ListMultimap<String, ResourceItem> delegate() {
+    ImmutableListMultimap<String, ResourceItem> delegate = myDelegate;
+    if (delegate == null) {
+      ImmutableListMultimap.Builder<String, ResourceItem> builder = ImmutableListMultimap.builder();
+      for (String name : keySet()) {
+        builder.putAll(name, get(name));
+      }
+      delegate = builder.build();
+      myDelegate = delegate;
+    }
+    return delegate;
+  }
+}
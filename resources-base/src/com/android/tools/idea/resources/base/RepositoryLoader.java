@@ -826,7 +826,8 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
       if (itemName != null) {
         String text = myTextExtractor.extractText(myParser, false);
         StyleItemResourceValueImpl styleItem =
-            new StyleItemResourceValueImpl(myNamespace, itemName, text, sourceFile.getRepository().getLibraryName());
+            new StyleItemResourceValueImpl(myNamespace, ResourceStringPool.intern(itemName), ResourceStringPool.internIfReference(text),
+                                           sourceFile.getRepository().getLibraryName());
         styleItem.setNamespaceResolver(itemNamespaceResolver);
         styleItems.add(styleItem);
       }
@@ -906,6 +907,38 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     }
   }
 
+  /**
+   * Removes the attr and styleable definitions collected so far, which are otherwise post-processed by {@link #finishLoading}, and
+   * returns them. Together with {@link #addPendingAttrsAndStyleables}, this lets several loaders of the same repository parse files in
+   * parallel, and one of them post-process the definitions of all files in a deterministic order.
+   */
+  @NotNull
+  protected final PendingAttrsAndStyleables takePendingAttrsAndStyleables() {
+    PendingAttrsAndStyleables pending = new PendingAttrsAndStyleables(new ArrayList<>(myAttrs.values()),
+                                                                      new ArrayList<>(myAttrCandidates.values()),
+                                                                      new ArrayList<>(myStyleables.values()));
+    myAttrs.clear();
+    myAttrCandidates.clear();
+    myStyleables.clear();
+    return pending;
+  }
+
+  /**
+   * Adds attr and styleable definitions returned by {@link #takePendingAttrsAndStyleables} of another loader, as if this loader had
+   * parsed them.
+   */
+  protected final void addPendingAttrsAndStyleables(@NotNull PendingAttrsAndStyleables pending) {
+    for (BasicAttrResourceItem attr : pending.attrs) {
+      addAttr(attr, myAttrs);
+    }
+    for (BasicAttrResourceItem attr : pending.attrCandidates) {
+      addAttr(attr, myAttrCandidates);
+    }
+    for (BasicStyleableResourceItem styleable : pending.styleables) {
+      myStyleables.put(styleable.getName(), styleable);
+    }
+  }
+
   /**
    * Adds attr definitions from {@link #myAttrs}, and attr definition candidates from {@link #myAttrCandidates}
    * if they don't match the attr definitions present in {@link #myAttrs}.
@@ -1171,6 +1204,23 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     }
   }
 
+  /**
+   * Attr and styleable definitions collected by a loader and not post-processed yet.
+   */
+  protected static final class PendingAttrsAndStyleables {
+    @NotNull private final List<BasicAttrResourceItem> attrs;
+    @NotNull private final List<BasicAttrResourceItem> attrCandidates;
+    @NotNull private final List<BasicStyleableResourceItem> styleables;
+
+    private PendingAttrsAndStyleables(@NotNull List<BasicAttrResourceItem> attrs,
+                                      @NotNull List<BasicAttrResourceItem> attrCandidates,
+                                      @NotNull List<BasicStyleableResourceItem> styleables) {
+      this.attrs = attrs;
+      this.attrCandidates = attrCandidates;
+      this.styleables = styleables;
+    }
+  }
+
   private static final class ResourceFileCollector implements FileVisitor<Path> {
     @NotNull final List<PathString> resourceFiles = new ArrayList<>();
     @NotNull final List<IOException> ioErrors = new ArrayList<>();
@@ -129,29 +129,7 @@ public class ResourceSerializationUtil {
       for (ResourceItem item : resourceMap.values()) {
         FolderConfiguration configuration = item.getConfiguration();
         if (configFilter.test(configuration)) {
-          String qualifier = configuration.getQualifierString();
-          if (!qualifierStringIndexes.containsKey(qualifier)) {
-            qualifierStringIndexes.put(qualifier, qualifierStringIndexes.size());
-          }
-          if (item instanceof BasicValueResourceItemBase) {
-            ResourceSourceFile sourceFile = ((BasicValueResourceItemBase)item).getSourceFile();
-            if (!sourceFileIndexes.containsKey(sourceFile)) {
-              sourceFileIndexes.put(sourceFile, sourceFileIndexes.size());
-            }
-          }
-          if (item instanceof ResourceValue) {
-            addToNamespaceResolverIndexes(((ResourceValue)item).getNamespaceResolver(), namespaceResolverIndexes);
-          }
-          if (item instanceof BasicStyleResourceItem) {
-            for (StyleItemResourceValue styleItem : ((BasicStyleResourceItem)item).getDefinedItems()) {
-              addToNamespaceResolverIndexes(styleItem.getNamespaceResolver(), namespaceResolverIndexes);
-            }
-          }
-          else if (item instanceof BasicStyleableResourceItem) {
-            for (AttrResourceValue attr : ((BasicStyleableResourceItem)item).getAllAttributes()) {
-              addToNamespaceResolverIndexes(attr.getNamespaceResolver(), namespaceResolverIndexes);
-            }
-          }
+          addToIndexes(item, qualifierStringIndexes, sourceFileIndexes, namespaceResolverIndexes);
           itemCount++;
         }
       }
@@ -173,6 +151,58 @@ public class ResourceSerializationUtil {
     }
   }
 
+  /**
+   * Assigns indexes to the folder configuration qualifier, the source file and the namespace resolvers of the given resource item
+   * that don't have them yet. The indexes are used to refer to these objects from serialized resource items.
+   */
+  static void addToIndexes(@NotNull ResourceItem item,
+                           @NotNull Object2IntMap<String> qualifierStringIndexes,
+                           @NotNull Object2IntMap<ResourceSourceFile> sourceFileIndexes,
+                           @NotNull Object2IntMap<ResourceNamespace.Resolver> namespaceResolverIndexes) {
+    String qualifier = item.getConfiguration().getQualifierString();
+    if (!qualifierStringIndexes.containsKey(qualifier)) {
+      qualifierStringIndexes.put(qualifier, qualifierStringIndexes.size());
+    }
+    if (item instanceof BasicValueResourceItemBase) {
+      ResourceSourceFile sourceFile = ((BasicValueResourceItemBase)item).getSourceFile();
+      if (!sourceFileIndexes.containsKey(sourceFile)) {
+        sourceFileIndexes.put(sourceFile, sourceFileIndexes.size());
+      }
+    }
+    if (item instanceof ResourceValue) {
+      addToNamespaceResolverIndexes(((ResourceValue)item).getNamespaceResolver(), namespaceResolverIndexes);
+    }
+    if (item instanceof BasicStyleResourceItem) {
+      for (StyleItemResourceValue styleItem : ((BasicStyleResourceItem)item).getDefinedItems()) {
+        addToNamespaceResolverIndexes(styleItem.getNamespaceResolver(), namespaceResolverIndexes);
+      }
+    }
+    else if (item instanceof BasicStyleableResourceItem) {
+      for (AttrResourceValue attr : ((BasicStyleableResourceItem)item).getAllAttributes()) {
+        addToNamespaceResolverIndexes(attr.getNamespaceResolver(), namespaceResolverIndexes);
+      }
+    }
+  }
+
+  /**
+   * Returns the keys of the given map in the order of their indexes.
+   */
+  @NotNull
+  static <T> T[] toArray(@NotNull Object2IntMap<T> indexes, @NotNull T[] array) {
+    for (Object2IntMap.Entry<T> entry : Object2IntMaps.fastIterable(indexes)) {
+      array[entry.getIntValue()] = entry.getKey();
+    }
+    return array;
+  }
+
+  /**
+   * Returns the namespace resolver to serialize in place of the given one.
+   */
+  @NotNull
+  static NamespaceResolver toSerializableResolver(@NotNull ResourceNamespace.Resolver resolver) {
+    return resolver == ResourceNamespace.Resolver.EMPTY_RESOLVER ? NamespaceResolver.EMPTY : (NamespaceResolver)resolver;
+  }
+
   private static void addToNamespaceResolverIndexes(@NotNull ResourceNamespace.Resolver resolver,
                                                     @NotNull Object2IntMap<ResourceNamespace.Resolver> namespaceResolverIndexes) {
     if (!namespaceResolverIndexes.containsKey(resolver)) {
@@ -258,10 +288,7 @@ public class ResourceSerializationUtil {
 
   private static <K> void writeStrings(@NotNull Object2IntMap<String> qualifierStringIndexes, @NotNull Base128OutputStream stream)
       throws IOException {
-    String[] strings = new String[qualifierStringIndexes.size()];
-    for (Object2IntMap.Entry<String> entry : Object2IntMaps.fastIterable(qualifierStringIndexes)) {
-      strings[entry.getIntValue()] = entry.getKey();
-    }
+    String[] strings = toArray(qualifierStringIndexes, new String[qualifierStringIndexes.size()]);
     stream.writeInt(strings.length);
     for (String str : strings) {
       stream.writeString(str);
@@ -271,10 +298,7 @@ public class ResourceSerializationUtil {
   private static void writeSourceFiles(@NotNull Object2IntMap<ResourceSourceFile> sourceFileIndexes,
                                        @NotNull Base128OutputStream stream,
                                        @NotNull Object2IntMap<String> qualifierStringIndexes) throws IOException {
-    ResourceSourceFile[] sourceFiles = new ResourceSourceFile[sourceFileIndexes.size()];
-    for (Object2IntMap.Entry<ResourceSourceFile> entry : Object2IntMaps.fastIterable(sourceFileIndexes)) {
-      sourceFiles[entry.getIntValue()] = entry.getKey();
-    }
+    ResourceSourceFile[] sourceFiles = toArray(sourceFileIndexes, new ResourceSourceFile[sourceFileIndexes.size()]);
     stream.writeInt(sourceFiles.length);
     for (ResourceSourceFile sourceFile : sourceFiles) {
       sourceFile.serialize(stream, qualifierStringIndexes);
@@ -283,15 +307,11 @@ public class ResourceSerializationUtil {
 
   private static void writeNamespaceResolvers(@NotNull Object2IntMap<ResourceNamespace.Resolver> namespaceResolverIndexes,
                                               @NotNull Base128OutputStream stream) throws IOException {
-    ResourceNamespace.Resolver[] resolvers = new ResourceNamespace.Resolver[namespaceResolverIndexes.size()];
-    for (Object2IntMap.Entry<ResourceNamespace.Resolver> entry : Object2IntMaps.fastIterable(namespaceResolverIndexes)) {
-      resolvers[entry.getIntValue()] = entry.getKey();
-    }
+    ResourceNamespace.Resolver[] resolvers =
+        toArray(namespaceResolverIndexes, new ResourceNamespace.Resolver[namespaceResolverIndexes.size()]);
     stream.writeInt(resolvers.length);
     for (ResourceNamespace.Resolver resolver : resolvers) {
-      NamespaceResolver serializableResolver =
-          resolver == ResourceNamespace.Resolver.EMPTY_RESOLVER ? NamespaceResolver.EMPTY : (NamespaceResolver)resolver;
-      serializableResolver.serialize(stream);
+      toSerializableResolver(resolver).serialize(stream);
     }
   }
 
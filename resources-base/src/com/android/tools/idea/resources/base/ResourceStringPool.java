@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.resources.base;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Process-wide pool of strings used by resource items. Resource names, attribute names, parent styles and short resource references
+ * are highly repetitive between framework resources of different API levels and between AARs, so sharing them keeps the heap
+ * footprint of loaded repositories low. Text values are mostly unique, so they are not pooled to keep the pool small.
+ * Strings that are no longer referenced by any resource item are garbage collected.
+ */
+public final class ResourceStringPool {
+  /** References longer than this are rare enough not to be worth pooling. */
+  private static final int MAX_POOLED_REFERENCE_LENGTH = 80;
+  private static final Interner<String> ourInterner = Interners.newWeakInterner();
+
+  /**
+   * Returns the pooled string equal to the given one, or null if the given string is null.
+   */
+  @Contract("null -> null; !null -> !null")
+  @Nullable
+  public static String intern(@Nullable String str) {
+    return str == null ? null : ourInterner.intern(str);
+  }
+
+  /**
+   * Returns the pooled string equal to the given one if it is a short resource or theme attribute reference, or the given string
+   * otherwise.
+   */
+  @Contract("null -> null; !null -> !null")
+  @Nullable
+  public static String internIfReference(@Nullable String str) {
+    return isShortReference(str) ? ourInterner.intern(str) : str;
+  }
+
+  private static boolean isShortReference(@Nullable String str) {
+    return str != null && !str.isEmpty() && str.length() <= MAX_POOLED_REFERENCE_LENGTH
+           && (str.charAt(0) == '@' || str.charAt(0) == '?');
+  }
+
+  /** Do not instantiate. All methods are static. */
+  private ResourceStringPool() {}
+}
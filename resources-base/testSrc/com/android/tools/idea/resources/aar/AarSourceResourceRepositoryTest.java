@@ -132,6 +132,38 @@ public class AarSourceResourceRepositoryTest {
     checkRepositoryContents(repository);
   }
 
+  @Test
+  public void testLazilyCreatedItemsMatchLoadedOnes() {
+    Path aarFile = ResourcesTestsUtil.createAar(myTempDir);
+    String cacheFilename = aarFile.getFileName().toString();
+    AarSourceResourceRepository loaded =
+        AarSourceResourceRepository.create(aarFile, ResourcesTestsUtil.AAR_LIBRARY_NAME, createCachingData(cacheFilename, directExecutor()));
+    AarSourceResourceRepository fromCache = AarSourceResourceRepository.create(aarFile, ResourcesTestsUtil.AAR_LIBRARY_NAME,
+                                                                               createCachingData(cacheFilename, null));
+    assertThat(fromCache.isLoadedFromCache()).isTrue();
+
+    ResourceNamespace namespace = ResourceNamespace.RES_AUTO;
+    assertThat(fromCache.getResourceTypes(namespace)).containsExactlyElementsIn(loaded.getResourceTypes(namespace));
+    for (ResourceType type : loaded.getResourceTypes(namespace)) {
+      // Public resources are requested before anything else to check that they don't depend on other items having been created.
+      assertThat(ContainerUtil.map(fromCache.getPublicResources(namespace, type), ResourceItem::getName))
+          .containsExactlyElementsIn(ContainerUtil.map(loaded.getPublicResources(namespace, type), ResourceItem::getName));
+      assertThat(fromCache.getResourceNames(namespace, type)).containsExactlyElementsIn(loaded.getResourceNames(namespace, type));
+      for (String name : loaded.getResourceNames(namespace, type)) {
+        List<ResourceItem> expected = loaded.getResources(namespace, type, name);
+        List<ResourceItem> actual = fromCache.getResources(namespace, type, name);
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+          assertThat(actual.get(i).getConfiguration()).isEqualTo(expected.get(i).getConfiguration());
+          assertThat(actual.get(i).getResourceValue()).isEqualTo(expected.get(i).getResourceValue());
+          // Items are created once and reused afterwards.
+          assertThat(fromCache.getResources(namespace, type, name).get(i)).isSameAs(actual.get(i));
+        }
+      }
+    }
+    assertThat(fromCache.getAllResources().size()).isEqualTo(loaded.getAllResources().size());
+  }
+
   private static void checkRepositoryContents(@NotNull AarSourceResourceRepository repository) {
     List<ResourceItem> items = repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING, "hello");
     assertThat(items).isNotNull();
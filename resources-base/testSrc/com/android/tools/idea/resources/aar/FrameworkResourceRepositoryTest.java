@@ -25,15 +25,20 @@ import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import com.android.ide.common.rendering.api.AttrResourceValue;
 import com.android.ide.common.rendering.api.AttributeFormat;
 import com.android.ide.common.rendering.api.ResourceNamespace;
+import com.android.ide.common.rendering.api.ResourceReference;
+import com.android.ide.common.rendering.api.StyleItemResourceValue;
+import com.android.ide.common.rendering.api.StyleResourceValue;
 import com.android.ide.common.resources.ResourceItem;
 import com.android.ide.common.resources.ResourceItemWithVisibility;
 import com.android.ide.common.resources.ResourceRepository;
 import com.android.resources.ResourceType;
 import com.android.resources.ResourceVisibility;
 import com.android.sdklib.IAndroidTarget;
+import com.android.tools.idea.resources.base.BasicStyleResourceItem;
 import com.android.utils.PathUtils;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.intellij.testFramework.PlatformTestCase;
 import java.io.IOException;
@@ -272,6 +277,69 @@ public class FrameworkResourceRepositoryTest extends PlatformTestCase {
     }
   }
 
+  public void testStringsAreSharedBetweenRepositories() {
+    FrameworkResourceRepository repository1 = FrameworkResourceRepository.create(myResourceFolder, ImmutableSet.of(), null, false);
+    FrameworkResourceRepository repository2 = FrameworkResourceRepository.create(myResourceFolder, ImmutableSet.of(), null, false);
+
+    ResourceItem item1 = repository1.getResources(ResourceNamespace.ANDROID, ResourceType.STRING, "ok").get(0);
+    ResourceItem item2 = repository2.getResources(ResourceNamespace.ANDROID, ResourceType.STRING, "ok").get(0);
+    assertThat(item2).isNotSameAs(item1);
+    assertThat(item2.getName()).isSameAs(item1.getName());
+    // Text values are not pooled, short references are.
+    assertThat(item2.getResourceValue().getValue()).isEqualTo(item1.getResourceValue().getValue());
+    int referenceCount = 0;
+    for (ResourceItem item : repository1.getResources(ResourceNamespace.ANDROID, ResourceType.COLOR).values()) {
+      String value = item.getResourceValue().getValue();
+      if (value != null && value.startsWith("@")) {
+        ResourceItem otherItem = repository2.getResources(ResourceNamespace.ANDROID, ResourceType.COLOR, item.getName()).stream()
+            .filter(other -> other.getConfiguration().equals(item.getConfiguration()))
+            .findFirst()
+            .orElseThrow(AssertionError::new);
+        assertThat(otherItem.getResourceValue().getValue()).isSameAs(value);
+        referenceCount++;
+      }
+    }
+    assertThat(referenceCount).isGreaterThan(0);
+
+    // Every style item can be found by its attribute, including in large styles that are searched by attribute name.
+    int largestStyleSize = 0;
+    for (ResourceItem item : repository1.getResources(ResourceNamespace.ANDROID, ResourceType.STYLE).values()) {
+      StyleResourceValue style = (StyleResourceValue)item.getResourceValue();
+      Collection<StyleItemResourceValue> styleItems = style.getDefinedItems();
+      for (StyleItemResourceValue styleItem : styleItems) {
+        ResourceReference attr = styleItem.getAttr();
+        assertThat(attr).isNotNull();
+        assertThat(style.getItem(attr)).isSameAs(styleItem);
+        assertThat(style.getItem(attr.getNamespace(), attr.getName())).isSameAs(styleItem);
+      }
+      assertThat(style.getItem(ResourceNamespace.ANDROID, "no_such_attribute")).isNull();
+      largestStyleSize = Math.max(largestStyleSize, styleItems.size());
+    }
+    assertThat(largestStyleSize).isGreaterThan(100);
+  }
+
+  public void testStyleEqualityDoesNotDependOnItemOrder() {
+    FrameworkResourceRepository repository = FrameworkResourceRepository.create(myResourceFolder, ImmutableSet.of(), null, false);
+    // Check a style searched linearly and one searched by attribute name.
+    for (String name : Arrays.asList("TextAppearance", "Theme")) {
+      BasicStyleResourceItem style =
+          (BasicStyleResourceItem)repository.getResources(ResourceNamespace.ANDROID, ResourceType.STYLE, name).get(0);
+      List<StyleItemResourceValue> items = new ArrayList<>(style.getDefinedItems());
+      assertThat(items.size()).isGreaterThan(1);
+      BasicStyleResourceItem inOrder = new BasicStyleResourceItem(name, style.getSourceFile(), style.getVisibility(),
+                                                                  style.getParentStyleName(), items);
+      BasicStyleResourceItem reversed = new BasicStyleResourceItem(name, style.getSourceFile(), style.getVisibility(),
+                                                                   style.getParentStyleName(), Lists.reverse(items));
+      assertThat(reversed).isEqualTo(inOrder);
+      assertThat(inOrder).isEqualTo(reversed);
+      assertThat(reversed.hashCode()).isEqualTo(inOrder.hashCode());
+
+      BasicStyleResourceItem truncated = new BasicStyleResourceItem(name, style.getSourceFile(), style.getVisibility(),
+                                                                    style.getParentStyleName(), items.subList(1, items.size()));
+      assertThat(truncated).isNotEqualTo(inOrder);
+    }
+  }
+
   public void testLoadingFromSourcesAndJar() throws Exception {
     Path frameworkResJar = getFrameworkResJar();
     for (Set<String> languages : Arrays.asList(ImmutableSet.<String>of(), ImmutableSet.of("fr", "de"), null)) {
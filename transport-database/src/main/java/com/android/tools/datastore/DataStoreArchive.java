@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compact binary session archive of the datastore's contents, covering every table of every {@link DataStoreDatabase} (the
+ * UnifiedEventsTable and BytesTable as well as the legacy per-service tables) and the {@link DataStoreBlobStore} payloads referenced by
+ * the BytesTable.
+ * <p>
+ * An archive is a sequence of records following a magic number and version:
+ * <ul>
+ * <li>TABLE: namespace, table and column names. All ROWS records up to the next TABLE record belong to this table.</li>
+ * <li>ROWS: a chunk of rows, deflated independently of the other chunks so that neither export nor import ever holds more than one
+ * chunk in memory.</li>
+ * <li>PAYLOAD: the raw contents of a blob, written before the first row referencing it. Payloads are not compressed, so that an import
+ * can leave them in the archive and read them on demand, instead of copying gigabytes of heap dumps and traces up front. Rows that
+ * reference a payload point at its offset in the archive.</li>
+ * <li>END</li>
+ * </ul>
+ */
+public final class DataStoreArchive {
+  private static final int MAGIC = 0x41534441; // "ASDA"
+  private static final int VERSION = 1;
+
+  private static final byte RECORD_END = 0;
+  private static final byte RECORD_TABLE = 1;
+  private static final byte RECORD_ROWS = 2;
+  private static final byte RECORD_PAYLOAD = 3;
+
+  private static final byte VALUE_NULL = 0;
+  private static final byte VALUE_LONG = 1;
+  private static final byte VALUE_DOUBLE = 2;
+  private static final byte VALUE_TEXT = 3;
+  private static final byte VALUE_BLOB = 4;
+
+  /**
+   * Columns of the BytesTable (see UnifiedEventsTable) referencing a payload in the {@link DataStoreBlobStore}. Inside an archive, the
+   * segment is always {@link #ARCHIVE_SEGMENT} and the offset is relative to the start of the archive.
+   */
+  private static final String BLOB_SEGMENT_COLUMN = "BlobSegment";
+  private static final String BLOB_OFFSET_COLUMN = "BlobOffset";
+  private static final String BLOB_LENGTH_COLUMN = "BlobLength";
+  private static final int ARCHIVE_SEGMENT = 0;
+
+  private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+  private DataStoreArchive() {
+  }
+
+  /**
+   * Streams databases into an archive. Callers are responsible for closing the output stream once {@link #finish()} returned.
+   */
+  public static final class Writer {
+    @NotNull private final CountingOutputStream myCountingOutput;
+    @NotNull private final DataOutputStream myOutput;
+    @Nullable private final DataStoreBlobStore myBlobStore;
+    private final int myChunkSize;
+    private final Deflater myDeflater = new Deflater(Deflater.BEST_SPEED);
+    /**
+     * Archive offsets of the payloads written so far, keyed by their location in the blob store. Blobs are content addressed, so
+     * identical payloads share a location and are only written once.
+     */
+    private final Map<String, Long> myPayloadOffsets = new HashMap<>();
+
+    public Writer(@NotNull OutputStream output, @Nullable DataStoreBlobStore blobStore) throws IOException {
+      this(output, blobStore, DEFAULT_CHUNK_SIZE);
+    }
+
+    Writer(@NotNull OutputStream output, @Nullable DataStoreBlobStore blobStore, int chunkSize) throws IOException {
+      myCountingOutput = new CountingOutputStream(new BufferedOutputStream(output));
+      myOutput = new DataOutputStream(myCountingOutput);
+      myBlobStore = blobStore;
+      myChunkSize = chunkSize;
+      myOutput.writeInt(MAGIC);
+      myOutput.writeInt(VERSION);
+    }
+
+    /**
+     * Writes all tables of the database, reading them row by row.
+     */
+    public void writeDatabase(@NotNull String namespace, @NotNull DataStoreDatabase database) throws IOException, SQLException {
+      Connection connection = database.getConnection();
+      for (String table : getTableNames(connection)) {
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery(String.format("SELECT * FROM [%s]", table))) {
+          writeTable(namespace, table, results);
+        }
+      }
+    }
+
+    /**
+     * Writes the end marker and flushes the archive.
+     */
+    public void finish() throws IOException {
+      myOutput.writeByte(RECORD_END);
+      myOutput.flush();
+      myDeflater.end();
+    }
+
+    private void writeTable(@NotNull String namespace, @NotNull String table, @NotNull ResultSet results)
+      throws IOException, SQLException {
+      ResultSetMetaData metaData = results.getMetaData();
+      List<String> columns = new ArrayList<>();
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        columns.add(metaData.getColumnName(i));
+      }
+      int segmentColumn = columns.indexOf(BLOB_SEGMENT_COLUMN);
+      int offsetColumn = columns.indexOf(BLOB_OFFSET_COLUMN);
+      int lengthColumn = columns.indexOf(BLOB_LENGTH_COLUMN);
+      boolean hasBlobColumns = segmentColumn >= 0 && offsetColumn >= 0 && lengthColumn >= 0;
+
+      myOutput.writeByte(RECORD_TABLE);
+      writeString(myOutput, namespace);
+      writeString(myOutput, table);
+      myOutput.writeInt(columns.size());
+      for (String column : columns) {
+        writeString(myOutput, column);
+      }
+
+      ByteArrayOutputStream chunk = new ByteArrayOutputStream(myChunkSize);
+      DataOutputStream chunkOutput = new DataOutputStream(chunk);
+      int rowCount = 0;
+      Object[] row = new Object[columns.size()];
+      while (results.next()) {
+        for (int i = 0; i < row.length; i++) {
+          row[i] = results.getObject(i + 1);
+        }
+        if (hasBlobColumns && row[segmentColumn] != null) {
+          // Payloads are written right away, so the chunk holding the referencing row always comes after the payload.
+          row[offsetColumn] = writePayload(((Number)row[segmentColumn]).intValue(), ((Number)row[offsetColumn]).longValue(),
+                                           ((Number)row[lengthColumn]).longValue());
+          row[segmentColumn] = ARCHIVE_SEGMENT;
+        }
+        for (Object value : row) {
+          writeValue(chunkOutput, value);
+        }
+        rowCount++;
+        if (chunk.size() >= myChunkSize) {
+          writeRows(chunk, rowCount);
+          rowCount = 0;
+        }
+      }
+      if (rowCount > 0) {
+        writeRows(chunk, rowCount);
+      }
+    }
+
+    private void writeRows(@NotNull ByteArrayOutputStream chunk, int rowCount) throws IOException {
+      byte[] raw = chunk.toByteArray();
+      chunk.reset();
+      myDeflater.reset();
+      myDeflater.setInput(raw);
+      myDeflater.finish();
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+      byte[] buffer = new byte[64 * 1024];
+      while (!myDeflater.finished()) {
+        compressed.write(buffer, 0, myDeflater.deflate(buffer));
+      }
+
+      myOutput.writeByte(RECORD_ROWS);
+      myOutput.writeInt(rowCount);
+      myOutput.writeInt(raw.length);
+      myOutput.writeInt(compressed.size());
+      compressed.writeTo(myOutput);
+    }
+
+    /**
+     * @return the offset of the payload's contents in the archive.
+     */
+    private long writePayload(int segment, long offset, long length) throws IOException {
+      String key = segment + ":" + offset;
+      Long archiveOffset = myPayloadOffsets.get(key);
+      if (archiveOffset != null) {
+        return archiveOffset;
+      }
+
+      // Payloads are copied in small chunks, a heap dump may well be larger than the heap.
+      DataStoreBlobStore.BlobRef ref = new DataStoreBlobStore.BlobRef(segment, offset, length);
+      try (InputStream contents = myBlobStore == null ? null : myBlobStore.openStream(ref, 0, length)) {
+        if (contents == null) {
+          throw new IOException(String.format("Unable to read payload at %d:%d", segment, offset));
+        }
+        myOutput.writeByte(RECORD_PAYLOAD);
+        myOutput.writeLong(length);
+        archiveOffset = myCountingOutput.getCount();
+        if (ByteStreams.copy(contents, myOutput) != length) {
+          throw new EOFException(String.format("Payload at %d:%d is truncated", segment, offset));
+        }
+      }
+      myPayloadOffsets.put(key, archiveOffset);
+      return archiveOffset;
+    }
+  }
+
+  /**
+   * Replays an archive into a set of databases, e.g. those of a freshly created {@link DataStoreService}. Row chunks are inflated and
+   * inserted one at a time. Payloads are skipped, they stay in the archive and are made available through
+   * {@link DataStoreBlobStore#addExternalSegment(File)}, so they are only read when (and if) they are requested. The archive therefore
+   * needs to outlive the blob store it is read into.
+   * <p>
+   * Rows, unlike payloads, are all inserted up front: every service queries its tables through SQL on its own connection, and SQLite
+   * has no way to read rows that stay in the archive. Reading them on demand would need a query layer over the archive for every
+   * table. Rows are small next to the payloads, so the import cost is dominated by inflating and inserting them once.
+   */
+  public static final class Reader {
+    @NotNull private final File myArchive;
+    @NotNull private final DataStoreBlobStore myBlobStore;
+
+    public Reader(@NotNull File archive, @NotNull DataStoreBlobStore blobStore) {
+      myArchive = archive;
+      myBlobStore = blobStore;
+    }
+
+    /**
+     * @param databases maps the namespaces stored in the archive to the databases to insert their rows into. Tables of namespaces
+     *                  that map to null, or that do not exist in the target database, are skipped. Rows that already exist are kept.
+     */
+    public void readInto(@NotNull Function<String, DataStoreDatabase> databases) throws IOException, SQLException {
+      int payloadSegment = -1;
+      try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(myArchive)))) {
+        if (input.readInt() != MAGIC) {
+          throw new IOException("Not a datastore archive");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+          throw new IOException("Unsupported datastore archive version " + version);
+        }
+
+        Inflater inflater = new Inflater();
+        TableImport table = null;
+        try {
+          while (true) {
+            byte record = input.readByte();
+            if (record == RECORD_END) {
+              break;
+            }
+            switch (record) {
+              case RECORD_TABLE:
+                String namespace = readString(input);
+                String tableName = readString(input);
+                List<String> columns = new ArrayList<>();
+                for (int i = input.readInt(); i > 0; i--) {
+                  columns.add(readString(input));
+                }
+                if (table != null) {
+                  table.close();
+                }
+                table = TableImport.create(databases.apply(namespace), tableName, columns);
+                break;
+              case RECORD_ROWS:
+                int rowCount = input.readInt();
+                int rawLength = input.readInt();
+                int compressedLength = input.readInt();
+                if (table == null) {
+                  // Rows of a skipped table are not even read.
+                  skipFully(input, compressedLength);
+                  break;
+                }
+                byte[] compressed = new byte[compressedLength];
+                input.readFully(compressed);
+                byte[] raw = new byte[rawLength];
+                inflate(inflater, compressed, raw);
+                table.insertRows(new DataInputStream(new ByteArrayInputStream(raw)), rowCount, payloadSegment);
+                break;
+              case RECORD_PAYLOAD:
+                if (payloadSegment < 0) {
+                  payloadSegment = myBlobStore.addExternalSegment(myArchive);
+                }
+                skipFully(input, input.readLong());
+                break;
+              default:
+                throw new IOException("Corrupt datastore archive, unknown record " + record);
+            }
+          }
+        }
+        finally {
+          inflater.end();
+          if (table != null) {
+            table.close();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Batched insertion of archived rows into one table.
+   */
+  private static final class TableImport {
+    @NotNull private final PreparedStatement myStatement;
+    private final int myColumnCount;
+    private final int mySegmentColumn;
+    private final boolean myHasBlobColumns;
+
+    private TableImport(@NotNull PreparedStatement statement, @NotNull List<String> columns) {
+      myStatement = statement;
+      myColumnCount = columns.size();
+      mySegmentColumn = columns.indexOf(BLOB_SEGMENT_COLUMN);
+      myHasBlobColumns = mySegmentColumn >= 0 && columns.contains(BLOB_OFFSET_COLUMN) && columns.contains(BLOB_LENGTH_COLUMN);
+    }
+
+    @Nullable
+    private static TableImport create(@Nullable DataStoreDatabase database, @NotNull String table, @NotNull List<String> columns)
+      throws SQLException {
+      if (database == null || !getTableNames(database.getConnection()).contains(table)) {
+        return null;
+      }
+      StringBuilder sql = new StringBuilder(String.format("INSERT OR IGNORE INTO [%s] (", table));
+      sql.append(String.join(", ", columns)).append(") VALUES (");
+      sql.append(String.join(", ", Collections.nCopies(columns.size(), "?"))).append(")");
+      return new TableImport(database.getConnection().prepareStatement(sql.toString()), columns);
+    }
+
+    /**
+     * @param payloadSegment the blob store segment of the archive, or -1 if no payload was read so far.
+     */
+    private void insertRows(@NotNull DataInputStream rows, int rowCount, int payloadSegment) throws IOException, SQLException {
+      for (int row = 0; row < rowCount; row++) {
+        for (int column = 0; column < myColumnCount; column++) {
+          Object value = readValue(rows);
+          if (myHasBlobColumns && column == mySegmentColumn && value != null) {
+            if (payloadSegment < 0) {
+              throw new IOException("Corrupt datastore archive, row references a payload before any was written");
+            }
+            // Offsets are relative to the start of the archive already.
+            value = payloadSegment;
+          }
+          myStatement.setObject(column + 1, value);
+        }
+        myStatement.addBatch();
+      }
+      myStatement.executeBatch();
+      myStatement.clearParameters();
+    }
+
+    private void close() throws SQLException {
+      myStatement.close();
+    }
+  }
+
+  @NotNull
+  private static List<String> getTableNames(@NotNull Connection connection) throws SQLException {
+    List<String> tables = new ArrayList<>();
+    try (Statement statement = connection.createStatement();
+         ResultSet results = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='table'")) {
+      while (results.next()) {
+        tables.add(results.getString(1));
+      }
+    }
+    return tables;
+  }
+
+  private static void writeValue(@NotNull DataOutputStream output, @Nullable Object value) throws IOException {
+    if (value == null) {
+      output.writeByte(VALUE_NULL);
+    }
+    else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      output.writeByte(VALUE_LONG);
+      output.writeLong(((Number)value).longValue());
+    }
+    else if (value instanceof Number) {
+      output.writeByte(VALUE_DOUBLE);
+      output.writeDouble(((Number)value).doubleValue());
+    }
+    else if (value instanceof byte[]) {
+      output.writeByte(VALUE_BLOB);
+      output.writeInt(((byte[])value).length);
+      output.write((byte[])value);
+    }
+    else {
+      output.writeByte(VALUE_TEXT);
+      writeString(output, value.toString());
+    }
+  }
+
+  @Nullable
+  private static Object readValue(@NotNull DataInputStream input) throws IOException {
+    byte type = input.readByte();
+    switch (type) {
+      case VALUE_NULL:
+        return null;
+      case VALUE_LONG:
+        return input.readLong();
+      case VALUE_DOUBLE:
+        return input.readDouble();
+      case VALUE_BLOB:
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+      case VALUE_TEXT:
+        return readString(input);
+      default:
+        throw new IOException("Corrupt datastore archive, unknown value type " + type);
+    }
+  }
+
+  /**
+   * Unlike {@link DataOutputStream#writeUTF(String)}, not limited to 64KB.
+   */
+  private static void writeString(@NotNull DataOutputStream output, @NotNull String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  @NotNull
+  private static String readString(@NotNull DataInputStream input) throws IOException {
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void inflate(@NotNull Inflater inflater, @NotNull byte[] compressed, @NotNull byte[] raw) throws IOException {
+    inflater.reset();
+    inflater.setInput(compressed);
+    try {
+      int length = 0;
+      while (length < raw.length && !inflater.finished()) {
+        int inflated = inflater.inflate(raw, length, raw.length - length);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += inflated;
+      }
+      if (length != raw.length) {
+        throw new IOException("Corrupt datastore archive, truncated row chunk");
+      }
+    }
+    catch (DataFormatException e) {
+      throw new IOException("Corrupt datastore archive", e);
+    }
+  }
+
+  private static void skipFully(@NotNull DataInputStream input, long length) throws IOException {
+    while (length > 0) {
+      long skipped = input.skip(length);
+      if (skipped <= 0) {
+        throw new EOFException("Corrupt datastore archive, truncated payload");
+      }
+      length -= skipped;
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.tools.idea.protobuf.ByteString;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Content-addressed storage for large payloads (traces, heap dumps, network bodies) that would otherwise be stored as BLOBs in the
+ * {@link DataStoreDatabase}. Payloads are appended to segment files and never copied onto the Java heap when read: {@link #read} maps
+ * the requested range of its segment, and {@link #openStream} reads any range, including ranges of 2GB or more, in small chunks.
+ * Each mapping only covers the range that was read, and is released once the returned buffer is garbage collected. Identical payloads
+ * are only stored once.
+ * <p>
+ * Like the database, the blob store does not survive Studio restarts: existing segments are deleted when the store is created.
+ * Read-only regions of other files (e.g. the payload records of an imported {@link DataStoreArchive}) can be added as external
+ * segments, so their payloads can be read without being copied into the store first.
+ */
+public class DataStoreBlobStore {
+  private static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  private static final String SEGMENT_FILE_FORMAT = "segment-%d.blob";
+
+  /**
+   * Location of a payload inside the blob store.
+   */
+  public static final class BlobRef {
+    private final int mySegment;
+    private final long myOffset;
+    private final long myLength;
+
+    public BlobRef(int segment, long offset, long length) {
+      mySegment = segment;
+      myOffset = offset;
+      myLength = length;
+    }
+
+    public int getSegment() {
+      return mySegment;
+    }
+
+    public long getOffset() {
+      return myOffset;
+    }
+
+    public long getLength() {
+      return myLength;
+    }
+  }
+
+  @NotNull private final File myDirectory;
+  @NotNull private final LogService myLogService;
+  private final long mySegmentSize;
+  private final List<Segment> mySegments = new ArrayList<>();
+  private final Map<ByteString, BlobRef> myContentIndex = new HashMap<>();
+  private boolean myIsClosed;
+
+  public DataStoreBlobStore(@NotNull File directory, @NotNull LogService logService) {
+    this(directory, logService, DEFAULT_SEGMENT_SIZE);
+  }
+
+  @VisibleForTesting
+  DataStoreBlobStore(@NotNull File directory, @NotNull LogService logService, long segmentSize) {
+    myDirectory = directory;
+    myLogService = logService;
+    mySegmentSize = segmentSize;
+
+    File[] staleSegments = directory.listFiles((dir, name) -> name.endsWith(".blob"));
+    if (staleSegments != null) {
+      for (File segment : staleSegments) {
+        if (!segment.delete()) {
+          getLogger().warn("Unable to delete stale blob segment " + segment.getName());
+        }
+      }
+    }
+    if (!directory.mkdirs() && !directory.exists()) {
+      getLogger().error("Unable to create blob store directory");
+    }
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(DataStoreBlobStore.class);
+  }
+
+  /**
+   * Appends the contents to the store, unless identical contents were stored before.
+   *
+   * @return the location of the contents, or null if they could not be written. Callers are expected to fall back to storing the
+   * contents themselves in that case.
+   */
+  @Nullable
+  public synchronized BlobRef put(@NotNull ByteString contents) {
+    if (myIsClosed) {
+      return null;
+    }
+    ByteString digest = digest(contents);
+    BlobRef existing = myContentIndex.get(digest);
+    if (existing != null) {
+      return existing;
+    }
+
+    try {
+      Segment segment = getSegmentForAppend(contents.size());
+      long offset = segment.mySize;
+      long position = offset;
+      for (ByteBuffer buffer : contents.asReadOnlyByteBufferList()) {
+        while (buffer.hasRemaining()) {
+          position += segment.myChannel.write(buffer, position);
+        }
+      }
+      segment.mySize = position;
+      BlobRef ref = new BlobRef(mySegments.size() - 1, offset, contents.size());
+      myContentIndex.put(digest, ref);
+      return ref;
+    }
+    catch (IOException ex) {
+      getLogger().error(ex);
+      return null;
+    }
+  }
+
+  /**
+   * Makes the given file readable through the store. The file is never written to, and is not deleted when the store is closed, but it
+   * stays open until then.
+   *
+   * @return the segment to use for {@link BlobRef}s pointing into the file, with offsets relative to the start of the file.
+   */
+  public synchronized int addExternalSegment(@NotNull File file) throws IOException {
+    if (myIsClosed) {
+      throw new IOException("Blob store is closed");
+    }
+    Segment segment = new Segment(FileChannel.open(file.toPath(), StandardOpenOption.READ), true);
+    segment.mySize = segment.myChannel.size();
+    mySegments.add(segment);
+    return mySegments.size() - 1;
+  }
+
+  /**
+   * @return a read-only buffer mapping the whole payload.
+   */
+  @Nullable
+  public ByteBuffer read(@NotNull BlobRef ref) {
+    return read(ref, 0, ref.getLength());
+  }
+
+  /**
+   * @return a read-only buffer mapping {@code length} bytes of the payload starting at {@code offset}, or null if the range is invalid
+   * or could not be mapped. A single mapping can't exceed 2GB, larger ranges must be read with {@link #openStream}.
+   */
+  @Nullable
+  public synchronized ByteBuffer read(@NotNull BlobRef ref, long offset, long length) {
+    Segment segment = getSegment(ref, offset, length);
+    if (segment == null) {
+      return null;
+    }
+    if (length > Integer.MAX_VALUE) {
+      getLogger().error("Unable to map " + length + " bytes of a blob, it must be streamed instead");
+      return null;
+    }
+    try {
+      // The mapping stays valid once the segment is closed.
+      return segment.myChannel.map(FileChannel.MapMode.READ_ONLY, ref.getOffset() + offset, length).asReadOnlyBuffer();
+    }
+    catch (IOException ex) {
+      getLogger().error(ex);
+      return null;
+    }
+  }
+
+  /**
+   * @return a stream of {@code length} bytes of the payload starting at {@code offset}, read on demand with positional reads, or null if
+   * the range is invalid. The stream fails once the store is closed.
+   */
+  @Nullable
+  public synchronized InputStream openStream(@NotNull BlobRef ref, long offset, long length) {
+    Segment segment = getSegment(ref, offset, length);
+    return segment == null ? null : new RangeInputStream(segment.myChannel, ref.getOffset() + offset, length);
+  }
+
+  /**
+   * @return the segment holding the given range of a payload, or null if the range is invalid or the store is closed.
+   */
+  @Nullable
+  private Segment getSegment(@NotNull BlobRef ref, long offset, long length) {
+    if (myIsClosed || ref.getSegment() < 0 || ref.getSegment() >= mySegments.size()) {
+      return null;
+    }
+    if (offset < 0 || length < 0 || offset > ref.getLength() - length) {
+      return null;
+    }
+    Segment segment = mySegments.get(ref.getSegment());
+    return ref.getOffset() + offset + length > segment.mySize ? null : segment;
+  }
+
+  public synchronized void close() {
+    myIsClosed = true;
+    for (Segment segment : mySegments) {
+      try {
+        segment.myChannel.close();
+      }
+      catch (IOException ex) {
+        getLogger().error(ex);
+      }
+    }
+    mySegments.clear();
+    myContentIndex.clear();
+  }
+
+  @VisibleForTesting
+  synchronized int getSegmentCount() {
+    return mySegments.size();
+  }
+
+  @NotNull
+  private Segment getSegmentForAppend(long length) throws IOException {
+    Segment last = mySegments.isEmpty() ? null : mySegments.get(mySegments.size() - 1);
+    // Payloads larger than the segment size get a segment of their own.
+    if (last != null && !last.myIsExternal && (last.mySize == 0 || last.mySize + length <= mySegmentSize)) {
+      return last;
+    }
+    File file = new File(myDirectory, String.format(Locale.US, SEGMENT_FILE_FORMAT, mySegments.size()));
+    Segment segment = new Segment(FileChannel.open(file.toPath(),
+                                                   StandardOpenOption.CREATE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING,
+                                                   StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE), false);
+    mySegments.add(segment);
+    return segment;
+  }
+
+  @NotNull
+  private static ByteString digest(@NotNull ByteString contents) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (ByteBuffer buffer : contents.asReadOnlyByteBufferList()) {
+        digest.update(buffer);
+      }
+      return ByteString.copyFrom(digest.digest());
+    }
+    catch (NoSuchAlgorithmException ex) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Reads a range of a segment with positional reads, so any number of streams can read the same segment concurrently.
+   */
+  private static final class RangeInputStream extends InputStream {
+    @NotNull private final FileChannel myChannel;
+    private long myPosition;
+    private final long myEnd;
+
+    private RangeInputStream(@NotNull FileChannel channel, long start, long length) {
+      myChannel = channel;
+      myPosition = start;
+      myEnd = start + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] buffer = new byte[1];
+      return read(buffer, 0, 1) < 0 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NotNull byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (myPosition >= myEnd) {
+        return -1;
+      }
+      int read = myChannel.read(ByteBuffer.wrap(buffer, offset, (int)Math.min(length, myEnd - myPosition)), myPosition);
+      if (read < 0) {
+        throw new EOFException("Blob segment ended " + (myEnd - myPosition) + " bytes early");
+      }
+      myPosition += read;
+      return read;
+    }
+
+    @Override
+    public long skip(long n) {
+      long skipped = Math.max(0, Math.min(n, myEnd - myPosition));
+      myPosition += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return (int)Math.min(Integer.MAX_VALUE, myEnd - myPosition);
+    }
+  }
+
+  private static final class Segment {
+    @NotNull private final FileChannel myChannel;
+    private final boolean myIsExternal;
+    private long mySize;
+
+    private Segment(@NotNull FileChannel channel, boolean isExternal) {
+      myChannel = channel;
+      myIsExternal = isExternal;
+    }
+  }
+}
@@ -21,6 +21,7 @@ import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.function.Consumer;
 
 public class DataStoreDatabase {
@@ -84,6 +85,12 @@ public class DataStoreDatabase {
           throw new RuntimeException("Characteristic not handled!");
       }
 
+      // Lets the retention engine give space freed by evicted rows back to the file system in small steps, see DataStoreRetention.
+      // Has to be set before any table is created.
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+      }
+
       // Performance optimization.
       // TODO: Create a timer and commit the database transaction every X seconds.
       connection.setAutoCommit(false);
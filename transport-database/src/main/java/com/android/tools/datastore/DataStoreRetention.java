@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.tools.datastore.database.DownsampledSeries;
+import com.android.tools.datastore.database.RetentionPolicy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps long-running sessions from growing the datastore without bound. Periodically, on a background thread, each registered
+ * {@link DownsampledSeries} aggregates its old samples and evicts raw samples past its budget, after which the databases give a bounded
+ * number of free pages back to the file system (incremental vacuum), so a pass never blocks the datastore for long.
+ */
+public class DataStoreRetention {
+  @NotNull private final Supplier<Collection<DataStoreDatabase>> myDatabases;
+  @NotNull private final LogService myLogService;
+  private final List<DownsampledSeries> mySeries = new CopyOnWriteArrayList<>();
+  @NotNull private final ScheduledExecutorService myExecutor;
+  @NotNull private volatile RetentionPolicy myPolicy;
+  @Nullable private ScheduledFuture<?> myScheduledPass;
+
+  public DataStoreRetention(@NotNull RetentionPolicy policy,
+                            @NotNull Supplier<Collection<DataStoreDatabase>> databases,
+                            @NotNull LogService logService) {
+    myPolicy = policy;
+    myDatabases = databases;
+    myLogService = logService;
+    myExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("DataStoreRetention").setDaemon(true)
+                                                              .build());
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(DataStoreRetention.class);
+  }
+
+  public void addSeries(@NotNull List<DownsampledSeries> series) {
+    series.forEach(s -> s.setPolicy(myPolicy));
+    mySeries.addAll(series);
+  }
+
+  @NotNull
+  public RetentionPolicy getPolicy() {
+    return myPolicy;
+  }
+
+  /**
+   * Applies a new policy to all series, and reschedules the passes if they are running.
+   */
+  public synchronized void setPolicy(@NotNull RetentionPolicy policy) {
+    myPolicy = policy;
+    mySeries.forEach(s -> s.setPolicy(policy));
+    if (myScheduledPass != null) {
+      myScheduledPass.cancel(false);
+      schedule();
+    }
+  }
+
+  public synchronized void start() {
+    if (myScheduledPass == null && !myExecutor.isShutdown()) {
+      schedule();
+    }
+  }
+
+  /**
+   * Stops the passes, waiting for one that is currently running to finish, so the databases can be disconnected afterwards.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      myScheduledPass = null;
+    }
+    myExecutor.shutdownNow();
+    try {
+      myExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @VisibleForTesting
+  void runPass() {
+    int aggregates = 0;
+    int evicted = 0;
+    for (DownsampledSeries series : mySeries) {
+      aggregates += series.downsample();
+      evicted += series.evictRawSamples();
+    }
+    if (evicted > 0) {
+      vacuum();
+    }
+    if (aggregates > 0 || evicted > 0) {
+      getLogger().debug(String.format("Retention pass wrote %d aggregates and evicted %d samples", aggregates, evicted));
+    }
+  }
+
+  private void schedule() {
+    long periodMs = myPolicy.getPeriodMs();
+    myScheduledPass = myExecutor.scheduleWithFixedDelay(this::runPassSafely, periodMs, periodMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void runPassSafely() {
+    try {
+      runPass();
+    }
+    catch (RuntimeException e) {
+      // An exception would silently cancel all future passes.
+      getLogger().error(e);
+    }
+  }
+
+  private void vacuum() {
+    int pages = myPolicy.getVacuumPagesPerPass();
+    for (DataStoreDatabase database : myDatabases.get()) {
+      try {
+        if (database.getConnection().isClosed()) {
+          continue;
+        }
+        try (Statement statement = database.getConnection().createStatement()) {
+          statement.execute(String.format("PRAGMA incremental_vacuum(%d)", pages));
+        }
+      }
+      catch (SQLException e) {
+        getLogger().warn(e);
+      }
+    }
+  }
+}
@@ -20,6 +20,7 @@ import static com.android.tools.idea.flags.StudioFlags.PROFILER_UNIFIED_PIPELINE
 
 import com.android.tools.analytics.UsageTracker;
 import com.android.tools.datastore.database.DataStoreTable;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.database.UnifiedEventsTable;
 import com.android.tools.datastore.service.CpuService;
 import com.android.tools.datastore.service.EnergyService;
@@ -41,14 +42,17 @@ import com.android.tools.profiler.proto.TransportServiceGrpc;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.wireless.android.sdk.stats.AndroidProfilerDbStats;
 import com.google.wireless.android.sdk.stats.AndroidStudioEvent;
+import io.grpc.BindableService;
 import io.grpc.ManagedChannel;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.ServerInterceptor;
 import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
 import io.grpc.inprocess.InProcessServerBuilder;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -124,7 +128,10 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   @NotNull
   private Consumer<Throwable> myNoPiiExceptionHandler;
   private TransportService myTransportService;
+  private DataStoreBlobStore myBlobStore;
+  private UnifiedEventsTable myUnifiedTable;
   private final ServerInterceptor myInterceptor;
+  private final DataStoreRetention myRetention;
   /**
    * Mapping a stream id to its DataStoreClient.
    */
@@ -158,7 +165,9 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     // Calling set with null resets the exception handler to the default exception handler.
     // getLogger().error(exception);
     setNoPiiExceptionHandler(null);
+    myRetention = new DataStoreRetention(RetentionPolicy.DEFAULT, () -> new ArrayList<>(myDatabases.values()), logService);
     createPollers();
+    myRetention.start();
     myServer = myServerBuilder.build();
     try {
       myServer.start();
@@ -184,6 +193,19 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     }
   }
 
+  /**
+   * Changes how long time-series samples are kept at full resolution before they are downsampled and evicted.
+   */
+  public void setRetentionPolicy(@NotNull RetentionPolicy policy) {
+    myRetention.setPolicy(policy);
+  }
+
+  @VisibleForTesting
+  @NotNull
+  DataStoreRetention getRetention() {
+    return myRetention;
+  }
+
   @VisibleForTesting
   public Map<BackingNamespace, DataStoreDatabase> getDatabases() {
     return myDatabases;
@@ -196,13 +218,14 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   public void createPollers() {
     // TODO b/73538507 shared between all services to support inserting file content into generic byte cache (e.g. importing hprof)
     // We should be able to keep this inside TransportService after legacy pipeline removal.
-    UnifiedEventsTable unifiedTable = new UnifiedEventsTable();
-    myTransportService = new TransportService(this, unifiedTable, myFetchExecutor, !PROFILER_UNIFIED_PIPELINE.get());
+    myBlobStore = new DataStoreBlobStore(new File(myDatastoreDirectory + "blobs"), myLogService);
+    myUnifiedTable = new UnifiedEventsTable(myBlobStore);
+    myTransportService = new TransportService(this, myUnifiedTable, myFetchExecutor, !PROFILER_UNIFIED_PIPELINE.get());
     registerService(myTransportService);
     registerService(new ProfilerService(this, myLogService));
     registerService(new EventService(this, myFetchExecutor));
     registerService(new CpuService(this, myFetchExecutor, myLogService));
-    registerService(new MemoryService(this, unifiedTable, myFetchExecutor, myLogService));
+    registerService(new MemoryService(this, myUnifiedTable, myFetchExecutor, myLogService));
     registerService(new NetworkService(this, myFetchExecutor));
     registerService(new EnergyService(this, myFetchExecutor, myLogService));
   }
@@ -229,13 +252,21 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
         myDatastoreDirectory + backingNamespace.myNamespace, backingNamespace.myCharacteristic, myNoPiiExceptionHandler));
       service.setBackingStore(namespace, db.getConnection());
     });
+    myRetention.addSeries(service.getDownsampledSeries());
 
     // Build server and start listening for RPC calls for the registered service
+    addService(service.bindService());
+    for (BindableService additionalService : service.getAdditionalServices()) {
+      addService(additionalService.bindService());
+    }
+  }
+
+  private void addService(@NotNull ServerServiceDefinition definition) {
     if (myInterceptor != null) {
-      myServerBuilder.addService(ServerInterceptors.intercept(service.bindService(), myInterceptor));
+      myServerBuilder.addService(ServerInterceptors.intercept(definition, myInterceptor));
     }
     else {
-      myServerBuilder.addService(service.bindService());
+      myServerBuilder.addService(definition);
     }
   }
 
@@ -266,14 +297,44 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     }
   }
 
+  /**
+   * Writes the contents of all databases, including the payloads they reference, as a {@link DataStoreArchive}. Rows and payloads are
+   * streamed in chunks, so the size of the session is not limited by the heap.
+   */
+  public void exportSession(@NotNull OutputStream output) throws IOException, SQLException {
+    myTransportService.getWriteBuffer().flush();
+    DataStoreArchive.Writer writer = new DataStoreArchive.Writer(output, myBlobStore);
+    for (Map.Entry<BackingNamespace, DataStoreDatabase> entry : myDatabases.entrySet()) {
+      writer.writeDatabase(entry.getKey().myNamespace, entry.getValue());
+    }
+    writer.finish();
+  }
+
+  /**
+   * Replays a {@link DataStoreArchive} written by {@link #exportSession(OutputStream)} into this datastore. Payloads are read from the
+   * archive on demand, so the archive must not be deleted while the datastore is running.
+   */
+  public void importSession(@NotNull File archive) throws IOException, SQLException {
+    myTransportService.getWriteBuffer().flush();
+    Map<String, DataStoreDatabase> databases = new HashMap<>();
+    myDatabases.forEach((namespace, db) -> databases.put(namespace.myNamespace, db));
+    new DataStoreArchive.Reader(archive, myBlobStore).readInto(databases::get);
+    // The imported rows bypassed the table, so the bounds its queries are planned with need to be recomputed.
+    myUnifiedTable.rebuildTimeBounds();
+  }
+
   public void shutdown() {
+    myRetention.shutdown();
     myReportTimer.cancel();
     myServer.shutdownNow();
     for (DataStoreClient client : myConnectedClients.values()) {
       client.getChannel().shutdownNow();
     }
     myConnectedClients.clear();
+    myTransportService.shutdown();
+    myTransportService.getWriteBuffer().flush();
     myDatabases.forEach((name, db) -> db.disconnect());
+    myBlobStore.close();
     DataStoreTable.removeDataStoreErrorCallback(this);
   }
 
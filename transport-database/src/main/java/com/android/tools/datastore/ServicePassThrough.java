@@ -15,10 +15,13 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.DownsampledSeries;
+import io.grpc.BindableService;
 import io.grpc.ServerServiceDefinition;
 import org.jetbrains.annotations.NotNull;
 
 import java.sql.Connection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -32,6 +35,23 @@ public interface ServicePassThrough {
   @NotNull
   ServerServiceDefinition bindService();
 
+  /**
+   * @return services for calls the transport protos do not declare, which are registered along with this service (e.g.
+   * {@link com.android.tools.datastore.rpc.DataStoreStreamingServiceGrpc}).
+   */
+  @NotNull
+  default List<BindableService> getAdditionalServices() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * @return the time-series of this service's tables that the datastore's retention engine should downsample.
+   */
+  @NotNull
+  default List<DownsampledSeries> getDownsampledSeries() {
+    return Collections.emptyList();
+  }
+
   /**
    * @return a list of namespaces to store the data
    */
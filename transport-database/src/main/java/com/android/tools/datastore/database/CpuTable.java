@@ -48,6 +48,11 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
    */
   private final Map<Long, Set<Integer>> mySessionThreadIdsCache = Collections.synchronizedMap(new HashMap<>());
 
+  // Cpu times are cumulative, so the averages of two buckets still give the average usage in between.
+  private final DownsampledSeries myCpuDataSeries = new DownsampledSeries(
+    this, "Cpu_Data", "Timestamp", null, "Data",
+    Collections.singletonMap(0, DownsampledSeries.SampleType.averaged(CpuUsageData.getDefaultInstance())));
+
   public enum CpuStatements {
     INSERT_THREAD_ACTIVITY,
     QUERY_ALL_DISTINCT_THREADS,
@@ -82,6 +87,7 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
       createUniqueIndex("Cpu_Trace_Info", "Session", "StartTime");
       // Uniqueness guaranteed by PRIMARY KEY field in this table.
       createIndex("Thread_Activities", 0, "Session", "ThreadId", "Timestamp");
+      myCpuDataSeries.createTables();
     }
     catch (SQLException ex) {
       onError(ex);
@@ -130,11 +136,28 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
   }
 
   public List<CpuUsageData> getCpuDataByRequest(CpuDataRequest request) {
+    long sessionId = request.getSession().getSessionId();
+    try {
+      return myCpuDataSeries.query(sessionId, 0, request.getStartTimestamp(), request.getEndTimestamp(),
+                                   (start, end) -> queryRawCpuData(sessionId, start, end));
+    }
+    catch (InvalidProtocolBufferException | SQLException ex) {
+      onError(ex);
+    }
+    return new ArrayList<>();
+  }
+
+  @NotNull
+  @Override
+  public List<DownsampledSeries> getDownsampledSeries() {
+    return Collections.singletonList(myCpuDataSeries);
+  }
+
+  @NotNull
+  private List<CpuUsageData> queryRawCpuData(long sessionId, long startTimestamp, long endTimestamp) {
     List<CpuUsageData> cpuData = new ArrayList<>();
     try {
-      ResultSet results =
-        executeQuery(CpuStatements.QUERY_CPU_DATA, request.getSession().getSessionId(), request.getStartTimestamp(),
-                     request.getEndTimestamp());
+      ResultSet results = executeQuery(CpuStatements.QUERY_CPU_DATA, sessionId, startTimestamp, endTimestamp);
       while (results.next()) {
         CpuUsageData.Builder data = CpuUsageData.newBuilder();
         data.mergeFrom(results.getBytes(DATA_COLUMN));
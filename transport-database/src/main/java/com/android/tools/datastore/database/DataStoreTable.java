@@ -54,6 +54,15 @@ public abstract class DataStoreTable<T extends Enum> {
    */
   public abstract void prepareStatements();
 
+  /**
+   * @return the time-series stored by this table that can be downsampled by the datastore's retention engine, see
+   * {@link DownsampledSeries}.
+   */
+  @NotNull
+  public List<DownsampledSeries> getDownsampledSeries() {
+    return Collections.emptyList();
+  }
+
   public static void addDataStoreErrorCallback(@NotNull DataStoreTableErrorCallback callback) {
     ERROR_CALLBACKS.add(callback);
   }
@@ -208,6 +217,30 @@ public abstract class DataStoreTable<T extends Enum> {
     return statement.executeQuery();
   }
 
+  /**
+   * Same as {@link #executeOneTimeQuery(String, Object[])}, for statements that do not return results.
+   *
+   * @return the number of rows changed by the statement.
+   */
+  protected int executeOneTimeStatement(@NotNull String sql, Object[] params) throws SQLException {
+    if (isClosed()) {
+      return 0;
+    }
+    if (myCustomQueryCache.get() == null) {
+      myCustomQueryCache.set(new HashMap<>());
+    }
+    Map<String, PreparedStatement> queryCache = myCustomQueryCache.get();
+    if (!queryCache.containsKey(sql)) {
+      queryCache.put(sql, myConnection.prepareStatement(sql));
+    }
+
+    PreparedStatement statement = queryCache.get(sql);
+    applyParams(statement, params);
+    int changes = statement.executeUpdate();
+    statement.clearParameters();
+    return changes;
+  }
+
   protected void applyParams(@NotNull PreparedStatement statement, Object... params) throws SQLException {
     for (int i = 0; params != null && i < params.length; i++) {
       if (params[i] == null) {
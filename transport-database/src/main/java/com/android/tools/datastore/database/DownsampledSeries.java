@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.idea.protobuf.Descriptors.FieldDescriptor;
+import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
+import com.android.tools.idea.protobuf.Message;
+import com.android.tools.idea.protobuf.Parser;
+import com.google.common.annotations.VisibleForTesting;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A time-series stored in a {@link DataStoreTable} as one serialized sample per row, which the datastore's retention engine keeps at
+ * full resolution only for the most recent {@link RetentionPolicy#getRawRetentionNs()}. Older samples are aggregated into buckets of
+ * {@link RetentionPolicy#getBucketNs()} in a companion "[table]_Aggregates" table. Each bucket holds the per-field average sample and,
+ * for sample types with a magnitude, the samples with the smallest and the largest magnitude, as they were stored. Once a series holds
+ * more than {@link RetentionPolicy#getMaxRawSamples()} samples, samples of that series that have been aggregated are deleted.
+ * <p>
+ * Tables serve their queries through {@link #query}, which returns aggregates for the part of a range that has been aggregated if the
+ * range is zoomed out (or if the samples there have been deleted), and raw samples otherwise. The aggregates returned depend on the
+ * {@link SampleType}: gauges such as memory usage return their min and max samples, in timestamp order, which preserves the peaks and
+ * dips a chart would otherwise lose to averaging. Cumulative counters such as cpu times return their average sample, since the
+ * differences between consecutive averages are the average rates.
+ * <p>
+ * Averages are computed field by field on the samples' protos: numeric fields (including timestamps) are averaged, singular message
+ * fields are averaged recursively and all other fields are taken from the last sample in the bucket.
+ */
+public class DownsampledSeries {
+  @NotNull private final DataStoreTable<?> myTable;
+  @NotNull private final String myRawTable;
+  @NotNull private final String myAggregatesTable;
+  /**
+   * The types of samples, keyed by the value of the type column. Only rows of these types are aggregated.
+   */
+  @NotNull private final Map<Integer, SampleType> myTypes;
+
+  @NotNull private final String myKeysSql;
+  @NotNull private final String mySamplesSql;
+  @NotNull private final String myFirstRawTimestampSql;
+  @NotNull private final String myRawCountSql;
+  @NotNull private final String myEvictSql;
+  @NotNull private final String myWatermarkSql;
+  @NotNull private final String myWatermarksSql;
+  @NotNull private final String myInsertAggregateSql;
+  @NotNull private final String myQueryAggregatesSql;
+  private final boolean myHasTypeColumn;
+
+  @NotNull private volatile RetentionPolicy myPolicy = RetentionPolicy.DEFAULT;
+
+  /**
+   * @param rawTable        table holding the samples, with a "Session" column.
+   * @param timestampColumn column holding the samples' timestamps.
+   * @param typeColumn      column distinguishing multiple series stored in the same table, or null if the table holds a single one.
+   * @param dataColumn      column holding the serialized samples.
+   * @param types           how samples are aggregated, keyed by type. Use 0 as key if there is no type column.
+   */
+  DownsampledSeries(@NotNull DataStoreTable<?> table,
+                    @NotNull String rawTable,
+                    @NotNull String timestampColumn,
+                    @Nullable String typeColumn,
+                    @NotNull String dataColumn,
+                    @NotNull Map<Integer, SampleType> types) {
+    myTable = table;
+    myRawTable = rawTable;
+    myAggregatesTable = rawTable + "_Aggregates";
+    myTypes = types;
+    myHasTypeColumn = typeColumn != null;
+
+    String type = myHasTypeColumn ? typeColumn : "0";
+    String typeFilter = myHasTypeColumn ? String.format(" AND %s = ?", typeColumn) : "";
+    String typeList = types.keySet().stream().map(String::valueOf).collect(Collectors.joining(", "));
+    String typesFilter = myHasTypeColumn ? String.format(" WHERE %s IN (%s)", typeColumn, typeList) : "";
+    myKeysSql = String.format("SELECT Session, %s, MAX(%s) FROM %s%s GROUP BY Session, %s", type, timestampColumn, rawTable, typesFilter,
+                              type);
+    mySamplesSql = String.format("SELECT %s, %s FROM %s WHERE Session = ?%s AND %s > ? AND %s <= ? ORDER BY %s", timestampColumn,
+                                 dataColumn, rawTable, typeFilter, timestampColumn, timestampColumn, timestampColumn);
+    myFirstRawTimestampSql = String.format("SELECT MIN(%s) FROM %s WHERE Session = ?%s", timestampColumn, rawTable, typeFilter);
+    myRawCountSql = String.format("SELECT COUNT(*) FROM %s WHERE Session = ?%s", rawTable, typeFilter);
+    myEvictSql = String.format("DELETE FROM %s WHERE rowid IN (SELECT rowid FROM %s WHERE Session = ?%s AND %s <= ? ORDER BY %s LIMIT ?)",
+                               rawTable, rawTable, typeFilter, timestampColumn, timestampColumn);
+    myWatermarkSql = String.format("SELECT MAX(BucketEnd) FROM %s WHERE Session = ? AND Type = ?", myAggregatesTable);
+    myWatermarksSql = String.format("SELECT Session, Type, MAX(BucketEnd) FROM %s GROUP BY Session, Type", myAggregatesTable);
+    myInsertAggregateSql = String.format(
+      "INSERT OR REPLACE INTO %s (Session, Type, BucketStart, BucketEnd, SampleCount, AvgData, MinTimestamp, MinData, MaxTimestamp, " +
+      "MaxData) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", myAggregatesTable);
+    myQueryAggregatesSql = String.format(
+      "SELECT AvgData, MinTimestamp, MinData, MaxTimestamp, MaxData FROM %s WHERE Session = ? AND Type = ? AND BucketEnd > ? AND " +
+      "BucketEnd <= ? ORDER BY BucketEnd", myAggregatesTable);
+  }
+
+  /**
+   * Creates the aggregates table, to be called while the owning table is initialized.
+   */
+  void createTables() throws SQLException {
+    myTable.createTable(myAggregatesTable, "Session INTEGER NOT NULL", "Type INTEGER NOT NULL", "BucketStart INTEGER NOT NULL",
+                        "BucketEnd INTEGER NOT NULL", "SampleCount INTEGER NOT NULL", "AvgData BLOB", "MinTimestamp INTEGER",
+                        "MinData BLOB", "MaxTimestamp INTEGER", "MaxData BLOB");
+    myTable.createUniqueIndex(myAggregatesTable, "Session", "Type", "BucketEnd");
+  }
+
+  @NotNull
+  public String getTableName() {
+    return myRawTable;
+  }
+
+  @NotNull
+  public RetentionPolicy getPolicy() {
+    return myPolicy;
+  }
+
+  public void setPolicy(@NotNull RetentionPolicy policy) {
+    myPolicy = policy;
+  }
+
+  /**
+   * Aggregates all complete buckets of samples that are older than the policy's raw retention and have not been aggregated yet.
+   *
+   * @return the number of aggregates written.
+   */
+  public int downsample() {
+    RetentionPolicy policy = myPolicy;
+    int aggregateCount = 0;
+    try {
+      for (long[] key : getKeys()) {
+        long sessionId = key[0];
+        int type = (int)key[1];
+        long cutoff = alignDown(key[2] - policy.getRawRetentionNs(), policy.getBucketNs());
+        Long watermark = getWatermark(sessionId, type);
+        long from = watermark == null ? Long.MIN_VALUE : watermark;
+        if (cutoff <= from) {
+          continue;
+        }
+
+        ResultSet results = myTable.executeOneTimeQuery(mySamplesSql, rawParams(sessionId, type, from, cutoff));
+        // Read the whole range before writing, the results are invalidated by other statements on some drivers.
+        List<Bucket> buckets = new ArrayList<>();
+        Bucket bucket = null;
+        SampleType sampleType = myTypes.get(type);
+        while (results.next()) {
+          long timestamp = results.getLong(1);
+          long bucketEnd = alignUp(timestamp, policy.getBucketNs());
+          if (bucket == null || bucket.myEnd != bucketEnd) {
+            bucket = new Bucket(bucketEnd);
+            buckets.add(bucket);
+          }
+          bucket.myTimestamps.add(timestamp);
+          bucket.mySamples.add(sampleType.myPrototype.getParserForType().parseFrom(results.getBytes(2)));
+        }
+
+        for (Bucket aggregated : buckets) {
+          Aggregate aggregate = aggregate(aggregated.mySamples, sampleType.myMagnitude);
+          boolean hasExtremes = sampleType.myMagnitude != null;
+          myTable.executeOneTimeStatement(myInsertAggregateSql, new Object[]{
+            sessionId, type, aggregated.myEnd - policy.getBucketNs(), aggregated.myEnd, aggregated.mySamples.size(),
+            aggregate.myAverage.toByteArray(),
+            hasExtremes ? aggregated.myTimestamps.get(aggregate.myMinIndex) : null,
+            hasExtremes ? aggregated.mySamples.get(aggregate.myMinIndex).toByteArray() : null,
+            hasExtremes ? aggregated.myTimestamps.get(aggregate.myMaxIndex) : null,
+            hasExtremes ? aggregated.mySamples.get(aggregate.myMaxIndex).toByteArray() : null});
+          aggregateCount++;
+        }
+      }
+    }
+    catch (SQLException | InvalidProtocolBufferException ex) {
+      DataStoreTable.onError(ex);
+    }
+    return aggregateCount;
+  }
+
+  /**
+   * Deletes the oldest samples that have already been aggregated from every series above the policy's sample budget, until it is within
+   * the budget.
+   *
+   * @return the number of samples deleted.
+   */
+  public int evictRawSamples() {
+    int deleted = 0;
+    try {
+      List<long[]> watermarks = new ArrayList<>();
+      ResultSet results = myTable.executeOneTimeQuery(myWatermarksSql, new Object[0]);
+      while (results.next()) {
+        watermarks.add(new long[]{results.getLong(1), results.getLong(2), results.getLong(3)});
+      }
+      for (long[] watermark : watermarks) {
+        long sessionId = watermark[0];
+        int type = (int)watermark[1];
+        ResultSet countResult = myTable.executeOneTimeQuery(myRawCountSql, rawParams(sessionId, type));
+        long excess = countResult.next() ? countResult.getLong(1) - myPolicy.getMaxRawSamples() : 0;
+        if (excess > 0) {
+          deleted += myTable.executeOneTimeStatement(myEvictSql, rawParams(sessionId, type, watermark[2], excess));
+        }
+      }
+    }
+    catch (SQLException ex) {
+      DataStoreTable.onError(ex);
+    }
+    return deleted;
+  }
+
+  /**
+   * Returns the samples of the given series in (startNs, endNs], in timestamp order, using aggregates where the range is zoomed out or
+   * raw samples have been deleted.
+   *
+   * @param rawQuery queries raw samples in the (exclusive, inclusive] range passed in.
+   */
+  @NotNull
+  <T extends Message> List<T> query(long sessionId,
+                                     int type,
+                                     long startNs,
+                                     long endNs,
+                                     @NotNull BiFunction<Long, Long, List<T>> rawQuery) throws SQLException,
+                                                                                              InvalidProtocolBufferException {
+    Long watermark = getWatermark(sessionId, type);
+    if (watermark == null || startNs >= watermark) {
+      return rawQuery.apply(startNs, endNs);
+    }
+
+    long split = watermark;
+    if (isZoomedIn(startNs, endNs)) {
+      // Zoomed in, only fall back to aggregates where the raw samples are gone.
+      ResultSet results = myTable.executeOneTimeQuery(myFirstRawTimestampSql, rawParams(sessionId, type));
+      if (results.next()) {
+        long firstRawTimestamp = results.getLong(1);
+        if (!results.wasNull()) {
+          split = Math.min(split, firstRawTimestamp - 1);
+        }
+      }
+    }
+    if (split <= startNs) {
+      return rawQuery.apply(startNs, endNs);
+    }
+
+    List<T> samples = new ArrayList<>();
+    SampleType sampleType = myTypes.get(type);
+    @SuppressWarnings("unchecked") Parser<T> parser = (Parser<T>)sampleType.myPrototype.getParserForType();
+    ResultSet results = myTable.executeOneTimeQuery(myQueryAggregatesSql, new Object[]{sessionId, type, startNs, Math.min(split, endNs)});
+    while (results.next()) {
+      if (sampleType.myMagnitude == null) {
+        samples.add(parser.parseFrom(results.getBytes(1)));
+        continue;
+      }
+      long minTimestamp = results.getLong(2);
+      long maxTimestamp = results.getLong(4);
+      T min = parser.parseFrom(results.getBytes(3));
+      if (minTimestamp == maxTimestamp) {
+        // A single sample, or one whose magnitude is both the smallest and the largest of the bucket.
+        samples.add(min);
+        continue;
+      }
+      T max = parser.parseFrom(results.getBytes(5));
+      samples.add(minTimestamp < maxTimestamp ? min : max);
+      samples.add(minTimestamp < maxTimestamp ? max : min);
+    }
+    if (endNs > split) {
+      samples.addAll(rawQuery.apply(split, endNs));
+    }
+    return samples;
+  }
+
+  /**
+   * Open-ended queries (e.g. following a live session) are considered zoomed in, whatever their start.
+   */
+  private boolean isZoomedIn(long startNs, long endNs) {
+    if (endNs == Long.MAX_VALUE) {
+      return true;
+    }
+    long spanNs;
+    try {
+      spanNs = Math.subtractExact(endNs, startNs);
+    }
+    catch (ArithmeticException e) {
+      spanNs = endNs > startNs ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+    return spanNs < myPolicy.getZoomedOutRangeNs();
+  }
+
+  /**
+   * @return the [session, type, latest timestamp] of all series stored in the raw table.
+   */
+  @NotNull
+  private List<long[]> getKeys() throws SQLException {
+    List<long[]> keys = new ArrayList<>();
+    ResultSet results = myTable.executeOneTimeQuery(myKeysSql, new Object[0]);
+    while (results.next()) {
+      keys.add(new long[]{results.getLong(1), results.getLong(2), results.getLong(3)});
+    }
+    return keys;
+  }
+
+  /**
+   * @return the end of the last aggregated bucket of a series, or null if nothing was aggregated yet.
+   */
+  @Nullable
+  private Long getWatermark(long sessionId, int type) throws SQLException {
+    ResultSet results = myTable.executeOneTimeQuery(myWatermarkSql, new Object[]{sessionId, type});
+    if (results.next()) {
+      long watermark = results.getLong(1);
+      return results.wasNull() ? null : watermark;
+    }
+    return null;
+  }
+
+  @NotNull
+  private Object[] rawParams(long sessionId, int type, Object... params) {
+    List<Object> all = new ArrayList<>();
+    all.add(sessionId);
+    if (myHasTypeColumn) {
+      all.add(type);
+    }
+    for (Object param : params) {
+      all.add(param);
+    }
+    return all.toArray();
+  }
+
+  /**
+   * Buckets are (end - bucketNs, end], matching the (start, end] ranges the tables are queried with.
+   */
+  private static long alignUp(long timestamp, long bucketNs) {
+    return Math.floorDiv(timestamp - 1, bucketNs) * bucketNs + bucketNs;
+  }
+
+  private static long alignDown(long timestamp, long bucketNs) {
+    return Math.floorDiv(timestamp, bucketNs) * bucketNs;
+  }
+
+  /**
+   * @param magnitude compares samples to find the smallest and largest ones, or null if only the average is needed.
+   */
+  @VisibleForTesting
+  @NotNull
+  static Aggregate aggregate(@NotNull List<? extends Message> samples, @Nullable ToDoubleFunction<Message> magnitude) {
+    assert !samples.isEmpty();
+    int minIndex = 0;
+    int maxIndex = 0;
+    if (magnitude != null) {
+      double minMagnitude = Double.MAX_VALUE;
+      double maxMagnitude = -Double.MAX_VALUE;
+      for (int i = 0; i < samples.size(); i++) {
+        double sampleMagnitude = magnitude.applyAsDouble(samples.get(i));
+        // The first of equal samples is kept, so a flat bucket is a single sample.
+        if (sampleMagnitude < minMagnitude) {
+          minMagnitude = sampleMagnitude;
+          minIndex = i;
+        }
+        if (sampleMagnitude > maxMagnitude) {
+          maxMagnitude = sampleMagnitude;
+          maxIndex = i;
+        }
+      }
+    }
+    Message.Builder average = samples.get(samples.size() - 1).toBuilder();
+    averageInto(samples, average);
+    return new Aggregate(average.build(), minIndex, maxIndex);
+  }
+
+  private static void averageInto(@NotNull List<? extends Message> samples, @NotNull Message.Builder average) {
+    for (FieldDescriptor field : samples.get(0).getDescriptorForType().getFields()) {
+      // Plain proto3 scalars have no presence, unset values are zeros that need to be accounted for.
+      boolean hasPresence = field.getJavaType() == FieldDescriptor.JavaType.MESSAGE || field.getContainingOneof() != null;
+      if (field.isRepeated() || (hasPresence && !average.hasField(field))) {
+        continue;
+      }
+      List<Object> values = new ArrayList<>(samples.size());
+      for (Message sample : samples) {
+        if (!hasPresence || sample.hasField(field)) {
+          values.add(sample.getField(field));
+        }
+      }
+      switch (field.getJavaType()) {
+        case INT:
+        case LONG:
+          // Averaged as an offset to the first value, so large values such as timestamps don't overflow.
+          long first = ((Number)values.get(0)).longValue();
+          long offsetSum = 0;
+          for (Object value : values) {
+            offsetSum += ((Number)value).longValue() - first;
+          }
+          long avgLong = first + offsetSum / values.size();
+          average.setField(field, field.getJavaType() == FieldDescriptor.JavaType.INT ? (Object)(int)avgLong : (Object)avgLong);
+          break;
+        case FLOAT:
+        case DOUBLE:
+          double sum = 0;
+          for (Object value : values) {
+            sum += ((Number)value).doubleValue();
+          }
+          double avgDouble = sum / values.size();
+          average.setField(field, field.getJavaType() == FieldDescriptor.JavaType.FLOAT ? (Object)(float)avgDouble : (Object)avgDouble);
+          break;
+        case MESSAGE:
+          List<Message> messages = values.stream().map(value -> (Message)value).collect(Collectors.toList());
+          averageInto(messages, average.getFieldBuilder(field));
+          break;
+        default:
+          // Taken from the last sample.
+          break;
+      }
+    }
+  }
+
+  /**
+   * How the samples of one type are aggregated, see {@link DownsampledSeries}.
+   */
+  public static final class SampleType {
+    @NotNull private final Message myPrototype;
+    @Nullable private final ToDoubleFunction<Message> myMagnitude;
+
+    private SampleType(@NotNull Message prototype, @Nullable ToDoubleFunction<Message> magnitude) {
+      myPrototype = prototype;
+      myMagnitude = magnitude;
+    }
+
+    /**
+     * Samples, typically cumulative counters, that are served as the average sample of each bucket.
+     */
+    @NotNull
+    public static SampleType averaged(@NotNull Message prototype) {
+      return new SampleType(prototype, null);
+    }
+
+    /**
+     * Samples, typically gauges, that are served as the samples with the smallest and largest magnitude of each bucket.
+     */
+    @NotNull
+    public static <T extends Message> SampleType extremes(@NotNull T prototype, @NotNull ToDoubleFunction<T> magnitude) {
+      @SuppressWarnings("unchecked") ToDoubleFunction<Message> sampleMagnitude = sample -> magnitude.applyAsDouble((T)sample);
+      return new SampleType(prototype, sampleMagnitude);
+    }
+  }
+
+  @VisibleForTesting
+  static final class Aggregate {
+    @NotNull final Message myAverage;
+    final int myMinIndex;
+    final int myMaxIndex;
+
+    private Aggregate(@NotNull Message average, int minIndex, int maxIndex) {
+      myAverage = average;
+      myMinIndex = minIndex;
+      myMaxIndex = maxIndex;
+    }
+  }
+
+  private static final class Bucket {
+    private final long myEnd;
+    private final List<Long> myTimestamps = new ArrayList<>();
+    private final List<Message> mySamples = new ArrayList<>();
+
+    private Bucket(long end) {
+      myEnd = end;
+    }
+  }
+}
@@ -35,10 +35,12 @@ import com.android.tools.profiler.proto.MemoryProfiler.MemoryRequest;
 import com.android.tools.idea.protobuf.GeneratedMessageV3;
 import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
 import com.android.tools.idea.protobuf.Message;
+import com.google.common.collect.ImmutableMap;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import org.jetbrains.annotations.NotNull;
@@ -90,6 +92,17 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     GC_STATS
   }
 
+  // GC stats are events rather than samples, so they are always kept as they are.
+  private final DownsampledSeries mySamplesSeries = new DownsampledSeries(
+    this, "Memory_Samples", "Timestamp", "Type", "Data",
+    ImmutableMap.of(MemorySamplesType.MEMORY.ordinal(),
+                    DownsampledSeries.SampleType.extremes(MemoryData.MemorySample.getDefaultInstance(),
+                                                          sample -> sample.getMemoryUsage().getTotalMem()),
+                    MemorySamplesType.ALLOC_STATS.ordinal(),
+                    DownsampledSeries.SampleType.extremes(MemoryData.AllocStatsSample.getDefaultInstance(),
+                                                          sample -> sample.getAllocStats().getJavaAllocationCount() -
+                                                                    sample.getAllocStats().getJavaFreeCount())));
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -100,6 +113,7 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
                   "EndTime INTEGER", "InfoData BLOB", "LegacyEventsData BLOB", "PRIMARY KEY(Session, StartTime)");
       createTable("Memory_HeapDump", "Session INTEGER NOT NULL", "StartTime INTEGER",
                   "EndTime INTEGER", "InfoData BLOB", "PRIMARY KEY(Session, StartTime)");
+      mySamplesSeries.createTables();
     }
     catch (SQLException ex) {
       onError(ex);
@@ -124,9 +138,11 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     long startTime = request.getStartTime();
     long endTime = request.getEndTime();
     List<MemoryData.MemorySample> memorySamples =
-      getResultsInfo(QUERY_MEMORY, sessionId, startTime, endTime, MemoryData.MemorySample.getDefaultInstance());
+      getDownsampledResults(MemorySamplesType.MEMORY, QUERY_MEMORY, sessionId, startTime, endTime,
+                            MemoryData.MemorySample.getDefaultInstance());
     List<MemoryData.AllocStatsSample> allocStatsSamples =
-      getResultsInfo(QUERY_ALLOC_STATS, sessionId, startTime, endTime, MemoryData.AllocStatsSample.getDefaultInstance());
+      getDownsampledResults(MemorySamplesType.ALLOC_STATS, QUERY_ALLOC_STATS, sessionId, startTime, endTime,
+                            MemoryData.AllocStatsSample.getDefaultInstance());
     List<MemoryData.GcStatsSample> gcStatsSamples =
       getResultsInfo(QUERY_GC_STATS, sessionId, startTime, endTime, MemoryData.GcStatsSample.getDefaultInstance());
     List<HeapDumpInfo> heapDumpSamples =
@@ -205,6 +221,31 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     return null;
   }
 
+  @NotNull
+  @Override
+  public List<DownsampledSeries> getDownsampledSeries() {
+    return Collections.singletonList(mySamplesSeries);
+  }
+
+  /**
+   * Same as {@link #getResultsInfo}, but served from the aggregates of the samples where appropriate, see {@link DownsampledSeries}.
+   */
+  private <T extends GeneratedMessageV3> List<T> getDownsampledResults(@NotNull MemorySamplesType type,
+                                                                       @NotNull MemoryStatements query,
+                                                                       long sessionId,
+                                                                       long startTime,
+                                                                       long endTime,
+                                                                       @NotNull T defaultInstance) {
+    try {
+      return mySamplesSeries.query(sessionId, type.ordinal(), startTime, endTime,
+                                   (start, end) -> getResultsInfo(query, sessionId, start, end, defaultInstance));
+    }
+    catch (InvalidProtocolBufferException | SQLException ex) {
+      onError(ex);
+    }
+    return new ArrayList<>();
+  }
+
   /**
    * A helper method for querying samples for MemorySample, AllocStatsSample, GcStatsSample, HeapDumpInfo and AllocationsInfo
    */
@@ -51,6 +51,14 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
                                   NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY.getNumber());
   }
 
+  // Only speed data is sampled, connectivity changes are events that are always kept as they are.
+  private final DownsampledSeries mySpeedSeries = new DownsampledSeries(
+    this, "Network_Data", "EndTime", "Type", "Data",
+    Collections.singletonMap(NetworkProfiler.NetworkDataRequest.Type.SPEED.getNumber(),
+                             DownsampledSeries.SampleType.extremes(NetworkProfiler.NetworkProfilerData.getDefaultInstance(),
+                                                                   data -> data.getSpeedData().getSent() +
+                                                                           data.getSpeedData().getReceived())));
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -64,6 +72,7 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
                   "PRIMARY KEY(Session, Id)");
       createUniqueIndex("Network_Data", "Session", "Type", "EndTime");
       createUniqueIndex("Network_Connection", "Session", "Id");
+      mySpeedSeries.createTables();
     }
     catch (SQLException ex) {
       onError(ex);
@@ -112,18 +121,39 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
   }
 
   public List<NetworkProfiler.NetworkProfilerData> getNetworkDataByRequest(NetworkProfiler.NetworkDataRequest request) {
+    if (request.getType() == NetworkProfiler.NetworkDataRequest.Type.SPEED) {
+      try {
+        return mySpeedSeries.query(request.getSession().getSessionId(), request.getType().getNumber(), request.getStartTimestamp(),
+                                   request.getEndTimestamp(), (start, end) -> queryRawNetworkData(request, start, end));
+      }
+      catch (InvalidProtocolBufferException | SQLException ex) {
+        onError(ex);
+        return new ArrayList<>();
+      }
+    }
+    return queryRawNetworkData(request, request.getStartTimestamp(), request.getEndTimestamp());
+  }
+
+  @NotNull
+  @Override
+  public List<DownsampledSeries> getDownsampledSeries() {
+    return Collections.singletonList(mySpeedSeries);
+  }
+
+  @NotNull
+  private List<NetworkProfiler.NetworkProfilerData> queryRawNetworkData(@NotNull NetworkProfiler.NetworkDataRequest request,
+                                                                        long startTimestamp,
+                                                                        long endTimestamp) {
     List<NetworkProfiler.NetworkProfilerData> datas = new ArrayList<>();
     ResultSet results;
     try {
       if (request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) {
         results =
-          executeQuery(NetworkStatements.QUERY_NETWORK_DATA, request.getSession().getSessionId(), request.getStartTimestamp(),
-                       request.getEndTimestamp());
+          executeQuery(NetworkStatements.QUERY_NETWORK_DATA, request.getSession().getSessionId(), startTimestamp, endTimestamp);
       }
       else {
         results = executeQuery(NetworkStatements.QUERY_NETWORK_DATA_BY_TYPE, request.getSession().getSessionId(),
-                               request.getType().getNumber(),
-                               request.getStartTimestamp(), request.getEndTimestamp());
+                               request.getType().getNumber(), startTimestamp, endTimestamp);
       }
       while (results.next()) {
         NetworkProfiler.NetworkProfilerData.Builder data = NetworkProfiler.NetworkProfilerData.newBuilder();
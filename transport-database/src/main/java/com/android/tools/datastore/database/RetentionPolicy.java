@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of how long time-series samples are kept at full resolution, see {@link DownsampledSeries}.
+ */
+public final class RetentionPolicy {
+  public static final RetentionPolicy DEFAULT = new RetentionPolicy(TimeUnit.MINUTES.toNanos(5),
+                                                                    TimeUnit.SECONDS.toNanos(1),
+                                                                    500_000,
+                                                                    TimeUnit.MINUTES.toNanos(2),
+                                                                    256,
+                                                                    TimeUnit.SECONDS.toMillis(30));
+
+  private final long myRawRetentionNs;
+  private final long myBucketNs;
+  private final long myMaxRawSamples;
+  private final long myZoomedOutRangeNs;
+  private final int myVacuumPagesPerPass;
+  private final long myPeriodMs;
+
+  /**
+   * @param rawRetentionNs      samples older than the latest sample of their series minus this are aggregated.
+   * @param bucketNs            width of an aggregate.
+   * @param maxRawSamples       per series, the number of samples above which samples that have been aggregated are deleted, oldest first.
+   * @param zoomedOutRangeNs    queries spanning at least this range are served from aggregates wherever they exist.
+   * @param vacuumPagesPerPass  maximum number of free database pages returned to the file system per retention pass.
+   * @param periodMs            time between retention passes.
+   */
+  public RetentionPolicy(long rawRetentionNs,
+                         long bucketNs,
+                         long maxRawSamples,
+                         long zoomedOutRangeNs,
+                         int vacuumPagesPerPass,
+                         long periodMs) {
+    assert bucketNs > 0;
+    myRawRetentionNs = rawRetentionNs;
+    myBucketNs = bucketNs;
+    myMaxRawSamples = maxRawSamples;
+    myZoomedOutRangeNs = zoomedOutRangeNs;
+    myVacuumPagesPerPass = vacuumPagesPerPass;
+    myPeriodMs = periodMs;
+  }
+
+  public long getRawRetentionNs() {
+    return myRawRetentionNs;
+  }
+
+  public long getBucketNs() {
+    return myBucketNs;
+  }
+
+  public long getMaxRawSamples() {
+    return myMaxRawSamples;
+  }
+
+  public long getZoomedOutRangeNs() {
+    return myZoomedOutRangeNs;
+  }
+
+  public int getVacuumPagesPerPass() {
+    return myVacuumPagesPerPass;
+  }
+
+  public long getPeriodMs() {
+    return myPeriodMs;
+  }
+}
@@ -15,7 +15,9 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreBlobStore;
 import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
+import com.android.tools.idea.protobuf.UnsafeByteOperations;
 import com.android.tools.profiler.proto.Common.Event;
 import com.android.tools.profiler.proto.Transport.BytesRequest;
 import com.android.tools.profiler.proto.Transport.BytesResponse;
@@ -23,18 +25,51 @@ import com.android.tools.profiler.proto.Transport.EventGroup;
 import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicates;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statements> {
+  /**
+   * Timestamp bounds of the events stored in this table, keyed by {@link Event.Kind#getNumber()}. Loaded from the database when the
+   * table is initialized and widened by every insert going through this class. Used by {@link #planQuery(GetEventGroupsRequest)} to
+   * skip sub-queries that cannot return any rows. Bounds are only ever widened (e.g. deletes do not shrink them), so they are always a
+   * superset of what is actually stored, as long as rows written without going through this class are followed by a call to
+   * {@link #rebuildTimeBounds()}. Rebuilds replace the whole map, so readers never see a partially rebuilt one.
+   */
+  private volatile Map<Integer, KindTimeBounds> myKindTimeBounds = new ConcurrentHashMap<>();
+
+  /**
+   * Map being built by {@link #rebuildTimeBounds()}, if any. Inserts widen it as well, so events inserted while the table is being scanned
+   * are not dropped by the swap. Guarded by {@link #myTimeBoundsLock}, which also orders inserts against the swap.
+   */
+  @Nullable private Map<Integer, KindTimeBounds> myRebuiltKindTimeBounds;
+  private final Object myTimeBoundsLock = new Object();
+
+  /**
+   * If set, the contents of {@link BytesResponse}s are kept in the blob store and the BytesTable only holds a reference to them.
+   */
+  @Nullable private final DataStoreBlobStore myBlobStore;
+
+  public UnifiedEventsTable() {
+    this(null);
+  }
+
+  public UnifiedEventsTable(@Nullable DataStoreBlobStore blobStore) {
+    myBlobStore = blobStore;
+  }
+
   public enum Statements {
     // Since no data should be updated after it has been inserted we drop any duplicated request from the poller.
     INSERT_EVENT(
@@ -45,8 +80,10 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
       "WHERE StreamId = ? AND ProcessId = ? And GroupId = ? And Kind = ? AND Timestamp >= ? AND Timestamp <= ?"),
     // Only used for test.
     QUERY_EVENTS("SELECT Data FROM [UnifiedEventsTable]"),
-    INSERT_BYTES("INSERT OR IGNORE INTO [BytesTable] (StreamId, Id, Data) VALUES (?, ?, ?)"),
-    GET_BYTES("SELECT Data FROM [BytesTable] WHERE StreamId = ? AND Id = ?");
+    QUERY_TIME_BOUNDS("SELECT Kind, GroupId, MIN(Timestamp), MAX(Timestamp) FROM [UnifiedEventsTable] GROUP BY Kind, GroupId"),
+    INSERT_BYTES(
+      "INSERT OR IGNORE INTO [BytesTable] (StreamId, Id, Data, BlobSegment, BlobOffset, BlobLength) VALUES (?, ?, ?, ?, ?, ?)"),
+    GET_BYTES("SELECT Data, BlobSegment, BlobOffset, BlobLength FROM [BytesTable] WHERE StreamId = ? AND Id = ?");
 
     @NotNull private final String mySqlStatement;
 
@@ -85,9 +122,19 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
                   "Timestamp INTEGER NOT NULL", // Optional filter, required for all data.
                   "IsEnded INTEGER NOT NULL", // Optional filter, required for all data.
                   "Data BLOB");
-      createTable("BytesTable", "StreamId INTEGER NOT NULL", "Id STRING NOT NULL", "Data BLOB");
+      // Data holds the serialized BytesResponse. If the contents live in the blob store they are stripped from Data and the Blob*
+      // columns reference their location instead.
+      createTable("BytesTable", "StreamId INTEGER NOT NULL", "Id STRING NOT NULL", "Data BLOB", "BlobSegment INTEGER",
+                  "BlobOffset INTEGER", "BlobLength INTEGER");
       createUniqueIndex("UnifiedEventsTable", "Kind", "StreamId", "ProcessId", "GroupId", "Timestamp", "IsEnded");
+      // The unique index only serves the event group queries up to StreamId when they don't filter on ProcessId (e.g. the device and
+      // process queries). This one lets them seek on GroupId and Timestamp too. It is not covering, since the queries also read Data, but
+      // it narrows the rows looked up to the ones returned. Queries without a StreamId still seek on Kind with it, which isn't worth
+      // maintaining another index on every insert.
+      createIndex("UnifiedEventsTable", 0, "Kind", "StreamId", "GroupId", "Timestamp");
       createUniqueIndex("BytesTable", "StreamId", "Id");
+      // Start from what the database holds rather than from what a previous initialization of this table saw.
+      rebuildTimeBounds();
     }
     catch (SQLException ex) {
       onError(ex);
@@ -95,15 +142,17 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   public void insertUnifiedEvent(long streamId, @NotNull Event event) {
-    execute(Statements.INSERT_EVENT,
-            streamId,
-            event.getPid(),
-            event.getGroupId(),
-            event.getKind().getNumber(),
-            event.getCommandId(),
-            event.getTimestamp(),
-            event.getIsEnded() ? 1 : 0,
-            event.toByteArray());
+    execute(Statements.INSERT_EVENT, getInsertEventParams(streamId, event));
+    updateTimeBounds(event);
+  }
+
+  /**
+   * Inserts all events for a given stream as a single batch. This is considerably cheaper than calling
+   * {@link #insertUnifiedEvent(long, Event)} for each event, see {@link UnifiedEventsWriteBuffer}.
+   */
+  public void insertUnifiedEvents(long streamId, @NotNull List<Event> events) {
+    executeBatch(Statements.INSERT_EVENT, events, event -> getInsertEventParams(streamId, event));
+    events.forEach(this::updateTimeBounds);
   }
 
   public void deleteEvents(long streamId, int pid, long groupId, Event.Kind kind, long fromTimestamp, long toTimestamp) {
@@ -154,6 +203,7 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
    * @param request
    */
   public List<EventGroup> queryUnifiedEventGroups(@NotNull GetEventGroupsRequest request) {
+    QueryPlan plan = planQuery(request);
     ArrayList<Object> baseParams = new ArrayList<>();
     List<Object> beforeRangeParams = null;
     List<Object> afterRangeParams = null;
@@ -188,15 +238,19 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     String sqlAfter = String.format(sql, ", MIN(Timestamp), MIN(ROWID)", filter + " AND Timestamp > ? GROUP BY GroupId");
     ArrayList<Object> inRangeQueryParams = new ArrayList<>(baseParams);
     if (request.getFromTimestamp() > 0) {
-      beforeRangeParams = new ArrayList<>(baseParams);
-      beforeRangeParams.add(request.getFromTimestamp());
+      if (plan.myQueryBeforeRange) {
+        beforeRangeParams = new ArrayList<>(baseParams);
+        beforeRangeParams.add(request.getFromTimestamp());
+      }
       filter.append(" AND Timestamp >= ?");
       inRangeQueryParams.add(request.getFromTimestamp());
     }
 
     if (request.getToTimestamp() > 0 && request.getToTimestamp() != Long.MAX_VALUE) {
-      afterRangeParams = new ArrayList<>(baseParams);
-      afterRangeParams.add(request.getToTimestamp());
+      if (plan.myQueryAfterRange) {
+        afterRangeParams = new ArrayList<>(baseParams);
+        afterRangeParams.add(request.getToTimestamp());
+      }
       filter.append(" AND Timestamp <= ?");
       inRangeQueryParams.add(request.getToTimestamp());
     }
@@ -219,13 +273,15 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
 
     // Query example:
     // SELECT [Data], [GroupId] From [UnifiedEventsTable] WHERE Kind = ? AND Timestamp >= ? AND Timestamp <= ?;
-    String query = String.format(sql, "", filter);
-    gatherEvents(query, inRangeQueryParams, builderGroups, Predicates.alwaysTrue());
+    if (plan.myQueryInRange) {
+      String query = String.format(sql, "", filter);
+      gatherEvents(query, inRangeQueryParams, builderGroups, Predicates.alwaysTrue());
+    }
 
     // Gather after range events if needed.
     // Query after example:
     // SELECT [Data], [GroupId], MIN(Timestamp), MIN(ROWID) From [UnifiedEventsTable] WHERE Kind = ? AND Timestamp > ? GROUP BY GroupId;
-    if (afterRangeParams != null) {
+    if (afterRangeParams != null && !builderGroups.isEmpty()) {
       gatherEvents(sqlAfter, afterRangeParams, builderGroups, resultSet -> {
         try {
           return builderGroups.containsKey(resultSet.getLong("GroupId"));
@@ -241,15 +297,42 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   public void insertBytes(long streamId, @NotNull String id, @NotNull BytesResponse response) {
-    execute(Statements.INSERT_BYTES, streamId, id, response.toByteArray());
+    DataStoreBlobStore.BlobRef ref = myBlobStore != null && !isClosed() ? myBlobStore.put(response.getContents()) : null;
+    if (ref == null) {
+      execute(Statements.INSERT_BYTES, streamId, id, response.toByteArray(), null, null, null);
+    }
+    else {
+      execute(Statements.INSERT_BYTES, streamId, id, response.toBuilder().clearContents().build().toByteArray(), ref.getSegment(),
+              ref.getOffset(), ref.getLength());
+    }
   }
 
+  /**
+   * Returns the stored {@link BytesResponse} for the request. If its contents live in the blob store, they wrap a read-only mapping of the
+   * payload, so the response's contents can be read in ranges (e.g. via {@link com.android.tools.idea.protobuf.ByteString#newInput()})
+   * and are only paged in as they're read, instead of being copied onto the heap. Payloads of 2GB or more can't be held by a
+   * {@link com.android.tools.idea.protobuf.ByteString}, so their response is returned without contents; they can only be read through
+   * {@link #openBytesStream}.
+   *
+   * @return the response, or null if nothing is stored for the request or its contents could not be read.
+   */
   @Nullable
   public BytesResponse getBytes(@NotNull BytesRequest request) {
     try {
       ResultSet results = executeQuery(Statements.GET_BYTES, request.getStreamId(), request.getId());
       if (results.next()) {
-        return BytesResponse.parseFrom(results.getBytes(1));
+        BytesResponse response = BytesResponse.parseFrom(results.getBytes(1));
+        long blobLength = results.getLong(4);
+        if (results.wasNull() || blobLength > Integer.MAX_VALUE) {
+          return response;
+        }
+        ByteBuffer contents = myBlobStore == null
+                              ? null
+                              : myBlobStore.read(new DataStoreBlobStore.BlobRef(results.getInt(2), results.getLong(3), blobLength));
+        if (contents == null) {
+          return null;
+        }
+        return response.toBuilder().setContents(UnsafeByteOperations.unsafeWrap(contents)).build();
       }
     }
     catch (InvalidProtocolBufferException | SQLException ex) {
@@ -259,6 +342,142 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     return null;
   }
 
+  /**
+   * Opens the contents of the stored {@link BytesResponse} for the request as a stream. Contents kept in the blob store are read from it
+   * on demand, so payloads of any size can be read.
+   *
+   * @return the stream, or null if nothing is stored for the request or its contents could not be read.
+   */
+  @Nullable
+  public InputStream openBytesStream(@NotNull BytesRequest request) {
+    try {
+      ResultSet results = executeQuery(Statements.GET_BYTES, request.getStreamId(), request.getId());
+      if (results.next()) {
+        byte[] data = results.getBytes(1);
+        long blobLength = results.getLong(4);
+        if (results.wasNull()) {
+          return BytesResponse.parseFrom(data).getContents().newInput();
+        }
+        return myBlobStore == null
+               ? null
+               : myBlobStore.openStream(new DataStoreBlobStore.BlobRef(results.getInt(2), results.getLong(3), blobLength), 0, blobLength);
+      }
+    }
+    catch (InvalidProtocolBufferException | SQLException ex) {
+      onError(ex);
+    }
+
+    return null;
+  }
+
+  /**
+   * Determines which of the before-range, in-range and after-range sub-queries of {@link #queryUnifiedEventGroups} can return
+   * data, based on the timestamp bounds of the events stored for the requested kind (and group, if specified).
+   * If nothing is known about the requested kind or group all sub-queries are run, so rows the bounds do not account for are never
+   * pruned.
+   */
+  @NotNull
+  @VisibleForTesting
+  QueryPlan planQuery(@NotNull GetEventGroupsRequest request) {
+    KindTimeBounds kindBounds = myKindTimeBounds.get(request.getKind().getNumber());
+    if (kindBounds == null) {
+      return QueryPlan.FULL;
+    }
+
+    long minTimestamp;
+    long maxTimestamp;
+    synchronized (kindBounds) {
+      if (request.getGroupId() != 0) {
+        long[] groupBounds = kindBounds.myGroupBounds.get(request.getGroupId());
+        if (groupBounds == null) {
+          return QueryPlan.FULL;
+        }
+        minTimestamp = groupBounds[0];
+        maxTimestamp = groupBounds[1];
+      }
+      else {
+        minTimestamp = kindBounds.myMinTimestamp;
+        maxTimestamp = kindBounds.myMaxTimestamp;
+      }
+    }
+
+    long from = request.getFromTimestamp() > 0 ? request.getFromTimestamp() : Long.MIN_VALUE;
+    long to = request.getToTimestamp() > 0 ? request.getToTimestamp() : Long.MAX_VALUE;
+    return new QueryPlan(from > minTimestamp, from <= maxTimestamp && to >= minTimestamp, to < maxTimestamp);
+  }
+
+  /**
+   * Recomputes the timestamp bounds used by {@link #planQuery(GetEventGroupsRequest)} from the table's contents. Needed after rows were
+   * inserted without going through this class, e.g. when a session archive was imported (see
+   * {@link com.android.tools.datastore.DataStoreArchive}).
+   */
+  public void rebuildTimeBounds() {
+    Map<Integer, KindTimeBounds> bounds = new ConcurrentHashMap<>();
+    synchronized (myTimeBoundsLock) {
+      myRebuiltKindTimeBounds = bounds;
+    }
+    boolean isComplete = false;
+    try {
+      ResultSet results = executeQuery(Statements.QUERY_TIME_BOUNDS);
+      while (results.next()) {
+        widenTimeBounds(bounds, results.getInt(1), results.getLong(2), results.getLong(3), results.getLong(4));
+      }
+      isComplete = true;
+    }
+    catch (SQLException ex) {
+      onError(ex);
+    }
+    finally {
+      synchronized (myTimeBoundsLock) {
+        myRebuiltKindTimeBounds = null;
+        if (isComplete && !isClosed()) {
+          myKindTimeBounds = bounds;
+        }
+      }
+    }
+  }
+
+  private void updateTimeBounds(@NotNull Event event) {
+    if (isClosed()) {
+      return;
+    }
+    int kind = event.getKind().getNumber();
+    long timestamp = event.getTimestamp();
+    synchronized (myTimeBoundsLock) {
+      widenTimeBounds(myKindTimeBounds, kind, event.getGroupId(), timestamp, timestamp);
+      if (myRebuiltKindTimeBounds != null) {
+        widenTimeBounds(myRebuiltKindTimeBounds, kind, event.getGroupId(), timestamp, timestamp);
+      }
+    }
+  }
+
+  private static void widenTimeBounds(@NotNull Map<Integer, KindTimeBounds> bounds,
+                                      int kind,
+                                      long groupId,
+                                      long minTimestamp,
+                                      long maxTimestamp) {
+    KindTimeBounds kindBounds = bounds.computeIfAbsent(kind, k -> new KindTimeBounds());
+    synchronized (kindBounds) {
+      kindBounds.myMinTimestamp = Math.min(kindBounds.myMinTimestamp, minTimestamp);
+      kindBounds.myMaxTimestamp = Math.max(kindBounds.myMaxTimestamp, maxTimestamp);
+      long[] groupBounds = kindBounds.myGroupBounds.computeIfAbsent(groupId, id -> new long[]{minTimestamp, maxTimestamp});
+      groupBounds[0] = Math.min(groupBounds[0], minTimestamp);
+      groupBounds[1] = Math.max(groupBounds[1], maxTimestamp);
+    }
+  }
+
+  @NotNull
+  private static Object[] getInsertEventParams(long streamId, @NotNull Event event) {
+    return new Object[]{streamId,
+      event.getPid(),
+      event.getGroupId(),
+      event.getKind().getNumber(),
+      event.getCommandId(),
+      event.getTimestamp(),
+      event.getIsEnded() ? 1 : 0,
+      event.toByteArray()};
+  }
+
   /**
    * Executes the sql statement and passes each event through the filter. If the filter returns true, the event is added
    * to the hashmap. Otherwise it is ignored.
@@ -288,6 +507,30 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     }
   }
 
+  @VisibleForTesting
+  static final class QueryPlan {
+    static final QueryPlan FULL = new QueryPlan(true, true, true);
+
+    final boolean myQueryBeforeRange;
+    final boolean myQueryInRange;
+    final boolean myQueryAfterRange;
+
+    QueryPlan(boolean queryBeforeRange, boolean queryInRange, boolean queryAfterRange) {
+      myQueryBeforeRange = queryBeforeRange;
+      myQueryInRange = queryInRange;
+      myQueryAfterRange = queryAfterRange;
+    }
+  }
+
+  /**
+   * Min/max timestamps of a single {@link Event.Kind}, overall and per group id. Guarded by its own monitor.
+   */
+  private static final class KindTimeBounds {
+    private long myMinTimestamp = Long.MAX_VALUE;
+    private long myMaxTimestamp = Long.MIN_VALUE;
+    private final Map<Long, long[]> myGroupBounds = new HashMap<>();
+  }
+
   private List<Event> queryUnifiedEvents(Statements stmt, Object... args) {
     List<Event> records = new ArrayList<>();
     try {
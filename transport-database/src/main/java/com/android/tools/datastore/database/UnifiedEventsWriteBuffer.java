@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.Common.Event;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Buffers events headed for the {@link UnifiedEventsTable} and writes them per stream as batches via
+ * {@link UnifiedEventsTable#insertUnifiedEvents(long, List)}. A stream's buffer is written once it reaches
+ * {@link #getMaxBatchSize()} events, or once the oldest buffered event is older than {@link #getMaxFlushDelayNs()}. The delay is
+ * checked when an event is added and by {@link #flushExpired()}, which the owner is expected to call periodically so the last events of
+ * a stream that went quiet are not held back.
+ * <p>
+ * Readers that need to observe all previously inserted events (e.g. queries coming through the TransportService)
+ * should call {@link #flush()} before querying the table.
+ * <p>
+ * The buffer keeps metrics on the batches it writes (count, size and how long the table took to write them), which are exposed through
+ * {@code TransportService#getWriteBuffer()}.
+ */
+public class UnifiedEventsWriteBuffer {
+  /**
+   * Notified of every event as soon as it is accepted by the buffer, i.e. potentially before it is written to the table.
+   */
+  public interface EventInsertListener {
+    void onEventInserted(long streamId, @NotNull Event event);
+  }
+
+  public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+  public static final long DEFAULT_MAX_FLUSH_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @NotNull private final UnifiedEventsTable myTable;
+  private final int myMaxBatchSize;
+  private final long myMaxFlushDelayNs;
+  @NotNull private final LongSupplier myNanoTimeSupplier;
+
+  /**
+   * Pending events, keyed by stream id. All access is guarded by this object's monitor.
+   */
+  private final Map<Long, StreamBuffer> myStreamBuffers = new HashMap<>();
+
+  private final List<EventInsertListener> myListeners = new CopyOnWriteArrayList<>();
+
+  // Flush metrics, guarded by this object's monitor.
+  private long myFlushCount;
+  private long myFlushedEventCount;
+  private int myMaxFlushedBatchSize;
+  private long myTotalFlushLatencyNs;
+  private long myLastFlushLatencyNs;
+  private long myMaxFlushLatencyNs;
+
+  public UnifiedEventsWriteBuffer(@NotNull UnifiedEventsTable table) {
+    this(table, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_FLUSH_DELAY_NS, System::nanoTime);
+  }
+
+  @VisibleForTesting
+  public UnifiedEventsWriteBuffer(@NotNull UnifiedEventsTable table,
+                                  int maxBatchSize,
+                                  long maxFlushDelayNs,
+                                  @NotNull LongSupplier nanoTimeSupplier) {
+    assert maxBatchSize > 0;
+    myTable = table;
+    myMaxBatchSize = maxBatchSize;
+    myMaxFlushDelayNs = maxFlushDelayNs;
+    myNanoTimeSupplier = nanoTimeSupplier;
+  }
+
+  @NotNull
+  public UnifiedEventsTable getTable() {
+    return myTable;
+  }
+
+  public int getMaxBatchSize() {
+    return myMaxBatchSize;
+  }
+
+  public long getMaxFlushDelayNs() {
+    return myMaxFlushDelayNs;
+  }
+
+  public void addEventInsertListener(@NotNull EventInsertListener listener) {
+    myListeners.add(listener);
+  }
+
+  public void removeEventInsertListener(@NotNull EventInsertListener listener) {
+    myListeners.remove(listener);
+  }
+
+  /**
+   * Queues an event for insertion, writing the stream's pending batch if either the size or time limit is reached.
+   */
+  public void insertUnifiedEvent(long streamId, @NotNull Event event) {
+    bufferEvent(streamId, event);
+    // Listeners are called outside of the lock, so slow listeners don't hold up other streams.
+    for (EventInsertListener listener : myListeners) {
+      listener.onEventInserted(streamId, event);
+    }
+  }
+
+  private synchronized void bufferEvent(long streamId, @NotNull Event event) {
+    long now = myNanoTimeSupplier.getAsLong();
+    StreamBuffer buffer = myStreamBuffers.computeIfAbsent(streamId, id -> new StreamBuffer());
+    if (buffer.myEvents.isEmpty()) {
+      buffer.myFirstEventNs = now;
+    }
+    buffer.myEvents.add(event);
+    if (buffer.myEvents.size() >= myMaxBatchSize || now - buffer.myFirstEventNs >= myMaxFlushDelayNs) {
+      flushStream(streamId, buffer);
+    }
+  }
+
+  /**
+   * Writes all pending events of the given stream to the table.
+   */
+  public synchronized void flush(long streamId) {
+    StreamBuffer buffer = myStreamBuffers.get(streamId);
+    if (buffer != null) {
+      flushStream(streamId, buffer);
+    }
+  }
+
+  /**
+   * Writes all pending events of all streams to the table.
+   */
+  public synchronized void flush() {
+    myStreamBuffers.forEach(this::flushStream);
+  }
+
+  /**
+   * Writes the pending events of the streams whose oldest buffered event is older than {@link #getMaxFlushDelayNs()}.
+   */
+  public synchronized void flushExpired() {
+    long now = myNanoTimeSupplier.getAsLong();
+    myStreamBuffers.forEach((streamId, buffer) -> {
+      if (!buffer.myEvents.isEmpty() && now - buffer.myFirstEventNs >= myMaxFlushDelayNs) {
+        flushStream(streamId, buffer);
+      }
+    });
+  }
+
+  public synchronized int getPendingEventCount() {
+    return myStreamBuffers.values().stream().mapToInt(buffer -> buffer.myEvents.size()).sum();
+  }
+
+  /**
+   * @return the number of batches written to the table.
+   */
+  public synchronized long getFlushCount() {
+    return myFlushCount;
+  }
+
+  public synchronized long getFlushedEventCount() {
+    return myFlushedEventCount;
+  }
+
+  /**
+   * @return the average number of events per batch written, or 0 if nothing was written yet.
+   */
+  public synchronized double getAverageBatchSize() {
+    return myFlushCount == 0 ? 0 : (double)myFlushedEventCount / myFlushCount;
+  }
+
+  public synchronized int getMaxFlushedBatchSize() {
+    return myMaxFlushedBatchSize;
+  }
+
+  /**
+   * @return how long writing the last batch to the table took.
+   */
+  public synchronized long getLastFlushLatencyNs() {
+    return myLastFlushLatencyNs;
+  }
+
+  public synchronized long getMaxFlushLatencyNs() {
+    return myMaxFlushLatencyNs;
+  }
+
+  public synchronized long getAverageFlushLatencyNs() {
+    return myFlushCount == 0 ? 0 : myTotalFlushLatencyNs / myFlushCount;
+  }
+
+  private void flushStream(long streamId, @NotNull StreamBuffer buffer) {
+    if (buffer.myEvents.isEmpty()) {
+      return;
+    }
+    long startNs = System.nanoTime();
+    myTable.insertUnifiedEvents(streamId, buffer.myEvents);
+    long latencyNs = System.nanoTime() - startNs;
+
+    myFlushCount++;
+    myFlushedEventCount += buffer.myEvents.size();
+    myMaxFlushedBatchSize = Math.max(myMaxFlushedBatchSize, buffer.myEvents.size());
+    myTotalFlushLatencyNs += latencyNs;
+    myLastFlushLatencyNs = latencyNs;
+    myMaxFlushLatencyNs = Math.max(myMaxFlushLatencyNs, latencyNs);
+    buffer.myEvents.clear();
+  }
+
+  private static class StreamBuffer {
+    private final List<Event> myEvents = new ArrayList<>();
+    private long myFirstEventNs;
+  }
+}
@@ -72,6 +72,7 @@ public class CpuDataPoller extends PollRunner {
     CpuProfiler.CpuDataRequest.Builder request = CpuProfiler.CpuDataRequest
       .newBuilder().setSession(mySession).setStartTimestamp(getDataStartNs).setEndTimestamp(Long.MAX_VALUE);
     CpuProfiler.CpuDataResponse response = myPollingService.getData(request.build());
+    reportPolledData(response.getDataCount());
     for (Cpu.CpuUsageData data : response.getDataList()) {
       getDataStartNs = Math.max(getDataStartNs, data.getEndTimestamp());
       myCpuTable.insert(mySession, data);
@@ -100,12 +101,14 @@ public class CpuDataPoller extends PollRunner {
       }
 
       myCpuTable.insertActivities(mySession, thread.getTid(), thread.getName(), activities);
+      reportPolledData(count);
     }
 
     // Poll trace info.
     CpuProfiler.GetTraceInfoRequest.Builder traceInfoRequest = CpuProfiler.GetTraceInfoRequest
       .newBuilder().setSession(mySession).setFromTimestamp(myTraceInfoRequestStartTimestampNs).setToTimestamp(Long.MAX_VALUE);
     CpuProfiler.GetTraceInfoResponse traceInfoResponse = myPollingService.getTraceInfo(traceInfoRequest.build());
+    reportPolledData(traceInfoResponse.getTraceInfoCount());
     for (Cpu.CpuTraceInfo traceInfo : traceInfoResponse.getTraceInfoList()) {
       myCpuTable.insertTraceInfo(mySession, traceInfo);
       myTraceInfoRequestStartTimestampNs =
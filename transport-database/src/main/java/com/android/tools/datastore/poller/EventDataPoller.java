@@ -50,6 +50,7 @@ public class EventDataPoller extends PollRunner {
                                                                   .setEndTimestamp(Long.MAX_VALUE);
     // Query for and cache activity data that has changed since our last polling.
     ActivityDataResponse activityResponse = myEventPollingService.getActivityData(dataRequestBuilder.build());
+    reportPolledData(activityResponse.getDataCount());
     for (ActivityData data : activityResponse.getDataList()) {
       long id = data.getHash();
       ActivityData cached_data = myEventsTable.findActivityDataOrNull(mySession, id);
@@ -79,6 +80,7 @@ public class EventDataPoller extends PollRunner {
     // Poll for system event data. If we have a duplicate event then we replace it with the incomming one.
     // we replace the event as the event information may have changed, eg now it has an uptime where previously it didn't
     SystemDataResponse systemResponse = myEventPollingService.getSystemData(dataRequestBuilder.build());
+    reportPolledData(systemResponse.getDataCount());
     for (SystemData data : systemResponse.getDataList()) {
       long id = data.getEventId();
       myEventsTable.insertOrReplace(id, mySession, data);
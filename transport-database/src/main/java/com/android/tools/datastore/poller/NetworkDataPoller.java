@@ -47,6 +47,7 @@ public class NetworkDataPoller extends PollRunner {
       .newBuilder().setSession(mySession).setStartTimestamp(myDataRequestStartTimestampNs).setEndTimestamp(Long.MAX_VALUE)
       .setType(NetworkDataRequest.Type.ALL);
     NetworkDataResponse response = myPollingService.getData(dataRequestBuilder.build());
+    reportPolledData(response.getDataCount());
 
     for (NetworkProfilerData data : response.getDataList()) {
       myDataRequestStartTimestampNs = Math.max(myDataRequestStartTimestampNs, data.getEndTimestamp());
@@ -59,6 +60,7 @@ public class NetworkDataPoller extends PollRunner {
     HttpRangeRequest.Builder requestBuilder = HttpRangeRequest
       .newBuilder().setSession(mySession).setStartTimestamp(myHttpRangeRequestStartTimeNs).setEndTimestamp(Long.MAX_VALUE);
     HttpRangeResponse httpRange = myPollingService.getHttpRange(requestBuilder.build());
+    reportPolledData(httpRange.getDataCount());
 
     for (HttpConnectionData connection : httpRange.getDataList()) {
       myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, connection.getStartTimestamp() + 1);
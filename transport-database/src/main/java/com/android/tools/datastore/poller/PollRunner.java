@@ -24,12 +24,52 @@ import java.util.concurrent.TimeUnit;
 /**
  * A {@link RunnableFuture} which, while running, triggers a callback at a specified period
  * (which can be used to poll a target service at some frequency).
+ * <p>
+ * Subclasses that report how much data each poll returned via {@link #reportPolledData(int)} get an adaptive period: idle pollers
+ * back off up to {@link #MAX_BACKOFF_FACTOR} times the base period, and return to the base period as soon as data shows up again.
+ * Busy pollers, whose polls return much more data than their recent average, speed up to as little as 1/{@link #MAX_SPEEDUP_FACTOR}
+ * of the base period, stay there while the data keeps coming, and relax back to the base period once it drops below the average.
+ * A runner can either be run on its own thread via {@link #run()}, or be driven by a shared {@link PollScheduler}.
  */
 public abstract class PollRunner implements RunnableFuture<Void> {
 
   public static final long POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
 
-  private long myPollPeriodNs;
+  static final int MAX_BACKOFF_FACTOR = 8;
+
+  static final int MAX_SPEEDUP_FACTOR = 4;
+
+  /**
+   * A poll is considered a burst if it returns more than this many times the recent average amount of data.
+   */
+  private static final int BURST_FACTOR = 2;
+
+  /**
+   * Weight of the latest poll in the moving average of the amount of data per poll.
+   */
+  private static final double AVERAGE_WEIGHT = 0.25;
+
+  private final long myBasePollPeriodNs;
+
+  private volatile long myPollPeriodNs;
+
+  /**
+   * Amount of data reported by the current poll, or -1 if the subclass does not report data volume.
+   */
+  private int myPolledDataCount = -1;
+
+  /**
+   * Exponential moving average of the amount of data per poll, or -1 before the first reported poll.
+   */
+  private double myAveragePolledDataCount = -1;
+
+  // Metrics, written by the polling thread only.
+  private volatile long myPollCount;
+  private volatile long myTotalPolledDataCount;
+  private volatile long myLastLagNs;
+  private volatile long myMaxLagNs;
+  private volatile long myFirstPollTimeNs;
+  private volatile long myLastPollTimeNs;
 
   private boolean myIsRunning = false;
 
@@ -39,6 +79,7 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
 
   public PollRunner(long pollPeriodNs) {
+    myBasePollPeriodNs = pollPeriodNs;
     myPollPeriodNs = pollPeriodNs;
   }
 
@@ -55,11 +96,11 @@ public abstract class PollRunner implements RunnableFuture<Void> {
   @Override
   public void run() {
     try {
-      myIsRunning = true;
+      markRunning();
+      long scheduledTimeNs = System.nanoTime();
       while (myRunning.getCount() > 0) {
-        long startTimeNs = System.nanoTime();
-        poll();
-        long sleepTime = Math.max(myPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
+        long sleepTime = pollOnce(scheduledTimeNs);
+        scheduledTimeNs = System.nanoTime() + sleepTime;
         myRunning.await(sleepTime, TimeUnit.NANOSECONDS);
       }
     }
@@ -67,13 +108,107 @@ public abstract class PollRunner implements RunnableFuture<Void> {
       Thread.currentThread().interrupt();
     }
     finally {
-      myIsRunning = false;
-      myIsDone.countDown();
+      markDone();
     }
   }
 
   public abstract void poll();
 
+  /**
+   * Called by subclasses from {@link #poll()} to report how many items (samples, events, ...) were received. Can be called multiple
+   * times per poll, the counts are added up.
+   */
+  protected void reportPolledData(int count) {
+    myPolledDataCount = Math.max(myPolledDataCount, 0) + count;
+  }
+
+  /**
+   * Performs a single poll and adapts the poll period to the amount of data that was reported.
+   *
+   * @param scheduledTimeNs when the poll was supposed to run, used to compute the lag.
+   * @return how long to wait before the next poll.
+   */
+  long pollOnce(long scheduledTimeNs) {
+    long startTimeNs = System.nanoTime();
+    long lagNs = Math.max(startTimeNs - scheduledTimeNs, 0L);
+    myLastLagNs = lagNs;
+    myMaxLagNs = Math.max(myMaxLagNs, lagNs);
+    if (myFirstPollTimeNs == 0) {
+      myFirstPollTimeNs = startTimeNs;
+    }
+
+    myPolledDataCount = -1;
+    poll();
+    myPollCount++;
+    if (myPolledDataCount >= 0) {
+      myTotalPolledDataCount += myPolledDataCount;
+      myPollPeriodNs = adaptPeriod(myPolledDataCount);
+      myAveragePolledDataCount = myAveragePolledDataCount < 0
+                                 ? myPolledDataCount
+                                 : myAveragePolledDataCount + AVERAGE_WEIGHT * (myPolledDataCount - myAveragePolledDataCount);
+    }
+
+    long endTimeNs = System.nanoTime();
+    myLastPollTimeNs = endTimeNs;
+    return Math.max(myPollPeriodNs - (endTimeNs - startTimeNs), 0L);
+  }
+
+  private long adaptPeriod(int polledDataCount) {
+    if (polledDataCount == 0) {
+      return Math.min(myPollPeriodNs * 2, myBasePollPeriodNs * MAX_BACKOFF_FACTOR);
+    }
+    if (myPollPeriodNs >= myBasePollPeriodNs) {
+      // Leave any back off as soon as data shows up again, and only speed up once there is an average to compare with.
+      return myAveragePolledDataCount > 0 && polledDataCount > myAveragePolledDataCount * BURST_FACTOR
+             ? myBasePollPeriodNs / 2
+             : myBasePollPeriodNs;
+    }
+    if (polledDataCount > myAveragePolledDataCount * BURST_FACTOR) {
+      return Math.max(myPollPeriodNs / 2, myBasePollPeriodNs / MAX_SPEEDUP_FACTOR);
+    }
+    // Stay fast while the data keeps up with the average, and slow down gradually once it drops below it.
+    return polledDataCount >= myAveragePolledDataCount ? myPollPeriodNs : Math.min(myPollPeriodNs * 2, myBasePollPeriodNs);
+  }
+
+  void markRunning() {
+    myIsRunning = true;
+  }
+
+  void markDone() {
+    myIsRunning = false;
+    myIsDone.countDown();
+  }
+
+  /**
+   * @return the period currently used between polls, which differs from the base period if the poller backed off or sped up.
+   */
+  public long getPollPeriodNs() {
+    return myPollPeriodNs;
+  }
+
+  public long getPollCount() {
+    return myPollCount;
+  }
+
+  /**
+   * @return how late the last poll started compared to when it was scheduled.
+   */
+  public long getLastLagNs() {
+    return myLastLagNs;
+  }
+
+  public long getMaxLagNs() {
+    return myMaxLagNs;
+  }
+
+  /**
+   * @return the average number of reported items per second since the first poll, or 0 if the subclass does not report data volume.
+   */
+  public double getThroughputPerSecond() {
+    long elapsedNs = myLastPollTimeNs - myFirstPollTimeNs;
+    return elapsedNs <= 0 ? 0 : myTotalPolledDataCount * (double)TimeUnit.SECONDS.toNanos(1) / elapsedNs;
+  }
+
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     myRunning.countDown();
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.tools.datastore.LogService;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.StatusRuntimeException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Drives all {@link PollRunner}s handed to it from a small shared thread pool, instead of keeping one thread per poller alive.
+ * Wakeups are coalesced: the scheduler ticks at a fixed granularity and every poller that is due at that tick is polled, so pollers
+ * with similar periods share a wakeup. Each poller's period adapts to the data it returns (see {@link PollRunner#reportPolledData(int)}).
+ * If a {@link LogService} is given, the period, lag and throughput of every poller are logged at debug level every
+ * {@link #METRICS_REPORT_PERIOD_NS}.
+ * <p>
+ * This class can be used directly as the fetch executor of the datastore. Runnables that are not {@link PollRunner}s (e.g. the
+ * streaming {@link UnifiedEventsDataPoller}, which blocks for the lifetime of its stream) are forwarded to the fallback executor.
+ */
+public class PollScheduler implements Consumer<Runnable> {
+  public static final long DEFAULT_TICK_NS = TimeUnit.MILLISECONDS.toNanos(50);
+  public static final long METRICS_REPORT_PERIOD_NS = TimeUnit.MINUTES.toNanos(1);
+
+  @NotNull private final Consumer<Runnable> myFallbackExecutor;
+  @NotNull private final ScheduledExecutorService myTicker;
+  @NotNull private final ExecutorService myWorkers;
+  @Nullable private final LogService.Logger myMetricsLogger;
+  private final List<ScheduledPoller> myPollers = new ArrayList<>();
+
+  public PollScheduler(@NotNull Consumer<Runnable> fallbackExecutor) {
+    this(fallbackExecutor, null);
+  }
+
+  public PollScheduler(@NotNull Consumer<Runnable> fallbackExecutor, @Nullable LogService logService) {
+    this(fallbackExecutor, logService, Math.min(4, Runtime.getRuntime().availableProcessors()), DEFAULT_TICK_NS);
+  }
+
+  public PollScheduler(@NotNull Consumer<Runnable> fallbackExecutor, @Nullable LogService logService, int workerCount, long tickNs) {
+    myFallbackExecutor = fallbackExecutor;
+    myMetricsLogger = logService == null ? null : logService.getLogger(PollScheduler.class);
+    myTicker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("DataStorePollTicker").build());
+    myWorkers = Executors.newFixedThreadPool(workerCount, new ThreadFactoryBuilder().setNameFormat("DataStorePoller-%d").build());
+    myTicker.scheduleAtFixedRate(this::tick, tickNs, tickNs, TimeUnit.NANOSECONDS);
+    if (myMetricsLogger != null) {
+      myTicker.scheduleAtFixedRate(this::reportMetrics, METRICS_REPORT_PERIOD_NS, METRICS_REPORT_PERIOD_NS, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void accept(@NotNull Runnable runnable) {
+    if (!(runnable instanceof PollRunner)) {
+      myFallbackExecutor.accept(runnable);
+      return;
+    }
+
+    PollRunner runner = (PollRunner)runnable;
+    runner.markRunning();
+    synchronized (myPollers) {
+      myPollers.add(new ScheduledPoller(runner, System.nanoTime()));
+    }
+  }
+
+  /**
+   * Stops polling. Runners that are still registered are marked as done, so anyone blocked in {@link PollRunner#stop()} is released.
+   */
+  public void shutdown() {
+    myTicker.shutdownNow();
+    myWorkers.shutdown();
+    synchronized (myPollers) {
+      myPollers.forEach(poller -> poller.myRunner.markDone());
+      myPollers.clear();
+    }
+  }
+
+  @VisibleForTesting
+  int getPollerCount() {
+    synchronized (myPollers) {
+      return myPollers.size();
+    }
+  }
+
+  @VisibleForTesting
+  void tick() {
+    long now = System.nanoTime();
+    synchronized (myPollers) {
+      Iterator<ScheduledPoller> it = myPollers.iterator();
+      while (it.hasNext()) {
+        ScheduledPoller poller = it.next();
+        if (poller.myIsPolling) {
+          continue;
+        }
+        if (poller.myRunner.isCancelled()) {
+          it.remove();
+          poller.myRunner.markDone();
+          continue;
+        }
+        if (poller.myNextPollNs <= now) {
+          poller.myIsPolling = true;
+          myWorkers.execute(() -> poll(poller));
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  void reportMetrics() {
+    if (myMetricsLogger == null) {
+      return;
+    }
+    List<PollRunner> runners = new ArrayList<>();
+    synchronized (myPollers) {
+      myPollers.forEach(poller -> runners.add(poller.myRunner));
+    }
+    for (PollRunner runner : runners) {
+      myMetricsLogger.debug(String.format("%s: period=%dms, polls=%d, lag=%dms (max %dms), throughput=%.1f/s",
+                                          runner.getClass().getSimpleName(),
+                                          TimeUnit.NANOSECONDS.toMillis(runner.getPollPeriodNs()),
+                                          runner.getPollCount(),
+                                          TimeUnit.NANOSECONDS.toMillis(runner.getLastLagNs()),
+                                          TimeUnit.NANOSECONDS.toMillis(runner.getMaxLagNs()),
+                                          runner.getThroughputPerSecond()));
+    }
+  }
+
+  private void poll(@NotNull ScheduledPoller poller) {
+    long delayNs = 0;
+    boolean polled = false;
+    try {
+      delayNs = poller.myRunner.pollOnce(poller.myNextPollNs);
+      polled = true;
+    }
+    catch (StatusRuntimeException ignored) {
+      // Same as PollRunner#run: the connection went away, stop polling.
+    }
+    finally {
+      // Any other exception is left to the worker's uncaught exception handler, but the runner is still cancelled so the next tick
+      // finishes it and PollRunner#stop does not block forever.
+      if (!polled) {
+        poller.myRunner.cancel(true);
+      }
+      synchronized (myPollers) {
+        poller.myNextPollNs = System.nanoTime() + delayNs;
+        poller.myIsPolling = false;
+      }
+    }
+  }
+
+  private static final class ScheduledPoller {
+    @NotNull private final PollRunner myRunner;
+    // Guarded by myPollers.
+    private long myNextPollNs;
+    private boolean myIsPolling;
+
+    private ScheduledPoller(@NotNull PollRunner runner, long nextPollNs) {
+      myRunner = runner;
+      myNextPollNs = nextPollNs;
+    }
+  }
+}
@@ -17,7 +17,7 @@ package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.database.DataStoreTable;
-import com.android.tools.datastore.database.UnifiedEventsTable;
+import com.android.tools.datastore.database.UnifiedEventsWriteBuffer;
 import com.android.tools.profiler.proto.Common.Event;
 import com.android.tools.profiler.proto.Transport.GetEventsRequest;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
@@ -33,20 +33,20 @@ import org.jetbrains.annotations.NotNull;
  */
 public class UnifiedEventsDataPoller implements Runnable, DataStoreTable.DataStoreTableErrorCallback {
   private final long myStreamId;
-  @NotNull private final UnifiedEventsTable myTable;
+  @NotNull private final UnifiedEventsWriteBuffer myWriteBuffer;
   @NotNull private final TransportServiceGrpc.TransportServiceBlockingStub myEventPollingService;
   @NotNull private final DataStoreService myDataStoreService;
   @NotNull private final CountDownLatch myRunningLatch;
   @NotNull private final AtomicBoolean myIsRunning = new AtomicBoolean(false);
 
   public UnifiedEventsDataPoller(long streamId,
-                                 @NotNull UnifiedEventsTable unifiedEventsTable,
+                                 @NotNull UnifiedEventsWriteBuffer writeBuffer,
                                  @NotNull TransportServiceGrpc.TransportServiceBlockingStub pollingService,
                                  @NotNull DataStoreService dataStoreService) {
     myEventPollingService = pollingService;
     myDataStoreService = dataStoreService;
     myStreamId = streamId;
-    myTable = unifiedEventsTable;
+    myWriteBuffer = writeBuffer;
     myRunningLatch = new CountDownLatch(1);
   }
 
@@ -75,13 +75,15 @@ public class UnifiedEventsDataPoller implements Runnable, DataStoreTable.DataSto
       while (events.hasNext()) {
         Event event = events.next();
         if (event != null) {
-          myTable.insertUnifiedEvent(myStreamId, event);
+          myWriteBuffer.insertUnifiedEvent(myStreamId, event);
         }
       }
     }
     catch (StatusRuntimeException exception) {
       // device disconnect logic handle via TransportDeviceManager
     }
+    // Make sure events still sitting in the buffer are written out before we signal that we are done.
+    myWriteBuffer.flush(myStreamId);
     // Signal end of run.
     myRunningLatch.countDown();
   }
@@ -19,6 +19,7 @@ import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.LogService;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.CpuTable;
+import com.android.tools.datastore.database.DownsampledSeries;
 import com.android.tools.datastore.poller.CpuDataPoller;
 import com.android.tools.datastore.poller.PollRunner;
 import com.android.tools.profiler.proto.Cpu;
@@ -222,6 +223,12 @@ public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements Ser
     return Collections.singletonList(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE);
   }
 
+  @NotNull
+  @Override
+  public List<DownsampledSeries> getDownsampledSeries() {
+    return myCpuTable.getDownsampledSeries();
+  }
+
   @Override
   public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
@@ -21,6 +21,7 @@ import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.DataStoreService.BackingNamespace;
 import com.android.tools.datastore.LogService;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.database.DownsampledSeries;
 import com.android.tools.datastore.database.MemoryLiveAllocationTable;
 import com.android.tools.datastore.database.MemoryStatsTable;
 import com.android.tools.datastore.database.UnifiedEventsTable;
@@ -279,6 +280,12 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     return Arrays.asList(BackingNamespace.DEFAULT_SHARED_NAMESPACE, LIVE_ALLOCATION_NAMESPACE);
   }
 
+  @NotNull
+  @Override
+  public List<DownsampledSeries> getDownsampledSeries() {
+    return myStatsTable.getDownsampledSeries();
+  }
+
   @Override
   public void setBackingStore(@NotNull BackingNamespace namespace, @NotNull Connection connection) {
     assert getBackingNamespaces().contains(namespace);
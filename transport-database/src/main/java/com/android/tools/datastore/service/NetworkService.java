@@ -17,6 +17,7 @@ package com.android.tools.datastore.service;
 
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.database.DownsampledSeries;
 import com.android.tools.datastore.database.NetworkTable;
 import com.android.tools.datastore.poller.NetworkDataPoller;
 import com.android.tools.datastore.poller.PollRunner;
@@ -138,6 +139,12 @@ public class NetworkService extends NetworkServiceGrpc.NetworkServiceImplBase im
     return Collections.singletonList(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE);
   }
 
+  @NotNull
+  @Override
+  public List<DownsampledSeries> getDownsampledSeries() {
+    return myNetworkTable.getDownsampledSeries();
+  }
+
   @Override
   public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
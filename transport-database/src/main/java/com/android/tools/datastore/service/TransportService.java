@@ -20,9 +20,13 @@ import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.DataStoreTable;
 import com.android.tools.datastore.database.DeviceProcessTable;
 import com.android.tools.datastore.database.UnifiedEventsTable;
+import com.android.tools.datastore.database.UnifiedEventsWriteBuffer;
 import com.android.tools.datastore.poller.DeviceProcessPoller;
 import com.android.tools.datastore.poller.UnifiedEventsDataPoller;
+import com.android.tools.datastore.rpc.DataStoreStreamingServiceGrpc;
+import com.android.tools.datastore.rpc.SubscribeEventsResponse;
 import com.android.tools.idea.flags.StudioFlags;
+import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.profiler.proto.Commands;
 import com.android.tools.profiler.proto.Common.AgentData;
 import com.android.tools.profiler.proto.Common.Event;
@@ -48,16 +52,27 @@ import com.android.tools.profiler.proto.Transport.VersionResponse;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.BindableService;
 import io.grpc.Channel;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Datastore layer of the unified event rpc pipeline, responsible for forwarding commands to the device and handling generic event
@@ -65,9 +80,24 @@ import org.jetbrains.annotations.NotNull;
  * {@link #getDevices(GetDevicesRequest, StreamObserver)}, {@link #getProcesses(GetProcessesRequest, StreamObserver)}, etc.
  */
 public class TransportService extends TransportServiceGrpc.TransportServiceImplBase implements ServicePassThrough {
+  /**
+   * The largest chunk returned by {@code DataStoreStreamingService.StreamBytes}, well under gRPC's default 4MB message limit.
+   */
+  public static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
   private final Map<Channel, DeviceProcessPoller> myLegacyPollers = Maps.newHashMap();
   private final Consumer<Runnable> myFetchExecutor;
   @NotNull private final UnifiedEventsTable myTable;
+  /**
+   * Buffer shared by all {@link UnifiedEventsDataPoller}s to batch event insertions. Queries need to flush it first so callers
+   * always see the events that have been received so far.
+   */
+  @NotNull private final UnifiedEventsWriteBuffer myWriteBuffer;
+  /**
+   * Writes the events of streams that went quiet, which would otherwise stay in {@link #myWriteBuffer} until the next query.
+   */
+  @NotNull private final ScheduledExecutorService myWriteBufferFlusher;
+  @NotNull private final UnifiedEventsSubscriptions mySubscriptions = new UnifiedEventsSubscriptions();
   @NotNull private final DeviceProcessTable myLegacyTable;
   @NotNull private final DataStoreService myService;
   private final boolean myLegacyPipelineForProfilers;
@@ -89,10 +119,35 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     myService = service;
     myFetchExecutor = fetchExecutor;
     myTable = unifiedTable;
+    myWriteBuffer = new UnifiedEventsWriteBuffer(unifiedTable);
+    myWriteBuffer.addEventInsertListener(mySubscriptions::publish);
+    myWriteBufferFlusher = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("DataStoreWriteBufferFlusher").setDaemon(true).build());
+    // Checking at half the delay keeps the age of a buffered event under 1.5x the max delay.
+    long flushPeriodNs = Math.max(1, myWriteBuffer.getMaxFlushDelayNs() / 2);
+    myWriteBufferFlusher.scheduleWithFixedDelay(this::flushExpiredEvents, flushPeriodNs, flushPeriodNs, TimeUnit.NANOSECONDS);
     myLegacyTable = new DeviceProcessTable();
     myLegacyPipelineForProfilers = legacyPipelineForProfilers;
   }
 
+  /**
+   * @return the buffer events are written through, which also reports the batch size and latency of its writes.
+   */
+  @NotNull
+  public UnifiedEventsWriteBuffer getWriteBuffer() {
+    return myWriteBuffer;
+  }
+
+  private void flushExpiredEvents() {
+    try {
+      myWriteBuffer.flushExpired();
+    }
+    catch (RuntimeException e) {
+      // An exception would cancel the periodic flush; queries still flush the buffer explicitly.
+      myService.getLogService().getLogger(TransportService.class.getCanonicalName()).error(e);
+    }
+  }
+
   @NotNull
   @Override
   public List<DataStoreService.BackingNamespace> getBackingNamespaces() {
@@ -119,7 +174,7 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     TransportServiceGrpc.TransportServiceBlockingStub stub = myService.getTransportClient(streamId);
     assert (stub != null);
     streamConnected(stream);
-    UnifiedEventsDataPoller unifiedPoller = new UnifiedEventsDataPoller(stream.getStreamId(), myTable, stub, myService);
+    UnifiedEventsDataPoller unifiedPoller = new UnifiedEventsDataPoller(stream.getStreamId(), myWriteBuffer, stub, myService);
     myUnifiedEventsPollers.put(channel, unifiedPoller);
     myChannelToStream.put(channel, stream);
     DataStoreTable.addDataStoreErrorCallback(unifiedPoller);
@@ -146,7 +201,7 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   }
 
   private void streamConnected(Stream stream) {
-    myTable.insertUnifiedEvent(DataStoreService.DATASTORE_RESERVED_STREAM_ID, Event.newBuilder()
+    insertDatastoreEvent(Event.newBuilder()
       .setKind(Event.Kind.STREAM)
       .setGroupId(stream.getStreamId())
       .setTimestamp(System.nanoTime())
@@ -157,7 +212,7 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   }
 
   private void streamDisconnected(Stream stream) {
-    myTable.insertUnifiedEvent(DataStoreService.DATASTORE_RESERVED_STREAM_ID, Event.newBuilder()
+    insertDatastoreEvent(Event.newBuilder()
       .setKind(Event.Kind.STREAM)
       .setGroupId(stream.getStreamId())
       .setIsEnded(true)
@@ -165,6 +220,19 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
       .build());
   }
 
+  private void insertDatastoreEvent(@NotNull Event event) {
+    myTable.insertUnifiedEvent(DataStoreService.DATASTORE_RESERVED_STREAM_ID, event);
+    mySubscriptions.publish(DataStoreService.DATASTORE_RESERVED_STREAM_ID, event);
+  }
+
+  /**
+   * Completes all open event subscriptions.
+   */
+  public void shutdown() {
+    myWriteBufferFlusher.shutdownNow();
+    mySubscriptions.completeAll();
+  }
+
   @Override
   public void getCurrentTime(TimeRequest request, StreamObserver<TimeResponse> observer) {
     // This function can get called before the datastore is connected to a device as such we need to check
@@ -211,6 +279,33 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
 
   @Override
   public void getBytes(BytesRequest request, StreamObserver<BytesResponse> responseObserver) {
+    BytesResponse response = getOrFetchBytes(request);
+    responseObserver.onNext(response == null ? BytesResponse.getDefaultInstance() : response);
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Streams the same payload as {@link #getBytes}, in chunks of at most {@link #MAX_CHUNK_SIZE} bytes. Chunks are
+   * read from the database or blob store as the client is ready for them, so neither side holds the whole payload.
+   */
+  @VisibleForTesting
+  void streamBytes(BytesRequest request, StreamObserver<BytesResponse> responseObserver) {
+    InputStream contents = myTable.openBytesStream(request);
+    if (contents == null && getOrFetchBytes(request) != null) {
+      contents = myTable.openBytesStream(request);
+    }
+    if (contents == null) {
+      responseObserver.onCompleted();
+      return;
+    }
+    new ChunkSender(contents, responseObserver).start();
+  }
+
+  /**
+   * @return the bytes stored for the request. If none are, they're fetched from the stream's device and stored if not empty.
+   */
+  @Nullable
+  private BytesResponse getOrFetchBytes(@NotNull BytesRequest request) {
     // TODO: Currently the cache is on demand, we want to look into caching all available files.
     BytesResponse response = myTable.getBytes(request);
     long streamId = request.getStreamId();
@@ -222,12 +317,23 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
         myTable.insertBytes(streamId, request.getId(), response);
       }
     }
-    else if (response == null) {
-      response = BytesResponse.getDefaultInstance();
-    }
+    return response;
+  }
 
-    responseObserver.onNext(response);
-    responseObserver.onCompleted();
+  @NotNull
+  @Override
+  public List<BindableService> getAdditionalServices() {
+    return Collections.singletonList(new DataStoreStreamingServiceGrpc.DataStoreStreamingServiceImplBase() {
+      @Override
+      public void streamBytes(BytesRequest request, StreamObserver<BytesResponse> responseObserver) {
+        TransportService.this.streamBytes(request, responseObserver);
+      }
+
+      @Override
+      public void subscribeEvents(GetEventGroupsRequest request, StreamObserver<SubscribeEventsResponse> responseObserver) {
+        mySubscriptions.subscribe(request, responseObserver);
+      }
+    });
   }
 
   @Override
@@ -249,6 +355,7 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
 
   @Override
   public void getEventGroups(GetEventGroupsRequest request, StreamObserver<GetEventGroupsResponse> responseObserver) {
+    myWriteBuffer.flush();
     GetEventGroupsResponse.Builder response = GetEventGroupsResponse.newBuilder();
     Collection<EventGroup> events = myTable.queryUnifiedEventGroups(request);
     response.addAllGroups(events);
@@ -258,6 +365,8 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
 
   @Override
   public void deleteEvents(Transport.DeleteEventsRequest request, StreamObserver<Transport.DeleteEventsResponse> responseObserver) {
+    // Flush first so buffered events in the range are deleted as well.
+    myWriteBuffer.flush(request.getStreamId());
     myTable.deleteEvents(request.getStreamId(),
                          request.getPid(),
                          request.getGroupId(),
@@ -267,4 +376,60 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     responseObserver.onNext(Transport.DeleteEventsResponse.getDefaultInstance());
     responseObserver.onCompleted();
   }
+
+  /**
+   * Sends a payload in chunks whenever the call is ready for more, so a slow client never makes the datastore buffer the payload.
+   */
+  private static final class ChunkSender implements Runnable {
+    @NotNull private final InputStream myContents;
+    @NotNull private final StreamObserver<BytesResponse> myObserver;
+    @Nullable private final ServerCallStreamObserver<BytesResponse> myServerObserver;
+    private final byte[] myBuffer = new byte[MAX_CHUNK_SIZE];
+    // Guarded by this object's monitor.
+    private boolean myIsClosed;
+
+    private ChunkSender(@NotNull InputStream contents, @NotNull StreamObserver<BytesResponse> observer) {
+      myContents = contents;
+      myObserver = observer;
+      myServerObserver = observer instanceof ServerCallStreamObserver ? (ServerCallStreamObserver<BytesResponse>)observer : null;
+    }
+
+    private void start() {
+      if (myServerObserver != null) {
+        myServerObserver.setOnCancelHandler(this::close);
+        myServerObserver.setOnReadyHandler(this);
+      }
+      run();
+    }
+
+    @Override
+    public synchronized void run() {
+      try {
+        while (!myIsClosed && (myServerObserver == null || myServerObserver.isReady())) {
+          int read = ByteStreams.read(myContents, myBuffer, 0, myBuffer.length);
+          if (read == 0) {
+            close();
+            myObserver.onCompleted();
+            return;
+          }
+          myObserver.onNext(BytesResponse.newBuilder().setContents(ByteString.copyFrom(myBuffer, 0, read)).build());
+        }
+      }
+      catch (IOException e) {
+        close();
+        myObserver.onError(Status.DATA_LOSS.withDescription("Unable to read bytes").withCause(e).asRuntimeException());
+      }
+    }
+
+    private synchronized void close() {
+      if (!myIsClosed) {
+        myIsClosed = true;
+        try {
+          myContents.close();
+        }
+        catch (IOException ignored) {
+        }
+      }
+    }
+  }
 }
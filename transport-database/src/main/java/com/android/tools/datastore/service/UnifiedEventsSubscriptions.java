@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.service;
+
+import com.android.tools.datastore.rpc.SubscribeEventsResponse;
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import com.google.common.annotations.VisibleForTesting;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Pushes newly inserted events to subscribers of {@code DataStoreStreamingService.SubscribeEvents}, see there for how events are
+ * filtered and acknowledged.
+ * <p>
+ * Each subscriber has a bounded queue that is drained whenever the transport is ready. If a subscriber falls more than
+ * {@link #MAX_PENDING_EVENTS} events behind, the call is terminated with {@link Status#RESOURCE_EXHAUSTED} so the client can fall back
+ * to querying for the data instead of the datastore buffering without bound.
+ */
+public class UnifiedEventsSubscriptions {
+  @VisibleForTesting static final int MAX_PENDING_EVENTS = 10000;
+
+  private final CopyOnWriteArrayList<Subscriber> mySubscribers = new CopyOnWriteArrayList<>();
+
+  /**
+   * Registers a subscriber for the events matching the filter.
+   */
+  public void subscribe(@NotNull GetEventGroupsRequest filter, @NotNull StreamObserver<SubscribeEventsResponse> observer) {
+    Subscriber subscriber = new Subscriber(filter, observer);
+    if (observer instanceof ServerCallStreamObserver) {
+      ServerCallStreamObserver<SubscribeEventsResponse> serverObserver = (ServerCallStreamObserver<SubscribeEventsResponse>)observer;
+      serverObserver.setOnCancelHandler(() -> {
+        subscriber.cancel();
+        mySubscribers.remove(subscriber);
+      });
+      serverObserver.setOnReadyHandler(subscriber::drain);
+    }
+    // Queued before the subscriber can receive anything else, so the acknowledgement is always the first message.
+    subscriber.offer(SubscribeEventsResponse.newBuilder().setSubscribed(true).build());
+    mySubscribers.add(subscriber);
+  }
+
+  /**
+   * Delivers an event that was just inserted for the given stream to all matching subscribers.
+   */
+  public void publish(long streamId, @NotNull Event event) {
+    SubscribeEventsResponse response = null;
+    for (Subscriber subscriber : mySubscribers) {
+      if (!subscriber.matches(streamId, event)) {
+        continue;
+      }
+      if (response == null) {
+        response = SubscribeEventsResponse.newBuilder().setEvent(event).build();
+      }
+      if (!subscriber.offer(response)) {
+        mySubscribers.remove(subscriber);
+      }
+    }
+  }
+
+  /**
+   * Completes all subscriptions, e.g. when the datastore shuts down.
+   */
+  public void completeAll() {
+    for (Subscriber subscriber : mySubscribers) {
+      subscriber.complete();
+    }
+    mySubscribers.clear();
+  }
+
+  @VisibleForTesting
+  int getSubscriberCount() {
+    return mySubscribers.size();
+  }
+
+  private static final class Subscriber {
+    @NotNull private final GetEventGroupsRequest myFilter;
+    @NotNull private final StreamObserver<SubscribeEventsResponse> myObserver;
+    @Nullable private final ServerCallStreamObserver<SubscribeEventsResponse> myServerObserver;
+    // Guarded by this object's monitor.
+    private final Queue<SubscribeEventsResponse> myPendingEvents = new ArrayDeque<>();
+    private boolean myIsClosed;
+
+    private Subscriber(@NotNull GetEventGroupsRequest filter, @NotNull StreamObserver<SubscribeEventsResponse> observer) {
+      myFilter = filter;
+      myObserver = observer;
+      myServerObserver = observer instanceof ServerCallStreamObserver ? (ServerCallStreamObserver<SubscribeEventsResponse>)observer : null;
+    }
+
+    private boolean matches(long streamId, @NotNull Event event) {
+      return (myFilter.getStreamId() == 0 || myFilter.getStreamId() == streamId) &&
+             (myFilter.getPid() == 0 || myFilter.getPid() == event.getPid()) &&
+             (myFilter.getKind() == Event.Kind.NONE || myFilter.getKind() == event.getKind()) &&
+             (myFilter.getGroupId() == 0 || myFilter.getGroupId() == event.getGroupId());
+    }
+
+    /**
+     * @return false if the subscriber is closed, either because it was already or because it fell too far behind.
+     */
+    private synchronized boolean offer(@NotNull SubscribeEventsResponse response) {
+      if (myIsClosed) {
+        return false;
+      }
+      if (myPendingEvents.size() >= MAX_PENDING_EVENTS) {
+        myIsClosed = true;
+        myPendingEvents.clear();
+        myObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription("Event subscriber is not keeping up").asRuntimeException());
+        return false;
+      }
+      myPendingEvents.add(response);
+      drain();
+      return true;
+    }
+
+    private synchronized void drain() {
+      while (!myIsClosed && !myPendingEvents.isEmpty() && (myServerObserver == null || myServerObserver.isReady())) {
+        myObserver.onNext(myPendingEvents.poll());
+      }
+    }
+
+    private synchronized void cancel() {
+      myIsClosed = true;
+      myPendingEvents.clear();
+    }
+
+    private synchronized void complete() {
+      if (!myIsClosed) {
+        myIsClosed = true;
+        myPendingEvents.clear();
+        myObserver.onCompleted();
+      }
+    }
+  }
+}
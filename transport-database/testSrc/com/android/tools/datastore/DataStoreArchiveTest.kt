@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore
+
+import com.android.testutils.TestUtils
+import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.idea.protobuf.ByteString
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.BytesRequest
+import com.android.tools.profiler.proto.Transport.BytesResponse
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+class DataStoreArchiveTest {
+  private lateinit var directory: File
+  private lateinit var sourceBlobStore: DataStoreBlobStore
+  private lateinit var sourceDatabase: DataStoreDatabase
+  private lateinit var sourceTable: UnifiedEventsTable
+  private lateinit var targetBlobStore: DataStoreBlobStore
+  private lateinit var targetDatabase: DataStoreDatabase
+  private lateinit var targetTable: UnifiedEventsTable
+
+  @Before
+  fun setUp() {
+    directory = TestUtils.createTempDirDeletedOnExit()
+    sourceBlobStore = DataStoreBlobStore(File(directory, "source"), FakeLogService())
+    sourceDatabase = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    sourceTable = UnifiedEventsTable(sourceBlobStore)
+    sourceTable.initialize(sourceDatabase.connection)
+    targetBlobStore = DataStoreBlobStore(File(directory, "target"), FakeLogService())
+    targetDatabase = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    targetTable = UnifiedEventsTable(targetBlobStore)
+    targetTable.initialize(targetDatabase.connection)
+  }
+
+  @After
+  fun tearDown() {
+    sourceDatabase.disconnect()
+    targetDatabase.disconnect()
+    sourceBlobStore.close()
+    targetBlobStore.close()
+  }
+
+  @Test
+  fun eventsAndPayloadsSurviveRoundTrip() {
+    val events = (1..1000L).map {
+      Common.Event.newBuilder().setKind(Common.Event.Kind.CPU_USAGE).setGroupId(it % 3).setTimestamp(it).setPid(1).build()
+    }
+    sourceTable.insertUnifiedEvents(1, events)
+    sourceTable.insertBytes(1, "trace", BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("trace contents")).build())
+    // Identical payloads are only archived once.
+    sourceTable.insertBytes(1, "copy", BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("trace contents")).build())
+
+    val archive = export(chunkSize = 1024)
+    assertThat(archive.readBytes().toString(Charsets.ISO_8859_1).split("trace contents")).hasSize(2)
+    DataStoreArchive.Reader(archive, targetBlobStore).readInto { if (it == NAMESPACE) targetDatabase else null }
+    targetTable.rebuildTimeBounds()
+    // Payloads are read from the archive instead of being copied into the target blob store.
+    assertThat(targetBlobStore.segmentCount).isEqualTo(1)
+
+    assertThat(targetTable.queryUnifiedEvents()).containsExactlyElementsIn(events)
+    for (id in listOf("trace", "copy")) {
+      val bytes = targetTable.getBytes(BytesRequest.newBuilder().setStreamId(1).setId(id).build())!!
+      assertThat(bytes.contents.toStringUtf8()).isEqualTo("trace contents")
+    }
+  }
+
+  @Test
+  fun tablesOfUnknownNamespacesAreSkipped() {
+    sourceTable.insertUnifiedEvent(1, Common.Event.newBuilder().setKind(Common.Event.Kind.SESSION).setTimestamp(1).build())
+    val archive = export()
+    DataStoreArchive.Reader(archive, targetBlobStore).readInto { null }
+    assertThat(targetTable.queryUnifiedEvents()).isEmpty()
+  }
+
+  @Test(expected = IOException::class)
+  fun invalidArchiveIsRejected() {
+    val archive = File(directory, "invalid")
+    archive.writeText("Not an archive")
+    DataStoreArchive.Reader(archive, targetBlobStore).readInto { targetDatabase }
+  }
+
+  private fun export(chunkSize: Int = 1024 * 1024): File {
+    val archive = File(directory, "session.archive")
+    FileOutputStream(archive).use {
+      val writer = DataStoreArchive.Writer(it, sourceBlobStore, chunkSize)
+      writer.writeDatabase(NAMESPACE, sourceDatabase)
+      writer.finish()
+    }
+    return archive
+  }
+
+  companion object {
+    private const val NAMESPACE = "default.sql"
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore
+
+import com.android.testutils.TestUtils
+import com.android.tools.idea.protobuf.ByteString
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+
+class DataStoreBlobStoreTest {
+  private lateinit var directory: File
+  private lateinit var store: DataStoreBlobStore
+
+  @Before
+  fun setUp() {
+    directory = TestUtils.createTempDirDeletedOnExit()
+    store = DataStoreBlobStore(directory, FakeLogService(), 16)
+  }
+
+  @After
+  fun tearDown() {
+    store.close()
+  }
+
+  @Test
+  fun contentsCanBeReadBack() {
+    val ref = store.put(ByteString.copyFromUtf8("Hello"))!!
+    assertThat(ref.length).isEqualTo(5)
+    assertThat(ByteString.copyFrom(store.read(ref)!!).toStringUtf8()).isEqualTo("Hello")
+  }
+
+  @Test
+  fun rangesCanBeRead() {
+    val ref = store.put(ByteString.copyFromUtf8("Hello World"))!!
+    assertThat(ByteString.copyFrom(store.read(ref, 6, 5)!!).toStringUtf8()).isEqualTo("World")
+    assertThat(store.read(ref, 6, 6)).isNull()
+    assertThat(store.read(ref, -1, 1)).isNull()
+  }
+
+  @Test
+  fun identicalContentsAreStoredOnce() {
+    val ref1 = store.put(ByteString.copyFromUtf8("Hello"))!!
+    val ref2 = store.put(ByteString.copyFromUtf8("Hello"))!!
+    assertThat(ref2.segment).isEqualTo(ref1.segment)
+    assertThat(ref2.offset).isEqualTo(ref1.offset)
+  }
+
+  @Test
+  fun segmentsRollOverWhenFull() {
+    val ref1 = store.put(ByteString.copyFromUtf8("0123456789"))!!
+    val ref2 = store.put(ByteString.copyFromUtf8("abcdef"))!!
+    // Larger than the segment size, gets its own segment.
+    val ref3 = store.put(ByteString.copyFromUtf8("This does not fit in a segment"))!!
+    val ref4 = store.put(ByteString.copyFromUtf8("xyz"))!!
+    assertThat(store.segmentCount).isEqualTo(3)
+    assertThat(ref2.segment).isEqualTo(ref1.segment)
+    assertThat(ref3.segment).isEqualTo(ref1.segment + 1)
+    assertThat(ref4.segment).isEqualTo(ref3.segment + 1)
+    // Data written after a segment was read from is still readable.
+    assertThat(ByteString.copyFrom(store.read(ref1)!!).toStringUtf8()).isEqualTo("0123456789")
+    assertThat(ByteString.copyFrom(store.read(ref2)!!).toStringUtf8()).isEqualTo("abcdef")
+    assertThat(ByteString.copyFrom(store.read(ref3)!!).toStringUtf8()).isEqualTo("This does not fit in a segment")
+  }
+
+  @Test
+  fun externalSegmentsCanBeRead() {
+    val external = File(TestUtils.createTempDirDeletedOnExit(), "external")
+    external.writeText("Hello World")
+    val internalRef = store.put(ByteString.copyFromUtf8("0123"))!!
+    val segment = store.addExternalSegment(external)
+    assertThat(ByteString.copyFrom(store.read(DataStoreBlobStore.BlobRef(segment, 6, 5))!!).toStringUtf8()).isEqualTo("World")
+    assertThat(store.read(DataStoreBlobStore.BlobRef(segment, 6, 6))).isNull()
+    // New payloads are never appended to external segments.
+    val ref = store.put(ByteString.copyFromUtf8("abc"))!!
+    assertThat(ref.segment).isNotEqualTo(segment)
+    assertThat(ByteString.copyFrom(store.read(internalRef)!!).toStringUtf8()).isEqualTo("0123")
+    assertThat(external.readText()).isEqualTo("Hello World")
+  }
+
+  @Test
+  fun staleSegmentsAreDeleted() {
+    store.put(ByteString.copyFromUtf8("Hello"))
+    store.close()
+    store = DataStoreBlobStore(directory, FakeLogService(), 16)
+    assertThat(directory.listFiles { _, name -> name.endsWith(".blob") }).isEmpty()
+  }
+
+  @Test
+  fun buffersAreMappedAndStayValidAfterTheStoreIsClosed() {
+    val ref = store.put(ByteString.copyFromUtf8("Hello"))!!
+    val buffer = store.read(ref)!!
+    assertThat(buffer.isDirect).isTrue()
+    store.close()
+    assertThat(ByteString.copyFrom(buffer).toStringUtf8()).isEqualTo("Hello")
+  }
+
+  @Test
+  fun rangesCanBeStreamed() {
+    val ref = store.put(ByteString.copyFromUtf8("Hello World"))!!
+    assertThat(store.openStream(ref, 6, 5)!!.use { String(it.readBytes()) }).isEqualTo("World")
+    assertThat(store.openStream(ref, 0, ref.length)!!.use { String(it.readBytes()) }).isEqualTo("Hello World")
+    assertThat(store.openStream(ref, 6, 6)).isNull()
+    assertThat(store.openStream(ref, 1, Long.MAX_VALUE)).isNull()
+  }
+
+  @Test
+  fun closedStoreReturnsNull() {
+    val ref = store.put(ByteString.copyFromUtf8("Hello"))!!
+    store.close()
+    assertThat(store.put(ByteString.copyFromUtf8("World"))).isNull()
+    assertThat(store.read(ref)).isNull()
+  }
+}
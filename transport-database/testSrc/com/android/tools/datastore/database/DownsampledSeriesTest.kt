@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Cpu.CpuUsageData
+import com.android.tools.profiler.proto.CpuProfiler.CpuDataRequest
+import com.android.tools.profiler.proto.Memory.MemoryAllocStatsData
+import com.android.tools.profiler.proto.Memory.MemoryUsageData
+import com.android.tools.profiler.proto.MemoryProfiler.MemoryData
+import com.android.tools.profiler.proto.MemoryProfiler.MemoryRequest
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class DownsampledSeriesTest {
+  private lateinit var database: DataStoreDatabase
+  private lateinit var table: CpuTable
+  private lateinit var series: DownsampledSeries
+
+  @Before
+  fun setUp() {
+    database = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    table = CpuTable()
+    table.initialize(database.connection)
+    series = table.downsampledSeries.single()
+    // Samples older than 10ns are aggregated in 10ns buckets, queries spanning 30ns or more are served from aggregates.
+    series.policy = RetentionPolicy(10, 10, 5, 30, 16, 1000)
+    for (i in 1..40L) {
+      table.insert(SESSION, CpuUsageData.newBuilder().setEndTimestamp(i).setAppCpuTimeInMillisec(2 * i).build())
+    }
+  }
+
+  @After
+  fun tearDown() {
+    database.disconnect()
+  }
+
+  @Test
+  fun aggregatesHoldAverageAndExtremes() {
+    val samples = listOf(4L, 2L, 9L, 2L).map {
+      CpuUsageData.newBuilder().setEndTimestamp(10 * it).setAppCpuTimeInMillisec(it).setSystemCpuTimeInMillisec(1).build()
+    }
+    val aggregate = DownsampledSeries.aggregate(samples) { (it as CpuUsageData).appCpuTimeInMillisec.toDouble() }
+    val average = aggregate.myAverage as CpuUsageData
+    assertThat(average.endTimestamp).isEqualTo(42)
+    assertThat(average.appCpuTimeInMillisec).isEqualTo(4)
+    assertThat(average.systemCpuTimeInMillisec).isEqualTo(1)
+    // The first of equal samples is the min.
+    assertThat(aggregate.myMinIndex).isEqualTo(1)
+    assertThat(aggregate.myMaxIndex).isEqualTo(2)
+  }
+
+  @Test
+  fun singleSampleBucketsAreReturnedOnce() {
+    series.policy = RetentionPolicy(10, 1, 5, 30, 16, 1000)
+    series.downsample()
+    assertThat(query(0, 40).map { it.endTimestamp }).containsExactlyElementsIn(1..40L).inOrder()
+  }
+
+  @Test
+  fun onlyCompleteBucketsPastRetentionAreDownsampled() {
+    assertThat(series.downsample()).isEqualTo(3)
+    // Already aggregated buckets are not written again.
+    assertThat(series.downsample()).isEqualTo(0)
+  }
+
+  @Test
+  fun zoomedOutQueriesUseAggregates() {
+    series.downsample()
+    val data = query(0, 40)
+    // Cpu times are cumulative, each bucket is returned as its average sample.
+    assertThat(data.map { it.endTimestamp }).containsExactlyElementsIn(listOf(5L, 15L, 25L) + (31..40L)).inOrder()
+    assertThat(data.map { it.appCpuTimeInMillisec }).containsExactlyElementsIn(listOf(11L, 31L, 51L) + (31..40L).map { 2 * it }).inOrder()
+  }
+
+  @Test
+  fun gaugesKeepTheirExtremeSamples() {
+    val memoryTable = createMemoryTable()
+    // Each bucket peaks at its 3rd sample and dips at its 7th.
+    memoryTable.insertMemory(SESSION, (1..40L).map { memorySample(it, if (it % 10 == 3L) 100 else if (it % 10 == 7L) 1 else 50) })
+    memoryTable.downsampledSeries.single().downsample()
+
+    val samples = queryMemory(memoryTable, 0, 40).memSamplesList
+    // The min and max are the samples as they were stored, in timestamp order.
+    assertThat(samples.map { it.timestamp }).containsExactlyElementsIn(listOf(3L, 7L, 13L, 17L, 23L, 27L) + (31..40L)).inOrder()
+    assertThat(samples.map { it.memoryUsage.javaMem }).containsExactlyElementsIn(listOf(3, 7, 13, 17, 23, 27) + (31..40))
+      .inOrder()
+    assertThat(samples.take(6).map { it.memoryUsage.totalMem }).containsExactly(100, 1, 100, 1, 100, 1).inOrder()
+  }
+
+  @Test
+  fun rawSamplesAreBudgetedPerSeries() {
+    val memoryTable = createMemoryTable()
+    memoryTable.insertMemory(SESSION, (1..40L).map { memorySample(it, 50) })
+    memoryTable.insertAllocStats(SESSION, (1..4L).plus(40L).map { allocStatsSample(it, 10) })
+    val memorySeries = memoryTable.downsampledSeries.single()
+    memorySeries.downsample()
+
+    // The memory samples are over the budget, the alloc stats are within it and are kept even though they have been aggregated.
+    assertThat(memorySeries.evictRawSamples()).isEqualTo(30)
+    assertThat(queryMemory(memoryTable, 0, 20).allocStatsSamplesList.map { it.timestamp }).containsExactly(1L, 2L, 3L, 4L).inOrder()
+    // A bucket of equal samples is returned as a single one.
+    assertThat(queryMemory(memoryTable, 0, 40).allocStatsSamplesList.map { it.timestamp }).containsExactly(1L, 40L).inOrder()
+  }
+
+  @Test
+  fun zoomedInQueriesUseRawSamples() {
+    series.downsample()
+    assertThat(query(0, 20).map { it.endTimestamp }).containsExactlyElementsIn(1..20L).inOrder()
+  }
+
+  @Test
+  fun openEndedQueriesUseRawSamples() {
+    series.downsample()
+    assertThat(query(0, Long.MAX_VALUE).map { it.endTimestamp }).containsExactlyElementsIn(1..40L).inOrder()
+  }
+
+  @Test
+  fun hugeSpansAreZoomedOut() {
+    series.downsample()
+    // 20 - Long.MIN_VALUE overflows.
+    assertThat(query(Long.MIN_VALUE, 20).map { it.appCpuTimeInMillisec }).containsExactly(11L, 31L).inOrder()
+  }
+
+  @Test
+  fun evictedSamplesFallBackToAggregates() {
+    series.downsample()
+    // Only samples that have been aggregated can be evicted, even if that leaves the series above its budget.
+    assertThat(series.evictRawSamples()).isEqualTo(30)
+    assertThat(series.evictRawSamples()).isEqualTo(0)
+
+    assertThat(query(0, 20).map { it.appCpuTimeInMillisec }).containsExactly(11L, 31L).inOrder()
+    assertThat(query(20, 40).map { it.appCpuTimeInMillisec }).containsExactlyElementsIn(listOf(51L) + (31..40L).map { 2 * it }).inOrder()
+  }
+
+  private fun query(start: Long, end: Long): List<CpuUsageData> {
+    return table.getCpuDataByRequest(CpuDataRequest.newBuilder().setSession(SESSION).setStartTimestamp(start).setEndTimestamp(end).build())
+  }
+
+  private fun createMemoryTable(): MemoryStatsTable {
+    val memoryTable = MemoryStatsTable()
+    memoryTable.initialize(database.connection)
+    memoryTable.downsampledSeries.single().policy = series.policy
+    return memoryTable
+  }
+
+  private fun queryMemory(memoryTable: MemoryStatsTable, start: Long, end: Long): MemoryData {
+    return memoryTable.getData(MemoryRequest.newBuilder().setSession(SESSION).setStartTime(start).setEndTime(end).build())
+  }
+
+  private fun memorySample(timestamp: Long, totalMem: Int): MemoryData.MemorySample {
+    return MemoryData.MemorySample.newBuilder()
+      .setTimestamp(timestamp)
+      .setMemoryUsage(MemoryUsageData.newBuilder().setTotalMem(totalMem).setJavaMem(timestamp.toInt()))
+      .build()
+  }
+
+  private fun allocStatsSample(timestamp: Long, liveCount: Int): MemoryData.AllocStatsSample {
+    return MemoryData.AllocStatsSample.newBuilder()
+      .setTimestamp(timestamp)
+      .setAllocStats(MemoryAllocStatsData.newBuilder().setJavaAllocationCount(liveCount))
+      .build()
+  }
+
+  companion object {
+    private val SESSION = Common.Session.newBuilder().setSessionId(1).build()
+  }
+}
@@ -61,6 +61,7 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     val events = mutableListOf(Common.Event.newBuilder().build())
     return mutableListOf(
       (Consumer { it.insertUnifiedEvent(1, events[0]) }),
+      (Consumer { it.insertUnifiedEvents(1, events) }),
       (Consumer { it.deleteEvents(1, 1, 1, Common.Event.Kind.SESSION, 1, 1) }),
       (Consumer {
         it.queryUnifiedEventGroups(
@@ -68,6 +69,7 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
             10).build())
       }),
       (Consumer { it.queryUnifiedEvents() }),
+      (Consumer { it.rebuildTimeBounds() }),
       (Consumer { assertThat(it.getBytes(BytesRequest.getDefaultInstance())).isEqualTo(null) }),
       (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }))
   }
@@ -110,6 +112,13 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     assertThat(eventResult).containsExactlyElementsIn(listOf(event))
   }
 
+  @Test
+  fun insertBatchedEvents() {
+    val events = (1..10L).map { eventBuilder(Common.Event.Kind.SESSION, false, 1, it, 1, it) }
+    table.insertUnifiedEvents(1, events)
+    assertThat(table.queryUnifiedEvents()).containsExactlyElementsIn(events)
+  }
+
   @Test
   fun deleteEvents() {
     val eventCount = 5
@@ -282,6 +291,52 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
                    SESSION_1_1_4)
   }
 
+  @Test
+  fun queryPlanPrunesSubQueriesOutsideOfInsertedRange() {
+    for (event in events) {
+      table.insertUnifiedEvent(1, event)
+    }
+    // Nothing is known about the kind, all sub-queries should run.
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.MEMORY_USAGE).build(), true, true, true)
+    // Session events span [1, 9].
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(3).setToTimestamp(6).build(),
+                 true, true, true)
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(1).setToTimestamp(20).build(),
+                 false, true, false)
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(10).setToTimestamp(20).build(),
+                 true, false, false)
+    // Group 2 spans [7, 9].
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setGroupId(2).setToTimestamp(5).build(),
+                 false, false, true)
+    // Unknown groups are never pruned.
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setGroupId(100).build(), true, true, true)
+  }
+
+  @Test
+  fun timeBoundsCanBeRebuiltFromTableContents() {
+    // Rows inserted behind the table's back (e.g. by a session import) are not known to the query planner.
+    database.connection.createStatement().execute(
+      "INSERT INTO [UnifiedEventsTable] (StreamId, ProcessId, GroupId, Kind, CommandId, Timestamp, IsEnded, Data) " +
+      "VALUES (1, 1, 3, ${Common.Event.Kind.SESSION.number}, 0, 20, 0, NULL)")
+    table.insertUnifiedEvent(1, events[0])
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(10).build(), true, false, false)
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setGroupId(3).build(), true, true, true)
+
+    table.rebuildTimeBounds()
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(10).build(), true, true, false)
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setGroupId(3).build(), false, true, false)
+  }
+
+  @Test
+  fun timeBoundsAreLoadedFromTheDatabaseOnInitialize() {
+    table.insertUnifiedEvent(1, events[0])
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(10).build(), true, false, false)
+
+    // Initializing re-creates the table, so bounds seen before must not prune anything anymore.
+    table.initialize(database.connection)
+    validatePlan(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(10).build(), true, true, true)
+  }
+
   @Test
   fun queryReturnsSameStatement() {
     val results = table.executeOneTimeQuery("SELECT * FROM [UnifiedEventsTable]", arrayOf())
@@ -289,6 +344,13 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
     assertThat(results.statement).isSameAs(repeatedResults.statement)
   }
 
+  private fun validatePlan(request: GetEventGroupsRequest, before: Boolean, inRange: Boolean, after: Boolean) {
+    val plan = table.planQuery(request)
+    assertThat(plan.myQueryBeforeRange).isEqualTo(before)
+    assertThat(plan.myQueryInRange).isEqualTo(inRange)
+    assertThat(plan.myQueryAfterRange).isEqualTo(after)
+  }
+
   private fun validateFilter(request: GetEventGroupsRequest, vararg expectedIndices: Int) {
     val expectedResults = mutableListOf<Common.Event>()
     // Insert elements from our fixed list into the database.
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Common
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+
+class UnifiedEventsWriteBufferTest {
+  private lateinit var dbFile: File
+  private lateinit var database: DataStoreDatabase
+  private lateinit var table: UnifiedEventsTable
+  private var currentTimeNs = 0L
+
+  @Before
+  fun setUp() {
+    dbFile = File.createTempFile("UnifiedEventsWriteBufferTest", "mysql")
+    dbFile.deleteOnExit()
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    table = UnifiedEventsTable()
+    table.initialize(database.connection)
+  }
+
+  @After
+  fun tearDown() {
+    database.disconnect()
+  }
+
+  @Test
+  fun eventsAreWrittenWhenBatchIsFull() {
+    val buffer = UnifiedEventsWriteBuffer(table, 3, Long.MAX_VALUE) { currentTimeNs }
+    buffer.insertUnifiedEvent(1, createEvent(1))
+    buffer.insertUnifiedEvent(1, createEvent(2))
+    assertThat(table.queryUnifiedEvents()).isEmpty()
+    assertThat(buffer.pendingEventCount).isEqualTo(2)
+
+    buffer.insertUnifiedEvent(1, createEvent(3))
+    assertThat(table.queryUnifiedEvents()).hasSize(3)
+    assertThat(buffer.pendingEventCount).isEqualTo(0)
+    assertThat(buffer.flushCount).isEqualTo(1)
+    assertThat(buffer.flushedEventCount).isEqualTo(3)
+    assertThat(buffer.maxFlushedBatchSize).isEqualTo(3)
+  }
+
+  @Test
+  fun eventsAreBatchedPerStream() {
+    val buffer = UnifiedEventsWriteBuffer(table, 2, Long.MAX_VALUE) { currentTimeNs }
+    buffer.insertUnifiedEvent(1, createEvent(1))
+    buffer.insertUnifiedEvent(2, createEvent(2))
+    assertThat(table.queryUnifiedEvents()).isEmpty()
+
+    buffer.insertUnifiedEvent(2, createEvent(3))
+    assertThat(table.queryUnifiedEvents()).containsExactly(createEvent(2), createEvent(3))
+    assertThat(buffer.pendingEventCount).isEqualTo(1)
+  }
+
+  @Test
+  fun eventsAreWrittenWhenDelayIsExceeded() {
+    val buffer = UnifiedEventsWriteBuffer(table, 100, 10) { currentTimeNs }
+    buffer.insertUnifiedEvent(1, createEvent(1))
+    currentTimeNs = 5
+    buffer.insertUnifiedEvent(1, createEvent(2))
+    assertThat(table.queryUnifiedEvents()).isEmpty()
+
+    currentTimeNs = 10
+    buffer.insertUnifiedEvent(1, createEvent(3))
+    assertThat(table.queryUnifiedEvents()).hasSize(3)
+  }
+
+  @Test
+  fun flushWritesAllPendingEvents() {
+    val buffer = UnifiedEventsWriteBuffer(table, 100, Long.MAX_VALUE) { currentTimeNs }
+    buffer.insertUnifiedEvent(1, createEvent(1))
+    buffer.insertUnifiedEvent(2, createEvent(2))
+    buffer.flush(1)
+    assertThat(table.queryUnifiedEvents()).containsExactly(createEvent(1))
+
+    buffer.flush()
+    assertThat(table.queryUnifiedEvents()).containsExactly(createEvent(1), createEvent(2))
+    assertThat(buffer.flushCount).isEqualTo(2)
+    assertThat(buffer.averageBatchSize).isEqualTo(1.0)
+    assertThat(buffer.maxFlushLatencyNs).isAtLeast(buffer.lastFlushLatencyNs)
+    assertThat(buffer.maxFlushLatencyNs).isAtLeast(buffer.averageFlushLatencyNs)
+  }
+
+  @Test
+  fun flushExpiredWritesOnlyStreamsPastTheDelay() {
+    val buffer = UnifiedEventsWriteBuffer(table, 100, 10) { currentTimeNs }
+    buffer.insertUnifiedEvent(1, createEvent(1))
+    currentTimeNs = 5
+    buffer.insertUnifiedEvent(2, createEvent(2))
+    buffer.flushExpired()
+    assertThat(table.queryUnifiedEvents()).isEmpty()
+
+    // No new event arrives, but the periodic check still writes the stream that has waited long enough.
+    currentTimeNs = 10
+    buffer.flushExpired()
+    assertThat(table.queryUnifiedEvents()).containsExactly(createEvent(1))
+    assertThat(buffer.pendingEventCount).isEqualTo(1)
+  }
+
+  private fun createEvent(timestamp: Long): Common.Event {
+    return Common.Event.newBuilder()
+      .setKind(Common.Event.Kind.SESSION)
+      .setPid(1)
+      .setGroupId(timestamp)
+      .setTimestamp(timestamp)
+      .build()
+  }
+}
@@ -42,6 +42,69 @@ public class PollRunnerTest {
     assertEquals(runner.get(1, TimeUnit.SECONDS), null); // For code completion
   }
 
+  @Test
+  public void testPeriodAdaptsToPolledData() {
+    FakeDataPollRunner runner = new FakeDataPollRunner();
+    runner.myNextCount = 0;
+    runner.pollOnce(System.nanoTime());
+    assertEquals(PollRunner.POLLING_DELAY_NS * 2, runner.getPollPeriodNs());
+    for (int i = 0; i < 10; i++) {
+      runner.pollOnce(System.nanoTime());
+    }
+    assertEquals(PollRunner.POLLING_DELAY_NS * PollRunner.MAX_BACKOFF_FACTOR, runner.getPollPeriodNs());
+
+    runner.myNextCount = 5;
+    runner.pollOnce(System.nanoTime());
+    assertEquals(PollRunner.POLLING_DELAY_NS, runner.getPollPeriodNs());
+    assertEquals(12, runner.getPollCount());
+  }
+
+  @Test
+  public void testPeriodShortensForBursts() {
+    FakeDataPollRunner runner = new FakeDataPollRunner();
+    runner.myNextCount = 10;
+    for (int i = 0; i < 5; i++) {
+      runner.pollOnce(System.nanoTime());
+    }
+    assertEquals(PollRunner.POLLING_DELAY_NS, runner.getPollPeriodNs());
+
+    runner.myNextCount = 100;
+    runner.pollOnce(System.nanoTime());
+    assertEquals(PollRunner.POLLING_DELAY_NS / 2, runner.getPollPeriodNs());
+    for (int i = 0; i < 5; i++) {
+      runner.pollOnce(System.nanoTime());
+    }
+    assertEquals(PollRunner.POLLING_DELAY_NS / PollRunner.MAX_SPEEDUP_FACTOR, runner.getPollPeriodNs());
+
+    // Once the rate drops the period relaxes back to the base period, one step per poll.
+    runner.myNextCount = 10;
+    runner.pollOnce(System.nanoTime());
+    assertEquals(PollRunner.POLLING_DELAY_NS / 2, runner.getPollPeriodNs());
+    runner.pollOnce(System.nanoTime());
+    assertEquals(PollRunner.POLLING_DELAY_NS, runner.getPollPeriodNs());
+  }
+
+  @Test
+  public void testPeriodIsFixedWithoutReportedData() {
+    PollRunnerMinimalImpl runner = new PollRunnerMinimalImpl(10, TEST_PERIOD_NS);
+    runner.pollOnce(System.nanoTime());
+    assertEquals(PollRunner.POLLING_DELAY_NS, runner.getPollPeriodNs());
+    assertEquals(0.0, runner.getThroughputPerSecond(), 0);
+  }
+
+  private static class FakeDataPollRunner extends PollRunner {
+    private int myNextCount;
+
+    public FakeDataPollRunner() {
+      super(POLLING_DELAY_NS);
+    }
+
+    @Override
+    public void poll() {
+      reportPolledData(myNextCount);
+    }
+  }
+
   private static class PollRunnerMinimalImpl extends PollRunner {
     private long myLastCallbackTime = 0;
     private long myTickCallCount = 0;
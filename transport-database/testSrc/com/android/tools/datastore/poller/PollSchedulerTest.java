@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.datastore.FakeLogService;
+import com.android.tools.datastore.LogService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PollSchedulerTest {
+  private final List<Runnable> myFallbackRunnables = new ArrayList<>();
+  private final List<String> myLoggedMetrics = new ArrayList<>();
+  private final LogService myLogService = new FakeLogService() {
+    @NotNull
+    @Override
+    public FakeLogger getLogger(@NotNull Class clazz) {
+      return new FakeLogger() {
+        @Override
+        public void debug(@NotNull String msg) {
+          myLoggedMetrics.add(msg);
+        }
+      };
+    }
+  };
+  private PollScheduler myScheduler;
+
+  @Before
+  public void setUp() {
+    myScheduler = new PollScheduler(myFallbackRunnables::add, myLogService, 2, TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  @After
+  public void tearDown() {
+    myScheduler.shutdown();
+  }
+
+  @Test
+  public void pollRunnersArePolledOnSharedPool() throws Exception {
+    CountingPollRunner runner1 = new CountingPollRunner(3);
+    CountingPollRunner runner2 = new CountingPollRunner(3);
+    myScheduler.accept(runner1);
+    myScheduler.accept(runner2);
+    assertThat(runner1.myLatch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(runner2.myLatch.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(runner1.getPollCount()).isAtLeast(3L);
+    assertThat(myFallbackRunnables).isEmpty();
+  }
+
+  @Test
+  public void otherRunnablesAreForwarded() {
+    Runnable runnable = () -> {
+    };
+    myScheduler.accept(runnable);
+    assertThat(myFallbackRunnables).containsExactly(runnable);
+    assertThat(myScheduler.getPollerCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void stoppedRunnersAreRemoved() throws Exception {
+    CountingPollRunner runner = new CountingPollRunner(1);
+    myScheduler.accept(runner);
+    assertThat(runner.myLatch.await(5, TimeUnit.SECONDS)).isTrue();
+    // Blocks until the scheduler has released the runner.
+    runner.stop();
+    assertThat(runner.isDone()).isTrue();
+    assertThat(myScheduler.getPollerCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shutdownReleasesRunners() {
+    CountingPollRunner runner = new CountingPollRunner(1);
+    myScheduler.accept(runner);
+    myScheduler.shutdown();
+    assertThat(runner.isDone()).isTrue();
+  }
+
+  @Test
+  public void runnersThatThrowAreReleased() {
+    PollRunner runner = new PollRunner(TimeUnit.MILLISECONDS.toNanos(1)) {
+      @Override
+      public void poll() {
+        throw new IllegalStateException("Poller bug");
+      }
+    };
+    myScheduler.accept(runner);
+    // Blocks until the scheduler has released the runner.
+    runner.stop();
+    assertThat(runner.isDone()).isTrue();
+    assertThat(myScheduler.getPollerCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void metricsArePublished() throws Exception {
+    CountingPollRunner runner = new CountingPollRunner(3);
+    myScheduler.accept(runner);
+    assertThat(runner.myLatch.await(5, TimeUnit.SECONDS)).isTrue();
+    myScheduler.reportMetrics();
+    assertThat(myLoggedMetrics).hasSize(1);
+    assertThat(myLoggedMetrics.get(0)).startsWith("CountingPollRunner: period=");
+    assertThat(myLoggedMetrics.get(0)).contains("throughput=");
+  }
+
+  private static class CountingPollRunner extends PollRunner {
+    private final CountDownLatch myLatch;
+
+    CountingPollRunner(int expectedPolls) {
+      super(TimeUnit.MILLISECONDS.toNanos(1));
+      myLatch = new CountDownLatch(expectedPolls);
+    }
+
+    @Override
+    public void poll() {
+      reportPolledData(1);
+      myLatch.countDown();
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.android.tools.datastore.DataStorePollerTest
 import com.android.tools.datastore.DataStoreService
 import com.android.tools.datastore.FakeLogService
 import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.datastore.database.UnifiedEventsWriteBuffer
 import com.android.tools.profiler.proto.Common
 import com.android.tools.profiler.proto.Transport.GetEventsRequest
 import com.android.tools.profiler.proto.TransportServiceGrpc
@@ -57,7 +58,7 @@ class UnifiedEventsDataPollerTest : DataStorePollerTest() {
     val managedChannel = InProcessChannelBuilder.forName("UnifiedEventsPollerServer").build()
     val serviceStub = TransportServiceGrpc.newBlockingStub(managedChannel)
 
-    poller = UnifiedEventsDataPoller(1, table, serviceStub, dataStore)
+    poller = UnifiedEventsDataPoller(1, UnifiedEventsWriteBuffer(table), serviceStub, dataStore)
   }
 
   @After
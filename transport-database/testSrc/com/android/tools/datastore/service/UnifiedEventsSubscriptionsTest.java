@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.service;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.datastore.rpc.SubscribeEventsResponse;
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class UnifiedEventsSubscriptionsTest {
+  /**
+   * Recorded in place of the acknowledgement.
+   */
+  private static final Object SUBSCRIBED = SubscribeEventsResponse.newBuilder().setSubscribed(true).build();
+
+  private final UnifiedEventsSubscriptions mySubscriptions = new UnifiedEventsSubscriptions();
+
+  @Test
+  public void eventsAreDeliveredToMatchingSubscribers() {
+    RecordingObserver all = new RecordingObserver();
+    RecordingObserver stream1Cpu = new RecordingObserver();
+    mySubscriptions.subscribe(GetEventGroupsRequest.getDefaultInstance(), all);
+    mySubscriptions.subscribe(GetEventGroupsRequest.newBuilder().setStreamId(1).setKind(Event.Kind.CPU_USAGE).build(), stream1Cpu);
+
+    Event cpu = Event.newBuilder().setKind(Event.Kind.CPU_USAGE).setTimestamp(1).build();
+    Event memory = Event.newBuilder().setKind(Event.Kind.MEMORY_USAGE).setTimestamp(2).build();
+    mySubscriptions.publish(1, cpu);
+    mySubscriptions.publish(1, memory);
+    mySubscriptions.publish(2, cpu);
+
+    assertThat(all.myEvents).containsExactly(SUBSCRIBED, cpu, memory, cpu).inOrder();
+    assertThat(stream1Cpu.myEvents).containsExactly(SUBSCRIBED, cpu).inOrder();
+  }
+
+  @Test
+  public void completeAllCompletesAndRemovesSubscribers() {
+    RecordingObserver observer = new RecordingObserver();
+    mySubscriptions.subscribe(GetEventGroupsRequest.getDefaultInstance(), observer);
+    mySubscriptions.completeAll();
+
+    assertThat(observer.myIsCompleted).isTrue();
+    assertThat(mySubscriptions.getSubscriberCount()).isEqualTo(0);
+    mySubscriptions.publish(1, Event.newBuilder().setTimestamp(1).build());
+    assertThat(observer.myEvents).containsExactly(SUBSCRIBED);
+  }
+
+  @Test
+  public void slowSubscriberIsDropped() {
+    NotReadyObserver observer = new NotReadyObserver();
+    mySubscriptions.subscribe(GetEventGroupsRequest.getDefaultInstance(), observer);
+    for (int i = 0; i <= UnifiedEventsSubscriptions.MAX_PENDING_EVENTS; i++) {
+      mySubscriptions.publish(1, Event.newBuilder().setTimestamp(i).build());
+    }
+
+    assertThat(observer.myEvents).isEmpty();
+    assertThat(Status.fromThrowable(observer.myError).getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    assertThat(mySubscriptions.getSubscriberCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void pendingEventsAreDrainedOnceReady() {
+    NotReadyObserver observer = new NotReadyObserver();
+    mySubscriptions.subscribe(GetEventGroupsRequest.getDefaultInstance(), observer);
+    Event event = Event.newBuilder().setTimestamp(1).build();
+    mySubscriptions.publish(1, event);
+    assertThat(observer.myEvents).isEmpty();
+
+    observer.myIsReady = true;
+    observer.myOnReadyHandler.run();
+    assertThat(observer.myEvents).containsExactly(SUBSCRIBED, event).inOrder();
+  }
+
+  private static class RecordingObserver implements StreamObserver<SubscribeEventsResponse> {
+    final List<Object> myEvents = new ArrayList<>();
+    Throwable myError;
+    boolean myIsCompleted;
+
+    @Override
+    public void onNext(SubscribeEventsResponse response) {
+      myEvents.add(response.getSubscribed() ? SUBSCRIBED : response.getEvent());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      myError = t;
+    }
+
+    @Override
+    public void onCompleted() {
+      myIsCompleted = true;
+    }
+  }
+
+  private static class NotReadyObserver extends ServerCallStreamObserver<SubscribeEventsResponse> {
+    final List<Object> myEvents = new ArrayList<>();
+    Throwable myError;
+    boolean myIsReady;
+    Runnable myOnReadyHandler;
+
+    @Override
+    public boolean isReady() {
+      return myIsReady;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {
+      myOnReadyHandler = onReadyHandler;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public void setOnCancelHandler(Runnable onCancelHandler) {
+    }
+
+    @Override
+    public void setCompression(String compression) {
+    }
+
+    @Override
+    public void disableAutoInboundFlowControl() {
+    }
+
+    @Override
+    public void request(int count) {
+    }
+
+    @Override
+    public void setMessageCompression(boolean enable) {
+    }
+
+    @Override
+    public void onNext(SubscribeEventsResponse response) {
+      myEvents.add(response.getSubscribed() ? SUBSCRIBED : response.getEvent());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      myError = t;
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+  }
+}
@@ -25,11 +25,14 @@ import com.android.tools.datastore.DataStorePollerTest;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.TestGrpcService;
 import com.android.tools.datastore.database.UnifiedEventsTable;
+import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.profiler.proto.Commands.Command;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Common.Event;
 import com.android.tools.profiler.proto.Common.Stream;
 import com.android.tools.profiler.proto.Transport;
+import com.android.tools.profiler.proto.Transport.BytesRequest;
+import com.android.tools.profiler.proto.Transport.BytesResponse;
 import com.android.tools.profiler.proto.Transport.EventGroup;
 import com.android.tools.profiler.proto.Transport.ExecuteRequest;
 import com.android.tools.profiler.proto.Transport.ExecuteResponse;
@@ -43,6 +46,8 @@ import com.android.tools.profiler.proto.Transport.VersionResponse;
 import com.android.tools.profiler.proto.TransportServiceGrpc;
 import io.grpc.Channel;
 import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -170,6 +175,34 @@ public class UnifiedPipelineTransportServiceTest extends DataStorePollerTest {
     assertThat(expectedCommand).isEqualTo(myFakeService.getLastCommandReceived());
   }
 
+  @Test
+  public void streamBytesSendsChunksAndCachesContents() {
+    byte[] contents = new byte[TransportService.MAX_CHUNK_SIZE * 2 + 10];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = (byte)i;
+    }
+    myFakeService.setBytes(ByteString.copyFrom(contents));
+    BytesRequest request = BytesRequest.newBuilder().setStreamId(TEST_DEVICE_ID).setId("trace").build();
+
+    for (int call = 0; call < 2; call++) {
+      List<BytesResponse> chunks = new ArrayList<>();
+      StreamObserver<BytesResponse> observer = mock(StreamObserver.class);
+      Mockito.doAnswer(invocation -> chunks.add(invocation.getArgument(0))).when(observer).onNext(Mockito.any());
+      myTransportService.streamBytes(request, observer);
+      verify(observer).onCompleted();
+
+      assertThat(chunks).hasSize(3);
+      ByteString streamed = ByteString.EMPTY;
+      for (BytesResponse chunk : chunks) {
+        assertThat(chunk.getContents().size()).isAtMost(TransportService.MAX_CHUNK_SIZE);
+        streamed = streamed.concat(chunk.getContents());
+      }
+      assertThat(streamed.toByteArray()).isEqualTo(contents);
+    }
+    // The contents were fetched from the device once, and read from the datastore afterwards.
+    assertThat(myFakeService.getBytesRequestCount()).isEqualTo(1);
+  }
+
   private void validateEventNoTimestamp(Event expected, Event actual) {
     actual = actual.toBuilder().setTimestamp(expected.getTimestamp()).build();
     assertThat(expected).isEqualTo(actual);
@@ -178,11 +211,28 @@ public class UnifiedPipelineTransportServiceTest extends DataStorePollerTest {
   private static class FakeTransportService extends TransportServiceGrpc.TransportServiceImplBase {
 
     private Command myLastCommandReceived;
+    private ByteString myBytes = ByteString.EMPTY;
+    private int myBytesRequestCount;
 
     public Command getLastCommandReceived() {
       return myLastCommandReceived;
     }
 
+    public void setBytes(ByteString bytes) {
+      myBytes = bytes;
+    }
+
+    public int getBytesRequestCount() {
+      return myBytesRequestCount;
+    }
+
+    @Override
+    public void getBytes(BytesRequest request, StreamObserver<BytesResponse> responseObserver) {
+      myBytesRequestCount++;
+      responseObserver.onNext(BytesResponse.newBuilder().setContents(myBytes).build());
+      responseObserver.onCompleted();
+    }
+
     @Override
     public void getCurrentTime(TimeRequest request, StreamObserver<TimeResponse> responseObserver) {
       responseObserver.onNext(TimeResponse.getDefaultInstance());